@@ -21,6 +21,23 @@ public interface Avm {
      */
     SimpleFuture<TransactionResult>[] run(TransactionContext[] transactions) throws IllegalStateException;
 
+    /**
+     * Executes the array of DApp transactions against the given kernel, which the results are committed into.
+     * This can be called from several threads at once:  each batch runs either alone or pipelined behind batches against the same
+     * kernel (if pipelining is enabled) so batches against different kernels never observe each other.  When several batches are
+     * waiting to start, those with a higher priority go first.
+     * Note that this may block until the batches already running are out of the way (and, unless pipelined, until their results
+     * have been consumed).
+     * Throws IllegalStateException if the receiver has already been shutdown or if the calling thread still has unconsumed results
+     * it would need to wait for.
+     *
+     * @param transactions The array of transactions to run (cannot be empty).
+     * @param kernel The kernel to run the transactions against (the DApp cache is shared, but only filled from the Avm's own kernel).
+     * @param priority The priority of this batch relative to those sent by other threads.
+     * @return The results as a corresponding array of asynchronous futures.
+     */
+    SimpleFuture<TransactionResult>[] run(TransactionContext[] transactions, KernelInterface kernel, BatchPriority priority) throws IllegalStateException;
+
     /**
      * Tells the Avm implementation to shut down.  This means that it can assume it will not be called again.
      * The specifics of what is shut down are implementation-dependent:  threads, caches, other long-lived resources.
@@ -33,4 +50,13 @@ public interface Avm {
      * @param kernel The new kernel for the Avm to interact with.
      */
     public void setKernel(KernelInterface kernel);
+
+    /**
+     * Replaces the executor threads with a pool of the given size.
+     * This can only be called between blocks:  all the futures returned by the previous run() must have been consumed.
+     * Throws IllegalStateException if a block is still running.
+     *
+     * @param threadCount The new number of executor threads (must be positive).
+     */
+    public void resizeExecutorPool(int threadCount) throws IllegalStateException;
 }
@@ -0,0 +1,46 @@
+package org.aion.avm.core;
+
+
+/**
+ * The tunable settings of an AvmImpl instance, passed in when it is built via NodeEnvironment.buildAvmInstance().
+ * This is just a mutable bag of values:  the AvmImpl reads it once, during startup(), so changing it afterward has no effect.
+ */
+public class AvmConfiguration {
+    /**
+     * The number of executor threads to start.
+     * Defaults to the number of processors available to the JVM (note that this is evaluated when the configuration is created).
+     * Can later be changed between blocks via Avm.resizeExecutorPool(int).
+     */
+    public int threadCount;
+
+    /**
+     * If true, run() accepts a new block while the futures of previous ones are still outstanding, so the executors can start on
+     * the next block while the previous one drains.  The blocks still commit in the order they were submitted.
+     * Defaults to false:  each run() waits until all the results of the previous one have been consumed (which the calling thread
+     * can't wait for if it sent that one itself, so it gets an IllegalStateException instead).
+     * Either way, only batches against the same kernel are ever in flight together (see Avm.run(TransactionContext[], KernelInterface, BatchPriority)).
+     */
+    public boolean enablePipelinedBlocks;
+
+    /**
+     * If true, each batch is scheduled by ConflictGraphScheduler before dispatch:  a transaction sharing a sender or target with an
+     * earlier one in the batch isn't started until that earlier one commits, instead of waiting or aborting at runtime.
+     * Defaults to true.
+     */
+    public boolean enableConflictScheduling;
+
+    /**
+     * If true, transactions run optimistically:  executors don't reserve the addresses they touch but, instead, record what they
+     * read and validate it when it is their turn to commit, re-running any transaction whose reads were changed by an earlier one.
+     * This tends to win when conflicts are rare and lose when they are common.  Conflict scheduling is not used in this mode.
+     * Defaults to false.
+     */
+    public boolean enableOptimisticExecution;
+
+    public AvmConfiguration() {
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+        this.enablePipelinedBlocks = false;
+        this.enableConflictScheduling = true;
+        this.enableOptimisticExecution = false;
+    }
+}
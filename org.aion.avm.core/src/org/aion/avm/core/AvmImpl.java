@@ -21,6 +21,9 @@ import org.aion.avm.internal.InstrumentationHelpers;
 import org.aion.avm.internal.JvmError;
 import org.aion.avm.internal.RuntimeAssertionError;
 import org.aion.parallel.AddressResourceMonitor;
+import org.aion.parallel.BatchSchedule;
+import org.aion.parallel.ConflictGraphScheduler;
+import org.aion.parallel.ExecutorContext;
 import org.aion.parallel.TransactionTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,25 +37,36 @@ public class AvmImpl implements AvmInternal {
 
     private static final boolean DEBUG_EXECUTOR = false;
 
-    private static final int NUM_EXECUTORS = 4;
-
     private final IInstrumentationFactory instrumentationFactory;
+    private final AvmConfiguration configuration;
     private KernelInterface kernel;
+    // The kernel the task kernels are built on:  the kernel itself or, if optimistic, a locked view since tasks then run concurrently with commits.
+    private KernelInterface taskParentKernel;
+    // The most recent kernel passed to run() other than our own, and the kernel its tasks are built on (only accessed inside the gate).
+    private KernelInterface isolatedKernel;
+    private KernelInterface isolatedTaskParentKernel;
+    // Lets several threads call run() at once:  they take turns sending their batches to the handoff.
+    private final BatchAdmissionGate admissionGate;
 
     // Long-lived state which is book-ended by the startup/shutdown calls.
     private static AvmImpl currentAvm;  // (only here for testing - makes sure that we properly clean these up between invocations)
     private SoftCache<ByteArrayWrapper, LoadedDApp> hotCache;
     private HandoffMonitor handoff;
+    private AvmCommitThread commitThread;
 
     // Short-lived state which is reset for each batch of transaction request.
     private AddressResourceMonitor resourceMonitor;
+    private BatchSchedule lastBatchSchedule;
 
     // Used in the case of a fatal JvmError in the background threads.  A shutdown() is the only option from this point.
     private AvmFailedException backgroundFatalError;
 
-    public AvmImpl(IInstrumentationFactory instrumentationFactory, KernelInterface kernel) {
+    public AvmImpl(IInstrumentationFactory instrumentationFactory, KernelInterface kernel, AvmConfiguration configuration) {
         this.instrumentationFactory = instrumentationFactory;
+        this.configuration = configuration;
         this.kernel = kernel;
+        this.taskParentKernel = buildTaskParentKernel(kernel);
+        this.admissionGate = new BatchAdmissionGate(this::isQuiescent);
     }
 
     private class AvmExecutorThread extends Thread{
@@ -65,37 +79,26 @@ public class AvmImpl implements AvmInternal {
         public void run() {
             IInstrumentation instrumentation = AvmImpl.this.instrumentationFactory.createInstrumentation();
             InstrumentationHelpers.attachThread(instrumentation);
+            // Lent to every task this thread runs so that starting one doesn't allocate.
+            ExecutorContext context = new ExecutorContext(instrumentation);
             try {
                 // Run as long as we have something to do (null means shutdown).
-                TransactionResult outgoingResult = null;
                 TransactionTask incomingTask = AvmImpl.this.handoff.blockingPollForTransaction(null, null);
                 while (null != incomingTask) {
-                    int abortCounter = 0;
-
-                    do {
-                        if (DEBUG_EXECUTOR) System.out.println(this.getName() + " start  " + incomingTask.getIndex());
-
-                        // TODO:  Determine if we can coalesce the IInstrumentation and TransactionTask to avoid this attach/detach.
-                        incomingTask.resetState();
-                        incomingTask.attachInstrumentationForThread();
-                        outgoingResult = AvmImpl.this.backgroundProcessTransaction(incomingTask);
-                        incomingTask.detachInstrumentationForThread();
-
-                        if (TransactionResult.Code.FAILED_ABORT == outgoingResult.getStatusCode()) {
-                            // If this was an abort, we want to clear the abort state on the instrumentation for this thread, since
-                            // this is the point where that is "handled".
-                            // Note that this is safe to do here since the instrumentation isn't exposed to any other threads.
-                            instrumentation.clearAbortState();
-                            
-                            if (DEBUG_EXECUTOR){
-                                System.out.println(this.getName() + " abort  " + incomingTask.getIndex() + " counter " + (++abortCounter));
-                            }
-                        }
-                    }while (TransactionResult.Code.FAILED_ABORT == outgoingResult.getStatusCode());
+                    if (DEBUG_EXECUTOR) System.out.println(this.getName() + " start  " + incomingTask.getIndex());
+
+                    long startNanos = System.nanoTime();
+                    incomingTask.beginAttempt(context);
+                    TransactionResult outgoingResult = AvmImpl.this.backgroundProcessTransaction(incomingTask);
+                    incomingTask.endAttempt();
 
                     if (DEBUG_EXECUTOR) System.out.println(this.getName() + " finish " + incomingTask.getIndex() + " " + outgoingResult.getStatusCode());
 
-                    incomingTask = AvmImpl.this.handoff.blockingPollForTransaction(outgoingResult, incomingTask);
+                    // The commit thread decides whether this is committed or retried (even if it already aborted, since the commit
+                    // thread is what releases its addresses), so we can move straight on.
+                    incomingTask.setAttemptResult(outgoingResult, System.nanoTime() - startNanos);
+                    AvmImpl.this.resourceMonitor.submitForCommit(incomingTask);
+                    incomingTask = AvmImpl.this.handoff.blockingPollForTransaction(null, null);
                 }
             } catch (JvmError e) {
                 // This is a fatal error the AVM cannot generally happen so request an asynchronous shutdown.
@@ -118,6 +121,53 @@ public class AvmImpl implements AvmInternal {
 
     }
 
+    /**
+     * The single thread which commits the tasks submitted by the executors, in order, and publishes their results (or hands them
+     * back to be retried, if they were aborted).
+     */
+    private class AvmCommitThread extends Thread {
+
+        AvmCommitThread(String name){
+            super(name);
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Run until the resource monitor tells us to shut down.
+                TransactionTask task = AvmImpl.this.resourceMonitor.blockingPollForCommit();
+                while (null != task) {
+                    TransactionResult result = task.getAttemptResult();
+                    if (AvmImpl.this.resourceMonitor.commitTask(task)) {
+                        result.setExternalTransactionalKernel(task.getTaskKernel());
+                        result.setAbortCount(task.getAbortCount());
+                        result.setWastedEnergy(task.getWastedEnergy());
+                        result.setWastedNanos(task.getWastedNanos());
+                        AvmImpl.this.handoff.completeTransaction(task, result);
+                    } else {
+                        // The energy of an aborted result is only reported as wasted work, which a rejection didn't really do.
+                        long wastedEnergy = result.getStatusCode().isRejected()
+                                ? 0L
+                                : result.getEnergyUsed();
+                        task.recordAbortedAttempt(wastedEnergy, task.getAttemptNanos());
+
+                        if (DEBUG_EXECUTOR){
+                            System.out.println(this.getName() + " abort  " + task.getIndex() + " counter " + task.getAbortCount() + " behind " + task.getAbortCauseIndex());
+                        }
+
+                        // Rather than spinning on the same conflict, hand the task back to be retried once what it yielded to is done.
+                        AvmImpl.this.handoff.retryAbortedTask(task);
+                    }
+                    task = AvmImpl.this.resourceMonitor.blockingPollForCommit();
+                }
+            } catch (Throwable t) {
+                // Nothing run here can cause a JvmError so this is an internal failure, which we need to communicate to the outside.
+                AvmImpl.this.handoff.setBackgroundThrowable(t);
+                RuntimeAssertionError.unexpected(t);
+            }
+        }
+    }
+
     public void startup() {
         RuntimeAssertionError.assertTrue(null == AvmImpl.currentAvm);
         AvmImpl.currentAvm = this;
@@ -126,33 +176,97 @@ public class AvmImpl implements AvmInternal {
         this.hotCache = new SoftCache<>();
 
         RuntimeAssertionError.assertTrue(null == this.resourceMonitor);
-        this.resourceMonitor = new AddressResourceMonitor();
+        this.resourceMonitor = new AddressResourceMonitor(this.configuration.enableOptimisticExecution);
 
+        if (this.configuration.threadCount < 1) {
+            throw new IllegalArgumentException("Executor pool needs at least one thread: " + this.configuration.threadCount);
+        }
+        startExecutorThreads(this.configuration.threadCount);
+
+        // The commit thread is independent of the executor pool so it isn't restarted on resize.
+        RuntimeAssertionError.assertTrue(null == this.commitThread);
+        this.commitThread = new AvmCommitThread("AVM Commit Thread");
+        this.commitThread.start();
+    }
+
+    @Override
+    public void resizeExecutorPool(int threadCount) throws IllegalStateException {
+        if (null != this.backgroundFatalError) {
+            throw this.backgroundFatalError;
+        }
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Executor pool needs at least one thread: " + threadCount);
+        }
+        // We can only swap out the executors between blocks, since the in-flight futures are tied to the current monitor.
+        // (entering the gate keeps other threads from sending anything while we do this).
+        this.admissionGate.enter(BatchPriority.HIGH, null, false);
+        try {
+            if (this.handoff.hasOutstandingResults()) {
+                throw new IllegalStateException("Cannot resize executor pool while a block is still running");
+            }
+            this.handoff.stopAndWaitForShutdown();
+            this.handoff = null;
+            startExecutorThreads(threadCount);
+        } finally {
+            this.admissionGate.exit();
+        }
+    }
+
+    private void startExecutorThreads(int threadCount) {
+        RuntimeAssertionError.assertTrue(threadCount > 0);
         Set<Thread> executorThreads = new HashSet<>();
-        for (int i = 0; i < NUM_EXECUTORS; i++){
+        for (int i = 0; i < threadCount; i++){
             executorThreads.add(new AvmExecutorThread("AVM Executor Thread " + i));
         }
 
         RuntimeAssertionError.assertTrue(null == this.handoff);
-        this.handoff = new HandoffMonitor(executorThreads);
+        this.handoff = new HandoffMonitor(executorThreads, this.configuration.enablePipelinedBlocks, this.admissionGate::signalStateChange);
         this.handoff.startExecutorThreads();
     }
 
     @Override
     public SimpleFuture<TransactionResult>[] run(TransactionContext[] transactions) throws IllegalStateException {
+        return run(transactions, this.kernel, BatchPriority.HIGH);
+    }
+
+    @Override
+    public SimpleFuture<TransactionResult>[] run(TransactionContext[] transactions, KernelInterface kernel, BatchPriority priority) throws IllegalStateException {
         if (null != this.backgroundFatalError) {
             throw this.backgroundFatalError;
         }
-        // Clear the states of resources
-        this.resourceMonitor.clear();
+        // Wait for our turn:  batches against the same kernel can pipeline behind each other (if enabled) but any other kernel waits
+        // for the executors to drain, so batches against different kernels never see each other's uncommitted state.
+        this.admissionGate.enter(priority, kernel, this.configuration.enablePipelinedBlocks);
+        try {
+            if (null != this.backgroundFatalError) {
+                throw this.backgroundFatalError;
+            }
+            // If nothing is still running (always the case unless pipelined), clear the states of resources and restart the task numbering
+            // which orders their commits.  Otherwise, this batch is numbered after the ones in flight, so it commits after them.
+            if (this.handoff.isIdle()) {
+                this.resourceMonitor.clear();
+                this.handoff.restartTaskIndices();
+            }
 
-        // Clear the hot cache
-        if (transactions.length > 0) {
-            long currentBlockNum = transactions[0].getBlockNumber();
-            validateCodeCache(currentBlockNum);
-        }
+            // Clear the hot cache (only our own kernel's blocks say anything about what it holds).
+            if ((transactions.length > 0) && (kernel == this.kernel)) {
+                long currentBlockNum = transactions[0].getBlockNumber();
+                validateCodeCache(currentBlockNum);
+            }
 
-        return this.handoff.sendTransactionsAsynchronously(transactions);
+            BatchSchedule schedule = null;
+            // (optimistic execution doesn't make tasks wait for each other so there is nothing to schedule).
+            if (this.configuration.enableConflictScheduling && !this.configuration.enableOptimisticExecution) {
+                schedule = ConflictGraphScheduler.schedule(transactions);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Scheduled {} transactions in {} lanes ({} predicted conflicts)", transactions.length, schedule.getLaneCount(), schedule.getPredictedConflictCount());
+                }
+            }
+            this.lastBatchSchedule = schedule;
+            return this.handoff.sendTransactionsAsynchronously(transactions, schedule, taskParentKernelFor(kernel));
+        } finally {
+            this.admissionGate.exit();
+        }
     }
 
     private TransactionResult backgroundProcessTransaction(TransactionTask task) {
@@ -164,7 +278,10 @@ public class AvmImpl implements AvmInternal {
         RuntimeAssertionError.assertTrue(ctx != null);
 
         // All IO will be performed on an per task transactional kernel so we can abort the whole task in one go
-        TransactionalKernel taskTransactionalKernel = new TransactionalKernel(this.kernel);
+        TransactionalKernel taskTransactionalKernel = new TransactionalKernel(task.getParentKernel());
+        if (this.configuration.enableOptimisticExecution) {
+            taskTransactionalKernel.enableReadTracking();
+        }
         task.setTaskKernel(taskTransactionalKernel);
 
         // value/energyPrice/energyLimit sanity check
@@ -200,7 +317,7 @@ public class AvmImpl implements AvmInternal {
             if (ctx.isGarbageCollectionRequest()) {
                 // The GC case operates directly on the top-level KernelInterface.
                 // (remember that the "sender" is who we are updating).
-                result = runGc(taskTransactionalKernel, sender, ctx);
+                result = runGc(taskTransactionalKernel, task, sender, ctx);
             } else {
                 // The CREATE/CALL case is handled via the common external invoke path.
                 result = runExternalInvoke(taskTransactionalKernel, task, ctx);
@@ -212,18 +329,10 @@ public class AvmImpl implements AvmInternal {
         }
 
         // Refund energy for transaction
-        long energyRemaining = (ctx.getEnergyLimit() - result.getEnergyUsed()) * ctx.getEnergyPrice();
-        taskTransactionalKernel.adjustBalance(sender, BigInteger.valueOf(energyRemaining));
-
-        // Task transactional kernel commits are serialized through address resource monitor
-        if (!this.resourceMonitor.commitKernelForTask(task, result.getStatusCode().isRejected())){
-            result.setStatusCode(TransactionResult.Code.FAILED_ABORT);
-        }
-
-        if (TransactionResult.Code.FAILED_ABORT != result.getStatusCode()){
-            result.setExternalTransactionalKernel(taskTransactionalKernel);
-        }
+        Balance energyRemaining = Balance.product(ctx.getEnergyLimit() - result.getEnergyUsed(), ctx.getEnergyPrice());
+        taskTransactionalKernel.adjustBalance(sender, energyRemaining);
 
+        // Task transactional kernel commits are serialized through address resource monitor, by the commit thread.
         return result;
     }
 
@@ -233,6 +342,7 @@ public class AvmImpl implements AvmInternal {
             throw this.backgroundFatalError;
         }
         this.kernel = kernel;
+        this.taskParentKernel = buildTaskParentKernel(kernel);
     }
 
     @Override
@@ -245,6 +355,15 @@ public class AvmImpl implements AvmInternal {
             // the shutdown, then re-throw it.
             failureDuringShutdown = t;
         }
+        // The executors are gone so nothing more will be submitted:  we can stop the commit thread (it still needs the handoff).
+        this.resourceMonitor.requestCommitShutdown();
+        try {
+            this.commitThread.join();
+        } catch (InterruptedException e) {
+            // We don't use interruption.
+            RuntimeAssertionError.unexpected(e);
+        }
+        this.commitThread = null;
         this.handoff = null;
         RuntimeAssertionError.assertTrue(this == AvmImpl.currentAvm);
         AvmImpl.currentAvm = null;
@@ -275,7 +394,9 @@ public class AvmImpl implements AvmInternal {
         // balance check
         byte[] sender = ctx.getCaller();
 
-        BigInteger transactionCost = BigInteger.valueOf(ctx.getEnergyLimit() * ctx.getEnergyPrice()).add(ctx.getValue());
+        // (the energy cost products are exact:  they can't overflow a Balance).
+        Balance energyCost = Balance.product(ctx.getEnergyLimit(), ctx.getEnergyPrice());
+        Balance transactionCost = energyCost.add(Balance.valueOf(ctx.getValue()));
         if (!parentKernel.accountBalanceIsAtLeast(sender, transactionCost)) {
             error = TransactionResult.Code.REJECTED_INSUFFICIENT_BALANCE;
         }
@@ -293,13 +414,13 @@ public class AvmImpl implements AvmInternal {
          */
 
         // Deduct the total energy cost
-        parentKernel.adjustBalance(ctx.getCaller(), BigInteger.valueOf(ctx.getEnergyLimit() * ctx.getEnergyPrice()).negate());
+        parentKernel.adjustBalance(ctx.getCaller(), energyCost.negate());
 
         // Run the common logic with the parent kernel as the top-level one.
         TransactionResult result = commonInvoke(parentKernel, task, ctx);
 
         // Transfer fees to miner
-        parentKernel.adjustBalance(ctx.getBlockCoinbase(), BigInteger.valueOf(result.getEnergyUsed() * ctx.getEnergyPrice()));
+        parentKernel.adjustBalance(ctx.getBlockCoinbase(), Balance.product(result.getEnergyUsed(), ctx.getEnergyPrice()));
 
         return result;
     }
@@ -316,70 +437,84 @@ public class AvmImpl implements AvmInternal {
         // We expect that the GC transactions are handled specially, within the caller.
         RuntimeAssertionError.assertTrue(!ctx.isGarbageCollectionRequest());
 
-        // Invoke calls must build their transaction on top of an existing "parent" kernel.
-        TransactionalKernel thisTransactionKernel = new TransactionalKernel(parentKernel);
+        // Every frame of the task runs directly on the task kernel:  this invoke is a savepoint within it, kept only if it succeeds.
+        RuntimeAssertionError.assertTrue(parentKernel == task.getTaskKernel());
+        TransactionalKernel thisTransactionKernel = (TransactionalKernel) parentKernel;
+        int savepoint = thisTransactionKernel.mark();
+        boolean shouldKeepWrites = false;
 
         // only one result (mutable) shall be created per transaction execution
         TransactionResult result = new TransactionResult();
-        result.setStatusCode(TransactionResult.Code.SUCCESS);
-        result.setEnergyUsed(ctx.getBasicCost()); // basic tx cost
-
-        // conduct value transfer
-        thisTransactionKernel.adjustBalance(ctx.getCaller(), ctx.getValue().negate());
-        thisTransactionKernel.adjustBalance(ctx.getAddress(), ctx.getValue());
-
-        // At this stage, transaction can no longer be rejected.
-        // The nonce increment will be done regardless of the transaction result.
-        task.getTaskKernel().incrementNonce(ctx.getCaller());
-
-        if (!ctx.isBalanceTransfer()) { // do nothing for balance transfers
-            if (ctx.isCreate()) { // create
-                DAppCreator.create(thisTransactionKernel, this, task, ctx, result);
-            } else { // call
-                byte[] dappAddress = ctx.getAddress();
-                // See if this call is trying to reenter one already on this call-stack.  If so, we will need to partially resume its state.
-                ReentrantDAppStack.ReentrantState stateToResume = task.getReentrantDAppStack().tryShareState(dappAddress);
-
-                LoadedDApp dapp;
-                // The reentrant cache is obviously the first priority.
-                // (note that we also want to check the kernel we were given to make sure that this DApp hasn't been deleted since we put it in the cache.
-                if ((null != stateToResume) && (null != thisTransactionKernel.getCode(dappAddress))) {
-                    dapp = stateToResume.dApp;
-                    // Call directly and don't interact with DApp cache (we are reentering the state, not the origin of it).
-                    DAppExecutor.call(thisTransactionKernel, this, dapp, stateToResume, task, ctx, result);
-                } else {
-                    // If we didn't find it there (that is only for reentrant calls so it is rarely found in the stack), try the hot DApp cache.
-                    ByteArrayWrapper addressWrapper = new ByteArrayWrapper(dappAddress);
-                    dapp = this.hotCache.checkout(addressWrapper);
-                    if (null == dapp) {
-                        // If we didn't find it there, just load it.
-                        try {
-                            dapp = DAppLoader.loadFromGraph(new KeyValueObjectGraph(thisTransactionKernel, dappAddress).getCode());
-
-                            // If the dapp is freshly loaded, we set the block num
-                            if (null != dapp){
-                                dapp.setLoadedBlockNum(ctx.getBlockNumber());
+        try {
+            result.setStatusCode(TransactionResult.Code.SUCCESS);
+            result.setEnergyUsed(ctx.getBasicCost()); // basic tx cost
+
+            // conduct value transfer
+            Balance value = Balance.valueOf(ctx.getValue());
+            thisTransactionKernel.adjustBalance(ctx.getCaller(), value.negate());
+            thisTransactionKernel.adjustBalance(ctx.getAddress(), value);
+
+            // At this stage, transaction can no longer be rejected.
+            // The nonce increment will be done regardless of the transaction result (or the result of any of our callers).
+            thisTransactionKernel.incrementNonceOutsideSavepoints(ctx.getCaller());
+
+            if (!ctx.isBalanceTransfer()) { // do nothing for balance transfers
+                if (ctx.isCreate()) { // create
+                    DAppCreator.create(thisTransactionKernel, this, task, ctx, result);
+                } else { // call
+                    byte[] dappAddress = ctx.getAddress();
+                    // See if this call is trying to reenter one already on this call-stack.  If so, we will need to partially resume its state.
+                    ReentrantDAppStack.ReentrantState stateToResume = task.getReentrantDAppStack().tryShareState(dappAddress);
+
+                    LoadedDApp dapp;
+                    // The reentrant cache is obviously the first priority.
+                    // (note that we also want to check the kernel we were given to make sure that this DApp hasn't been deleted since we put it in the cache.
+                    if ((null != stateToResume) && (null != thisTransactionKernel.getCode(dappAddress))) {
+                        dapp = stateToResume.dApp;
+                        // Call directly and don't interact with DApp cache (we are reentering the state, not the origin of it).
+                        DAppExecutor.call(thisTransactionKernel, this, dapp, stateToResume, task, ctx, result);
+                    } else {
+                        // If we didn't find it there (that is only for reentrant calls so it is rarely found in the stack), try the hot DApp cache.
+                        ByteArrayWrapper addressWrapper = new ByteArrayWrapper(dappAddress);
+                        dapp = this.hotCache.checkout(addressWrapper);
+                        boolean isCached = (null != dapp);
+                        if (null == dapp) {
+                            // If we didn't find it there, just load it.
+                            try {
+                                dapp = DAppLoader.loadFromGraph(new KeyValueObjectGraph(thisTransactionKernel, dappAddress).getCode());
+
+                                // If the dapp is freshly loaded, we set the block num
+                                if (null != dapp){
+                                    dapp.setLoadedBlockNum(ctx.getBlockNumber());
+                                }
+
+                            } catch (IOException e) {
+                                unexpected(e); // the jar was created by AVM; IOException is unexpected
                             }
-
-                        } catch (IOException e) {
-                            unexpected(e); // the jar was created by AVM; IOException is unexpected
                         }
-                    }
-                    // Run the call and, if successful, check this into the hot DApp cache.
-                    if (null != dapp) {
-                        DAppExecutor.call(thisTransactionKernel, this, dapp, stateToResume, task, ctx, result);
-                        if (TransactionResult.Code.SUCCESS == result.getStatusCode()) {
-                            dapp.cleanForCache();
-                            this.hotCache.checkin(addressWrapper, dapp);
+                        // Run the call and, if successful, check this into the hot DApp cache.
+                        if (null != dapp) {
+                            DAppExecutor.call(thisTransactionKernel, this, dapp, stateToResume, task, ctx, result);
+                            if ((TransactionResult.Code.SUCCESS == result.getStatusCode()) && (isCached || canCacheLoadedDApp(task))) {
+                                dapp.cleanForCache();
+                                checkinToHotCache(addressWrapper, dapp);
+                            }
                         }
                     }
                 }
             }
+
+            shouldKeepWrites = result.getStatusCode().isSuccess();
+        } finally {
+            // (anything escaping here is fatal to the task, but the savepoint still needs to be closed).
+            if (shouldKeepWrites) {
+                thisTransactionKernel.release(savepoint);
+            } else {
+                thisTransactionKernel.rollback(savepoint);
+            }
         }
 
-        if (result.getStatusCode().isSuccess()) {
-            thisTransactionKernel.commit();
-        } else {
+        if (!result.getStatusCode().isSuccess()) {
             result.clearLogs();
             result.rejectInternalTransactions();
         }
@@ -388,13 +523,14 @@ public class AvmImpl implements AvmInternal {
         return result;
     }
 
-    private TransactionResult runGc(KernelInterface parentKernel, byte[] dappAddress, TransactionContext ctx) {
+    private TransactionResult runGc(KernelInterface parentKernel, TransactionTask task, byte[] dappAddress, TransactionContext ctx) {
         RuntimeAssertionError.assertTrue(ctx.isGarbageCollectionRequest());
 
         ByteArrayWrapper addressWrapper = new ByteArrayWrapper(dappAddress);
         IObjectGraphStore graphStore = new KeyValueObjectGraph(parentKernel, dappAddress);
         
         LoadedDApp dapp = this.hotCache.checkout(addressWrapper);
+        boolean isCached = (null != dapp);
         if (null == dapp) {
             // If we didn't find it there, just load it.
             try {
@@ -414,7 +550,9 @@ public class AvmImpl implements AvmInternal {
         if (null != dapp) {
             // Run the GC and check this into the hot DApp cache.
             long instancesFreed = graphStore.gc();
-            this.hotCache.checkin(addressWrapper, dapp);
+            if (isCached || canCacheLoadedDApp(task)) {
+                checkinToHotCache(addressWrapper, dapp);
+            }
             // We want to set this to success and report the energy used as the refund found by the GC.
             // NOTE:  This is the total value of the refund as splitting that between the DApp and node is a higher-level decision.
             long storageEnergyRefund = instancesFreed * InstrumentationBasedStorageFees.DEPOSIT_WRITE_COST;
@@ -437,6 +575,62 @@ public class AvmImpl implements AvmInternal {
         return resourceMonitor;
     }
 
+    /**
+     * Used to observe the conflict scheduling of the most recent batch, along with getResourceMonitor().getConflictCount() for the
+     * conflicts which were actually hit at runtime.
+     *
+     * @return The schedule of the most recent batch passed to run() (null if conflict scheduling is disabled).
+     */
+    public BatchSchedule getLastBatchSchedule() {
+        return this.lastBatchSchedule;
+    }
+
+    private void checkinToHotCache(ByteArrayWrapper addressWrapper, LoadedDApp dapp) {
+        if (this.configuration.enableOptimisticExecution) {
+            // Tasks using the same DApp can run at the same time, each with its own copy, so they can race to check it back in.
+            this.hotCache.checkinIfAbsent(addressWrapper, dapp);
+        } else {
+            this.hotCache.checkin(addressWrapper, dapp);
+        }
+    }
+
+    /**
+     * A DApp loaded from some other kernel passed to run() may not even exist in ours so it can't populate the shared hot cache.
+     * (a DApp it found in the cache is still returned, though, so other kernels do benefit from the cache).
+     */
+    private boolean canCacheLoadedDApp(TransactionTask task) {
+        return (task.getParentKernel() == this.taskParentKernel);
+    }
+
+    private KernelInterface taskParentKernelFor(KernelInterface kernel) {
+        KernelInterface parent = this.taskParentKernel;
+        if (kernel != this.kernel) {
+            // We reuse the last one so that pipelined batches against the same kernel also share its lock, in optimistic mode.
+            if (kernel != this.isolatedKernel) {
+                this.isolatedKernel = kernel;
+                this.isolatedTaskParentKernel = buildTaskParentKernel(kernel);
+            }
+            parent = this.isolatedTaskParentKernel;
+        }
+        return parent;
+    }
+
+    private boolean isQuiescent() {
+        // A lock-stepped batch also waits for the previous results to be consumed (which means it waits for it to finish).
+        HandoffMonitor handoff = this.handoff;
+        return (null == handoff)
+                || handoff.hasFailed()
+                || (this.configuration.enablePipelinedBlocks
+                        ? handoff.isIdle()
+                        : !handoff.hasOutstandingResults());
+    }
+
+    private KernelInterface buildTaskParentKernel(KernelInterface kernel) {
+        return this.configuration.enableOptimisticExecution
+                ? new ReadWriteLockedKernel(kernel)
+                : kernel;
+    }
+
     private void validateCodeCache(long blockNum){
         Predicate<SoftReference<LoadedDApp>> condition = (v) -> null != v.get() && v.get().getLoadedBlockNum() >= blockNum;
         this.hotCache.removeValueIf(condition);
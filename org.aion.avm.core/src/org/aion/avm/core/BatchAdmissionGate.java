@@ -0,0 +1,128 @@
+package org.aion.avm.core;
+
+import java.util.ArrayDeque;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.aion.avm.internal.RuntimeAssertionError;
+
+
+/**
+ * Used by the AvmImpl to let several external threads send batches to the same HandoffMonitor, which only supports one sender at
+ * a time.
+ * A caller enters the gate before sending its batch and exits once it has been sent.  Only one caller can be inside at a time and
+ * it is only let in once the batches already in flight are out of its way:  either the executors are quiescent or, if sharing is
+ * allowed, everything in flight was sent against the same isolation key (the kernel the batch runs on) so it can be pipelined
+ * behind them.  Batches with different keys never overlap, so each runs alone against its own kernel.
+ *
+ * Waiting callers are let in by priority and then in arrival order.
+ */
+class BatchAdmissionGate {
+    private final ReentrantLock lock;
+    // Signalled whenever something which could let a waiting caller in changes.
+    private final Condition stateChanged;
+    // The threads waiting to enter, for each priority (in BatchPriority order).
+    private final ArrayDeque<Thread>[] waiters;
+    // True if the pool has nothing in flight which could get in the way of a new batch.
+    private final BooleanSupplier isQuiescent;
+
+    private boolean isOccupied;
+    // The key of the batches in flight, which a new batch must share to be sent before they are done.
+    private Object inFlightKey;
+    // The thread which most recently entered (only it can make the pool quiescent, in lock-step mode).
+    private Thread lastSender;
+
+    @SuppressWarnings("unchecked")
+    public BatchAdmissionGate(BooleanSupplier isQuiescent) {
+        this.lock = new ReentrantLock();
+        this.stateChanged = this.lock.newCondition();
+        this.waiters = new ArrayDeque[BatchPriority.values().length];
+        for (int i = 0; i < this.waiters.length; ++i) {
+            this.waiters[i] = new ArrayDeque<>();
+        }
+        this.isQuiescent = isQuiescent;
+    }
+
+    /**
+     * Blocks until the calling thread can send a batch.  The caller must call exit() once it has been sent.
+     * Throws IllegalStateException if the caller would be waiting for itself:  it is the one which must consume the results in flight
+     * (lock-step mode) but is now blocked here.
+     *
+     * @param priority The priority of the batch.
+     * @param isolationKey Batches can only be in flight together if they have the same key.
+     * @param canShareInFlight True if the batch can be sent while others with the same key are still in flight.
+     */
+    public void enter(BatchPriority priority, Object isolationKey, boolean canShareInFlight) throws IllegalStateException {
+        Thread caller = Thread.currentThread();
+        ArrayDeque<Thread> queue = this.waiters[priority.ordinal()];
+        this.lock.lock();
+        try {
+            queue.add(caller);
+            boolean didEnter = false;
+            try {
+                while (!canEnter(priority, isolationKey, canShareInFlight)) {
+                    if (!canShareInFlight && (caller == this.lastSender) && !this.isQuiescent.getAsBoolean()) {
+                        throw new IllegalStateException("Previous batch from this thread still has unconsumed results");
+                    }
+                    this.stateChanged.await();
+                }
+                didEnter = true;
+            } catch (InterruptedException e) {
+                // We don't use interruption.
+                RuntimeAssertionError.unexpected(e);
+            } finally {
+                queue.remove(caller);
+                if (!didEnter) {
+                    // Whoever was queued behind us might now be able to go.
+                    this.stateChanged.signalAll();
+                }
+            }
+            if (this.isQuiescent.getAsBoolean()) {
+                this.inFlightKey = isolationKey;
+            }
+            this.isOccupied = true;
+            this.lastSender = caller;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Called by the thread which entered, once it has sent its batch (or given up on sending it).
+     */
+    public void exit() {
+        this.lock.lock();
+        try {
+            RuntimeAssertionError.assertTrue(this.isOccupied);
+            this.isOccupied = false;
+            this.stateChanged.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Called by any thread, after the pool may have become quiescent, to re-check the waiting callers.
+     */
+    public void signalStateChange() {
+        this.lock.lock();
+        try {
+            this.stateChanged.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private boolean canEnter(BatchPriority priority, Object isolationKey, boolean canShareInFlight) {
+        int index = priority.ordinal();
+        // Only the oldest waiter of the highest priority waiting is considered.
+        boolean isNext = (Thread.currentThread() == this.waiters[index].peek());
+        for (int i = 0; isNext && (i < index); ++i) {
+            isNext = this.waiters[i].isEmpty();
+        }
+        return isNext
+                && !this.isOccupied
+                && (this.isQuiescent.getAsBoolean() || (canShareInFlight && (isolationKey == this.inFlightKey)));
+    }
+}
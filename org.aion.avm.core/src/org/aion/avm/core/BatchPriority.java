@@ -0,0 +1,18 @@
+package org.aion.avm.core;
+
+
+/**
+ * The priority of a batch of transactions passed to Avm.run(), when several threads are sending batches to the same Avm.
+ * Waiting batches are admitted highest priority first and, within a priority, in the order they arrived.  Batches already running
+ * are never preempted.
+ */
+public enum BatchPriority {
+    /**
+     * For work which is on the critical path, such as importing blocks.
+     */
+    HIGH,
+    /**
+     * For work which can wait, such as RPC calls or energy estimates.  These only start once no HIGH batch is waiting.
+     */
+    LOW,
+}
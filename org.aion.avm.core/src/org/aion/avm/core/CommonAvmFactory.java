@@ -11,9 +11,13 @@ import org.aion.kernel.KernelInterface;
  */
 public class CommonAvmFactory {
     public static Avm buildAvmInstance(KernelInterface kernelInterface) {
+        return buildAvmInstance(kernelInterface, new AvmConfiguration());
+    }
+
+    public static Avm buildAvmInstance(KernelInterface kernelInterface, AvmConfiguration configuration) {
         // We use the common instrumentation for this case.
         IInstrumentationFactory factory = new CommonInstrumentationFactory();
-        return NodeEnvironment.singleton.buildAvmInstance(factory, kernelInterface);
+        return NodeEnvironment.singleton.buildAvmInstance(factory, kernelInterface, configuration);
     }
 
 
@@ -314,6 +314,10 @@ public class DAppCreator {
         } catch (EarlyAbortException e) {
             result.setStatusCode(TransactionResult.Code.FAILED_ABORT);
             result.setEnergyUsed(0);
+            // The energy isn't charged but we still want to know how much work was thrown away (our frame is still pushed, if we got that far).
+            if (null != dapp) {
+                task.recordAbortedEnergy(ctx.getEnergyLimit() - IInstrumentation.attachedThreadInstrumentation.get().energyLeft());
+            }
 
         } catch (AvmException e) {
             // We handle the generic AvmException as some failure within the contract.
@@ -1,7 +1,6 @@
 package org.aion.avm.core;
 
 import org.aion.avm.core.persistence.ContractEnvironmentState;
-import org.aion.avm.core.persistence.IObjectGraphStore;
 import org.aion.avm.core.persistence.LoadedDApp;
 import org.aion.avm.core.persistence.ReentrantGraphProcessor;
 import org.aion.avm.core.persistence.ReflectionStructureCodec;
@@ -23,7 +22,11 @@ public class DAppExecutor {
                             ReentrantDAppStack.ReentrantState stateToResume, TransactionTask task,
                             TransactionContext ctx, TransactionResult result) {
         byte[] dappAddress = ctx.getAddress();
-        IObjectGraphStore graphStore = new KeyValueObjectGraph(kernel, dappAddress);
+        KeyValueObjectGraph graphStore = new KeyValueObjectGraph(kernel, dappAddress);
+        if (null == stateToResume) {
+            // Only the first invocation loads the DApp from storage (reentrant calls resume its in-memory state).
+            graphStore.prefetchForInitialLoad();
+        }
         // Load the initial state of the environment.
         // (note that ContractEnvironmentState is immutable, so it is safe to just access the environment from a different invocation).
         ContractEnvironmentState initialState = (null != stateToResume)
@@ -122,6 +125,8 @@ public class DAppExecutor {
             }
             result.setStatusCode(TransactionResult.Code.FAILED_ABORT);
             result.setEnergyUsed(0);
+            // The energy isn't charged but we still want to know how much work was thrown away.
+            task.recordAbortedEnergy(ctx.getEnergyLimit() - threadInstrumentation.energyLeft());
 
         } catch (UncaughtException e) {
             if (null != reentrantGraphData) {
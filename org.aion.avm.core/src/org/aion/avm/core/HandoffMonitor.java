@@ -1,155 +1,280 @@
 package org.aion.avm.core;
 
 import org.aion.avm.internal.RuntimeAssertionError;
+import org.aion.kernel.KernelInterface;
 import org.aion.kernel.SimpleFuture;
 import org.aion.kernel.TransactionContext;
 import org.aion.kernel.TransactionResult;
+import org.aion.parallel.BatchSchedule;
 import org.aion.parallel.TransactionTask;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
  * Used by the AvmImpl to manage communication between its internal execution thread and the external calling thread.
- * This just provides monitor-protected blocking input/output variables, exception handling, and a safe way to shutdown.
+ * This just provides a concurrent task queue, per-transaction result futures, exception handling, and a safe way to shutdown.
  * Note that once an instance of this has been shutdown, it can't be started back up.
- * 
- * NOTE:  This currently assumes only one external thread is interacting with it at any given time.  This means that
- * attempting to send transactions from multiple threads or shutdown with one thread while running a transaction on another
- * would result in undefined behaviour.
+ *
+ * There is no monitor shared between the executor threads and the external thread:  tasks are handed out through a concurrent
+ * queue and each result future completes independently, so finishing one transaction only wakes the thread waiting on that
+ * transaction's result.
+ *
+ * By default, batches are lock-stepped:  a new batch can only be sent once every result of the previous one has been consumed.
+ * In pipelined mode, several batches can be in flight at once.  Their tasks share one index space (see restartTaskIndices())
+ * so the AddressResourceMonitor still commits them in submission order, letting executors start on the next batch while the
+ * previous one is draining.
+ *
+ * A batch can be sent with a {@link BatchSchedule}, in which case each task is only queued once the tasks it was scheduled behind
+ * have completed.  Queued tasks are always handed out lowest index first:  this guarantees that the lowest uncommitted task is
+ * always running or next in line, so executors waiting on the commit order can't starve it.
+ *
+ * A task which was aborted to yield to an earlier one is handed back with retryAbortedTask() and is only queued again once that
+ * earlier task completes (since it would otherwise just run into the same conflict), leaving the executor free for other work.
+ *
+ * NOTE:  Only one external thread may send transactions at any given time (AvmImpl serializes concurrent callers through a
+ * BatchAdmissionGate, which it wakes via the quiescence listener).  Shutting down with one thread while running a transaction on
+ * another results in undefined behaviour.
  */
 public class HandoffMonitor {
-    private Set<Thread> internalThreads;
-    //private TransactionContext[] incomingTransactions;
+    private volatile Set<Thread> internalThreads;
+    private final boolean isPipelined;
+    // Called whenever the last task in flight completes or the last result is consumed (or the background fails).
+    private final Runnable quiescenceListener;
 
-    private Queue<TransactionTask> taskQueue;
+    private final TaskQueue taskQueue;
 
-    private TransactionResult[] outgoingResults;
-    private Throwable backgroundThrowable;
-    //private int nextTransactionIndex;
+    // The batches which still have tasks being run, in submission order.
+    private final Queue<Batch> inFlightBatches;
+    // The number of tasks which have been sent but whose result hasn't yet been written.
+    private final AtomicInteger tasksInFlight;
+    // The number of results which the external thread hasn't yet consumed.
+    private final AtomicInteger unconsumedResults;
+    // Aborted tasks waiting to be retried, keyed by the index of the task they yielded to (only accessed under deferralLock).
+    private final Map<Integer, List<TransactionTask>> deferredTasks;
+    private final ReentrantLock deferralLock;
+    // The index of the next task we hand out (only accessed by the sending external thread).
+    private int nextTaskIndex;
+    private volatile Throwable backgroundThrowable;
 
     public HandoffMonitor(Set<Thread> threadSet) {
+        this(threadSet, false);
+    }
+
+    public HandoffMonitor(Set<Thread> threadSet, boolean isPipelined) {
+        this(threadSet, isPipelined, () -> {});
+    }
+
+    public HandoffMonitor(Set<Thread> threadSet, boolean isPipelined, Runnable quiescenceListener) {
         this.internalThreads = threadSet;
-        this.taskQueue = new LinkedList<>();
+        this.isPipelined = isPipelined;
+        this.quiescenceListener = quiescenceListener;
+        this.taskQueue = new TaskQueue();
+        this.inFlightBatches = new ConcurrentLinkedQueue<>();
+        this.tasksInFlight = new AtomicInteger(0);
+        this.unconsumedResults = new AtomicInteger(0);
+        this.deferredTasks = new HashMap<>();
+        this.deferralLock = new ReentrantLock();
+        this.nextTaskIndex = 0;
     }
 
     /**
      * Called by the external thread.
      * Called to send new transactions to the internal thread.
+     *
+     * @param transactions The new transactions to pass in.
+     * @return The result of newTransactions as a corresponding array of asynchronous futures.
+     */
+    public SimpleFuture<TransactionResult>[] sendTransactionsAsynchronously(TransactionContext[] transactions) {
+        return sendTransactionsAsynchronously(transactions, null);
+    }
+
+    /**
+     * Called by the external thread.
+     * Called to send new transactions to the internal thread, holding back each task until those it was scheduled behind complete.
      * 
      * @param transactions The new transactions to pass in.
+     * @param schedule The dependencies between the transactions (null if they can all start immediately).
      * @return The result of newTransactions as a corresponding array of asynchronous futures.
      */
-    public synchronized SimpleFuture<TransactionResult>[] sendTransactionsAsynchronously(TransactionContext[] transactions) {
-        // We lock-step these, so there can't already be a transaction in the hand-off.
-        RuntimeAssertionError.assertTrue(this.taskQueue.isEmpty());
-        RuntimeAssertionError.assertTrue(null == this.outgoingResults);
+    public SimpleFuture<TransactionResult>[] sendTransactionsAsynchronously(TransactionContext[] transactions, BatchSchedule schedule) {
+        return sendTransactionsAsynchronously(transactions, schedule, null);
+    }
+
+    /**
+     * Called by the external thread.
+     * Called to send new transactions to the internal thread, holding back each task until those it was scheduled behind complete.
+     * 
+     * @param transactions The new transactions to pass in.
+     * @param schedule The dependencies between the transactions (null if they can all start immediately).
+     * @param parentKernel The kernel the tasks of this batch are run against and committed into (see TransactionTask.getParentKernel()).
+     * @return The result of newTransactions as a corresponding array of asynchronous futures.
+     */
+    public SimpleFuture<TransactionResult>[] sendTransactionsAsynchronously(TransactionContext[] transactions, BatchSchedule schedule, KernelInterface parentKernel) {
+        // Unless we are pipelined, we lock-step these, so there can't already be a transaction in the hand-off.
+        if (!this.isPipelined) {
+            RuntimeAssertionError.assertTrue(this.taskQueue.isEmpty());
+            RuntimeAssertionError.assertTrue(0 == this.unconsumedResults.get());
+        }
         RuntimeAssertionError.assertTrue(transactions.length > 0);
+        RuntimeAssertionError.assertTrue((null == schedule) || (transactions.length == schedule.size()));
         // Also, we can't have already been shut down.
         if (null == this.internalThreads) {
             throw new IllegalStateException("Thread already stopped");
         }
-        
-        // Set the new transaction and wake up the background thread.
-        for (int i = 0; i < transactions.length; i++){
-            this.taskQueue.add(new TransactionTask(transactions[i], i));
-        }
 
-        this.outgoingResults = new TransactionResult[transactions.length];
-        this.notifyAll();
-        
-        // Return the future result, which will do the waiting for us.
-        ResultWaitFuture[] results = new ResultWaitFuture[transactions.length];
-        for (int i = 0; i < results.length; ++i ) {
-            results[i] = new ResultWaitFuture(i);
+        // Create the futures before publishing any tasks, since the executor threads complete them by index.
+        Batch batch = new Batch(this.nextTaskIndex, transactions, schedule, parentKernel);
+        this.nextTaskIndex += transactions.length;
+        this.unconsumedResults.addAndGet(transactions.length);
+        this.tasksInFlight.addAndGet(transactions.length);
+        this.inFlightBatches.add(batch);
+
+        // If a background thread already failed, nobody may be left to complete these so release any waiters now.
+        // (setBackgroundThrowable() writes the throwable before reading inFlightBatches so one of us will see the other).
+        if (null != this.backgroundThrowable) {
+            abandonAll(batch.results);
         }
-        return results;
-    }
 
-    public synchronized TransactionResult blockingConsumeResult(int index) {
-        // Wait until we have the result or something went wrong.
-        while ((null == this.outgoingResults[index]) && (null == this.backgroundThrowable)) {
-            // Otherwise, wait until state changes.
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                // We don't use interruption.
-                RuntimeAssertionError.unexpected(e);
+        // Hand out the tasks which can start now - this wakes up only as many background threads as there are tasks.
+        for (int i = 0; i < transactions.length; i++){
+            if ((null == schedule) || (0 == schedule.getPredecessorCount(i))) {
+                this.taskQueue.add(batch.tasks[i]);
             }
         }
-        
-        // Throw an exception, if there is one.
-        handleThrowable();
-        
-        // Consume the result and return it.
-        TransactionResult result = this.outgoingResults[index];
-        this.outgoingResults[index] = null;
-        // If this is the last one in the list, drop it.
-        // TODO:  Remove this once we have a more sophisticated handoff mechanism (probably within the parallel executor - we currently
-        // know that we execute the list in-order).
-        if ((index + 1) == this.outgoingResults.length) {
-            this.outgoingResults = null;
-        }
-        return result;
+        return batch.results;
+    }
+
+    /**
+     * Called by the external thread.
+     *
+     * @return True if some batch sent still has results which haven't been consumed.
+     */
+    public boolean hasOutstandingResults() {
+        return (this.unconsumedResults.get() > 0);
+    }
+
+    /**
+     * Called by the external thread.
+     * Note that this can only change from false to true without the external thread's involvement.
+     *
+     * @return True if every task sent has finished running.
+     */
+    public boolean isIdle() {
+        return (0 == this.tasksInFlight.get());
+    }
+
+    /**
+     * Called by any thread.
+     *
+     * @return True if an internal thread has failed, in which case nothing more will complete.
+     */
+    public boolean hasFailed() {
+        return (null != this.backgroundThrowable);
+    }
+
+    /**
+     * Called by the external thread, only when isIdle().
+     * Makes the next batch sent start again from task index 0.  The caller is responsible for resetting anything else which
+     * relies on the task indices (the AddressResourceMonitor's commit order, for example).
+     */
+    public void restartTaskIndices() {
+        RuntimeAssertionError.assertTrue(isIdle());
+        this.nextTaskIndex = 0;
     }
 
     /**
      * Called by the internal thread.
      * The main blocking point for the internal thread.  It passes in the result from the last transaction it just completed
      * and then waits until a new transaction comes in or a shutdown is requested.
-     * 
+     *
      * @param previousResult The result of the previous transaction returned by this call.
      * @return The next transaction to run or null if we should shut down.
      */
-    public synchronized TransactionTask blockingPollForTransaction(TransactionResult previousResult, TransactionTask previousTask) {
+    public TransactionTask blockingPollForTransaction(TransactionResult previousResult, TransactionTask previousTask) {
         // We may have been given these transactions as a list but we hand them out to the caller individually.
-        
-        // First, write-back any results that we have and notify anyone listening for that, on the front.
+
+        // First, write-back any results that we have, which only notifies the thread waiting on this specific result.
         if (null != previousResult) {
-            this.outgoingResults[previousTask.getIndex()] = previousResult;
+            completeTask(previousTask, previousResult);
         }
-        this.notifyAll();
-        
-        // This means that we only actually block when the incoming transactions are null (we make it null when we consume the last element and it becomes non-null when new data enqueued).
-        while ((null != this.internalThreads) && (this.taskQueue.isEmpty())) {
+
+        // We only block when there is nothing in the queue (shutdown is also delivered through the queue, as a null task).
+        return this.taskQueue.take();
+    }
+
+    /**
+     * Called by the internal commit thread.
+     * Publishes the result of a committed task, which only notifies the thread waiting on this specific result.
+     *
+     * @param task The task which was committed.
+     * @param result Its result.
+     */
+    public void completeTransaction(TransactionTask task, TransactionResult result) {
+        completeTask(task, result);
+    }
+
+    /**
+     * Called by the internal thread.
+     * Hands back a task whose last attempt aborted, instead of immediately running it again.  If the abort was caused by an earlier
+     * task which hasn't yet completed, the task is only queued again once that one completes.  Otherwise, it is queued right away.
+     *
+     * @param task The aborted task.
+     */
+    public void retryAbortedTask(TransactionTask task) {
+        int causeIndex = task.getAbortCauseIndex();
+        boolean shouldQueueNow = true;
+        if (causeIndex >= 0) {
+            this.deferralLock.lock();
             try {
-                this.wait();
-            } catch (InterruptedException e) {
-                // We don't use interruption.
-                RuntimeAssertionError.unexpected(e);
+                Batch causeBatch = findBatch(causeIndex);
+                // (if the batch is gone, every task in it has completed).
+                if ((null != causeBatch) && !causeBatch.isComplete[causeIndex - causeBatch.firstIndex]) {
+                    this.deferredTasks.computeIfAbsent(causeIndex, (key) -> new ArrayList<>()).add(task);
+                    shouldQueueNow = false;
+                }
+            } finally {
+                this.deferralLock.unlock();
             }
         }
-        
-        // Unless this was a shutdown request, get the next transaction.
-        TransactionTask nextTask = null;
-        if (null != this.internalThreads) {
-            // Make sure that we don't already have a response for the transaction we want to hand out.
-            RuntimeAssertionError.assertTrue(null == this.outgoingResults[this.taskQueue.peek().getIndex()]);
-
-            nextTask = this.taskQueue.poll();
+        if (shouldQueueNow) {
+            this.taskQueue.add(task);
         }
-        return nextTask;
     }
 
     /**
      * Called by the internal thread.
      * This is called if something goes wrong while running the transaction on the internal thread to communicate this problem to the external.
-     * 
+     *
      * @param throwable The exception (expected to be RuntimeException or Error).
      */
-    public synchronized void setBackgroundThrowable(Throwable throwable) {
-        // This will terminate anything the foreground is doing so notify them.
+    public void setBackgroundThrowable(Throwable throwable) {
+        // This will terminate anything the foreground is doing so release anyone waiting on a result.
         this.backgroundThrowable = throwable;
-        this.notifyAll();
+        for (Batch batch : this.inFlightBatches) {
+            abandonAll(batch.results);
+        }
+        // Nothing more will complete so don't leave anyone waiting for the tasks in flight.
+        this.quiescenceListener.run();
     }
 
     /**
      * Called by the external thread.
      * Requests all the internal executor threads start.
      */
-    public synchronized void startExecutorThreads(){
+    public void startExecutorThreads(){
         for (Thread t: this.internalThreads){
             t.start();
         }
@@ -161,16 +286,12 @@ public class HandoffMonitor {
      */
     public void stopAndWaitForShutdown() {
         // (called by the foreground thread)
-        // Stop the thread and wait for it to join.
-        Set<Thread> backgroundThreads = null;
-        synchronized (this) {
-            backgroundThreads = this.internalThreads;
-            this.internalThreads = null;
-            this.notifyAll();
-        }
-        
+        // Stop the threads (each one is released by exactly one shutdown claim) and wait for them to join.
+        Set<Thread> backgroundThreads = this.internalThreads;
+        this.internalThreads = null;
+        this.taskQueue.shutdown(backgroundThreads.size());
+
         // Join on the thread and throw any exceptions left over.
-        // (note that we can't join under monitor since the thread needs the monitor to exit).
         try {
             for (Thread t : backgroundThreads){
                 t.join();
@@ -187,11 +308,12 @@ public class HandoffMonitor {
      * Called by the external thread.
      */
     private void handleThrowable() {
-        // WARNING:  This is not always called under monitor but this should be safe so long as backgroundThrowable saturates to non-null.
-        if (null != this.backgroundThrowable) {
+        // This is safe to call from any thread since backgroundThrowable is volatile and saturates to non-null.
+        Throwable throwable = this.backgroundThrowable;
+        if (null != throwable) {
             // Only RuntimeExceptions and Errors can actually be handled here.
             try {
-                throw this.backgroundThrowable;
+                throw throwable;
             } catch (RuntimeException e) {
                 throw e;
             } catch (Error e) {
@@ -203,20 +325,241 @@ public class HandoffMonitor {
         }
     }
 
+    private void completeTask(TransactionTask task, TransactionResult result) {
+        int index = task.getIndex();
+        Batch owner = findBatch(index);
+        RuntimeAssertionError.assertTrue(null != owner);
+        int localIndex = index - owner.firstIndex;
+        // Mark this complete (before the batch can be removed) and release anything which was deferred behind it.
+        List<TransactionTask> deferred = null;
+        this.deferralLock.lock();
+        try {
+            owner.isComplete[localIndex] = true;
+            deferred = this.deferredTasks.remove(index);
+        } finally {
+            this.deferralLock.unlock();
+        }
+        if (null != deferred) {
+            for (TransactionTask retry : deferred) {
+                this.taskQueue.add(retry);
+            }
+        }
+        // Release any tasks which were only waiting for this one.
+        if (null != owner.schedule) {
+            for (int dependent : owner.schedule.getDependents(localIndex)) {
+                if (0 == owner.pendingPredecessors.decrementAndGet(dependent)) {
+                    this.taskQueue.add(owner.tasks[dependent]);
+                }
+            }
+        }
+        if (0 == owner.remainingTasks.decrementAndGet()) {
+            this.inFlightBatches.remove(owner);
+        }
+        // We account for the task before publishing its result so that anyone who has seen every result also sees us idle.
+        boolean isNowIdle = (0 == this.tasksInFlight.decrementAndGet());
+        owner.results[localIndex].complete(result);
+        if (isNowIdle) {
+            this.quiescenceListener.run();
+        }
+    }
+
+    private Batch findBatch(int index) {
+        // There are only ever a few batches in flight so we just search them.
+        Batch owner = null;
+        for (Batch batch : this.inFlightBatches) {
+            if ((index >= batch.firstIndex) && (index < (batch.firstIndex + batch.results.length))) {
+                owner = batch;
+                break;
+            }
+        }
+        return owner;
+    }
+
+    private static void abandonAll(ResultWaitFuture[] results) {
+        for (ResultWaitFuture result : results) {
+            result.abandon();
+        }
+    }
+
+
+    private class Batch {
+        public final int firstIndex;
+        public final TransactionTask[] tasks;
+        public final ResultWaitFuture[] results;
+        public final AtomicInteger remainingTasks;
+        // Null if there is no schedule (then all tasks were queued immediately).
+        public final BatchSchedule schedule;
+        public final AtomicIntegerArray pendingPredecessors;
+        // Only accessed under deferralLock.
+        public final boolean[] isComplete;
+
+        public Batch(int firstIndex, TransactionContext[] transactions, BatchSchedule schedule, KernelInterface parentKernel) {
+            int size = transactions.length;
+            this.firstIndex = firstIndex;
+            this.tasks = new TransactionTask[size];
+            this.results = new ResultWaitFuture[size];
+            for (int i = 0; i < size; ++i) {
+                this.tasks[i] = new TransactionTask(transactions[i], firstIndex + i, parentKernel);
+                this.results[i] = new ResultWaitFuture();
+            }
+            this.remainingTasks = new AtomicInteger(size);
+            this.isComplete = new boolean[size];
+            this.schedule = schedule;
+            if (null != schedule) {
+                this.pendingPredecessors = new AtomicIntegerArray(size);
+                for (int i = 0; i < size; ++i) {
+                    this.pendingPredecessors.set(i, schedule.getPredecessorCount(i));
+                }
+            } else {
+                this.pendingPredecessors = null;
+            }
+        }
+    }
+
 
     private class ResultWaitFuture implements SimpleFuture<TransactionResult> {
-        private final int index;
-        // We will cache the result.
+        // Counted down once, either when the result is written or when the background failed.
+        private final CountDownLatch completion;
+        private volatile TransactionResult result;
+        // We will cache the result (this is only read by the external thread).
         private TransactionResult cachedResult;
-        public ResultWaitFuture(int index) {
-            this.index = index;
+
+        public ResultWaitFuture() {
+            this.completion = new CountDownLatch(1);
+        }
+
+        /**
+         * Called by the internal thread.
+         */
+        void complete(TransactionResult result) {
+            this.result = result;
+            this.completion.countDown();
+        }
+
+        void abandon() {
+            this.completion.countDown();
         }
+
         @Override
         public TransactionResult get() {
             if (null == this.cachedResult) {
-                this.cachedResult = HandoffMonitor.this.blockingConsumeResult(this.index);
+                // Wait until we have the result or something went wrong.
+                try {
+                    this.completion.await();
+                } catch (InterruptedException e) {
+                    // We don't use interruption.
+                    RuntimeAssertionError.unexpected(e);
+                }
+
+                // Throw an exception, if there is one.
+                HandoffMonitor.this.handleThrowable();
+
+                // Consume the result.
+                this.cachedResult = this.result;
+                if (0 == HandoffMonitor.this.unconsumedResults.decrementAndGet()) {
+                    HandoffMonitor.this.quiescenceListener.run();
+                }
             }
             return this.cachedResult;
         }
     }
+
+
+    /**
+     * The queue of runnable tasks, lowest index first, which never blocks an add() or take() behind another.
+     * The tasks are kept in a ConcurrentSkipListSet, ordered by index.  Each add() publishes one "claim" on the set:  if an executor is
+     * parked in take(), the claim is granted directly to it (with a CAS on its Waiter), otherwise it is added to the count of unclaimed
+     * tasks.  An executor coming back for its next task can only take an unclaimed one so it can't barge ahead of the executors already
+     * woken for the previous ones (which would find nothing and park again, leaving one thread to drain a batch of short tasks).
+     * Since every claim is published after its task is in the set, a claim always finds a task, although it takes the lowest index
+     * available when it gets there, not necessarily the task which was added with it.
+     */
+    private static class TaskQueue {
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final ConcurrentSkipListSet<TransactionTask> tasks = new ConcurrentSkipListSet<>();
+        private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+        // Claims published while nobody was waiting.
+        private final AtomicInteger unclaimed = new AtomicInteger(0);
+        // Set before shutdown claims are published:  those have no task so they make take() return null.
+        private volatile boolean isShutdown = false;
+
+        public void add(TransactionTask task) {
+            this.tasks.add(task);
+            publishClaim();
+        }
+
+        public boolean isEmpty() {
+            return this.tasks.isEmpty();
+        }
+
+        /**
+         * Releases threadCount executors from take() (only called once idle, so there are no tasks left for them to find).
+         */
+        public void shutdown(int threadCount) {
+            this.isShutdown = true;
+            for (int i = 0; i < threadCount; ++i) {
+                publishClaim();
+            }
+        }
+
+        /**
+         * @return The lowest task in the queue, or null if we were shut down.
+         */
+        public TransactionTask take() {
+            if (!tryClaimUnclaimed()) {
+                Waiter waiter = new Waiter(Thread.currentThread());
+                this.waiters.add(waiter);
+                // Check again, since a claim may have been published before we were visible as a waiter.
+                if (tryClaimUnclaimed() && !waiter.state.compareAndSet(WAITING, CANCELLED)) {
+                    // We were also granted a claim so give one of the 2 back.
+                    publishClaim();
+                }
+                while (WAITING == waiter.state.get()) {
+                    LockSupport.park(this);
+                }
+            }
+            TransactionTask task = this.tasks.pollFirst();
+            RuntimeAssertionError.assertTrue((null != task) || this.isShutdown);
+            return task;
+        }
+
+        private void publishClaim() {
+            boolean isGranted = false;
+            Waiter waiter = this.waiters.poll();
+            while (!isGranted && (null != waiter)) {
+                // (the waiter may have cancelled since it found an unclaimed task, instead).
+                isGranted = waiter.state.compareAndSet(WAITING, GRANTED);
+                if (isGranted) {
+                    LockSupport.unpark(waiter.thread);
+                } else {
+                    waiter = this.waiters.poll();
+                }
+            }
+            if (!isGranted) {
+                this.unclaimed.incrementAndGet();
+            }
+        }
+
+        private boolean tryClaimUnclaimed() {
+            int count = this.unclaimed.get();
+            while ((count > 0) && !this.unclaimed.compareAndSet(count, count - 1)) {
+                count = this.unclaimed.get();
+            }
+            return (count > 0);
+        }
+    }
+
+
+    private static class Waiter {
+        public final Thread thread;
+        public final AtomicInteger state;
+
+        public Waiter(Thread thread) {
+            this.thread = thread;
+            this.state = new AtomicInteger(TaskQueue.WAITING);
+        }
+    }
 }
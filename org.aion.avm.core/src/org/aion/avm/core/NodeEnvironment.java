@@ -254,7 +254,11 @@ public class NodeEnvironment {
      * @return The long-lived AVM instance.
      */
     public Avm buildAvmInstance(IInstrumentationFactory instrumentationFactory, KernelInterface kernel) {
-        AvmImpl avm = new AvmImpl(instrumentationFactory, kernel);
+        return buildAvmInstance(instrumentationFactory, kernel, new AvmConfiguration());
+    }
+
+    public Avm buildAvmInstance(IInstrumentationFactory instrumentationFactory, KernelInterface kernel, AvmConfiguration configuration) {
+        AvmImpl avm = new AvmImpl(instrumentationFactory, kernel, configuration);
         avm.startup();
         return avm;
     }
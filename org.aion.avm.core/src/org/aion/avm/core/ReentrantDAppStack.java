@@ -53,6 +53,13 @@ public class ReentrantDAppStack {
         return foundState;
     }
 
+    /**
+     * @return True if there are no states on the stack.
+     */
+    public boolean isEmpty() {
+        return this.stack.isEmpty();
+    }
+
     /**
      * Pops the top state off the stack and returns it.  Returns null if the stack is empty.
      * Note that this has the side-effect of making the instance loader which is newly on top "active".
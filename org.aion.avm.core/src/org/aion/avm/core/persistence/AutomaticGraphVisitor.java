@@ -15,8 +15,10 @@ import org.objectweb.asm.tree.analysis.Frame;
  * This visitor is responsible for reshaping the contract code such that our "automatic graph" persistence design can be applied.
  * Specifically, this means the following transformations:
  * 1)  Add a special constructor, which cannot already be present, just calling its superclass counterpart.
- * 2)  Remove "final" from all fields (at least instance fields - we may be able to treat static fields differently).
- * 3)  Prepend all PUTFIELD/GETFIELD instructions with a call to "lazyLoad()" on the receiver object (unless "this" in a constructor).
+ * 2)  Remove "final" from all fields (at least instance fields - we may be able to treat static fields differently) and "private", so the
+ *     generated field codecs (see FieldCodecGenerator) can access them.
+ * 3)  Prepend all PUTFIELD/GETFIELD instructions with a call to "lazyLoad()" on the receiver object (unless "this" in a constructor).  For
+ *     PUTFIELD, this is "lazyLoadForWrite()", which also marks the receiver dirty.
  * 
  * Note that this transformation doesn't depend on the persistence model being applied.  So long as "lazyLoad()" is a safe no-op,
  * there is no harm in enabling this without the corresponding persistence logic.
@@ -52,7 +54,9 @@ public class AutomaticGraphVisitor extends ClassToolchain.ToolChainClassVisitor
     public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
         // Filter out the "final" from all fields.
         // (note that we may way to skip this, for statics, and exclude them from the serialization system).
-        int newAccess = (~Opcodes.ACC_FINAL) & access; 
+        // We also filter out "private" so that the field codec generated for this class, in the same package, can read and write them
+        // (nothing else can observe the difference since the DApp can't use reflection).
+        int newAccess = (~(Opcodes.ACC_FINAL | Opcodes.ACC_PRIVATE)) & access; 
         return super.visitField(newAccess, name, descriptor, signature, value);
     }
 
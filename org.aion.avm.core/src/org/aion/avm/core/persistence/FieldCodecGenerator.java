@@ -0,0 +1,317 @@
+package org.aion.avm.core.persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.aion.avm.internal.RuntimeAssertionError;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+
+/**
+ * Generates, for a single class, the code which serializes and deserializes its declared instance (or static) fields by reading and
+ * writing them directly, in exactly the order and format ReflectionStructureCodec uses, so the codec doesn't need to go through
+ * reflection (and a chain of type checks) for every field of every object it loads or stores.
+ *
+ * The generated class is defined in the package, and class loader, of the class it handles, so it can only be generated when every
+ * field it touches is accessible from that package (the AutomaticGraphVisitor removes "private" from DApp fields for this reason).
+ * When that isn't the case (or the class can't be extended this way, at all), no codec is generated and the caller must fall back to
+ * reflection.
+ * Since a class can only be defined once in a class loader, the codecs are generated once per class, no matter how many codecs (or
+ * ReflectedFieldCache instances) use them.
+ */
+public class FieldCodecGenerator implements Opcodes {
+    private static final String SUFFIX_INSTANCE = "$avm_InstanceFieldCodec";
+    private static final String SUFFIX_STATIC = "$avm_StaticFieldCodec";
+
+    private static final String SHADOW_OBJECT = Type.getInternalName(org.aion.avm.shadow.java.lang.Object.class);
+    private static final String CODEC = Type.getInternalName(ReflectionStructureCodec.class);
+    private static final String ENCODER = Type.getInternalName(SerializedRepresentationCodec.Encoder.class);
+    private static final String DECODER = Type.getInternalName(SerializedRepresentationCodec.Decoder.class);
+    private static final String SERIALIZE_DESCRIPTOR = "(L" + SHADOW_OBJECT + ";L" + ENCODER + ";L" + CODEC + ";" + Type.getDescriptor(Consumer.class) + ")V";
+    private static final String DESERIALIZE_DESCRIPTOR = "(L" + SHADOW_OBJECT + ";L" + DECODER + ";L" + CODEC + ";)V";
+
+    // The instance and static codecs (either of which may be null) of each class.
+    private static final ClassValue<IFieldCodec[]> CODECS = new ClassValue<>() {
+        @Override
+        protected IFieldCodec[] computeValue(Class<?> clazz) {
+            // (serialized so that racing threads can't both try to define the same class:  the loser would see it as a clashing name).
+            synchronized (FieldCodecGenerator.class) {
+                // Note that getDeclaredFields() returns the fields in the same order as the ReflectedFieldCache sees them.
+                Field[] declaredFields = clazz.getDeclaredFields();
+                return new IFieldCodec[] { generate(clazz, declaredFields, false), generate(clazz, declaredFields, true) };
+            }
+        }
+    };
+
+    /**
+     * Returns the codec for the fields of the given class, generating and loading it on first use.
+     *
+     * @param clazz The class whose fields are to be handled.
+     * @param isStatic True if the codec is for the static fields, false if it is for the instance fields.
+     * @return The codec or null, if one can't be generated for this class.
+     */
+    public static IFieldCodec getCodec(Class<?> clazz, boolean isStatic) {
+        return CODECS.get(clazz)[isStatic ? 1 : 0];
+    }
+
+    private static IFieldCodec generate(Class<?> clazz, Field[] declaredFields, boolean isStatic) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : declaredFields) {
+            if (isStatic == Modifier.isStatic(field.getModifiers())) {
+                fields.add(field);
+            }
+        }
+        IFieldCodec codec = null;
+        if (canGenerate(clazz, fields)) {
+            String codecName = Type.getInternalName(clazz) + (isStatic ? SUFFIX_STATIC : SUFFIX_INSTANCE);
+            byte[] bytecode = generateBytecode(codecName, Type.getInternalName(clazz), fields, isStatic);
+            Class<?> codecClass = defineCodecClass(clazz, bytecode);
+            if (null != codecClass) {
+                try {
+                    codec = (IFieldCodec) codecClass.getConstructor().newInstance();
+                } catch (ReflectiveOperationException e) {
+                    // We generate the public constructor so this can't happen.
+                    throw RuntimeAssertionError.unexpected(e);
+                }
+            }
+        }
+        return codec;
+    }
+
+    private static Class<?> defineCodecClass(Class<?> clazz, byte[] bytecode) {
+        Class<?> codecClass;
+        try {
+            codecClass = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup()).defineClass(bytecode);
+        } catch (IllegalAccessException e) {
+            // The class is in a module which isn't open to us so it is handled with reflection.
+            codecClass = null;
+        } catch (LinkageError e) {
+            // A plain LinkageError means a class with this name already exists in that loader (we didn't generate it) so the class is
+            // handled with reflection.
+            // Any more specific one (VerifyError or ClassFormatError, for example) means that we generated bad code, which must not be hidden.
+            if (LinkageError.class != e.getClass()) {
+                throw e;
+            }
+            codecClass = null;
+        }
+        return codecClass;
+    }
+
+    private static boolean canGenerate(Class<?> clazz, List<Field> fields) {
+        ClassLoader loader = clazz.getClassLoader();
+        // We can't define classes in the bootstrap loader and interfaces can only write their fields in their own initializer.
+        boolean canGenerate = (null != loader)
+                && !clazz.isInterface()
+                && resolvesTo(loader, clazz)
+                && resolvesTo(loader, IFieldCodec.class)
+                && resolvesTo(loader, org.aion.avm.shadow.java.lang.Object.class)
+                && resolvesTo(loader, ReflectionStructureCodec.class);
+        for (int i = 0; canGenerate && (i < fields.size()); ++i) {
+            Field field = fields.get(i);
+            Class<?> type = field.getType();
+            int modifiers = field.getModifiers();
+            canGenerate = !Modifier.isPrivate(modifiers)
+                    && !Modifier.isFinal(modifiers)
+                    && (type.isPrimitive() || isAccessibleReferenceType(clazz, type));
+        }
+        return canGenerate;
+    }
+
+    private static boolean isAccessibleReferenceType(Class<?> clazz, Class<?> type) {
+        // The generated code casts to this type so it must be visible, by name, from the class loader and accessible from the package.
+        boolean isSamePackage = (clazz.getClassLoader() == type.getClassLoader()) && clazz.getPackageName().equals(type.getPackageName());
+        return !type.isArray()
+                && (isSamePackage || Modifier.isPublic(type.getModifiers()))
+                && resolvesTo(clazz.getClassLoader(), type);
+    }
+
+    private static boolean resolvesTo(ClassLoader loader, Class<?> expected) {
+        boolean resolves;
+        try {
+            resolves = (expected == Class.forName(expected.getName(), false, loader));
+        } catch (ClassNotFoundException | LinkageError e) {
+            resolves = false;
+        }
+        return resolves;
+    }
+
+    /**
+     * Generates the bytecode of a codec class for the given fields (which must all be accessible from the package of the class).
+     *
+     * @param codecName The internal name of the class to generate.
+     * @param ownerName The internal name of the class declaring the fields.
+     * @param fields The fields, in the order they are serialized.
+     * @param isStatic True if these are static fields.
+     * @return The class file.
+     */
+    static byte[] generateBytecode(String codecName, String ownerName, List<Field> fields, boolean isStatic) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(V10, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, codecName, null, "java/lang/Object", new String[] { Type.getInternalName(IFieldCodec.class) });
+
+        MethodVisitor constructor = classWriter.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        generateSerialize(classWriter, ownerName, fields, isStatic);
+        generateDeserialize(classWriter, ownerName, fields, isStatic);
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private static void generateSerialize(ClassWriter classWriter, String ownerName, List<Field> fields, boolean isStatic) {
+        // Locals:  0 this, 1 object, 2 encoder, 3 codec, 4 nextObjectQueue, 5 object (cast to the owner).
+        MethodVisitor method = classWriter.visitMethod(ACC_PUBLIC, "serialize", SERIALIZE_DESCRIPTOR, null, null);
+        method.visitCode();
+        if (!isStatic) {
+            method.visitVarInsn(ALOAD, 1);
+            method.visitTypeInsn(CHECKCAST, ownerName);
+            method.visitVarInsn(ASTORE, 5);
+        }
+        for (Field field : fields) {
+            Class<?> type = field.getType();
+            if (type.isPrimitive()) {
+                method.visitVarInsn(ALOAD, 2);
+                loadField(method, ownerName, field, isStatic);
+                // (this matches the type dispatch in ReflectionStructureCodec.safeSerializeOneClass()).
+                if ((boolean.class == type) || (byte.class == type)) {
+                    // (a boolean is already the 0 or 1 we write).
+                    method.visitMethodInsn(INVOKEVIRTUAL, ENCODER, "encodeByte", "(B)L" + ENCODER + ";", false);
+                } else if (short.class == type) {
+                    method.visitMethodInsn(INVOKEVIRTUAL, ENCODER, "encodeShort", "(S)L" + ENCODER + ";", false);
+                } else if (char.class == type) {
+                    method.visitMethodInsn(INVOKEVIRTUAL, ENCODER, "encodeChar", "(C)L" + ENCODER + ";", false);
+                } else if (int.class == type) {
+                    method.visitMethodInsn(INVOKEVIRTUAL, ENCODER, "encodeInt", "(I)L" + ENCODER + ";", false);
+                } else if (float.class == type) {
+                    method.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "floatToIntBits", "(F)I", false);
+                    method.visitMethodInsn(INVOKEVIRTUAL, ENCODER, "encodeInt", "(I)L" + ENCODER + ";", false);
+                } else if (long.class == type) {
+                    method.visitMethodInsn(INVOKEVIRTUAL, ENCODER, "encodeLong", "(J)L" + ENCODER + ";", false);
+                } else {
+                    method.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", false);
+                    method.visitMethodInsn(INVOKEVIRTUAL, ENCODER, "encodeLong", "(J)L" + ENCODER + ";", false);
+                }
+                method.visitInsn(POP);
+            } else {
+                method.visitVarInsn(ALOAD, 3);
+                method.visitVarInsn(ALOAD, 2);
+                loadField(method, ownerName, field, isStatic);
+                if (!org.aion.avm.shadow.java.lang.Object.class.isAssignableFrom(type)) {
+                    // (interface types, for example, are still always shadow objects).
+                    method.visitTypeInsn(CHECKCAST, SHADOW_OBJECT);
+                }
+                method.visitVarInsn(ALOAD, 4);
+                method.visitMethodInsn(INVOKEVIRTUAL, CODEC, "encodeAsStub", "(L" + ENCODER + ";L" + SHADOW_OBJECT + ";" + Type.getDescriptor(Consumer.class) + ")V", false);
+            }
+        }
+        method.visitInsn(RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    private static void generateDeserialize(ClassWriter classWriter, String ownerName, List<Field> fields, boolean isStatic) {
+        // Locals:  0 this, 1 object, 2 decoder, 3 codec, 4 object (cast to the owner).
+        MethodVisitor method = classWriter.visitMethod(ACC_PUBLIC, "deserialize", DESERIALIZE_DESCRIPTOR, null, null);
+        method.visitCode();
+        if (!isStatic) {
+            method.visitVarInsn(ALOAD, 1);
+            method.visitTypeInsn(CHECKCAST, ownerName);
+            method.visitVarInsn(ASTORE, 4);
+        }
+        for (Field field : fields) {
+            Class<?> type = field.getType();
+            if (!isStatic) {
+                method.visitVarInsn(ALOAD, 4);
+            }
+            if (type.isPrimitive()) {
+                method.visitVarInsn(ALOAD, 2);
+                // (this matches the type dispatch in ReflectionStructureCodec.safeDeserializeOneClass()).
+                if (boolean.class == type) {
+                    // We want (0x1 == byte) without a branch (which would need stack map frames):  ((((byte ^ 1) & 0xff) - 1) >>> 31).
+                    method.visitMethodInsn(INVOKEVIRTUAL, DECODER, "decodeByte", "()B", false);
+                    method.visitInsn(ICONST_1);
+                    method.visitInsn(IXOR);
+                    method.visitIntInsn(SIPUSH, 0xff);
+                    method.visitInsn(IAND);
+                    method.visitInsn(ICONST_1);
+                    method.visitInsn(ISUB);
+                    method.visitIntInsn(BIPUSH, 31);
+                    method.visitInsn(IUSHR);
+                } else if (byte.class == type) {
+                    method.visitMethodInsn(INVOKEVIRTUAL, DECODER, "decodeByte", "()B", false);
+                } else if (short.class == type) {
+                    method.visitMethodInsn(INVOKEVIRTUAL, DECODER, "decodeShort", "()S", false);
+                } else if (char.class == type) {
+                    method.visitMethodInsn(INVOKEVIRTUAL, DECODER, "decodeChar", "()C", false);
+                } else if (int.class == type) {
+                    method.visitMethodInsn(INVOKEVIRTUAL, DECODER, "decodeInt", "()I", false);
+                } else if (float.class == type) {
+                    method.visitMethodInsn(INVOKEVIRTUAL, DECODER, "decodeInt", "()I", false);
+                    method.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F", false);
+                } else if (long.class == type) {
+                    method.visitMethodInsn(INVOKEVIRTUAL, DECODER, "decodeLong", "()J", false);
+                } else {
+                    method.visitMethodInsn(INVOKEVIRTUAL, DECODER, "decodeLong", "()J", false);
+                    method.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false);
+                }
+            } else {
+                method.visitVarInsn(ALOAD, 3);
+                method.visitVarInsn(ALOAD, 2);
+                method.visitMethodInsn(INVOKEVIRTUAL, DECODER, "decodeReference", "()" + Type.getDescriptor(INode.class), false);
+                method.visitMethodInsn(INVOKEVIRTUAL, CODEC, "decodeStub", "(" + Type.getDescriptor(INode.class) + ")L" + SHADOW_OBJECT + ";", false);
+                if (org.aion.avm.shadow.java.lang.Object.class != type) {
+                    method.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+                }
+            }
+            method.visitFieldInsn(isStatic ? PUTSTATIC : PUTFIELD, ownerName, field.getName(), Type.getDescriptor(type));
+        }
+        method.visitInsn(RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    private static void loadField(MethodVisitor method, String ownerName, Field field, boolean isStatic) {
+        if (isStatic) {
+            method.visitFieldInsn(GETSTATIC, ownerName, field.getName(), Type.getDescriptor(field.getType()));
+        } else {
+            method.visitVarInsn(ALOAD, 5);
+            method.visitFieldInsn(GETFIELD, ownerName, field.getName(), Type.getDescriptor(field.getType()));
+        }
+    }
+
+
+    /**
+     * The interface implemented by the generated codecs.  Note that it must be public, since it is implemented in other packages.
+     */
+    public static interface IFieldCodec {
+        /**
+         * Writes the fields, exactly as ReflectionStructureCodec.safeSerializeOneClass() would.
+         *
+         * @param object The instance (null, for static fields).
+         * @param encoder The encoder to write to.
+         * @param codec The codec to use for references.
+         * @param nextObjectQueue Where referenced objects to be serialized are enqueued.
+         */
+        void serialize(org.aion.avm.shadow.java.lang.Object object, SerializedRepresentationCodec.Encoder encoder, ReflectionStructureCodec codec, Consumer<org.aion.avm.shadow.java.lang.Object> nextObjectQueue);
+
+        /**
+         * Reads the fields, exactly as ReflectionStructureCodec.safeDeserializeOneClass() would with a StandardFieldPopulator.
+         *
+         * @param object The instance (null, for static fields).
+         * @param decoder The decoder to read from.
+         * @param codec The codec to use for references.
+         */
+        void deserialize(org.aion.avm.shadow.java.lang.Object object, SerializedRepresentationCodec.Decoder decoder, ReflectionStructureCodec codec);
+    }
+}
@@ -11,6 +11,8 @@ import org.objectweb.asm.Opcodes;
 
 /**
  * Walks the method code, replace prepending a call to "lazyLoad()" on any GETFIELD/PUTFIELD bytecodes.
+ * For PUTFIELD, the call is to "lazyLoadForWrite()", instead, which is our write barrier:  it also marks the receiver as dirty so that only
+ * the loaded instances which were actually written need to be serialized and compared when the DApp's graph is saved.
  * Note that there are special-cases:
  * -"&lt;clinit&gt;" - no re-writing is done here since nothing visible at this point could be a stub (this
  *  visitor isn't created in those cases).
@@ -23,6 +25,7 @@ import org.objectweb.asm.Opcodes;
 public class LazyLoadingMethodVisitor extends MethodVisitor {
     private static final String SHADOW_OBJECT_NAME = Helpers.fulllyQualifiedNameToInternalName(org.aion.avm.shadow.java.lang.Object.class.getName());
     private static final String LAZY_LOAD_NAME = "lazyLoad";
+    private static final String LAZY_LOAD_FOR_WRITE_NAME = "lazyLoadForWrite";
     private static final String LAZY_LOAD_DESCRIPTOR = "()V";
 
     private final StackThisTracker tracker;
@@ -147,7 +150,7 @@ public class LazyLoadingMethodVisitor extends MethodVisitor {
      * @param descriptor The type descriptor of the field to which the opcode is applied.
      */
     private void checkInjectLazyLoad(int opcode, String descriptor) {
-        // If this is a PUTFIELD or GETFIELD, we want to call "lazyLoad()":
+        // If this is a PUTFIELD or GETFIELD, we want to call "lazyLoadForWrite()" or "lazyLoad()", respectively:
         // -PUTIFELD:  DUP2, POP, INVOKEVIRTUAL
         // -GETIFELD:  DUP, INVOKEVIRTUAL
         if ((Opcodes.PUTFIELD == opcode) && ((null == this.tracker) || !this.tracker.isThisTargetOfPut(this.frameOffset))) {
@@ -163,7 +166,7 @@ public class LazyLoadingMethodVisitor extends MethodVisitor {
                 // DUP: ... VAR1, VAR2, OBJECT, OBJECT (top)
                 super.visitInsn(Opcodes.DUP);
                 // INOKE: ... VAR1, VAR2, OBJECT (top)
-                super.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHADOW_OBJECT_NAME, LAZY_LOAD_NAME, LAZY_LOAD_DESCRIPTOR, false);
+                super.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHADOW_OBJECT_NAME, LAZY_LOAD_FOR_WRITE_NAME, LAZY_LOAD_DESCRIPTOR, false);
                 // DUP_X2: ... OBJECT, VAR1, VAR2, OBJECT (top)
                 super.visitInsn(Opcodes.DUP_X2);
                 // POP: ... OBJECT, VAR1, VAR2 (top)
@@ -177,7 +180,7 @@ public class LazyLoadingMethodVisitor extends MethodVisitor {
                 // POP: ... OBJECT, VAR, OBJECT (top)
                 super.visitInsn(Opcodes.POP);
                 // INOKE: ... OBJECT, VAR (top)
-                super.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHADOW_OBJECT_NAME, LAZY_LOAD_NAME, LAZY_LOAD_DESCRIPTOR, false);
+                super.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHADOW_OBJECT_NAME, LAZY_LOAD_FOR_WRITE_NAME, LAZY_LOAD_DESCRIPTOR, false);
             }
         } else if ((Opcodes.GETFIELD == opcode) && ((null == this.tracker) || !this.tracker.isThisTargetOfGet(this.frameOffset))) {
             // Here, the stack looks like: ... OBJECT, (top)
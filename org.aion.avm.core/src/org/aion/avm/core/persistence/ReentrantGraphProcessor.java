@@ -333,6 +333,8 @@ public class ReentrantGraphProcessor implements LoopbackCodec.AutomaticSerialize
         if (null != callerSpaceCounterpart) {
             // Deserialize into the caller-space object.
             callerSpaceCounterpart.deserializeSelf(null, loopback);
+            // This write bypasses the write barrier so explicitly mark it dirty (otherwise, the caller may assume it is unchanged when saving).
+            callerSpaceCounterpart.markDirty();
         } else {
             // This means that the callee object is being stitched into the caller graph as a new object.
             // We want need to update any object references which may point back at older caller objects.
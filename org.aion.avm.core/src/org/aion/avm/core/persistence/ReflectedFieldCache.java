@@ -4,13 +4,30 @@ import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.aion.avm.arraywrapper.Array;
+import org.aion.avm.internal.PackageConstants;
+
 
 /**
  * A wrapper over the map that holds the cache of declared fields, per class.
  * Note that this cache is lazily populated by back-ending on the real reflection support.
+ * It is also where the codec generated for each class (see FieldCodecGenerator) is found, unless that is disabled.
  */
 public class ReflectedFieldCache {
     private final Map<Class<?>, Field[]> fieldCache = new HashMap<>();
+    private final Map<Class<?>, Boolean> writeTrackingCache = new HashMap<>();
+    private final boolean shouldGenerateCodecs;
+
+    public ReflectedFieldCache() {
+        this(true);
+    }
+
+    /**
+     * @param shouldGenerateCodecs False if every class should be handled with reflection (mostly useful for comparing the two).
+     */
+    public ReflectedFieldCache(boolean shouldGenerateCodecs) {
+        this.shouldGenerateCodecs = shouldGenerateCodecs;
+    }
 
     public Field[] getDeclaredFieldsForClass(Class<?> clazz) {
         Field[] fields = this.fieldCache.get(clazz);
@@ -24,4 +41,40 @@ public class ReflectedFieldCache {
         }
         return fields;
     }
+
+    /**
+     * @param clazz The class whose declared fields are to be serialized.
+     * @param isStatic True for the static fields, false for the instance fields.
+     * @return The generated codec for these fields or null, if they must be handled with reflection.
+     */
+    public FieldCodecGenerator.IFieldCodec getCodecForClass(Class<?> clazz, boolean isStatic) {
+        return this.shouldGenerateCodecs
+                ? FieldCodecGenerator.getCodec(clazz, isStatic)
+                : null;
+    }
+
+    /**
+     * Determines whether every write to instances of the given class goes through the write barrier (see the shadow Object's "lazyLoadForWrite()").
+     * This is true for the array wrappers and for user classes whose entire hierarchy, below the shadow Object, is user code (since those are
+     * the classes where we injected the barrier).  Anything which inherits state from the shadow JCL can be modified by code we didn't
+     * instrument, so it can never be assumed to be clean.
+     * 
+     * @param clazz The class of an instance.
+     * @return True if an instance of this class which isn't dirty has not been written since it was loaded.
+     */
+    public boolean areWritesTracked(Class<?> clazz) {
+        Boolean isTracked = this.writeTrackingCache.get(clazz);
+        if (null == isTracked) {
+            boolean tracked = Array.class.isAssignableFrom(clazz);
+            if (!tracked) {
+                tracked = true;
+                for (Class<?> next = clazz; org.aion.avm.shadow.java.lang.Object.class != next; next = next.getSuperclass()) {
+                    tracked &= next.getName().startsWith(PackageConstants.kUserDotPrefix);
+                }
+            }
+            isTracked = tracked;
+            this.writeTrackingCache.put(clazz, isTracked);
+        }
+        return isTracked;
+    }
 }
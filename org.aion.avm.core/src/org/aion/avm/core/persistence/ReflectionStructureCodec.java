@@ -26,7 +26,9 @@ import org.aion.avm.internal.RuntimeAssertionError;
  * 
  * Note that the "automatic" entry-points for both serialization and deserialization are also here (see issue-132 for more details on that).
  * 
- * TODO:  Test the benefit of caching the reflected field access instances for user-defined classes (there is a great deal of re-use).
+ * Where the fieldCache can provide a generated codec for a class (see FieldCodecGenerator), its fields are read and written directly by that
+ * codec, instead of through reflection.  Since the generated deserializers write the fields directly, they are only used with the
+ * StandardFieldPopulator.
  */
 public class ReflectionStructureCodec implements SingleInstanceDeserializer.IAutomatic, SingleInstanceSerializer.IAutomatic, ISuspendableInstanceLoader {
     private static IDeserializer DONE_MARKER = new GraphWalkingMarker();
@@ -36,6 +38,8 @@ public class ReflectionStructureCodec implements SingleInstanceDeserializer.IAut
     private final IFieldPopulator populator;
     private final IStorageFeeProcessor feeProcessor;
     private final IObjectGraphStore graphStore;
+    // True if the populator just sets the fields, so the generated codecs can do that, instead.
+    private final boolean canDeserializeWithGeneratedCodecs;
     // We only hold the deserializerField because we need to check if it is null when traversing the graph for objects to serialize.
     private final Field deserializerField;
     private final Field persistenceTokenField;
@@ -51,12 +55,15 @@ public class ReflectionStructureCodec implements SingleInstanceDeserializer.IAut
 
     // We allow the external LoadedDApp to save the state of pre-call statics in this instance (since it can't have state associated with a single invocation).
     private SerializedRepresentation preCallStaticData;
+    // The encoder internalSerializeInstance() reuses for each instance, so that its buffers are only allocated once per graph (null while in use).
+    private SerializedRepresentationCodec.Encoder reusableEncoder;
 
     public ReflectionStructureCodec(ReflectedFieldCache fieldCache, IFieldPopulator populator, IStorageFeeProcessor feeProcessor, IObjectGraphStore graphStore) {
         this.fieldCache = fieldCache;
         this.populator = populator;
         this.feeProcessor = feeProcessor;
         this.graphStore = graphStore;
+        this.canDeserializeWithGeneratedCodecs = (null != populator) && (StandardFieldPopulator.class == populator.getClass());
         try {
             this.deserializerField = org.aion.avm.shadow.java.lang.Object.class.getDeclaredField("deserializer");
             this.deserializerField.setAccessible(true);
@@ -126,6 +133,12 @@ public class ReflectionStructureCodec implements SingleInstanceDeserializer.IAut
 
     private void safeSerializeOneClass(SerializedRepresentationCodec.Encoder encoder, Class<?> clazz, org.aion.avm.shadow.java.lang.Object object, Consumer<org.aion.avm.shadow.java.lang.Object> nextObjectQueue) throws IllegalArgumentException, IllegalAccessException {
         // Note that we serialize objects and classes the same way, just looking for instance versus static fields.
+        FieldCodecGenerator.IFieldCodec generatedCodec = this.fieldCache.getCodecForClass(clazz, null == object);
+        if (null != generatedCodec) {
+            // The generated codec does exactly what the reflective loop, below, would do.
+            generatedCodec.serialize(object, encoder, this, nextObjectQueue);
+            return;
+        }
         int expectedModifier = (null == object)
                 ? Modifier.STATIC
                 : 0x0;
@@ -215,6 +228,14 @@ public class ReflectionStructureCodec implements SingleInstanceDeserializer.IAut
 
     private void safeDeserializeOneClass(SerializedRepresentationCodec.Decoder decoder, Class<?> clazz, org.aion.avm.shadow.java.lang.Object object) {
         // Note that we deserialize objects and classes the same way, just looking for instance versus static fields.
+        FieldCodecGenerator.IFieldCodec generatedCodec = this.canDeserializeWithGeneratedCodecs
+                ? this.fieldCache.getCodecForClass(clazz, null == object)
+                : null;
+        if (null != generatedCodec) {
+            // The generated codec does exactly what the reflective loop, below, would do.
+            generatedCodec.deserialize(object, decoder, this);
+            return;
+        }
         int expectedModifier = (null == object)
                 ? Modifier.STATIC
                 : 0x0;
@@ -261,9 +282,6 @@ public class ReflectionStructureCodec implements SingleInstanceDeserializer.IAut
     public void serializeInstance(org.aion.avm.shadow.java.lang.Object instance, Consumer<org.aion.avm.shadow.java.lang.Object> nextObjectSink) {
         NodePersistenceToken persistenceToken = (NodePersistenceToken) safeExtractPersistenceToken(instance);
         
-        // We need to serialize this instance to an extent to either save it out or realize it didn't change.
-        SerializedRepresentation extent = internalSerializeInstance(instance, nextObjectSink);
-        
         // NOTE:  Writing to storage, inline with the fee calculation, assumes that it is possible to rollback changes to the storage if
         // we run out of energy, part-way.
         // Determine if this is a new instance or an update.
@@ -271,10 +289,14 @@ public class ReflectionStructureCodec implements SingleInstanceDeserializer.IAut
         // in this frame, but was billed in the callee frame, we will probably misinterpret it as a new instance, again.
         if (persistenceToken.isNewlyWritten) {
             // If this is new, we always want to write it.
+            SerializedRepresentation extent = internalSerializeInstance(instance, nextObjectSink);
             persistenceToken.node.saveRegularData(extent);
             this.feeProcessor.writeFirstOneInstanceToStorage(extent.getBillableSize());
-        } else {
-            // The instance already existed so check to see if we actually need to write it back.
+        } else if (instance.isDirty() || !this.fieldCache.areWritesTracked(instance.getClass())) {
+            // The instance already existed and might have been written so we need to serialize it to either save it out or realize it didn't change.
+            // (a clean instance of a tracked class can be skipped entirely:  its extent can't have changed and nothing it references could
+            // be new, so there is nothing to discover by walking it).
+            SerializedRepresentation extent = internalSerializeInstance(instance, nextObjectSink);
             SerializedRepresentation originalExtent = persistenceToken.node.loadOriginalData();
             if (!originalExtent.equals(extent)) {
                 persistenceToken.node.saveRegularData(extent);
@@ -296,10 +318,17 @@ public class ReflectionStructureCodec implements SingleInstanceDeserializer.IAut
 
     // Note that this is only public so tests can use it.
     public SerializedRepresentation internalSerializeInstance(org.aion.avm.shadow.java.lang.Object instance, Consumer<org.aion.avm.shadow.java.lang.Object> nextObjectSink) {
-        SerializedRepresentationCodec.Encoder encoder = new SerializedRepresentationCodec.Encoder();
+        // Take the reusable encoder, if it isn't already in use higher on the stack (in which case, we just need our own).
+        SerializedRepresentationCodec.Encoder encoder = (null != this.reusableEncoder)
+                ? this.reusableEncoder
+                : new SerializedRepresentationCodec.Encoder();
+        this.reusableEncoder = null;
         SingleInstanceSerializer singleSerializer = new SingleInstanceSerializer(this, encoder, nextObjectSink);
         instance.serializeSelf(null, singleSerializer);
-        return encoder.toSerializedRepresentation();
+        SerializedRepresentation extent = encoder.toSerializedRepresentation();
+        encoder.reset();
+        this.reusableEncoder = encoder;
+        return extent;
     }
 
     // Note that this is only public so tests can use it.
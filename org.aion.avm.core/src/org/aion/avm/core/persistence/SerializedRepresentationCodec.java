@@ -59,6 +59,14 @@ public class SerializedRepresentationCodec {
             INode[] refs = this.references.toArray(new INode[this.references.size()]);
             return new SerializedRepresentation(data, refs);
         }
+        
+        /**
+         * Discards everything encoded so far, keeping the buffers, so that the encoder can be reused for another extent.
+         */
+        public void reset() {
+            this.primitives.reset();
+            this.references.clear();
+        }
     }
 
 
@@ -1,6 +1,6 @@
 package org.aion.avm.core.persistence;
 
-import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 
 import org.aion.avm.internal.RuntimeAssertionError;
 
@@ -9,70 +9,144 @@ import org.aion.avm.internal.RuntimeAssertionError;
  * Responsible for the low-level reading/writing of primitive data from/into byte streams or arrays.
  * Both the Encoder and Decoder are kept in this class since, while they share no code, they are rigidly symmetric.
  * Note that the encoding follows the Java convention of big endian byte order for multi-byte primitives.
+ * The exception is the variable-length ("var") encodings, which store an unsigned value in groups of 7 bits, least significant group first,
+ * with the high bit of each byte set if another byte follows (so small values only need 1 byte).  The "zig-zag" encodings are var encodings
+ * of signed values, mapped so that small negative numbers are also small (0, -1, 1, -2, ... become 0, 1, 2, 3, ...).
+ * The Encoder writes directly into a buffer it grows, as needed, and can be reset to reuse that buffer for the next encoding.
  * 
  * See issue-127 for more information.
  */
 public class StreamingPrimitiveCodec {
     public static class Encoder {
-        // We want a variable-length output so just use a stream and copy it to bytes at the end.
-        private final ByteArrayOutputStream output;
+        // Most extents are small so we start with a buffer which fits them and grow it, by doubling, for the rest.
+        private static final int DEFAULT_INITIAL_CAPACITY = 64;
+        
+        // We write directly into a buffer we grow, as needed, and copy exactly what we wrote at the end.
+        private byte[] buffer;
+        private int size;
         
         public Encoder() {
-            this.output = new ByteArrayOutputStream();
+            this(DEFAULT_INITIAL_CAPACITY);
+        }
+        
+        /**
+         * @param initialCapacity The number of bytes to reserve (the buffer will grow if more are written, so this is only a hint).
+         */
+        public Encoder(int initialCapacity) {
+            // Note that we still want to be able to double an empty buffer.
+            this.buffer = new byte[Math.max(1, initialCapacity)];
+            this.size = 0;
         }
         
         public Encoder encodeByte(byte input) {
-            this.output.write(input);
+            ensureCapacity(Byte.BYTES);
+            this.buffer[this.size] = input;
+            this.size += Byte.BYTES;
             return this;
         }
         
         public Encoder encodeShort(short input) {
-            byte[] encoded = new byte[Short.BYTES];
-            encoded[0] = (byte) (0xff & (input >> 8));
-            encoded[1] = (byte) (0xff & (input >> 0));
-            this.output.write(encoded, 0, encoded.length);
+            ensureCapacity(Short.BYTES);
+            this.buffer[this.size + 0] = (byte) (0xff & (input >> 8));
+            this.buffer[this.size + 1] = (byte) (0xff & (input >> 0));
+            this.size += Short.BYTES;
             return this;
         }
         
         public Encoder encodeChar(char input) {
-            byte[] encoded = new byte[Character.BYTES];
-            encoded[0] = (byte) (0xff & (input >> 8));
-            encoded[1] = (byte) (0xff & (input >> 0));
-            this.output.write(encoded, 0, encoded.length);
+            ensureCapacity(Character.BYTES);
+            this.buffer[this.size + 0] = (byte) (0xff & (input >> 8));
+            this.buffer[this.size + 1] = (byte) (0xff & (input >> 0));
+            this.size += Character.BYTES;
             return this;
         }
         
         public Encoder encodeInt(int input) {
-            byte[] encoded = new byte[Integer.BYTES];
-            encoded[0] = (byte) (0xff & (input >> 24));
-            encoded[1] = (byte) (0xff & (input >> 16));
-            encoded[2] = (byte) (0xff & (input >>  8));
-            encoded[3] = (byte) (0xff & (input >>  0));
-            this.output.write(encoded, 0, encoded.length);
+            ensureCapacity(Integer.BYTES);
+            this.buffer[this.size + 0] = (byte) (0xff & (input >> 24));
+            this.buffer[this.size + 1] = (byte) (0xff & (input >> 16));
+            this.buffer[this.size + 2] = (byte) (0xff & (input >>  8));
+            this.buffer[this.size + 3] = (byte) (0xff & (input >>  0));
+            this.size += Integer.BYTES;
             return this;
         }
         
         public Encoder encodeLong(long input) {
-            byte[] encoded = new byte[Long.BYTES];
-            encoded[0] = (byte) (0xff & (input >> 56));
-            encoded[1] = (byte) (0xff & (input >> 48));
-            encoded[2] = (byte) (0xff & (input >> 40));
-            encoded[3] = (byte) (0xff & (input >> 32));
-            encoded[4] = (byte) (0xff & (input >> 24));
-            encoded[5] = (byte) (0xff & (input >> 16));
-            encoded[6] = (byte) (0xff & (input >>  8));
-            encoded[7] = (byte) (0xff & (input >>  0));
-            this.output.write(encoded, 0, encoded.length);
+            ensureCapacity(Long.BYTES);
+            this.buffer[this.size + 0] = (byte) (0xff & (input >> 56));
+            this.buffer[this.size + 1] = (byte) (0xff & (input >> 48));
+            this.buffer[this.size + 2] = (byte) (0xff & (input >> 40));
+            this.buffer[this.size + 3] = (byte) (0xff & (input >> 32));
+            this.buffer[this.size + 4] = (byte) (0xff & (input >> 24));
+            this.buffer[this.size + 5] = (byte) (0xff & (input >> 16));
+            this.buffer[this.size + 6] = (byte) (0xff & (input >>  8));
+            this.buffer[this.size + 7] = (byte) (0xff & (input >>  0));
+            this.size += Long.BYTES;
+            return this;
+        }
+        
+        public Encoder encodeVarInt(int input) {
+            // Note that this is treated as unsigned so negative numbers always require the maximum 5 bytes.
+            return encodeVarLong(0xffffffffL & input);
+        }
+        
+        public Encoder encodeVarLong(long input) {
+            // A long never needs more than 10 bytes (9 groups of 7 bits and 1 final bit).
+            ensureCapacity(10);
+            long remaining = input;
+            while (0L != (remaining & ~0x7fL)) {
+                this.buffer[this.size] = (byte)(0x80L | (remaining & 0x7fL));
+                this.size += Byte.BYTES;
+                remaining >>>= 7;
+            }
+            this.buffer[this.size] = (byte)remaining;
+            this.size += Byte.BYTES;
             return this;
         }
         
+        public Encoder encodeZigZagInt(int input) {
+            // Interleave negative and positive numbers (0, -1, 1, -2, ...) so that small magnitudes of either sign need few bytes.
+            return encodeVarInt((input << 1) ^ (input >> 31));
+        }
+        
+        public Encoder encodeZigZagLong(long input) {
+            return encodeVarLong((input << 1) ^ (input >> 63));
+        }
+        
         public Encoder encodeBytes(byte[] array) {
-            this.output.write(array, 0, array.length);
+            ensureCapacity(array.length);
+            System.arraycopy(array, 0, this.buffer, this.size, array.length);
+            this.size += array.length;
             return this;
         }
         
+        /**
+         * @return The number of bytes encoded so far.
+         */
+        public int size() {
+            return this.size;
+        }
+        
+        /**
+         * Discards everything encoded so far but keeps the buffer so that the encoder can be reused without allocating.
+         */
+        public void reset() {
+            this.size = 0;
+        }
+        
         public byte[] toBytes() {
-            return this.output.toByteArray();
+            return Arrays.copyOf(this.buffer, this.size);
+        }
+        
+        private void ensureCapacity(int bytesToWrite) {
+            int required = this.size + bytesToWrite;
+            if (required > this.buffer.length) {
+                int newLength = this.buffer.length;
+                while (newLength < required) {
+                    newLength *= 2;
+                }
+                this.buffer = Arrays.copyOf(this.buffer, newLength);
+            }
         }
     }
 
@@ -139,9 +213,48 @@ public class StreamingPrimitiveCodec {
             return value;
         }
         
+        public int decodeVarInt() {
+            long value = decodeVarLong();
+            // This must have been encoded as an int.
+            RuntimeAssertionError.assertTrue(0L == (value >>> 32));
+            return (int)value;
+        }
+        
+        public long decodeVarLong() {
+            long value = 0L;
+            int shift = 0;
+            byte next = this.decoding[this.cursor];
+            this.cursor += Byte.BYTES;
+            while (0 != (next & 0x80)) {
+                value |= (long)(next & 0x7f) << shift;
+                shift += 7;
+                next = this.decoding[this.cursor];
+                this.cursor += Byte.BYTES;
+            }
+            value |= (long)next << shift;
+            return value;
+        }
+        
+        public int decodeZigZagInt() {
+            int value = decodeVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+        
+        public long decodeZigZagLong() {
+            long value = decodeVarLong();
+            return (value >>> 1) ^ -(value & 1L);
+        }
+        
         public void decodeBytesInto(byte[] buffer) {
             System.arraycopy(this.decoding, this.cursor, buffer, 0, buffer.length);
             this.cursor += buffer.length;
         }
+        
+        /**
+         * @return True if there is still data after the cursor (useful for reading fields appended to an older structure).
+         */
+        public boolean hasRemaining() {
+            return (this.cursor < this.decoding.length);
+        }
     }
 }
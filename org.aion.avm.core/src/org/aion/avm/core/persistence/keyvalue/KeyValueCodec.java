@@ -12,32 +12,54 @@ import org.aion.avm.internal.RuntimeAssertionError;
 
 /**
  * Serialized extent structure:
- * 1)  number of references
- * 2)  references (encoded as InstanceStubs)
- * 3)  number of bytes of primitive data
+ * 0)  format version (a single byte, FORMAT_VERSION_TYPE_TABLE)
+ * 1)  number of references (varint)
+ * 2)  references (encoded as InstanceStubs - see below)
+ * 3)  number of bytes of primitive data (varint)
  * 4)  primitive data bytes
  * 
+ * Each reference starts with a varint descriptor:
+ * - 0:  null.
+ * - 1:  constant, followed by the (varint) constant hash code.
+ * - 2:  class, followed by the (varint) index of the class name in the DApp's TypeNameTable.
+ * - 3+n:  regular instance whose type name is at index n in the DApp's TypeNameTable, followed by the (varint) instanceId and (int) identity hash.
+ * 
+ * The original ("legacy") structure used fixed-width ints for all counts and descriptors and stored type names inline, as length-prefixed UTF-8.
+ * Since that structure always started with a non-negative big-endian int, its first byte never has the high bit set, which is how we tell the
+ * two apart:  we can still read the legacy structure but we only write the new one, so stored data migrates as it is rewritten.
+ * 
  * This is specific to the key-value implementation.
  */
 public class KeyValueCodec {
-    // There are no constants for stub descriptors greater than 0 since that is a string length field.
-    private static final int STUB_DESCRIPTOR_NULL = 0;
-    private static final int STUB_DESCRIPTOR_CONSTANT = -1;
-    private static final int STUB_DESCRIPTOR_CLASS = -2;
+    // Any first byte with the high bit set is a format version, since the legacy format started with a non-negative int.
+    private static final byte FORMAT_VERSION_TYPE_TABLE = (byte)0x81;
+
+    private static final int DESCRIPTOR_NULL = 0;
+    private static final int DESCRIPTOR_CONSTANT = 1;
+    private static final int DESCRIPTOR_CLASS = 2;
+    private static final int DESCRIPTOR_FIRST_REGULAR = 3;
+
+    // Version byte and 2 short counts.
+    private static final int ENCODED_HEADER_SIZE_ESTIMATE = 8;
+    // Descriptor, a 3-byte instanceId, and the identity hash.
+    private static final int ENCODED_REFERENCE_SIZE_ESTIMATE = 8;
 
-    public static byte[] encode(SerializedRepresentation extent) {
-        StreamingPrimitiveCodec.Encoder encoder = new StreamingPrimitiveCodec.Encoder();
+    // There are no constants for legacy stub descriptors greater than 0 since that is a string length field.
+    private static final int LEGACY_STUB_DESCRIPTOR_NULL = 0;
+    private static final int LEGACY_STUB_DESCRIPTOR_CONSTANT = -1;
+    private static final int LEGACY_STUB_DESCRIPTOR_CLASS = -2;
+
+    public static byte[] encode(TypeNameTable typeNames, SerializedRepresentation extent) {
+        // Size the buffer for the common case (small type indices and instanceIds) so that it rarely needs to grow.
+        StreamingPrimitiveCodec.Encoder encoder = new StreamingPrimitiveCodec.Encoder(ENCODED_HEADER_SIZE_ESTIMATE + (ENCODED_REFERENCE_SIZE_ESTIMATE * extent.references.length) + extent.data.length);
+        encoder.encodeByte(FORMAT_VERSION_TYPE_TABLE);
         
         // We put the references first since the storage system might be more interested in them, since they make up the graph.
-        encoder.encodeInt(extent.references.length);
+        encoder.encodeVarInt(extent.references.length);
         for (INode node : extent.references) {
             // Check type and encode meaning.
             
-            // See issue-147 for more information regarding this interpretation:
-            // - null: (int)0.
-            // - -1: (int)-1, (int) constant hash code.
-            // - -2: (int)-2, (int) buffer length, (n) UTF-8 class name buffer
-            // - >0:  (int) buffer length, (n) UTF-8 buffer, (long) instanceId.
+            // See issue-147 for more information regarding this interpretation.
             // Reason for order of evaluation:
             // - null goes first, since it is easy to detect on either side (and probably a common case).
             // - constants go second since they are arbitrary objects, including some Class objects, and already have the correct instanceId.
@@ -45,61 +67,121 @@ public class KeyValueCodec {
             // - normal references go last (includes those with 0 or >0 instanceIds).
             if (null == node) {
                 // Null has the least data - descriptor only.
-                encoder.encodeInt(STUB_DESCRIPTOR_NULL);
+                encoder.encodeVarInt(DESCRIPTOR_NULL);
             } else {
                 // Check the type of this INode to see if it was created as a constant, class, or regular object.
                 if (node instanceof ConstantNode) {
                     // Write the descriptor.
-                    encoder.encodeInt(STUB_DESCRIPTOR_CONSTANT);
+                    encoder.encodeVarInt(DESCRIPTOR_CONSTANT);
                     // Internally to AVM, the constant is identified by a canonical hash code.
                     int constantHashCode = ((ConstantNode)node).constantHashCode;
                     // We expect this to be a small, positive integer.
                     RuntimeAssertionError.assertTrue(constantHashCode > 0);
                     // (update this number if we add more constants - just made to catch simple errors).
                     RuntimeAssertionError.assertTrue(constantHashCode < 100); 
-                    // We can store this directly as an int, on disk.
-                    encoder.encodeInt(constantHashCode);
+                    encoder.encodeVarInt(constantHashCode);
                 } else if (node instanceof ClassNode) {
-                    // Write the descriptor.
-                    encoder.encodeInt(STUB_DESCRIPTOR_CLASS);
-                    // Write the class name.
-                    byte[] utf8Name = ((ClassNode)node).className.getBytes(StandardCharsets.UTF_8);
-                    encoder.encodeInt(utf8Name.length);
-                    encoder.encodeBytes(utf8Name);
+                    // Write the descriptor and the index of the class name.
+                    encoder.encodeVarInt(DESCRIPTOR_CLASS);
+                    encoder.encodeVarInt(typeNames.indexForName(((ClassNode)node).className));
                 } else {
                     RuntimeAssertionError.assertTrue(node instanceof KeyValueNode);
                     
-                    // Now, the common case (note that this class name length overlaps with the descriptor, ensuring it is always positive).
+                    // Now, the common case (note that the type index is offset so that it can share the descriptor).
                     KeyValueNode regularNode = (KeyValueNode)node;
-                    byte[] utf8Name = regularNode.getInstanceClassName().getBytes(StandardCharsets.UTF_8);
-                    encoder.encodeInt(utf8Name.length);
-                    encoder.encodeBytes(utf8Name);
-                    encoder.encodeLong(regularNode.getInstanceId());
+                    encoder.encodeVarInt(DESCRIPTOR_FIRST_REGULAR + typeNames.indexForName(regularNode.getInstanceClassName()));
+                    encoder.encodeVarLong(regularNode.getInstanceId());
                     encoder.encodeInt(regularNode.getIdentityHashCode());
                 }
             }
         }
         
-        encoder.encodeInt(extent.data.length);
+        encoder.encodeVarInt(extent.data.length);
         encoder.encodeBytes(extent.data);
         
         return encoder.toBytes();
     }
 
     public static SerializedRepresentation decode(KeyValueObjectGraph factory, byte[] data) {
+        return isLegacyEncoding(data)
+                ? decodeLegacy(factory, data)
+                : decodeWithTypeTable(factory, data);
+    }
+
+    /**
+     * @param data Data returned by encode() or stored in the legacy structure.
+     * @return True if the data is in the legacy structure (meaning that it should be re-encoded, when convenient).
+     */
+    public static boolean isLegacyEncoding(byte[] data) {
+        return (FORMAT_VERSION_TYPE_TABLE != data[0]);
+    }
+
+
+    private static SerializedRepresentation decodeWithTypeTable(KeyValueObjectGraph factory, byte[] data) {
+        StreamingPrimitiveCodec.Decoder decoder = new StreamingPrimitiveCodec.Decoder(data);
+        RuntimeAssertionError.assertTrue(FORMAT_VERSION_TYPE_TABLE == decoder.decodeByte());
+        TypeNameTable typeNames = factory.getTypeNameTable();
+        
+        int referenceCount = decoder.decodeVarInt();
+        INode[] references = new INode[referenceCount];
+        for (int i = 0; i < referenceCount; ++i) {
+            // Interpret as instance stub.
+            int descriptor = decoder.decodeVarInt();
+            switch (descriptor) {
+                case DESCRIPTOR_NULL: {
+                    references[i] = null;
+                    break;
+                }
+                case DESCRIPTOR_CONSTANT: {
+                    // Internally to AVM, the constant is identified by a canonical hash code.
+                    int constantHashCode = decoder.decodeVarInt();
+                    // We expect this to be a small, positive integer.
+                    RuntimeAssertionError.assertTrue(constantHashCode > 0);
+                    // (update this number if we add more constants - just made to catch simple errors).
+                    RuntimeAssertionError.assertTrue(constantHashCode < 100); 
+                    references[i] = factory.buildConstantNode(constantHashCode);
+                    break;
+                }
+                case DESCRIPTOR_CLASS: {
+                    String className = typeNames.nameForIndex(decoder.decodeVarInt());
+                    references[i] = factory.buildClassNode(className);
+                    break;
+                }
+                default: {
+                    String instanceClassName = typeNames.nameForIndex(descriptor - DESCRIPTOR_FIRST_REGULAR);
+                    long instanceId = decoder.decodeVarLong();
+                    int identityHashCode = decoder.decodeInt();
+                    references[i] = factory.buildExistingRegularNode(identityHashCode, instanceClassName, instanceId);
+                    break;
+                }
+            }
+        }
+        
+        int byteCount = decoder.decodeVarInt();
+        byte[] primitiveData = new byte[byteCount];
+        decoder.decodeBytesInto(primitiveData);
+        
+        return new SerializedRepresentation(primitiveData, references);
+    }
+
+    private static SerializedRepresentation decodeLegacy(KeyValueObjectGraph factory, byte[] data) {
         StreamingPrimitiveCodec.Decoder decoder = new StreamingPrimitiveCodec.Decoder(data);
         
         int referenceCount = decoder.decodeInt();
         INode[] references = new INode[referenceCount];
         for (int i = 0; i < referenceCount; ++i) {
             // Interpret as instance stub.
+            // - null: (int)0.
+            // - -1: (int)-1, (int) constant hash code.
+            // - -2: (int)-2, (int) buffer length, (n) UTF-8 class name buffer
+            // - >0:  (int) buffer length, (n) UTF-8 buffer, (long) instanceId, (int) identity hash.
             int lengthOrDescriptor = decoder.decodeInt();
             switch (lengthOrDescriptor) {
-                case STUB_DESCRIPTOR_NULL: {
+                case LEGACY_STUB_DESCRIPTOR_NULL: {
                     references[i] = null;
                     break;
                 }
-                case STUB_DESCRIPTOR_CONSTANT: {
+                case LEGACY_STUB_DESCRIPTOR_CONSTANT: {
                     // Internally to AVM, the constant is identified by a canonical hash code.
                     // (this is stored directly as an int).
                     int constantHashCode = decoder.decodeInt();
@@ -110,7 +192,7 @@ public class KeyValueCodec {
                     references[i] = factory.buildConstantNode(constantHashCode);
                     break;
                 }
-                case STUB_DESCRIPTOR_CLASS: {
+                case LEGACY_STUB_DESCRIPTOR_CLASS: {
                     int length = decoder.decodeInt();
                     byte[] utf8Name = new byte[length];
                     decoder.decodeBytesInto(utf8Name);
@@ -38,10 +38,17 @@ public class KeyValueObjectGraph implements IObjectGraphStore {
     private long instanceIdBias;
     // TODO:  Replace this with a properly-sized hash (or tuple of different hashes).
     private int deltaHash;
+    // The instance key scheme of the stored data (see StorageKeys).  Storage still on the legacy keys is migrated as it is written:
+    // each instance when it is stored and all of them when the GC copies them.
+    private byte instanceKeyVersion;
+    // Only instances below this ID (when we were loaded) can still be under a legacy key.
+    private long legacyInstanceIdLimit;
     // We store the initial root we read for the delta hash computation.
     private SerializedRepresentation initialRootRepresentation;
     private int[][] merkleTree;
     private boolean[] dirtyLeaves;
+    // The dictionary of type names used by the stored data (lazily read, since not every invocation needs it).
+    private TypeNameTable typeNames;
 
     private ConstructorCache constructorCache;
     private IDeserializer logicalDeserializer;
@@ -82,10 +89,22 @@ public class KeyValueObjectGraph implements IObjectGraphStore {
                 }
                 this.dirtyLeaves = new boolean[leafLevelSize];
             }
+            
+            // The instance key version was appended to this data so anything written before that uses the legacy keys.
+            // (we don't migrate anything here since many callers only read - that happens on the write paths).
+            this.instanceKeyVersion = decoder.hasRemaining()
+                    ? decoder.decodeByte()
+                    : StorageKeys.INSTANCE_KEY_VERSION_LEGACY;
+            RuntimeAssertionError.assertTrue((StorageKeys.INSTANCE_KEY_VERSION_LEGACY == this.instanceKeyVersion) || (StorageKeys.INSTANCE_KEY_VERSION_BINARY == this.instanceKeyVersion));
+            this.legacyInstanceIdLimit = (StorageKeys.INSTANCE_KEY_VERSION_LEGACY == this.instanceKeyVersion)
+                    ? this.nextInstanceId
+                    : 0L;
         } else {
             // This must be new.
             this.nextInstanceId = 1L;
             this.instanceIdBias = 0L;
+            this.instanceKeyVersion = StorageKeys.INSTANCE_KEY_VERSION_BINARY;
+            this.legacyInstanceIdLimit = 0L;
             if (USE_DELTA_HASH) {
                 this.deltaHash = 0;
             } else {
@@ -127,7 +146,7 @@ public class KeyValueObjectGraph implements IObjectGraphStore {
 
     @Override
     public void setRoot(SerializedRepresentation root) {
-        byte[] rootBytes = KeyValueCodec.encode(root);
+        byte[] rootBytes = KeyValueCodec.encode(getTypeNameTable(), root);
         RuntimeAssertionError.assertTrue(null != rootBytes);
         this.store.putStorage(this.address, StorageKeys.CLASS_STATICS, rootBytes);
         
@@ -205,8 +224,15 @@ public class KeyValueObjectGraph implements IObjectGraphStore {
                 }
             }
         }
+        // This stays legacy until the GC has moved every instance to the binary keys.
+        encoder.encodeByte(this.instanceKeyVersion);
         byte[] rawData = encoder.toBytes();
         this.store.putStorage(this.address, StorageKeys.INTERNAL_DATA, rawData);
+        
+        // The type names only need to be written if we added any (the stored data now refers to them).
+        if ((null != this.typeNames) && this.typeNames.isDirty()) {
+            this.store.putStorage(this.address, StorageKeys.TYPE_NAMES, this.typeNames.toBytes());
+        }
     }
 
     @Override
@@ -237,32 +263,54 @@ public class KeyValueObjectGraph implements IObjectGraphStore {
             this.deltaHash = 0;
         }
         this.idToNodeMap.clear();
-        SerializedRepresentation scanningRepresentation = loadRootOnly();
+        byte[] scanningBytes = this.store.getStorage(this.address, currentKey);
+        RuntimeAssertionError.assertTrue(null != scanningBytes);
+        SerializedRepresentation scanningRepresentation = KeyValueCodec.decode(this, scanningBytes);
         while (null != scanningRepresentation) {
             if (USE_DELTA_HASH) {
                 this.deltaHash ^= getConsensusHashForRepresentation(scanningRepresentation);
             }
-            boolean didWrite = false;
+            // Anything still in the legacy encoding is rewritten, so the GC also migrates all the data it keeps.
+            boolean didWrite = KeyValueCodec.isLegacyEncoding(scanningBytes);
             INode[] refs = scanningRepresentation.references;
-            for (int i = 0; i < refs.length; ++i) {
-                INode ref = refs[i];
+            // Allocate every instance referenced here which we haven't seen yet and copy them, reading all of them in 1 request.
+            long[] instancesToCopy = new long[refs.length];
+            int copyCount = 0;
+            for (INode ref : refs) {
                 // Class and constant refs don't change.
                 if (ref instanceof KeyValueNode) {
-                    KeyValueNode node = (KeyValueNode)ref;
-                    long oldTargetInstanceId = node.getInstanceId();
-                    long newTargetInstanceId = 0L;
+                    long oldTargetInstanceId = ((KeyValueNode)ref).getInstanceId();
                     if (!instanceIdFixups.containsKey(oldTargetInstanceId)) {
-                        // Allocate this instance and copy the object.
-                        newTargetInstanceId = nextInstanceId;
+                        instanceIdFixups.put(oldTargetInstanceId, nextInstanceId);
                         nextInstanceId += 1;
-                        instanceIdFixups.put(oldTargetInstanceId, newTargetInstanceId);
-                        byte[] rawData = this.store.getStorage(this.address, StorageKeys.forInstance(oldTargetInstanceId + this.instanceIdBias));
-                        RuntimeAssertionError.assertTrue(null != rawData);
-                        RuntimeAssertionError.assertTrue(rawData.length > 0);
-                        this.store.putStorage(this.address, StorageKeys.forInstance(newTargetInstanceId + targetBias), rawData);
-                    } else {
-                        newTargetInstanceId = instanceIdFixups.get(oldTargetInstanceId);
+                        instancesToCopy[copyCount] = oldTargetInstanceId;
+                        copyCount += 1;
                     }
+                }
+            }
+            if (copyCount > 0) {
+                byte[][] oldKeys = new byte[copyCount][];
+                for (int i = 0; i < copyCount; ++i) {
+                    oldKeys[i] = StorageKeys.forInstance(instancesToCopy[i] + this.instanceIdBias);
+                }
+                byte[][] rawDatas = this.store.getStorageMulti(this.address, oldKeys);
+                if (StorageKeys.INSTANCE_KEY_VERSION_LEGACY == this.instanceKeyVersion) {
+                    readMissingFromLegacyKeys(instancesToCopy, copyCount, rawDatas);
+                }
+                for (int i = 0; i < copyCount; ++i) {
+                    byte[] rawData = rawDatas[i];
+                    RuntimeAssertionError.assertTrue(null != rawData);
+                    RuntimeAssertionError.assertTrue(rawData.length > 0);
+                    long newTargetInstanceId = instanceIdFixups.get(instancesToCopy[i]);
+                    this.store.putStorage(this.address, StorageKeys.forInstance(newTargetInstanceId + targetBias), rawData);
+                }
+            }
+            for (int i = 0; i < refs.length; ++i) {
+                INode ref = refs[i];
+                if (ref instanceof KeyValueNode) {
+                    KeyValueNode node = (KeyValueNode)ref;
+                    long oldTargetInstanceId = node.getInstanceId();
+                    long newTargetInstanceId = instanceIdFixups.get(oldTargetInstanceId);
                     // Fixup the reference.
                     if (oldTargetInstanceId != newTargetInstanceId) {
                         // All nodes seen by the GC are from storage.
@@ -273,30 +321,36 @@ public class KeyValueObjectGraph implements IObjectGraphStore {
                 }
             }
             if (didWrite) {
-                this.store.putStorage(this.address, currentKey, KeyValueCodec.encode(scanningRepresentation));
+                this.store.putStorage(this.address, currentKey, KeyValueCodec.encode(getTypeNameTable(), scanningRepresentation));
             }
             nextScanInstanceId += 1;
             if (nextScanInstanceId < nextInstanceId) {
                 // Load the next SerializedRepresentation and continue the collection.
                 currentKey = StorageKeys.forInstance(nextScanInstanceId + targetBias);
-                byte[] nextNewInstanceToScan = this.store.getStorage(this.address, currentKey);
-                scanningRepresentation = KeyValueCodec.decode(this, nextNewInstanceToScan);
+                scanningBytes = this.store.getStorage(this.address, currentKey);
+                scanningRepresentation = KeyValueCodec.decode(this, scanningBytes);
             } else {
                 // We are done so fall out.
                 currentKey = null;
+                scanningBytes = null;
                 scanningRepresentation = null;
             }
         }
         
         if (!USE_DELTA_HASH) {
-            // Rebuild the Merkle tree.
+            // Rebuild the Merkle tree (reading all of the instances in 1 request).
             this.merkleTree = new int[0][];
             this.dirtyLeaves = new boolean[0];
+            byte[][] keys = new byte[(int)nextInstanceId - 1][];
+            for (long i = 1L; i < nextInstanceId; ++i) {
+                keys[(int)i - 1] = StorageKeys.forInstance(i + targetBias);
+            }
+            byte[][] datas = this.store.getStorageMulti(this.address, keys);
             for (long i = 1L; i < nextInstanceId; ++i) {
                 int index = (int)i - 1;
                 ensureTreeSize(index);
                 // Hash the data into the leaf.
-                byte[] data = this.store.getStorage(this.address, StorageKeys.forInstance(i + targetBias));
+                byte[] data = datas[index];
                 // The consensus hash is higher-level than the serialized form so we need to decode this in order to hash it.
                 SerializedRepresentation representationToHash = KeyValueCodec.decode(this, data);
                 this.merkleTree[0][index] = getConsensusHashForRepresentation(representationToHash);
@@ -308,6 +362,12 @@ public class KeyValueObjectGraph implements IObjectGraphStore {
         for (long i = 1L; i < this.nextInstanceId; ++i) {
             this.store.putStorage(this.address, StorageKeys.forInstance(i + this.instanceIdBias), new byte[0]);
         }
+        // Every live instance was just copied to a binary key so the migration is complete once we clear whatever was left on the legacy ones.
+        for (long i = 1L; i < this.legacyInstanceIdLimit; ++i) {
+            this.store.putStorage(this.address, StorageKeys.forLegacyInstance(i + this.instanceIdBias), new byte[0]);
+        }
+        this.instanceKeyVersion = StorageKeys.INSTANCE_KEY_VERSION_BINARY;
+        this.legacyInstanceIdLimit = 0L;
         // The number of instances freed is just the difference between our next ID incrementor before and after the GC.
         long instancesFreed = (this.nextInstanceId - nextInstanceId);
         this.nextInstanceId = nextInstanceId;
@@ -340,13 +400,43 @@ public class KeyValueObjectGraph implements IObjectGraphStore {
         }
     }
 
+    /**
+     * Called before the DApp is loaded from this graph, to let the store start reading what that reads (its environment, statics, and
+     * type names) in the background.
+     * Note that this is only worth calling when those will actually be read, since the store holds on to what it prefetched.
+     */
+    public void prefetchForInitialLoad() {
+        this.store.prefetch(this.address, new byte[][] { StorageKeys.CONTRACT_ENVIRONMENT, StorageKeys.CLASS_STATICS, StorageKeys.TYPE_NAMES });
+    }
+
+    /**
+     * Called by KeyValueCodec to find the type names referenced by the stored data.
+     * 
+     * @return The DApp's TypeNameTable (read from storage on first use).
+     */
+    public TypeNameTable getTypeNameTable() {
+        if (null == this.typeNames) {
+            this.typeNames = TypeNameTable.fromBytes(this.store.getStorage(this.address, StorageKeys.TYPE_NAMES));
+        }
+        return this.typeNames;
+    }
+
     public byte[] loadStorageForInstance(long instanceId) {
-        return this.store.getStorage(this.address, StorageKeys.forInstance(instanceId + this.instanceIdBias));
+        byte[] data = this.store.getStorage(this.address, StorageKeys.forInstance(instanceId + this.instanceIdBias));
+        // An instance which hasn't been migrated yet is still under its legacy key.
+        if ((null == data) && (instanceId < this.legacyInstanceIdLimit)) {
+            data = this.store.getStorage(this.address, StorageKeys.forLegacyInstance(instanceId + this.instanceIdBias));
+        }
+        return data;
     }
 
     public void storeDataForInstance(long instanceId, SerializedRepresentation original, SerializedRepresentation updated) {
-        byte[] data = KeyValueCodec.encode(updated);
+        byte[] data = KeyValueCodec.encode(getTypeNameTable(), updated);
         this.store.putStorage(this.address, StorageKeys.forInstance(instanceId + this.instanceIdBias), data);
+        if (instanceId < this.legacyInstanceIdLimit) {
+            // This migrates the instance so clear the legacy copy (we can't delete a key so we clear it the way the GC clears the instances it frees).
+            this.store.putStorage(this.address, StorageKeys.forLegacyInstance(instanceId + this.instanceIdBias), new byte[0]);
+        }
         
         if (USE_DELTA_HASH) {
             if (null != original) {
@@ -363,6 +453,33 @@ public class KeyValueObjectGraph implements IObjectGraphStore {
         }
     }
 
+    private void readMissingFromLegacyKeys(long[] instanceIds, int count, byte[][] rawDatas) {
+        // Read any instances not found under their binary keys from their legacy keys, in 1 request.
+        int missingCount = 0;
+        for (int i = 0; i < count; ++i) {
+            if (null == rawDatas[i]) {
+                missingCount += 1;
+            }
+        }
+        if (missingCount > 0) {
+            byte[][] legacyKeys = new byte[missingCount][];
+            int[] indices = new int[missingCount];
+            int next = 0;
+            for (int i = 0; i < count; ++i) {
+                if (null == rawDatas[i]) {
+                    RuntimeAssertionError.assertTrue(instanceIds[i] < this.legacyInstanceIdLimit);
+                    legacyKeys[next] = StorageKeys.forLegacyInstance(instanceIds[i] + this.instanceIdBias);
+                    indices[next] = i;
+                    next += 1;
+                }
+            }
+            byte[][] legacyDatas = this.store.getStorageMulti(this.address, legacyKeys);
+            for (int i = 0; i < missingCount; ++i) {
+                rawDatas[indices[i]] = legacyDatas[i];
+            }
+        }
+    }
+
     private void ensureTreeSize(int index) {
         // This should only be called when using the Merkle hash.
         RuntimeAssertionError.assertTrue(!USE_DELTA_HASH);
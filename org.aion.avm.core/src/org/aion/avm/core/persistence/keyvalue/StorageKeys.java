@@ -2,6 +2,8 @@ package org.aion.avm.core.persistence.keyvalue;
 
 import java.nio.charset.StandardCharsets;
 
+import org.aion.avm.internal.RuntimeAssertionError;
+
 
 /**
  * A single place where we manage mapping special-case and general-case keys into the global namespace.
@@ -13,8 +15,32 @@ public class StorageKeys {
     public static final byte[] CLASS_STATICS = new byte[] {11,12,13,14,15,16,17,18,19,10};
     public static final byte[] CONTRACT_ENVIRONMENT = new byte[] {1,2,3,4,5,6,7,8,9,0};
     public static final byte[] INTERNAL_DATA = new byte[] {21,22,23,24,25,26,27,28,29,20};
+    // The DApp's TypeNameTable.
+    public static final byte[] TYPE_NAMES = new byte[] {31,32,33,34,35,36,37,38,39,30};
+
+    // The version of the instance key scheme used by a DApp's storage (recorded in its INTERNAL_DATA - see KeyValueObjectGraph).
+    // (the legacy keys were the UTF-8 bytes of "instance_<id>" and are only used to migrate old storage).
+    public static final byte INSTANCE_KEY_VERSION_LEGACY = 0;
+    public static final byte INSTANCE_KEY_VERSION_BINARY = 1;
+
+    // Instance keys are this prefix followed by the big-endian instanceId so that, since instanceIds are never negative, the keys sort in
+    // instanceId order in any ordered store.
+    // (their 9-byte length also means they can't collide with the 10-byte special-case keys, above).
+    private static final byte INSTANCE_KEY_PREFIX = 0x49;
+    private static final int INSTANCE_KEY_LENGTH = Byte.BYTES + Long.BYTES;
 
     public static byte[] forInstance(long instanceId) {
+        RuntimeAssertionError.assertTrue(instanceId >= 0L);
+        byte[] key = new byte[INSTANCE_KEY_LENGTH];
+        key[0] = INSTANCE_KEY_PREFIX;
+        for (int i = INSTANCE_KEY_LENGTH - 1; i > 0; --i) {
+            key[i] = (byte) (0xff & instanceId);
+            instanceId >>>= 8;
+        }
+        return key;
+    }
+
+    public static byte[] forLegacyInstance(long instanceId) {
         String key = "instance_" + instanceId;
         return key.getBytes(StandardCharsets.UTF_8);
     }
@@ -0,0 +1,110 @@
+package org.aion.avm.core.persistence.keyvalue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.aion.avm.core.persistence.StreamingPrimitiveCodec;
+import org.aion.avm.internal.RuntimeAssertionError;
+
+
+/**
+ * The dictionary of the type names referenced by a DApp's stored data, so that KeyValueCodec can store a small index for each reference
+ * instead of the entire name (and so that each name is only decoded once per load, not once per reference).
+ * The table is only ever appended to since the indices are stored in the DApp's data.  It is stored, in its entirety, under
+ * StorageKeys.TYPE_NAMES.
+ * 
+ * Serialized structure:
+ * 1)  number of names (varint)
+ * 2)  names, in index order (each a varint byte length and the UTF-8 bytes)
+ */
+public class TypeNameTable {
+    private final List<String> names;
+    private final Map<String, Integer> indices;
+    // Set when a name is added, since the table then needs to be written back.
+    private boolean isDirty;
+
+    /**
+     * Reads the table from its stored form.
+     * 
+     * @param data The serialized table (null if the DApp has never stored one).
+     * @return The table.
+     */
+    public static TypeNameTable fromBytes(byte[] data) {
+        TypeNameTable table = new TypeNameTable();
+        if (null != data) {
+            StreamingPrimitiveCodec.Decoder decoder = new StreamingPrimitiveCodec.Decoder(data);
+            int count = decoder.decodeVarInt();
+            for (int i = 0; i < count; ++i) {
+                byte[] utf8Name = new byte[decoder.decodeVarInt()];
+                decoder.decodeBytesInto(utf8Name);
+                table.append(new String(utf8Name, StandardCharsets.UTF_8));
+            }
+        }
+        return table;
+    }
+
+    public TypeNameTable() {
+        this.names = new ArrayList<>();
+        this.indices = new HashMap<>();
+    }
+
+    /**
+     * Finds the index of the given name, adding it to the table if it isn't already there.
+     * 
+     * @param name The type name.
+     * @return The index of the name in the table.
+     */
+    public int indexForName(String name) {
+        Integer index = this.indices.get(name);
+        if (null == index) {
+            index = append(name);
+            this.isDirty = true;
+        }
+        return index;
+    }
+
+    /**
+     * @param index The index of a name in the table.
+     * @return The name at that index.
+     */
+    public String nameForIndex(int index) {
+        // Anything we stored would have been added to the table.
+        RuntimeAssertionError.assertTrue((index >= 0) && (index < this.names.size()));
+        return this.names.get(index);
+    }
+
+    /**
+     * @return True if names were added since the table was read (or last serialized).
+     */
+    public boolean isDirty() {
+        return this.isDirty;
+    }
+
+    /**
+     * Serializes the table, clearing its dirty state (since the caller is expected to store the result).
+     * 
+     * @return The serialized table.
+     */
+    public byte[] toBytes() {
+        StreamingPrimitiveCodec.Encoder encoder = new StreamingPrimitiveCodec.Encoder();
+        encoder.encodeVarInt(this.names.size());
+        for (String name : this.names) {
+            byte[] utf8Name = name.getBytes(StandardCharsets.UTF_8);
+            encoder.encodeVarInt(utf8Name.length);
+            encoder.encodeBytes(utf8Name);
+        }
+        this.isDirty = false;
+        return encoder.toBytes();
+    }
+
+
+    private int append(String name) {
+        int index = this.names.size();
+        this.names.add(name);
+        this.indices.put(name, index);
+        return index;
+    }
+}
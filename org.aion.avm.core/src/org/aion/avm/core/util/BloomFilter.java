@@ -0,0 +1,143 @@
+package org.aion.avm.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A Bloom filter over byte[] elements:  mightContain() returning false means the element was definitely never added, while returning true
+ * means it probably was (with a false positive rate which depends on the size of the filter and the number of elements added).
+ * Elements can't be removed, so a store which deletes elements just leaves them as false positives until the filter is rebuilt.
+ * This is safe for concurrent use:  once add() returns, any thread will see the element in mightContain().
+ */
+public class BloomFilter {
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicLong addedCount;
+
+    /**
+     * Sizes the filter so that it has the given false positive rate once the given number of elements have been added.
+     *
+     * @param expectedElements The number of elements expected.
+     * @param falsePositiveRate The target false positive rate (between 0 and 1, exclusive).
+     * @return The filter.
+     */
+    public static BloomFilter forFalsePositiveRate(long expectedElements, double falsePositiveRate) {
+        if ((expectedElements <= 0L) || !(falsePositiveRate > 0.0) || !(falsePositiveRate < 1.0)) {
+            throw new IllegalArgumentException("Expected elements must be positive and the false positive rate must be between 0 and 1");
+        }
+        // m = -n ln(p) / ln(2)^2
+        long bitCount = (long) Math.ceil(-expectedElements * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        return new BloomFilter(bitCount, optimalHashCount(bitCount, expectedElements));
+    }
+
+    /**
+     * Sizes the filter to fit in the given memory budget, choosing the number of hashes which is best for the given number of elements.
+     *
+     * @param expectedElements The number of elements expected.
+     * @param memoryBytes The size of the filter's bit set, in bytes.
+     * @return The filter.
+     */
+    public static BloomFilter forMemoryBudget(long expectedElements, long memoryBytes) {
+        if ((expectedElements <= 0L) || (memoryBytes <= 0L)) {
+            throw new IllegalArgumentException("Expected elements and memory must be positive");
+        }
+        long bitCount = memoryBytes * Byte.SIZE;
+        return new BloomFilter(bitCount, optimalHashCount(bitCount, expectedElements));
+    }
+
+    private static int optimalHashCount(long bitCount, long expectedElements) {
+        // k = (m / n) ln(2)
+        return Math.max(1, (int) Math.round(((double) bitCount / expectedElements) * Math.log(2)));
+    }
+
+    private BloomFilter(long bitCount, int hashCount) {
+        long words = (bitCount + Long.SIZE - 1) / Long.SIZE;
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bloom filter too large");
+        }
+        this.bits = new AtomicLongArray((int) words);
+        this.bitCount = words * Long.SIZE;
+        this.hashCount = hashCount;
+        this.addedCount = new AtomicLong(0L);
+    }
+
+    public void add(byte[] element) {
+        long hash1 = hash(element, 0L);
+        long hash2 = hash(element, hash1) | 1L;
+        boolean isNew = false;
+        for (int i = 0; i < this.hashCount; ++i) {
+            long bit = Long.remainderUnsigned(hash1 + (i * hash2), this.bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old = this.bits.get(word);
+            while (0L == (old & mask)) {
+                if (this.bits.compareAndSet(word, old, old | mask)) {
+                    isNew = true;
+                    old |= mask;
+                } else {
+                    old = this.bits.get(word);
+                }
+            }
+        }
+        // (re-adding an element, which is common for stores which rewrite keys, changes nothing).
+        if (isNew) {
+            this.addedCount.incrementAndGet();
+        }
+    }
+
+    public boolean mightContain(byte[] element) {
+        long hash1 = hash(element, 0L);
+        long hash2 = hash(element, hash1) | 1L;
+        boolean mightContain = true;
+        for (int i = 0; mightContain && (i < this.hashCount); ++i) {
+            long bit = Long.remainderUnsigned(hash1 + (i * hash2), this.bitCount);
+            mightContain = (0L != (this.bits.get((int) (bit >>> 6)) & (1L << bit)));
+        }
+        return mightContain;
+    }
+
+    public long getBitCount() {
+        return this.bitCount;
+    }
+
+    public int getHashCount() {
+        return this.hashCount;
+    }
+
+    public long getMemoryBytes() {
+        return this.bitCount / Byte.SIZE;
+    }
+
+    /**
+     * @return The number of elements added (not counting those which were already in the filter, or looked like they were).
+     */
+    public long getAddedCount() {
+        return this.addedCount.get();
+    }
+
+    /**
+     * @return The false positive rate expected for the number of elements added so far:  (1 - e^(-kn/m))^k.
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1.0 - Math.exp(-(double) this.hashCount * this.addedCount.get() / this.bitCount), this.hashCount);
+    }
+
+
+    // FNV-1a, seeded, with the MurmurHash3 finalizer to spread the bits (the second hash is forced odd, by the callers, so the probes
+    // don't cycle early).
+    private static long hash(byte[] element, long seed) {
+        long hash = 0xcbf29ce484222325L ^ seed;
+        for (byte b : element) {
+            hash ^= (0xff & b);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= (hash >>> 33);
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= (hash >>> 33);
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= (hash >>> 33);
+        return hash;
+    }
+}
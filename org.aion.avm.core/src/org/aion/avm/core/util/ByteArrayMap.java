@@ -0,0 +1,232 @@
+package org.aion.avm.core.util;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+
+/**
+ * A map keyed by the contents of byte[], for the addresses and storage keys which the kernels and their caches look up constantly.
+ * Unlike a HashMap keyed by ByteArrayWrapper, lookups don't allocate:  the raw arrays are the keys and each entry keeps the hash of
+ * its key, so most mismatches are rejected without comparing the arrays.
+ * The table is open-addressed (linear probing) and kept at most half full.  It indexes a dense array of entries, in insertion order
+ * (as in a LinkedHashMap), which is the order forEach() visits them in.
+ * NOTE:  The key arrays are not copied so they must not be modified while they are in the map.
+ * NOTE:  This is not thread-safe.
+ *
+ * @param <V> The value type.
+ */
+public final class ByteArrayMap<V> {
+    private static final int DEFAULT_CAPACITY = 8;
+    private static final int FREE = -1;
+    private static final int REMOVED = -2;
+    // Multiplying by this (Fibonacci hashing) spreads the hash bits so we can take the slot from the high bits.
+    private static final int HASH_SPREAD = 0x9E3779B9;
+
+    // The index of the entry in each slot (or FREE/REMOVED).
+    private int[] slots;
+    private int shift;
+    // The entries, in insertion order.  A removed entry leaves a hole (with a null key) until the arrays are next rebuilt.
+    private byte[][] keys;
+    private int[] hashes;
+    private Object[] values;
+    private int entryCount;
+    private int size;
+
+    public ByteArrayMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The number of entries the map should be able to hold before it needs to grow.
+     */
+    public ByteArrayMap(int expectedSize) {
+        allocate(Integer.highestOneBit((Math.max(DEFAULT_CAPACITY, expectedSize) * 2) - 1));
+    }
+
+    /**
+     * @param key The key to hash.
+     * @return The hash of the contents of the key (the same as Arrays.hashCode()).
+     */
+    public static int hash(byte[] key) {
+        return Arrays.hashCode(key);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == this.size;
+    }
+
+    public V get(byte[] key) {
+        int slot = findSlot(key, hash(key));
+        return (FREE != slot)
+                ? valueAt(this.slots[slot])
+                : null;
+    }
+
+    public boolean containsKey(byte[] key) {
+        return FREE != findSlot(key, hash(key));
+    }
+
+    /**
+     * @return The value previously mapped to the key (null if there was none).
+     */
+    public V put(byte[] key, V value) {
+        int hash = hash(key);
+        int slot = findSlot(key, hash);
+        V previous = null;
+        if (FREE != slot) {
+            int entry = this.slots[slot];
+            previous = valueAt(entry);
+            this.values[entry] = value;
+        } else {
+            append(key, hash, value);
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the value mapped to the key, first mapping it to what the factory creates for it, if there was none.
+     * Note that the key given, not one the factory might see, is what is stored.
+     */
+    public V computeIfAbsent(byte[] key, Function<byte[], ? extends V> factory) {
+        int hash = hash(key);
+        int slot = findSlot(key, hash);
+        V value;
+        if (FREE != slot) {
+            value = valueAt(this.slots[slot]);
+        } else {
+            value = factory.apply(key);
+            append(key, hash, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return The value which was mapped to the key (null if there was none).
+     */
+    public V remove(byte[] key) {
+        int slot = findSlot(key, hash(key));
+        V previous = null;
+        if (FREE != slot) {
+            int entry = this.slots[slot];
+            previous = valueAt(entry);
+            // The slot can't be freed since it may be part of the probe sequence of another key.
+            this.slots[slot] = REMOVED;
+            this.keys[entry] = null;
+            this.values[entry] = null;
+            this.size -= 1;
+        }
+        return previous;
+    }
+
+    /**
+     * Removes all the entries, keeping the capacity the map has grown to.
+     */
+    public void clear() {
+        Arrays.fill(this.slots, FREE);
+        Arrays.fill(this.keys, 0, this.entryCount, null);
+        Arrays.fill(this.values, 0, this.entryCount, null);
+        this.entryCount = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Calls the given action for each entry, in insertion order.  The action must not modify the map.
+     */
+    public void forEach(BiConsumer<byte[], ? super V> action) {
+        for (int i = 0; i < this.entryCount; ++i) {
+            byte[] key = this.keys[i];
+            if (null != key) {
+                action.accept(key, valueAt(i));
+            }
+        }
+    }
+
+
+    /**
+     * @return The slot holding the key, or FREE if it isn't in the map.
+     */
+    private int findSlot(byte[] key, int hash) {
+        int mask = this.slots.length - 1;
+        int slot = (hash * HASH_SPREAD) >>> this.shift;
+        // There is always at least one free slot, since the table is never more than half full.
+        while (true) {
+            int entry = this.slots[slot];
+            if (FREE == entry) {
+                return FREE;
+            }
+            if ((entry >= 0) && (hash == this.hashes[entry]) && Arrays.equals(key, this.keys[entry])) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void append(byte[] key, int hash, V value) {
+        if (this.entryCount == this.keys.length) {
+            rebuild();
+        }
+        int entry = this.entryCount;
+        this.keys[entry] = key;
+        this.hashes[entry] = hash;
+        this.values[entry] = value;
+        this.entryCount += 1;
+        this.size += 1;
+        insertSlot(hash, entry);
+    }
+
+    private void insertSlot(int hash, int entry) {
+        int mask = this.slots.length - 1;
+        int slot = (hash * HASH_SPREAD) >>> this.shift;
+        while (FREE != this.slots[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        this.slots[slot] = entry;
+    }
+
+    /**
+     * Called when the entry arrays are full:  compacts out the holes left by removes and also doubles the capacity, unless those
+     * holes are at least half the entries.
+     */
+    private void rebuild() {
+        byte[][] oldKeys = this.keys;
+        int[] oldHashes = this.hashes;
+        Object[] oldValues = this.values;
+        int oldCount = this.entryCount;
+        int capacity = (this.size > (oldKeys.length / 2))
+                ? (oldKeys.length * 2)
+                : oldKeys.length;
+        allocate(capacity);
+        int entry = 0;
+        for (int i = 0; i < oldCount; ++i) {
+            if (null != oldKeys[i]) {
+                this.keys[entry] = oldKeys[i];
+                this.hashes[entry] = oldHashes[i];
+                this.values[entry] = oldValues[i];
+                insertSlot(oldHashes[i], entry);
+                entry += 1;
+            }
+        }
+        this.entryCount = entry;
+    }
+
+    private void allocate(int capacity) {
+        // The table has twice as many slots as there can be entries, so it is never more than half full.
+        this.slots = new int[capacity * 2];
+        Arrays.fill(this.slots, FREE);
+        this.shift = Integer.numberOfLeadingZeros(this.slots.length) + 1;
+        this.keys = new byte[capacity][];
+        this.hashes = new int[capacity];
+        this.values = new Object[capacity];
+        this.entryCount = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int entry) {
+        return (V) this.values[entry];
+    }
+}
@@ -18,6 +18,14 @@ public final class ByteArrayWrapper
         this.data = data;
     }
 
+    /**
+     * @return The wrapped array (not a copy, so it must not be modified while this wrapper is used as a key).
+     */
+    public byte[] unwrap()
+    {
+        return this.data;
+    }
+
     @Override
     public boolean equals(Object object)
     {
@@ -36,6 +36,14 @@ public class SoftCache<K, V> {
         RuntimeAssertionError.assertTrue(null == previous);
     }
 
+    /**
+     * Like checkin() but tolerates the key already being present, in which case the existing value is kept and the given one dropped.
+     * This is for consumers which can legitimately race to check in the same key (each having checked out its own copy).
+     */
+    public void checkinIfAbsent(K key, V value) {
+        this.underlyingMap.putIfAbsent(key, new SoftReference<>(value));
+    }
+
     public void removeKeyIf(Predicate<K> condition){
         this.underlyingMap.keySet().removeIf(condition);
     }
@@ -0,0 +1,102 @@
+package org.aion.data;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.aion.avm.core.util.ByteArrayWrapper;
+
+
+/**
+ * An account in a BTreeDataStore:  this is just a view over the store, by address.
+ * Since the store keeps keys ordered, this can also iterate the application key-value store in key order, or just the keys with a
+ * given prefix, without reading anything else.
+ */
+public class BTreeAccountStore implements IAccountStore {
+    private final BTreeDataStore store;
+    private final byte[] address;
+    // The prefix shared by all the application data keys of this account.
+    private final byte[] dataPrefix;
+
+    BTreeAccountStore(BTreeDataStore store, byte[] address) {
+        this.store = store;
+        this.address = address;
+        this.dataPrefix = BTreeDataStore.keyFor(address, BTreeDataStore.KIND_DATA, BTreeDataStore.EMPTY);
+    }
+
+    @Override
+    public byte[] getCode() {
+        return this.store.get(BTreeDataStore.keyFor(this.address, BTreeDataStore.KIND_CODE, BTreeDataStore.EMPTY));
+    }
+
+    @Override
+    public void setCode(byte[] code) {
+        this.store.put(BTreeDataStore.keyFor(this.address, BTreeDataStore.KIND_CODE, BTreeDataStore.EMPTY), code);
+    }
+
+    @Override
+    public BigInteger getBalance() {
+        byte[] data = this.store.get(BTreeDataStore.keyFor(this.address, BTreeDataStore.KIND_BALANCE, BTreeDataStore.EMPTY));
+        return (null != data)
+                ? new BigInteger(data)
+                : BigInteger.ZERO;
+    }
+
+    @Override
+    public void setBalance(BigInteger balance) {
+        this.store.put(BTreeDataStore.keyFor(this.address, BTreeDataStore.KIND_BALANCE, BTreeDataStore.EMPTY), balance.toByteArray());
+    }
+
+    @Override
+    public long getNonce() {
+        byte[] data = this.store.get(BTreeDataStore.keyFor(this.address, BTreeDataStore.KIND_NONCE, BTreeDataStore.EMPTY));
+        return (null != data)
+                ? ByteBuffer.wrap(data).getLong()
+                : 0L;
+    }
+
+    @Override
+    public void setNonce(long nonce) {
+        byte[] data = ByteBuffer.allocate(Long.BYTES).putLong(nonce).array();
+        this.store.put(BTreeDataStore.keyFor(this.address, BTreeDataStore.KIND_NONCE, BTreeDataStore.EMPTY), data);
+    }
+
+    @Override
+    public byte[] getData(byte[] key) {
+        return this.store.get(BTreeDataStore.keyFor(this.address, BTreeDataStore.KIND_DATA, key));
+    }
+
+    @Override
+    public void setData(byte[] key, byte[] value) {
+        this.store.put(BTreeDataStore.keyFor(this.address, BTreeDataStore.KIND_DATA, key), value);
+    }
+
+    /**
+     * @return The entries in the account's application key-value store, in (unsigned) key order.
+     */
+    @Override
+    public Map<ByteArrayWrapper, byte[]> getStorageEntries() {
+        Map<ByteArrayWrapper, byte[]> result = new LinkedHashMap<>();
+        forEachData(BTreeDataStore.EMPTY, (key, value) -> result.put(new ByteArrayWrapper(key), value));
+        return result;
+    }
+
+    /**
+     * Calls the consumer with each key (and its value) in the account's application key-value store which starts with the given
+     * prefix, in (unsigned) key order.  The consumer must not modify the store.
+     *
+     * @param prefix The prefix of the keys to visit (empty, to visit them all).
+     * @param consumer Called with each key and value.
+     */
+    public void forEachData(byte[] prefix, BiConsumer<byte[], byte[]> consumer) {
+        byte[] fullPrefix = BTreeDataStore.keyFor(this.address, BTreeDataStore.KIND_DATA, prefix);
+        int keyStart = this.dataPrefix.length;
+        this.store.scan(fullPrefix, (fullKey, value) -> {
+            byte[] key = new byte[fullKey.length - keyStart];
+            System.arraycopy(fullKey, keyStart, key, 0, key.length);
+            consumer.accept(key, value);
+        });
+    }
+}
@@ -0,0 +1,634 @@
+package org.aion.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.aion.avm.internal.RuntimeAssertionError;
+
+
+/**
+ * An IDataStore which keeps all of its accounts in a single B+tree, in a memory-mapped file of fixed-size pages.  This is meant for
+ * read-heavy workloads:  a lookup walks the tree within the mapped pages (so, once they are in the page cache, it is just memory
+ * accesses) and the value is copied out once, into the array returned.
+ *
+ * Every value is stored under a key made of the account address (prefixed by its length), a byte for the kind of value and, for
+ * application data, the storage key.  Since the keys are ordered (unsigned, lexicographically), an account's values are contiguous
+ * and its storage can be iterated in key order or scanned by key prefix (see BTreeAccountStore).
+ *
+ * Page 0 is the header.  Each node page starts with its kind, its cell count and a link (the next leaf, for a leaf, or the leftmost
+ * child, for a branch), followed by an array of cell offsets, in key order, and the cells.  A leaf cell holds the key and either the
+ * value or, if it is too large to keep inline, the length and the first page of a chain of overflow pages.  A branch cell holds a
+ * key and the child with the keys at least as large as it.
+ * Writes decode the one node they change, rewrite it in place and split it if it no longer fits.  Nodes are never merged, so
+ * deleting leaves underfull (or empty) leaves behind, but freed overflow pages are reused.
+ * NOTE:  Nothing is forced to disk until sync() or close() is called, and there is no journal, so a crash can leave a corrupt file.
+ */
+public class BTreeDataStore implements IDataStore {
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int MIN_PAGE_SIZE = 1024;
+    public static final int MAX_PAGE_SIZE = 64 * 1024;
+
+    private static final int MAGIC = 0x41564d42;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_PAGE_SIZE = 8;
+    private static final int HEADER_ROOT = 12;
+    private static final int HEADER_PAGE_COUNT = 16;
+    private static final int HEADER_FREE_LIST = 20;
+    // (page 0 is the header, so it can double as "no page").
+    private static final int NO_PAGE = 0;
+    private static final int INITIAL_MAPPED_PAGES = 16;
+
+    private static final byte NODE_LEAF = 1;
+    private static final byte NODE_BRANCH = 2;
+    private static final int NODE_KIND = 0;
+    private static final int NODE_COUNT = 1;
+    private static final int NODE_LINK = 3;
+    private static final int NODE_HEADER_SIZE = 7;
+    private static final int SLOT_SIZE = Character.BYTES;
+
+    private static final byte VALUE_INLINE = 0;
+    private static final byte VALUE_OVERFLOW = 1;
+    // The kind byte and the length (plus the first page, for overflow).
+    private static final int VALUE_HEADER_SIZE = 1 + Integer.BYTES;
+    private static final int OVERFLOW_HEADER_SIZE = Integer.BYTES;
+
+    static final byte KIND_ACCOUNT = 0;
+    static final byte KIND_CODE = 1;
+    static final byte KIND_BALANCE = 2;
+    static final byte KIND_NONCE = 3;
+    static final byte KIND_DATA = 4;
+    static final byte[] EMPTY = new byte[0];
+
+    private final FileChannel channel;
+    private final int pageSize;
+    // These bounds mean every cell is at most a quarter of a page, so that a node which overflows can always be split in 2.
+    private final int maxKeySize;
+    private final int maxInlineValueSize;
+    private MappedByteBuffer map;
+    private int rootPage;
+    private int pageCount;
+    private int freeListHead;
+
+    public BTreeDataStore(File file) {
+        this(file, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Opens the store in the given file, creating it if it doesn't exist.
+     *
+     * @param file The file to store the tree in.
+     * @param pageSize The page size (a power of 2 between MIN_PAGE_SIZE and MAX_PAGE_SIZE) which must match the existing file, if
+     * there is one.
+     */
+    public BTreeDataStore(File file, int pageSize) {
+        if ((pageSize < MIN_PAGE_SIZE) || (pageSize > MAX_PAGE_SIZE) || (0 != (pageSize & (pageSize - 1)))) {
+            throw new IllegalArgumentException("Page size must be a power of 2 between " + MIN_PAGE_SIZE + " and " + MAX_PAGE_SIZE);
+        }
+        this.pageSize = pageSize;
+        this.maxKeySize = pageSize / 8;
+        this.maxInlineValueSize = pageSize / 8;
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (0L == this.channel.size()) {
+                this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0L, (long) INITIAL_MAPPED_PAGES * pageSize);
+                this.map.putInt(HEADER_MAGIC, MAGIC);
+                this.map.putInt(HEADER_VERSION, FORMAT_VERSION);
+                this.map.putInt(HEADER_PAGE_SIZE, pageSize);
+                this.rootPage = 1;
+                this.pageCount = 2;
+                this.freeListHead = NO_PAGE;
+                writeNode(this.rootPage, NODE_LEAF, NO_PAGE, new ArrayList<>(), new ArrayList<>());
+                writeHeader();
+            } else {
+                this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0L, this.channel.size());
+                if ((MAGIC != this.map.getInt(HEADER_MAGIC)) || (FORMAT_VERSION != this.map.getInt(HEADER_VERSION))) {
+                    throw new IllegalStateException("Not a B+tree store of a supported version: " + file);
+                }
+                if (pageSize != this.map.getInt(HEADER_PAGE_SIZE)) {
+                    throw new IllegalArgumentException("Store was created with a page size of " + this.map.getInt(HEADER_PAGE_SIZE));
+                }
+                this.rootPage = this.map.getInt(HEADER_ROOT);
+                this.pageCount = this.map.getInt(HEADER_PAGE_COUNT);
+                this.freeListHead = this.map.getInt(HEADER_FREE_LIST);
+            }
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+    }
+
+    @Override
+    public synchronized IAccountStore openAccount(byte[] address) {
+        return (null != get(keyFor(address, KIND_ACCOUNT, EMPTY)))
+                ? new BTreeAccountStore(this, address)
+                : null;
+    }
+
+    @Override
+    public synchronized IAccountStore createAccount(byte[] address) {
+        if ((null == address) || (0 == address.length) || (address.length > 255)) {
+            throw new IllegalArgumentException("Address length incorrect (must be between 1 and 255)");
+        }
+        byte[] accountKey = keyFor(address, KIND_ACCOUNT, EMPTY);
+        BTreeAccountStore created = null;
+        if (null == get(accountKey)) {
+            put(accountKey, EMPTY);
+            created = new BTreeAccountStore(this, address);
+        }
+        return created;
+    }
+
+    @Override
+    public synchronized void deleteAccount(byte[] address) {
+        List<byte[]> keys = new ArrayList<>();
+        scan(accountPrefix(address), (key, value) -> keys.add(key));
+        for (byte[] key : keys) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Forces everything written so far to disk.
+     */
+    public synchronized void sync() {
+        this.map.force();
+    }
+
+    /**
+     * Syncs and closes the file.  The store can't be used after this.
+     */
+    public synchronized void close() {
+        sync();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+    }
+
+    /**
+     * @return The number of pages in the file which are in use (or on the free list).
+     */
+    public synchronized int getPageCount() {
+        return this.pageCount;
+    }
+
+
+    static byte[] keyFor(byte[] address, byte kind, byte[] suffix) {
+        byte[] key = new byte[1 + address.length + 1 + suffix.length];
+        key[0] = (byte) address.length;
+        System.arraycopy(address, 0, key, 1, address.length);
+        key[1 + address.length] = kind;
+        System.arraycopy(suffix, 0, key, 2 + address.length, suffix.length);
+        return key;
+    }
+
+    static byte[] accountPrefix(byte[] address) {
+        byte[] prefix = new byte[1 + address.length];
+        prefix[0] = (byte) address.length;
+        System.arraycopy(address, 0, prefix, 1, address.length);
+        return prefix;
+    }
+
+    /**
+     * @return The value for the key, or null if it isn't in the tree.
+     */
+    synchronized byte[] get(byte[] key) {
+        int leaf = findLeaf(key, null);
+        int index = searchLeaf(leaf, key);
+        return (index >= 0)
+                ? readValue(valueOffset(leaf, index))
+                : null;
+    }
+
+    synchronized void put(byte[] key, byte[] value) {
+        if (key.length > this.maxKeySize) {
+            throw new IllegalArgumentException("Key too long for page size (at most " + this.maxKeySize + " bytes, including the address)");
+        }
+        Deque<Integer> path = new ArrayDeque<>();
+        int leaf = findLeaf(key, path);
+        Node node = readNode(leaf);
+        int index = node.search(key);
+        if (index >= 0) {
+            // Free the old value first so that its overflow pages can be reused for the new one.
+            freeValue(node.values.get(index));
+            node.values.set(index, writeValue(value));
+        } else {
+            node.keys.add(-(index + 1), key);
+            node.values.add(-(index + 1), writeValue(value));
+        }
+        storeNode(leaf, node, path);
+    }
+
+    synchronized void remove(byte[] key) {
+        int leaf = findLeaf(key, null);
+        Node node = readNode(leaf);
+        int index = node.search(key);
+        if (index >= 0) {
+            freeValue(node.values.get(index));
+            node.keys.remove(index);
+            node.values.remove(index);
+            // (removing can only make it smaller so this never splits).
+            writeNode(leaf, node.kind, node.link, node.keys, node.values);
+        }
+    }
+
+    /**
+     * Calls the consumer with each key (and its value) which starts with the given prefix, in key order.
+     * The consumer must not modify the store.
+     */
+    synchronized void scan(byte[] prefix, BiConsumer<byte[], byte[]> consumer) {
+        int leaf = findLeaf(prefix, null);
+        int index = searchLeaf(leaf, prefix);
+        if (index < 0) {
+            index = -(index + 1);
+        }
+        while (NO_PAGE != leaf) {
+            int base = pageBase(leaf);
+            int count = this.map.getChar(base + NODE_COUNT);
+            for (; index < count; ++index) {
+                int cell = base + cellOffset(base, index);
+                if (!keyStartsWith(cell, prefix)) {
+                    return;
+                }
+                consumer.accept(readKey(cell), readValue(valueOffset(leaf, index)));
+            }
+            leaf = this.map.getInt(base + NODE_LINK);
+            index = 0;
+        }
+    }
+
+
+    private int findLeaf(byte[] key, Deque<Integer> path) {
+        int page = this.rootPage;
+        while (NODE_BRANCH == this.map.get(pageBase(page) + NODE_KIND)) {
+            if (null != path) {
+                path.push(page);
+            }
+            page = childFor(page, key);
+        }
+        return page;
+    }
+
+    private int childFor(int page, byte[] key) {
+        int base = pageBase(page);
+        // Find the last cell whose key is at most the one we want (if there is none, it is under the leftmost child).
+        int low = 0;
+        int high = this.map.getChar(base + NODE_COUNT) - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compareKey(base + cellOffset(base, middle), key) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (found < 0) {
+            return this.map.getInt(base + NODE_LINK);
+        }
+        int cell = base + cellOffset(base, found);
+        return this.map.getInt(cell + Character.BYTES + this.map.getChar(cell));
+    }
+
+    /**
+     * @return The index of the key in the leaf or, if it isn't there, -(insertion point) - 1.
+     */
+    private int searchLeaf(int leaf, byte[] key) {
+        int base = pageBase(leaf);
+        int low = 0;
+        int high = this.map.getChar(base + NODE_COUNT) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareKey(base + cellOffset(base, middle), key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int cellOffset(int base, int index) {
+        return this.map.getChar(base + NODE_HEADER_SIZE + (index * SLOT_SIZE));
+    }
+
+    private int valueOffset(int leaf, int index) {
+        int base = pageBase(leaf);
+        int cell = base + cellOffset(base, index);
+        return cell + Character.BYTES + this.map.getChar(cell);
+    }
+
+    /**
+     * Compares the key of the cell at the given (absolute) offset with the given key, in place.
+     */
+    private int compareKey(int cell, byte[] key) {
+        int length = this.map.getChar(cell);
+        int start = cell + Character.BYTES;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; ++i) {
+            int comparison = Integer.compare(Byte.toUnsignedInt(this.map.get(start + i)), Byte.toUnsignedInt(key[i]));
+            if (0 != comparison) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private boolean keyStartsWith(int cell, byte[] prefix) {
+        int length = this.map.getChar(cell);
+        boolean matches = (length >= prefix.length);
+        for (int i = 0; matches && (i < prefix.length); ++i) {
+            matches = (this.map.get(cell + Character.BYTES + i) == prefix[i]);
+        }
+        return matches;
+    }
+
+    private byte[] readKey(int cell) {
+        return readBytes(cell + Character.BYTES, this.map.getChar(cell));
+    }
+
+    private byte[] readValue(int offset) {
+        byte kind = this.map.get(offset);
+        int length = this.map.getInt(offset + 1);
+        if (VALUE_INLINE == kind) {
+            return readBytes(offset + VALUE_HEADER_SIZE, length);
+        }
+        byte[] value = new byte[length];
+        int page = this.map.getInt(offset + VALUE_HEADER_SIZE);
+        int copied = 0;
+        while (copied < length) {
+            int base = pageBase(page);
+            int chunk = Math.min(length - copied, this.pageSize - OVERFLOW_HEADER_SIZE);
+            ByteBuffer source = this.map.duplicate();
+            source.position(base + OVERFLOW_HEADER_SIZE);
+            source.get(value, copied, chunk);
+            copied += chunk;
+            page = this.map.getInt(base);
+        }
+        return value;
+    }
+
+    private byte[] readBytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = this.map.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Encodes the value as it is stored in a leaf cell, first writing it to a chain of overflow pages if it is too large.
+     */
+    private byte[] writeValue(byte[] value) {
+        ByteBuffer cell;
+        if ((VALUE_HEADER_SIZE + value.length) <= this.maxInlineValueSize) {
+            cell = ByteBuffer.allocate(VALUE_HEADER_SIZE + value.length);
+            cell.put(VALUE_INLINE).putInt(value.length).put(value);
+        } else {
+            // Write the chain backward so each page can link to the next.
+            int chunkSize = this.pageSize - OVERFLOW_HEADER_SIZE;
+            int next = NO_PAGE;
+            for (int start = ((value.length - 1) / chunkSize) * chunkSize; start >= 0; start -= chunkSize) {
+                int page = allocatePage();
+                int base = pageBase(page);
+                this.map.putInt(base, next);
+                ByteBuffer target = this.map.duplicate();
+                target.position(base + OVERFLOW_HEADER_SIZE);
+                target.put(value, start, Math.min(chunkSize, value.length - start));
+                next = page;
+            }
+            cell = ByteBuffer.allocate(VALUE_HEADER_SIZE + Integer.BYTES);
+            cell.put(VALUE_OVERFLOW).putInt(value.length).putInt(next);
+        }
+        return cell.array();
+    }
+
+    private void freeValue(byte[] valueCell) {
+        ByteBuffer cell = ByteBuffer.wrap(valueCell);
+        if (VALUE_OVERFLOW == cell.get()) {
+            cell.getInt();
+            int page = cell.getInt();
+            while (NO_PAGE != page) {
+                int next = this.map.getInt(pageBase(page));
+                freePage(page);
+                page = next;
+            }
+        }
+    }
+
+    private Node readNode(int page) {
+        int base = pageBase(page);
+        Node node = new Node(this.map.get(base + NODE_KIND), this.map.getInt(base + NODE_LINK));
+        int count = this.map.getChar(base + NODE_COUNT);
+        for (int i = 0; i < count; ++i) {
+            int cell = base + cellOffset(base, i);
+            int keyLength = this.map.getChar(cell);
+            node.keys.add(readBytes(cell + Character.BYTES, keyLength));
+            int valueStart = cell + Character.BYTES + keyLength;
+            int valueLength;
+            if (NODE_BRANCH == node.kind) {
+                valueLength = Integer.BYTES;
+            } else {
+                valueLength = (VALUE_INLINE == this.map.get(valueStart))
+                        ? (VALUE_HEADER_SIZE + this.map.getInt(valueStart + 1))
+                        : (VALUE_HEADER_SIZE + Integer.BYTES);
+            }
+            node.values.add(readBytes(valueStart, valueLength));
+        }
+        return node;
+    }
+
+    /**
+     * Writes the node back to its page, splitting it (and propagating the split up the given path of branches) if it doesn't fit.
+     */
+    private void storeNode(int page, Node node, Deque<Integer> path) {
+        if (sizeOf(node.keys, node.values, 0, node.keys.size()) <= this.pageSize) {
+            writeNode(page, node.kind, node.link, node.keys, node.values);
+            return;
+        }
+        int split = splitPoint(node);
+        int rightPage = allocatePage();
+        byte[] separator = node.keys.get(split);
+        List<byte[]> leftKeys = node.keys.subList(0, split);
+        List<byte[]> leftValues = node.values.subList(0, split);
+        if (NODE_LEAF == node.kind) {
+            writeNode(rightPage, NODE_LEAF, node.link, node.keys.subList(split, node.keys.size()), node.values.subList(split, node.values.size()));
+            writeNode(page, NODE_LEAF, rightPage, leftKeys, leftValues);
+        } else {
+            // The separator moves up, so its child becomes the leftmost child of the right node.
+            int middleChild = ByteBuffer.wrap(node.values.get(split)).getInt();
+            writeNode(rightPage, NODE_BRANCH, middleChild, node.keys.subList(split + 1, node.keys.size()), node.values.subList(split + 1, node.values.size()));
+            writeNode(page, NODE_BRANCH, node.link, leftKeys, leftValues);
+        }
+
+        byte[] childCell = ByteBuffer.allocate(Integer.BYTES).putInt(rightPage).array();
+        if (path.isEmpty()) {
+            int newRoot = allocatePage();
+            List<byte[]> keys = new ArrayList<>();
+            List<byte[]> children = new ArrayList<>();
+            keys.add(separator);
+            children.add(childCell);
+            writeNode(newRoot, NODE_BRANCH, page, keys, children);
+            this.rootPage = newRoot;
+            writeHeader();
+        } else {
+            int parentPage = path.pop();
+            Node parent = readNode(parentPage);
+            int index = -(parent.search(separator) + 1);
+            // (the separator is the first key of a new node so it can't already be in the parent).
+            RuntimeAssertionError.assertTrue(index >= 0);
+            parent.keys.add(index, separator);
+            parent.values.add(index, childCell);
+            storeNode(parentPage, parent, path);
+        }
+    }
+
+    private int splitPoint(Node node) {
+        int total = sizeOf(node.keys, node.values, 0, node.keys.size());
+        int size = NODE_HEADER_SIZE;
+        int split = 1;
+        for (int i = 0; i < node.keys.size() - 1; ++i) {
+            size += SLOT_SIZE + Character.BYTES + node.keys.get(i).length + node.values.get(i).length;
+            if (size >= (total / 2)) {
+                split = Math.max(1, i);
+                break;
+            }
+        }
+        return split;
+    }
+
+    private static int sizeOf(List<byte[]> keys, List<byte[]> values, int start, int end) {
+        int size = NODE_HEADER_SIZE;
+        for (int i = start; i < end; ++i) {
+            size += SLOT_SIZE + Character.BYTES + keys.get(i).length + values.get(i).length;
+        }
+        return size;
+    }
+
+    private void writeNode(int page, byte kind, int link, List<byte[]> keys, List<byte[]> values) {
+        RuntimeAssertionError.assertTrue(sizeOf(keys, values, 0, keys.size()) <= this.pageSize);
+        int base = pageBase(page);
+        int count = keys.size();
+        this.map.put(base + NODE_KIND, kind);
+        this.map.putChar(base + NODE_COUNT, (char) count);
+        this.map.putInt(base + NODE_LINK, link);
+        ByteBuffer target = this.map.duplicate();
+        int cell = NODE_HEADER_SIZE + (count * SLOT_SIZE);
+        for (int i = 0; i < count; ++i) {
+            byte[] key = keys.get(i);
+            byte[] value = values.get(i);
+            this.map.putChar(base + NODE_HEADER_SIZE + (i * SLOT_SIZE), (char) cell);
+            this.map.putChar(base + cell, (char) key.length);
+            target.position(base + cell + Character.BYTES);
+            target.put(key);
+            target.put(value);
+            cell += Character.BYTES + key.length + value.length;
+        }
+    }
+
+    private int allocatePage() {
+        int page;
+        if (NO_PAGE != this.freeListHead) {
+            page = this.freeListHead;
+            this.freeListHead = this.map.getInt(pageBase(page));
+        } else {
+            page = this.pageCount;
+            this.pageCount += 1;
+            ensureMapped(this.pageCount);
+        }
+        writeHeader();
+        return page;
+    }
+
+    private void freePage(int page) {
+        this.map.putInt(pageBase(page), this.freeListHead);
+        this.freeListHead = page;
+        writeHeader();
+    }
+
+    private void ensureMapped(int pages) {
+        long required = (long) pages * this.pageSize;
+        if (required > this.map.capacity()) {
+            long size = Math.max(required, 2L * this.map.capacity());
+            // A single mapping is limited to 2 GiB.
+            if (size > Integer.MAX_VALUE) {
+                size = required;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("B+tree store is full");
+            }
+            try {
+                this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+            } catch (IOException e) {
+                // This implementation doesn't handle exceptions.
+                throw RuntimeAssertionError.unexpected(e);
+            }
+        }
+    }
+
+    private void writeHeader() {
+        this.map.putInt(HEADER_ROOT, this.rootPage);
+        this.map.putInt(HEADER_PAGE_COUNT, this.pageCount);
+        this.map.putInt(HEADER_FREE_LIST, this.freeListHead);
+    }
+
+    private int pageBase(int page) {
+        return page * this.pageSize;
+    }
+
+
+    /**
+     * A node decoded for modification:  for a branch, the values are the (4-byte) child pages and the link is the leftmost child.
+     */
+    private static final class Node {
+        public final byte kind;
+        public final int link;
+        public final List<byte[]> keys;
+        public final List<byte[]> values;
+
+        public Node(byte kind, int link) {
+            this.kind = kind;
+            this.link = link;
+            this.keys = new ArrayList<>();
+            this.values = new ArrayList<>();
+        }
+
+        /**
+         * @return The index of the key or, if it isn't there, -(insertion point) - 1.
+         */
+        public int search(byte[] key) {
+            int low = 0;
+            int high = this.keys.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = Arrays.compareUnsigned(this.keys.get(middle), key);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+}
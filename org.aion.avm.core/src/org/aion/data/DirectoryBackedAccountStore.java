@@ -18,11 +18,21 @@ public class DirectoryBackedAccountStore implements IAccountStore {
     private static final String FILE_NAME_CODE = "code";
     private static final String FILE_NAME_BALANCE = "balance";
     private static final String FILE_NAME_NONCE = "nonce";
-    private static final String FILE_PREFIX_KEY = "key_";
+    static final String FILE_PREFIX_KEY = "key_";
 
     private final File accountDirectory;
+    // (these are null if the account was opened directly, rather than through its store, so it has no key filter or prefetching).
+    private final DirectoryBackedDataStore store;
+    private final byte[] address;
+
     public DirectoryBackedAccountStore(File accountDirectory) {
+        this(accountDirectory, null, null);
+    }
+
+    DirectoryBackedAccountStore(File accountDirectory, DirectoryBackedDataStore store, byte[] address) {
         this.accountDirectory = accountDirectory;
+        this.store = store;
+        this.address = address;
     }
 
     @Override
@@ -67,12 +77,54 @@ public class DirectoryBackedAccountStore implements IAccountStore {
 
     @Override
     public byte[] getData(byte[] key) {
-        return readFile(fileNameForKey(key));
+        String fileName = fileNameForKey(key);
+        byte[][] prefetched = new byte[1][];
+        byte[] result;
+        if ((null != this.store) && this.store.takePrefetched(this.address, key, prefetched)) {
+            result = prefetched[0];
+        } else {
+            // If the filter says the key was never written, we don't need to go to the filesystem to find out it isn't there.
+            result = ((null == this.store) || this.store.mightContainKey(this.address, key))
+                    ? readFile(fileName)
+                    : null;
+        }
+        return result;
     }
 
     @Override
     public void setData(byte[] key, byte[] value) {
-        writeFile(fileNameForKey(key), value);
+        String fileName = fileNameForKey(key);
+        // (add to the filter first, so nobody can see the file without also seeing it in the filter).
+        if (null != this.store) {
+            this.store.discardPrefetch(this.address, key);
+            this.store.addKey(this.address, key);
+        }
+        writeFile(fileName, value);
+    }
+
+    @Override
+    public byte[][] getDataMulti(byte[][] keys) {
+        // Start reading the keys in parallel and then collect them in order (the first one is left for us to read, directly).
+        byte[][] values = new byte[keys.length][];
+        if (keys.length > 1) {
+            byte[][] rest = new byte[keys.length - 1][];
+            System.arraycopy(keys, 1, rest, 0, rest.length);
+            prefetch(rest);
+        }
+        for (int i = 0; i < keys.length; ++i) {
+            values[i] = getData(keys[i]);
+        }
+        return values;
+    }
+
+    @Override
+    public void prefetch(byte[][] keys) {
+        if (null != this.store) {
+            for (byte[] key : keys) {
+                String fileName = fileNameForKey(key);
+                this.store.prefetch(this.address, key, () -> readFile(fileName));
+            }
+        }
     }
 
     @Override
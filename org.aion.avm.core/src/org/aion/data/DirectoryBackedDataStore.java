@@ -1,36 +1,115 @@
 package org.aion.data;
 
 import java.io.File;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.aion.avm.core.util.BloomFilter;
+import org.aion.avm.core.util.ByteArrayWrapper;
 import org.aion.avm.core.util.Helpers;
 import org.aion.avm.internal.RuntimeAssertionError;
 
 
+/**
+ * An IDataStore with a directory per account and a file per value.
+ * By default, the accounts and the application data keys in the store are also added to Bloom filters (rebuilt from the directory
+ * when the store is opened) so that looking up an account or key which doesn't exist, which would otherwise cost a failed stat or file
+ * open, is usually answered without touching the filesystem.  This assumes that nothing else writes to the directory while it is open.
+ * Keys which are prefetched are read by a small pool of background threads and held until they are read (or written, which discards
+ * them), so a batch of reads costs roughly the slowest file read instead of the sum of them.  Only the most recent MAX_PREFETCHED
+ * prefetches are held:  anything older which was never read is dropped, so a caller which prefetches keys it doesn't need can't pin
+ * their values or stop later prefetches.
+ */
 public class DirectoryBackedDataStore implements IDataStore {
+    private static final String DIRECTORY_PREFIX_ACCOUNT = "account_";
+    public static final long DEFAULT_EXPECTED_ACCOUNTS = 64 * 1024;
+    public static final long DEFAULT_EXPECTED_KEYS = 1024 * 1024;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    private static final int PREFETCH_THREADS = 4;
+    // (once this many prefetches have been started since an unread one, it is dropped).
+    private static final int MAX_PREFETCHED = 4096;
+
     private final File topLevelDirectory;
+    // (these are null if the store isn't filtered).
+    private final BloomFilter accountFilter;
+    private final BloomFilter keyFilter;
+    private final AtomicLong avoidedLookups;
+    // The prefetched reads not yet consumed, by account and then key.
+    private final Map<ByteArrayWrapper, Map<ByteArrayWrapper, FutureTask<byte[]>>> prefetched;
+    // The most recent prefetches, oldest first (some may already have been read or discarded), and the size of that queue.
+    private final Queue<PrefetchEntry> prefetchOrder;
+    private final AtomicInteger prefetchOrderSize;
+    private final AtomicLong prefetchHits;
+    // (created on the first prefetch).
+    private ExecutorService prefetchExecutor;
+
     public DirectoryBackedDataStore(File topLevelDirectory) {
+        this(topLevelDirectory
+                , BloomFilter.forFalsePositiveRate(DEFAULT_EXPECTED_ACCOUNTS, DEFAULT_FALSE_POSITIVE_RATE)
+                , BloomFilter.forFalsePositiveRate(DEFAULT_EXPECTED_KEYS, DEFAULT_FALSE_POSITIVE_RATE));
+    }
+
+    /**
+     * Opens the store with the given (empty) filters, which are populated from what is already in the directory.
+     *
+     * @param topLevelDirectory The directory containing the accounts.
+     * @param accountFilter The filter for the account addresses, or null if lookups of accounts aren't to be filtered.
+     * @param keyFilter The filter for the application data keys, or null if lookups of keys aren't to be filtered.
+     */
+    public DirectoryBackedDataStore(File topLevelDirectory, BloomFilter accountFilter, BloomFilter keyFilter) {
         this.topLevelDirectory = topLevelDirectory;
+        this.accountFilter = accountFilter;
+        this.keyFilter = keyFilter;
+        this.avoidedLookups = new AtomicLong(0L);
+        this.prefetched = new ConcurrentHashMap<>();
+        this.prefetchOrder = new ConcurrentLinkedQueue<>();
+        this.prefetchOrderSize = new AtomicInteger(0);
+        this.prefetchHits = new AtomicLong(0L);
+        if ((null != accountFilter) || (null != keyFilter)) {
+            populateFilters();
+        }
     }
 
     @Override
     public IAccountStore openAccount(byte[] address) {
         File directory = getSubDirectory(address);
-        return directory.isDirectory()
-                ? new DirectoryBackedAccountStore(directory)
+        boolean mightExist = (null == this.accountFilter) || this.accountFilter.mightContain(address);
+        if (!mightExist) {
+            this.avoidedLookups.incrementAndGet();
+        }
+        return (mightExist && directory.isDirectory())
+                ? newAccountStore(directory, address)
                 : null;
     }
 
     @Override
     public IAccountStore createAccount(byte[] address) {
         File directory = getSubDirectory(address);
+        if (null != this.accountFilter) {
+            this.accountFilter.add(address);
+        }
         return directory.mkdir()
-                ? new DirectoryBackedAccountStore(directory)
+                ? newAccountStore(directory, address)
                 : null;
     }
 
     @Override
     public void deleteAccount(byte[] address) {
         File directory = getSubDirectory(address);
+        discardPrefetches(address);
+        // (like the in-memory store, deleting an account which doesn't exist does nothing).
+        if (!directory.exists()) {
+            return;
+        }
         for (File file : directory.listFiles()) {
             // The account structure is flat so this better be just a regular file.
             RuntimeAssertionError.assertTrue(file.isFile());
@@ -41,6 +120,177 @@ public class DirectoryBackedDataStore implements IDataStore {
         RuntimeAssertionError.assertTrue(didDelete);
     }
 
+    /**
+     * @return The filter for account addresses (null if there is none), for reporting its size and false positive rate.
+     */
+    public BloomFilter getAccountFilter() {
+        return this.accountFilter;
+    }
+
+    /**
+     * @return The filter for application data keys (null if there is none), for reporting its size and false positive rate.
+     */
+    public BloomFilter getKeyFilter() {
+        return this.keyFilter;
+    }
+
+    /**
+     * @return The number of lookups of accounts or keys which the filters answered without touching the filesystem.
+     */
+    public long getAvoidedLookupCount() {
+        return this.avoidedLookups.get();
+    }
+
+    /**
+     * @return The number of reads which were answered by an earlier prefetch.
+     */
+    public long getPrefetchHitCount() {
+        return this.prefetchHits.get();
+    }
+
+
+    boolean mightContainKey(byte[] address, byte[] key) {
+        boolean mightContain = (null == this.keyFilter) || this.keyFilter.mightContain(filterKey(address, key));
+        if (!mightContain) {
+            this.avoidedLookups.incrementAndGet();
+        }
+        return mightContain;
+    }
+
+    void addKey(byte[] address, byte[] key) {
+        if (null != this.keyFilter) {
+            this.keyFilter.add(filterKey(address, key));
+        }
+    }
+
+    /**
+     * Starts reading the given key in the background, unless it is already being read or the filter knows it is missing (in which case
+     * the read will be avoided, anyway).  If this makes too many prefetches outstanding, the oldest is dropped.
+     */
+    void prefetch(byte[] address, byte[] key, Callable<byte[]> read) {
+        boolean mightContain = (null == this.keyFilter) || this.keyFilter.mightContain(filterKey(address, key));
+        if (mightContain) {
+            ByteArrayWrapper addressWrapper = new ByteArrayWrapper(address);
+            ByteArrayWrapper keyWrapper = new ByteArrayWrapper(key);
+            Map<ByteArrayWrapper, FutureTask<byte[]>> account = this.prefetched.computeIfAbsent(addressWrapper, (ignored) -> new ConcurrentHashMap<>());
+            FutureTask<byte[]> task = new FutureTask<>(read);
+            if (null == account.putIfAbsent(keyWrapper, task)) {
+                this.prefetchOrder.add(new PrefetchEntry(addressWrapper, keyWrapper, task));
+                if (this.prefetchOrderSize.incrementAndGet() > MAX_PREFETCHED) {
+                    dropOldestPrefetch();
+                }
+                getPrefetchExecutor().execute(task);
+            }
+        }
+    }
+
+    /**
+     * Removes the prefetched read of the given key, if there is one, and returns its value (waiting for it or, if it hasn't started,
+     * running it on the calling thread).
+     *
+     * @return True if the key had been prefetched, in which case the value is stored in valueOut[0].
+     */
+    boolean takePrefetched(byte[] address, byte[] key, byte[][] valueOut) {
+        FutureTask<byte[]> task = removePrefetch(address, key);
+        if (null != task) {
+            this.prefetchHits.incrementAndGet();
+            // (this does nothing if the task has already been run).
+            task.run();
+            try {
+                valueOut[0] = task.get();
+            } catch (InterruptedException | ExecutionException e) {
+                // This implementation doesn't handle exceptions.
+                throw RuntimeAssertionError.unexpected(e);
+            }
+        }
+        return (null != task);
+    }
+
+    /**
+     * Discards the prefetched read of the given key, which is about to be written (so the read may see the old value).
+     */
+    void discardPrefetch(byte[] address, byte[] key) {
+        FutureTask<byte[]> task = removePrefetch(address, key);
+        if (null != task) {
+            task.cancel(false);
+        }
+    }
+
+    private FutureTask<byte[]> removePrefetch(byte[] address, byte[] key) {
+        Map<ByteArrayWrapper, FutureTask<byte[]>> account = this.prefetched.get(new ByteArrayWrapper(address));
+        // (its entry stays in prefetchOrder until it ages out, where it will be ignored since it is no longer in the map).
+        return (null != account)
+                ? account.remove(new ByteArrayWrapper(key))
+                : null;
+    }
+
+    private void dropOldestPrefetch() {
+        PrefetchEntry oldest = this.prefetchOrder.poll();
+        if (null != oldest) {
+            this.prefetchOrderSize.decrementAndGet();
+            Map<ByteArrayWrapper, FutureTask<byte[]>> account = this.prefetched.get(oldest.address);
+            // (only if this prefetch is still there - it may have been read or replaced by a later prefetch of the same key).
+            if ((null != account) && account.remove(oldest.key, oldest.task)) {
+                oldest.task.cancel(false);
+            }
+        }
+    }
+
+    private void discardPrefetches(byte[] address) {
+        Map<ByteArrayWrapper, FutureTask<byte[]>> account = this.prefetched.remove(new ByteArrayWrapper(address));
+        if (null != account) {
+            for (FutureTask<byte[]> task : account.values()) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private synchronized ExecutorService getPrefetchExecutor() {
+        if (null == this.prefetchExecutor) {
+            // (daemon threads, since nothing tells the store it is no longer needed).
+            this.prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS, (runnable) -> {
+                Thread thread = new Thread(runnable, "DirectoryBackedDataStore prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return this.prefetchExecutor;
+    }
+
+    private IAccountStore newAccountStore(File directory, byte[] address) {
+        return new DirectoryBackedAccountStore(directory, this, address);
+    }
+
+    private void populateFilters() {
+        File[] accounts = this.topLevelDirectory.listFiles();
+        // (the directory may not exist yet, in which case there is nothing to add).
+        if (null != accounts) {
+            for (File account : accounts) {
+                String accountName = account.getName();
+                if (account.isDirectory() && accountName.startsWith(DIRECTORY_PREFIX_ACCOUNT)) {
+                    byte[] address = Helpers.hexStringToBytes(accountName.substring(DIRECTORY_PREFIX_ACCOUNT.length()));
+                    if (null != this.accountFilter) {
+                        this.accountFilter.add(address);
+                    }
+                    if (null != this.keyFilter) {
+                        for (File file : account.listFiles()) {
+                            String fileName = file.getName();
+                            if (fileName.startsWith(DirectoryBackedAccountStore.FILE_PREFIX_KEY)) {
+                                addKey(address, Helpers.hexStringToBytes(fileName.substring(DirectoryBackedAccountStore.FILE_PREFIX_KEY.length())));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] filterKey(byte[] address, byte[] key) {
+        byte[] filterKey = new byte[address.length + key.length];
+        System.arraycopy(address, 0, filterKey, 0, address.length);
+        System.arraycopy(key, 0, filterKey, address.length, key.length);
+        return filterKey;
+    }
 
     private File getSubDirectory(byte[] address) {
         // We need to make sure that this address isn't going to hit some limit (we can tighten this to the specific address length but not all
@@ -48,7 +298,20 @@ public class DirectoryBackedDataStore implements IDataStore {
         if ((null == address) || (address.length < 4) || (address.length > 32)) {
             throw new IllegalArgumentException("Address length incorrect (must be between 4 and 32)");
         }
-        String directoryName = "account_" + Helpers.bytesToHexString(address);
+        String directoryName = DIRECTORY_PREFIX_ACCOUNT + Helpers.bytesToHexString(address);
         return new File(this.topLevelDirectory, directoryName);
     }
+
+
+    private static class PrefetchEntry {
+        public final ByteArrayWrapper address;
+        public final ByteArrayWrapper key;
+        public final FutureTask<byte[]> task;
+
+        public PrefetchEntry(ByteArrayWrapper address, ByteArrayWrapper key, FutureTask<byte[]> task) {
+            this.address = address;
+            this.key = key;
+            this.task = task;
+        }
+    }
 }
@@ -56,6 +56,29 @@ public interface IAccountStore {
      */
     public void setData(byte[] key, byte[] value);
 
+    /**
+     * Reads several keys of the application key-value store, at once.
+     *
+     * @param keys The keys to read.
+     * @return The values for the keys, in the same order (null for any key which is not found).
+     */
+    public default byte[][] getDataMulti(byte[][] keys) {
+        byte[][] values = new byte[keys.length][];
+        for (int i = 0; i < keys.length; ++i) {
+            values[i] = getData(keys[i]);
+        }
+        return values;
+    }
+
+    /**
+     * A hint that the given keys are about to be read, which a store with slow reads can use to start loading them.  This must not
+     * change what any later read returns.
+     *
+     * @param keys The keys which will be read.
+     */
+    public default void prefetch(byte[][] keys) {
+    }
+
     /**
      * Used only for testing and will be removed in the future.
      * 
@@ -0,0 +1,751 @@
+package org.aion.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.aion.avm.core.util.ByteArrayMap;
+import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.avm.internal.RuntimeAssertionError;
+
+
+/**
+ * An IDataStore which keeps all of its accounts in an append-only log, rather than a file per value (as DirectoryBackedDataStore
+ * does), so that a large state doesn't mean a large number of files and reading a value is a single positional read.
+ *
+ * The log is a sequence of numbered segment files in one directory.  Every change is appended to the newest segment (the head) as
+ * a record framed by its length and a CRC32, and a new head is started once it reaches the segment size limit.  An in-memory index
+ * points at the current record for each value (except balances and nonces, which it just holds).  On startup, the index is rebuilt
+ * by replaying the segments in order:  a torn or corrupt record at the end of the head (from a crash in the middle of a write) is
+ * truncated away, so the store always recovers to a prefix of what was written.  Older segments are synced when they are sealed so
+ * they can't have a torn end.  Nothing else is synced unless sync() is called.
+ *
+ * Superseded records are garbage.  Once the log is more garbage than live data, a background thread compacts it by copying the
+ * live records of the oldest segment to the head and deleting that segment.  Compacting strictly oldest first is what makes it
+ * safe to drop the records of account deletes, since there is never an older segment left which they would need to override.
+ * NOTE:  This class is thread-safe (the compaction thread requires that) but the IAccountStore instances it returns are just
+ * views over it, by address, so they observe any later delete or re-create of their account.
+ */
+public class LogStructuredDataStore implements IDataStore {
+    public static final int DEFAULT_SEGMENT_SIZE_LIMIT = 16 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // Each segment starts with this magic number and the format version.
+    private static final int SEGMENT_MAGIC = 0x41564d4c;
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 2 * Integer.BYTES;
+    // Each record starts with the length of its body and the CRC32 of that body.
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    // The record body is:  type (1 byte), address length (1 byte), address, key length (int), key, value length (int), value.
+    // Records which don't need a key or value have empty ones.
+    private static final byte RECORD_CREATE = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final byte RECORD_CODE = 3;
+    private static final byte RECORD_BALANCE = 4;
+    private static final byte RECORD_NONCE = 5;
+    private static final byte RECORD_DATA = 6;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final File directory;
+    private final int segmentSizeLimit;
+    // Oldest first:  the last one is the head.
+    private final ArrayDeque<Segment> segments;
+    private final ByteArrayMap<AccountIndex> accounts;
+    private long totalBytes;
+    private long liveBytes;
+
+    // Held for the duration of a compaction pass, so that only one runs at a time.
+    private final Object compactionLock;
+    private Thread compactionThread;
+    private boolean isCompactionRequested;
+    private boolean isClosed;
+
+    public LogStructuredDataStore(File directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE_LIMIT);
+    }
+
+    /**
+     * Opens the store in the given directory, recovering whatever is already there.
+     *
+     * @param directory The directory holding the segments (must already exist).
+     * @param segmentSizeLimit The size at which a segment is sealed and a new one started.
+     */
+    public LogStructuredDataStore(File directory, int segmentSizeLimit) {
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        if (segmentSizeLimit <= SEGMENT_HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size limit too small: " + segmentSizeLimit);
+        }
+        this.directory = directory;
+        this.segmentSizeLimit = segmentSizeLimit;
+        this.segments = new ArrayDeque<>();
+        this.accounts = new ByteArrayMap<>();
+        this.compactionLock = new Object();
+        recover();
+    }
+
+    @Override
+    public synchronized IAccountStore openAccount(byte[] address) {
+        return this.accounts.containsKey(address)
+                ? new AccountView(address)
+                : null;
+    }
+
+    @Override
+    public synchronized IAccountStore createAccount(byte[] address) {
+        checkAddress(address);
+        AccountView created = null;
+        if (!this.accounts.containsKey(address)) {
+            writeRecord(RECORD_CREATE, address, EMPTY, EMPTY);
+            created = new AccountView(address);
+        }
+        return created;
+    }
+
+    @Override
+    public synchronized void deleteAccount(byte[] address) {
+        if (this.accounts.containsKey(address)) {
+            writeRecord(RECORD_DELETE, address, EMPTY, EMPTY);
+        }
+    }
+
+    /**
+     * Forces everything written so far to disk.
+     */
+    public synchronized void sync() {
+        try {
+            this.segments.getLast().channel.force(false);
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+    }
+
+    /**
+     * Compacts the log right away, on the calling thread, instead of waiting for the background thread to decide to.
+     * Every segment before the current head is compacted, so everything live ends up in the head or the segments it rolls over to.
+     */
+    public void compact() {
+        int headId;
+        synchronized (this) {
+            headId = this.segments.getLast().id;
+        }
+        synchronized (this.compactionLock) {
+            while (compactOldestSegment(headId)) {
+            }
+        }
+    }
+
+    /**
+     * @return The total size of the segment files, in bytes.
+     */
+    public synchronized long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    /**
+     * @return The size of the records in the log which are still live, in bytes.
+     */
+    public synchronized long getLiveBytes() {
+        return this.liveBytes;
+    }
+
+    /**
+     * @return The number of segment files in the log.
+     */
+    public synchronized int getSegmentCount() {
+        return this.segments.size();
+    }
+
+    /**
+     * Stops the compaction thread and closes the segment files.  The store can't be used after this.
+     */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            this.isClosed = true;
+            this.notifyAll();
+            thread = this.compactionThread;
+        }
+        if (null != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                // We don't use interruption.
+                throw RuntimeAssertionError.unexpected(e);
+            }
+        }
+        synchronized (this) {
+            try {
+                for (Segment segment : this.segments) {
+                    segment.channel.close();
+                }
+            } catch (IOException e) {
+                // This implementation doesn't handle exceptions.
+                throw RuntimeAssertionError.unexpected(e);
+            }
+        }
+    }
+
+
+    private void recover() {
+        File[] files = this.directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        int[] ids = new int[files.length];
+        for (int i = 0; i < files.length; ++i) {
+            String name = files[i].getName();
+            ids[i] = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        }
+        Arrays.sort(ids);
+        for (int i = 0; i < ids.length; ++i) {
+            Segment segment = openSegment(ids[i]);
+            this.segments.addLast(segment);
+            replaySegment(segment, (ids.length - 1) == i);
+        }
+        if (this.segments.isEmpty()) {
+            Segment head = openSegment(0);
+            writeSegmentHeader(head);
+            this.segments.addLast(head);
+        }
+    }
+
+    private void replaySegment(Segment segment, boolean isHead) {
+        try {
+            long fileSize = segment.channel.size();
+            if (fileSize < SEGMENT_HEADER_SIZE) {
+                // We must have crashed while creating the segment.
+                if (!isHead) {
+                    throw new IllegalStateException("Truncated segment: " + segment.file);
+                }
+                segment.channel.truncate(0L);
+                writeSegmentHeader(segment);
+                return;
+            }
+            ByteBuffer header = readFully(segment, 0L, SEGMENT_HEADER_SIZE);
+            if ((SEGMENT_MAGIC != header.getInt()) || (FORMAT_VERSION != header.getInt())) {
+                throw new IllegalStateException("Not a segment of a supported version: " + segment.file);
+            }
+            segment.size = SEGMENT_HEADER_SIZE;
+            this.totalBytes += SEGMENT_HEADER_SIZE;
+
+            long position = SEGMENT_HEADER_SIZE;
+            ByteBuffer body = null;
+            while (position < fileSize) {
+                body = (fileSize - position >= RECORD_HEADER_SIZE)
+                        ? readRecordBody(segment, position, fileSize)
+                        : null;
+                if (null == body) {
+                    break;
+                }
+                int recordSize = RECORD_HEADER_SIZE + body.remaining();
+                segment.size += recordSize;
+                this.totalBytes += recordSize;
+                applyRecord(body, new RecordLocation(segment, (int) position, recordSize));
+                position += recordSize;
+            }
+            if (position < fileSize) {
+                // Only the head can have been partially written.
+                if (!isHead) {
+                    throw new IllegalStateException("Corrupt record in " + segment.file + " at " + position);
+                }
+                segment.channel.truncate(position);
+            }
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+    }
+
+    /**
+     * @return The body of the record at the given position (positioned at its start) or null if it is truncated or corrupt.
+     */
+    private ByteBuffer readRecordBody(Segment segment, long position, long fileSize) throws IOException {
+        ByteBuffer header = readFully(segment, position, RECORD_HEADER_SIZE);
+        int length = header.getInt();
+        int crc = header.getInt();
+        ByteBuffer body = null;
+        if ((length > 0) && (length <= (fileSize - position - RECORD_HEADER_SIZE))) {
+            body = readFully(segment, position + RECORD_HEADER_SIZE, length);
+            if (crc != crcOf(body)) {
+                body = null;
+            }
+        }
+        return body;
+    }
+
+    private void writeRecord(byte type, byte[] address, byte[] key, byte[] value) {
+        int bodyLength = 1 + 1 + address.length + Integer.BYTES + key.length + Integer.BYTES + value.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bodyLength);
+        record.position(RECORD_HEADER_SIZE);
+        record.put(type);
+        record.put((byte) address.length);
+        record.put(address);
+        record.putInt(key.length);
+        record.put(key);
+        record.putInt(value.length);
+        record.put(value);
+        record.position(RECORD_HEADER_SIZE);
+        int crc = crcOf(record);
+        record.putInt(0, bodyLength);
+        record.putInt(Integer.BYTES, crc);
+        record.position(0);
+        RecordLocation location = append(record);
+        record.position(RECORD_HEADER_SIZE);
+        applyRecord(record, location);
+    }
+
+    private RecordLocation append(ByteBuffer record) {
+        Segment head = this.segments.getLast();
+        if (head.size >= this.segmentSizeLimit) {
+            head = rollHead();
+        }
+        int size = record.remaining();
+        try {
+            long position = head.size;
+            while (record.hasRemaining()) {
+                position += head.channel.write(record, position);
+            }
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+        RecordLocation location = new RecordLocation(head, (int) head.size, size);
+        head.size += size;
+        this.totalBytes += size;
+        return location;
+    }
+
+    private Segment rollHead() {
+        Segment previous = this.segments.getLast();
+        try {
+            // Sealed segments must be complete, since only the head is allowed to have a torn end.
+            previous.channel.force(false);
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+        Segment head = openSegment(previous.id + 1);
+        writeSegmentHeader(head);
+        this.segments.addLast(head);
+        if (shouldCompact()) {
+            requestCompaction();
+        }
+        return head;
+    }
+
+    /**
+     * Updates the index for the record whose body is given (positioned at its start) and which is stored at the given location.
+     */
+    private void applyRecord(ByteBuffer body, RecordLocation location) {
+        byte type = body.get();
+        byte[] address = readBytes(body, Byte.toUnsignedInt(body.get()));
+        byte[] key = readBytes(body, body.getInt());
+        byte[] value = readBytes(body, body.getInt());
+        if (RECORD_DELETE == type) {
+            AccountIndex account = this.accounts.remove(address);
+            if (null != account) {
+                account.forEachLocation(this::release);
+            }
+            // (a delete is never live:  see compactOldestSegment()).
+        } else {
+            // Records can be out of order with an account's create, once compaction has moved it, so this is lazy.
+            AccountIndex account = this.accounts.computeIfAbsent(address, (ignored) -> new AccountIndex());
+            switch (type) {
+                case RECORD_CREATE:
+                    account.created = replace(account.created, location);
+                    break;
+                case RECORD_CODE:
+                    account.code = replace(account.code, location);
+                    break;
+                case RECORD_BALANCE:
+                    account.balanceRecord = replace(account.balanceRecord, location);
+                    account.balance = new BigInteger(value);
+                    break;
+                case RECORD_NONCE:
+                    account.nonceRecord = replace(account.nonceRecord, location);
+                    account.nonce = ByteBuffer.wrap(value).getLong();
+                    break;
+                case RECORD_DATA:
+                    account.data.put(key, replace(account.data.get(key), location));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown record type " + type + " in " + location.segment.file);
+            }
+        }
+    }
+
+    private RecordLocation replace(RecordLocation previous, RecordLocation next) {
+        if (null != previous) {
+            release(previous);
+        }
+        next.segment.liveBytes += next.size;
+        this.liveBytes += next.size;
+        return next;
+    }
+
+    private void release(RecordLocation location) {
+        location.segment.liveBytes -= location.size;
+        this.liveBytes -= location.size;
+    }
+
+    private byte[] readValue(RecordLocation location) {
+        try {
+            ByteBuffer body = readFully(location.segment, location.offset + RECORD_HEADER_SIZE, location.size - RECORD_HEADER_SIZE);
+            // Skip the type, address and key.
+            body.position(1);
+            int addressLength = Byte.toUnsignedInt(body.get());
+            body.position(body.position() + addressLength);
+            int keyLength = body.getInt();
+            body.position(body.position() + keyLength);
+            return readBytes(body, body.getInt());
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+    }
+
+    private boolean shouldCompact() {
+        return (this.segments.size() > 1) && ((this.totalBytes - this.liveBytes) > this.liveBytes);
+    }
+
+    private void requestCompaction() {
+        if (!this.isClosed) {
+            if (null == this.compactionThread) {
+                this.compactionThread = new Thread(this::runCompactionThread, "Log compaction: " + this.directory.getName());
+                this.compactionThread.setDaemon(true);
+                this.compactionThread.start();
+            }
+            this.isCompactionRequested = true;
+            this.notifyAll();
+        }
+    }
+
+    private void runCompactionThread() {
+        while (awaitCompactionRequest()) {
+            synchronized (this.compactionLock) {
+                while (shouldCompactNow() && compactOldestSegment(Integer.MAX_VALUE)) {
+                }
+            }
+        }
+    }
+
+    private synchronized boolean awaitCompactionRequest() {
+        while (!this.isCompactionRequested && !this.isClosed) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                // We don't use interruption.
+                throw RuntimeAssertionError.unexpected(e);
+            }
+        }
+        this.isCompactionRequested = false;
+        return !this.isClosed;
+    }
+
+    private synchronized boolean shouldCompactNow() {
+        return !this.isClosed && shouldCompact();
+    }
+
+    /**
+     * Copies the live records of the oldest segment to the head and deletes it.  Must be called under the compactionLock.
+     * Note that the copies can fill the head, sealing it, so the caller needs a bound on what it compacts (the garbage ratio or
+     * a segment id) to avoid moving the same live records around forever.
+     *
+     * @param beforeId Only compact the oldest segment if its id is lower than this.
+     * @return True if a segment was compacted, false if the oldest segment is the head or not before the given id.
+     */
+    private boolean compactOldestSegment(int beforeId) {
+        Segment oldest;
+        synchronized (this) {
+            if ((this.segments.size() < 2) || (this.segments.getFirst().id >= beforeId)) {
+                return false;
+            }
+            oldest = this.segments.getFirst();
+        }
+        // The oldest segment is sealed, so nothing writes to it, and only we remove it, so we can read it without the lock.
+        try {
+            long position = SEGMENT_HEADER_SIZE;
+            while (position < oldest.size) {
+                ByteBuffer body = readRecordBody(oldest, position, oldest.size);
+                RuntimeAssertionError.assertTrue(null != body);
+                int recordSize = RECORD_HEADER_SIZE + body.remaining();
+                synchronized (this) {
+                    if (isLive(body, oldest, (int) position)) {
+                        ByteBuffer record = ByteBuffer.allocate(recordSize);
+                        record.putInt(body.remaining());
+                        record.putInt(crcOf(body));
+                        record.put(body.duplicate());
+                        record.position(0);
+                        RecordLocation location = append(record);
+                        applyRecord(body, location);
+                    }
+                }
+                position += recordSize;
+            }
+            synchronized (this) {
+                // The copies must be on disk before the originals are gone.
+                this.segments.getLast().channel.force(false);
+                RuntimeAssertionError.assertTrue(oldest == this.segments.removeFirst());
+                RuntimeAssertionError.assertTrue(0L == oldest.liveBytes);
+                this.totalBytes -= oldest.size;
+                oldest.channel.close();
+                boolean didDelete = oldest.file.delete();
+                RuntimeAssertionError.assertTrue(didDelete);
+            }
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the index still points at the record with the given body at the given location (leaves body unchanged).
+     */
+    private boolean isLive(ByteBuffer body, Segment segment, int offset) {
+        ByteBuffer reader = body.duplicate();
+        byte type = reader.get();
+        byte[] address = readBytes(reader, Byte.toUnsignedInt(reader.get()));
+        byte[] key = readBytes(reader, reader.getInt());
+        AccountIndex account = this.accounts.get(address);
+        RecordLocation current = null;
+        if (null != account) {
+            switch (type) {
+                case RECORD_CREATE:
+                    current = account.created;
+                    break;
+                case RECORD_CODE:
+                    current = account.code;
+                    break;
+                case RECORD_BALANCE:
+                    current = account.balanceRecord;
+                    break;
+                case RECORD_NONCE:
+                    current = account.nonceRecord;
+                    break;
+                case RECORD_DATA:
+                    current = account.data.get(key);
+                    break;
+                default:
+                    // Deletes are never live.
+                    break;
+            }
+        }
+        return (null != current) && (segment == current.segment) && (offset == current.offset);
+    }
+
+    private Segment openSegment(int id) {
+        File file = new File(this.directory, String.format("%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(id, file, channel);
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+    }
+
+    private void writeSegmentHeader(Segment segment) {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.position(0);
+        try {
+            while (header.hasRemaining()) {
+                segment.channel.write(header, header.position());
+            }
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+        segment.size = SEGMENT_HEADER_SIZE;
+        this.totalBytes += SEGMENT_HEADER_SIZE;
+    }
+
+    private static ByteBuffer readFully(Segment segment, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = segment.channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + segment.file);
+            }
+        }
+        buffer.position(0);
+        return buffer;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int crcOf(ByteBuffer body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static void checkAddress(byte[] address) {
+        // (the length has to fit in the single byte we record it in).
+        if ((null == address) || (0 == address.length) || (address.length > 255)) {
+            throw new IllegalArgumentException("Address length incorrect (must be between 1 and 255)");
+        }
+    }
+
+    private synchronized AccountIndex existingAccount(byte[] address) {
+        AccountIndex account = this.accounts.get(address);
+        // Like the directory store, we can't use an account once it is deleted.
+        RuntimeAssertionError.assertTrue(null != account);
+        return account;
+    }
+
+
+    /**
+     * The IAccountStore over one account:  it just forwards to the store, by address.
+     */
+    private final class AccountView implements IAccountStore {
+        private final byte[] address;
+
+        public AccountView(byte[] address) {
+            this.address = address;
+        }
+
+        @Override
+        public byte[] getCode() {
+            synchronized (LogStructuredDataStore.this) {
+                RecordLocation code = existingAccount(this.address).code;
+                return (null != code)
+                        ? readValue(code)
+                        : null;
+            }
+        }
+
+        @Override
+        public void setCode(byte[] code) {
+            synchronized (LogStructuredDataStore.this) {
+                existingAccount(this.address);
+                writeRecord(RECORD_CODE, this.address, EMPTY, code);
+            }
+        }
+
+        @Override
+        public BigInteger getBalance() {
+            synchronized (LogStructuredDataStore.this) {
+                return existingAccount(this.address).balance;
+            }
+        }
+
+        @Override
+        public void setBalance(BigInteger balance) {
+            synchronized (LogStructuredDataStore.this) {
+                existingAccount(this.address);
+                writeRecord(RECORD_BALANCE, this.address, EMPTY, balance.toByteArray());
+            }
+        }
+
+        @Override
+        public long getNonce() {
+            synchronized (LogStructuredDataStore.this) {
+                return existingAccount(this.address).nonce;
+            }
+        }
+
+        @Override
+        public void setNonce(long nonce) {
+            synchronized (LogStructuredDataStore.this) {
+                existingAccount(this.address);
+                writeRecord(RECORD_NONCE, this.address, EMPTY, ByteBuffer.allocate(Long.BYTES).putLong(nonce).array());
+            }
+        }
+
+        @Override
+        public byte[] getData(byte[] key) {
+            synchronized (LogStructuredDataStore.this) {
+                RecordLocation data = existingAccount(this.address).data.get(key);
+                return (null != data)
+                        ? readValue(data)
+                        : null;
+            }
+        }
+
+        @Override
+        public void setData(byte[] key, byte[] value) {
+            synchronized (LogStructuredDataStore.this) {
+                existingAccount(this.address);
+                writeRecord(RECORD_DATA, this.address, key, value);
+            }
+        }
+
+        @Override
+        public Map<ByteArrayWrapper, byte[]> getStorageEntries() {
+            Map<ByteArrayWrapper, byte[]> result = new HashMap<>();
+            synchronized (LogStructuredDataStore.this) {
+                existingAccount(this.address).data.forEach((key, location) -> result.put(new ByteArrayWrapper(key), readValue(location)));
+            }
+            return result;
+        }
+    }
+
+
+    /**
+     * The index entry for an account:  where its current records are (null if there are none).
+     */
+    private static final class AccountIndex {
+        public RecordLocation created;
+        public RecordLocation code;
+        public RecordLocation balanceRecord;
+        public BigInteger balance = BigInteger.ZERO;
+        public RecordLocation nonceRecord;
+        public long nonce;
+        public final ByteArrayMap<RecordLocation> data = new ByteArrayMap<>();
+
+        public void forEachLocation(Consumer<RecordLocation> consumer) {
+            for (RecordLocation location : new RecordLocation[] { this.created, this.code, this.balanceRecord, this.nonceRecord }) {
+                if (null != location) {
+                    consumer.accept(location);
+                }
+            }
+            this.data.forEach((key, location) -> consumer.accept(location));
+        }
+    }
+
+
+    private static final class RecordLocation {
+        public final Segment segment;
+        public final int offset;
+        public final int size;
+
+        public RecordLocation(Segment segment, int offset, int size) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+
+    private static final class Segment {
+        public final int id;
+        public final File file;
+        public final FileChannel channel;
+        public long size;
+        public long liveBytes;
+
+        public Segment(int id, File file, FileChannel channel) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.aion.avm.core.util.ByteArrayMap;
 import org.aion.avm.core.util.ByteArrayWrapper;
 
 
@@ -11,7 +12,7 @@ public class MemoryBackedAccountStore implements IAccountStore {
     private BigInteger balance = BigInteger.ZERO;
     private long nonce = 0;
     private byte[] code = null;
-    private final Map<ByteArrayWrapper, byte[]> storage = new HashMap<>();
+    private final ByteArrayMap<byte[]> storage = new ByteArrayMap<>();
 
     @Override
     public byte[] getCode() {
@@ -45,16 +46,18 @@ public class MemoryBackedAccountStore implements IAccountStore {
 
     @Override
     public byte[] getData(byte[] key) {
-        return this.storage.get(new ByteArrayWrapper(key));
+        return this.storage.get(key);
     }
 
     @Override
     public void setData(byte[] key, byte[] value) {
-        this.storage.put(new ByteArrayWrapper(key), value);
+        this.storage.put(key, value);
     }
 
     @Override
     public Map<ByteArrayWrapper, byte[]> getStorageEntries() {
-        return this.storage;
+        Map<ByteArrayWrapper, byte[]> result = new HashMap<>();
+        this.storage.forEach((key, value) -> result.put(new ByteArrayWrapper(key), value));
+        return result;
     }
 }
@@ -1,33 +1,29 @@
 package org.aion.data;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.avm.core.util.ByteArrayMap;
 
 
 public class MemoryBackedDataStore implements IDataStore {
-    private final Map<ByteArrayWrapper, MemoryBackedAccountStore> accounts = new HashMap<>();
+    private final ByteArrayMap<MemoryBackedAccountStore> accounts = new ByteArrayMap<>();
 
     @Override
     public IAccountStore openAccount(byte[] address) {
-        return this.accounts.get(new ByteArrayWrapper(address));
+        return this.accounts.get(address);
     }
 
     @Override
     public IAccountStore createAccount(byte[] address) {
-        ByteArrayWrapper wrapper = new ByteArrayWrapper(address);
-        MemoryBackedAccountStore existing = this.accounts.get(wrapper);
+        MemoryBackedAccountStore existing = this.accounts.get(address);
         MemoryBackedAccountStore created = null;
         if (null == existing) {
             created = new MemoryBackedAccountStore();
-            this.accounts.put(wrapper, created);
+            this.accounts.put(address, created);
         }
         return created;
     }
 
     @Override
     public void deleteAccount(byte[] address) {
-        this.accounts.remove(new ByteArrayWrapper(address));
+        this.accounts.remove(address);
     }
 }
@@ -0,0 +1,75 @@
+package org.aion.data;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import org.aion.avm.core.util.ByteArrayWrapper;
+
+
+/**
+ * An account in a WriteBackDataStore:  this is just a view over the store, by address, so it sees the buffer even across flushes.
+ */
+public class WriteBackAccountStore implements IAccountStore {
+    private final WriteBackDataStore store;
+    private final byte[] address;
+
+    WriteBackAccountStore(WriteBackDataStore store, byte[] address) {
+        this.store = store;
+        this.address = address;
+    }
+
+    @Override
+    public byte[] getCode() {
+        return this.store.getCode(this.address);
+    }
+
+    @Override
+    public void setCode(byte[] code) {
+        this.store.setCode(this.address, code);
+    }
+
+    @Override
+    public BigInteger getBalance() {
+        return this.store.getBalance(this.address);
+    }
+
+    @Override
+    public void setBalance(BigInteger balance) {
+        this.store.setBalance(this.address, balance);
+    }
+
+    @Override
+    public long getNonce() {
+        return this.store.getNonce(this.address);
+    }
+
+    @Override
+    public void setNonce(long nonce) {
+        this.store.setNonce(this.address, nonce);
+    }
+
+    @Override
+    public byte[] getData(byte[] key) {
+        return this.store.getData(this.address, key);
+    }
+
+    @Override
+    public void setData(byte[] key, byte[] value) {
+        this.store.setData(this.address, key, value);
+    }
+
+    @Override
+    public byte[][] getDataMulti(byte[][] keys) {
+        return this.store.getDataMulti(this.address, keys);
+    }
+
+    @Override
+    public void prefetch(byte[][] keys) {
+        this.store.prefetch(this.address, keys);
+    }
+
+    @Override
+    public Map<ByteArrayWrapper, byte[]> getStorageEntries() {
+        return this.store.getStorageEntries(this.address);
+    }
+}
@@ -0,0 +1,389 @@
+package org.aion.data;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.aion.avm.core.util.ByteArrayMap;
+import org.aion.avm.core.util.ByteArrayWrapper;
+
+
+/**
+ * An IDataStore which buffers all the writes made through it in memory, serving reads from that buffer, and only writes them to the
+ * backing store when flush() is called (typically, at the end of each block) or when the buffer grows beyond its size limit.
+ * A flush writes the buffer as one batch, sorted by address and then by key (so a store which keeps its data ordered sees sequential
+ * writes), and then calls the sync action, if there is one, so that the whole batch costs one fsync.
+ * Only the last of repeated writes to the same value is written back:  see getRequestedWriteCount() and getFlushedWriteCount() for how
+ * much that saves.
+ * NOTE:  Nothing buffered is visible to anyone reading the backing store directly, and it is lost if this store is abandoned without
+ * being flushed.
+ */
+public class WriteBackDataStore implements IDataStore {
+    // A rough estimate of the cost of buffering each value, on top of its own bytes.
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final Comparator<byte[]> UNSIGNED_ORDER = Arrays::compareUnsigned;
+
+    private final IDataStore backing;
+    private final long maxBufferedBytes;
+    private final Runnable syncAction;
+    private final ByteArrayMap<BufferedAccount> buffer;
+    private long bufferedBytes;
+    private long requestedWrites;
+    private long flushedWrites;
+    private long flushCount;
+
+    /**
+     * @param backing The store where the writes are eventually made.
+     * @param maxBufferedBytes The (approximate) size the buffer can reach before it is flushed, without waiting for flush() to be called.
+     * @param syncAction Called after each flush to force it to disk (BTreeDataStore::sync, for example), or null if there is nothing to do.
+     */
+    public WriteBackDataStore(IDataStore backing, long maxBufferedBytes, Runnable syncAction) {
+        if (maxBufferedBytes <= 0L) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.backing = backing;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.syncAction = syncAction;
+        this.buffer = new ByteArrayMap<>();
+    }
+
+    @Override
+    public synchronized IAccountStore openAccount(byte[] address) {
+        return accountExists(address)
+                ? new WriteBackAccountStore(this, address)
+                : null;
+    }
+
+    @Override
+    public synchronized IAccountStore createAccount(byte[] address) {
+        WriteBackAccountStore created = null;
+        if (!accountExists(address)) {
+            BufferedAccount account = bufferedAccount(address);
+            account.created = true;
+            recordWrite(ENTRY_OVERHEAD_BYTES);
+            created = new WriteBackAccountStore(this, address);
+        }
+        return created;
+    }
+
+    @Override
+    public synchronized void deleteAccount(byte[] address) {
+        BufferedAccount account = bufferedAccount(address);
+        // Everything buffered for the account is now moot.
+        this.bufferedBytes -= account.clear();
+        account.deleted = true;
+        recordWrite(ENTRY_OVERHEAD_BYTES);
+    }
+
+    /**
+     * Writes everything buffered to the backing store, in one sorted batch, and then calls the sync action.
+     */
+    public synchronized void flush() {
+        List<BufferedAccount> accounts = new ArrayList<>(this.buffer.size());
+        this.buffer.forEach((address, account) -> accounts.add(account));
+        accounts.sort((one, two) -> UNSIGNED_ORDER.compare(one.address, two.address));
+        for (BufferedAccount account : accounts) {
+            this.flushedWrites += account.writeTo(this.backing);
+        }
+        if (null != this.syncAction) {
+            this.syncAction.run();
+        }
+        this.buffer.clear();
+        this.bufferedBytes = 0L;
+        this.flushCount += 1;
+    }
+
+    /**
+     * @return The number of writes made to this store (including account creations and deletions).
+     */
+    public synchronized long getRequestedWriteCount() {
+        return this.requestedWrites;
+    }
+
+    /**
+     * @return The number of writes this store has made to the backing store, when flushing.
+     */
+    public synchronized long getFlushedWriteCount() {
+        return this.flushedWrites;
+    }
+
+    /**
+     * @return The number of times the buffer was flushed, whether by flush() or because it grew too large.
+     */
+    public synchronized long getFlushCount() {
+        return this.flushCount;
+    }
+
+    /**
+     * @return The (approximate) number of bytes currently buffered.
+     */
+    public synchronized long getBufferedBytes() {
+        return this.bufferedBytes;
+    }
+
+
+    synchronized byte[] getCode(byte[] address) {
+        BufferedAccount account = this.buffer.get(address);
+        byte[] code;
+        if ((null != account) && account.hasCode) {
+            code = account.code;
+        } else {
+            IAccountStore backingAccount = openBackingAccount(account, address);
+            code = (null != backingAccount)
+                    ? backingAccount.getCode()
+                    : null;
+        }
+        return code;
+    }
+
+    synchronized void setCode(byte[] address, byte[] code) {
+        BufferedAccount account = bufferedAccount(address);
+        this.bufferedBytes -= account.hasCode ? sizeOf(account.code) : 0;
+        account.hasCode = true;
+        account.code = code;
+        recordWrite(sizeOf(code));
+    }
+
+    synchronized BigInteger getBalance(byte[] address) {
+        BufferedAccount account = this.buffer.get(address);
+        BigInteger balance;
+        if ((null != account) && (null != account.balance)) {
+            balance = account.balance;
+        } else {
+            IAccountStore backingAccount = openBackingAccount(account, address);
+            balance = (null != backingAccount)
+                    ? backingAccount.getBalance()
+                    : BigInteger.ZERO;
+        }
+        return balance;
+    }
+
+    synchronized void setBalance(byte[] address, BigInteger balance) {
+        BufferedAccount account = bufferedAccount(address);
+        // (a balance is small enough that we only count the overhead, once).
+        boolean isRewrite = (null != account.balance);
+        account.balance = balance;
+        recordWrite(isRewrite ? 0 : ENTRY_OVERHEAD_BYTES);
+    }
+
+    synchronized long getNonce(byte[] address) {
+        BufferedAccount account = this.buffer.get(address);
+        long nonce;
+        if ((null != account) && account.hasNonce) {
+            nonce = account.nonce;
+        } else {
+            IAccountStore backingAccount = openBackingAccount(account, address);
+            nonce = (null != backingAccount)
+                    ? backingAccount.getNonce()
+                    : 0L;
+        }
+        return nonce;
+    }
+
+    synchronized void setNonce(byte[] address, long nonce) {
+        BufferedAccount account = bufferedAccount(address);
+        boolean isRewrite = account.hasNonce;
+        account.hasNonce = true;
+        account.nonce = nonce;
+        recordWrite(isRewrite ? 0 : ENTRY_OVERHEAD_BYTES);
+    }
+
+    synchronized byte[] getData(byte[] address, byte[] key) {
+        BufferedAccount account = this.buffer.get(address);
+        byte[] value;
+        if ((null != account) && account.data.containsKey(key)) {
+            value = account.data.get(key);
+        } else {
+            IAccountStore backingAccount = openBackingAccount(account, address);
+            value = (null != backingAccount)
+                    ? backingAccount.getData(key)
+                    : null;
+        }
+        return value;
+    }
+
+    synchronized byte[][] getDataMulti(byte[] address, byte[][] keys) {
+        BufferedAccount account = this.buffer.get(address);
+        byte[][] values = new byte[keys.length][];
+        // Answer the buffered keys and read the rest from the backing store in 1 request.
+        byte[][] missKeys = (null != account)
+                ? Arrays.stream(keys).filter((key) -> !account.data.containsKey(key)).toArray(byte[][]::new)
+                : keys;
+        IAccountStore backingAccount = (missKeys.length > 0)
+                ? openBackingAccount(account, address)
+                : null;
+        byte[][] missValues = (null != backingAccount)
+                ? backingAccount.getDataMulti(missKeys)
+                : new byte[missKeys.length][];
+        int nextMiss = 0;
+        for (int i = 0; i < keys.length; ++i) {
+            if ((null != account) && account.data.containsKey(keys[i])) {
+                values[i] = account.data.get(keys[i]);
+            } else {
+                values[i] = missValues[nextMiss];
+                nextMiss += 1;
+            }
+        }
+        return values;
+    }
+
+    synchronized void prefetch(byte[] address, byte[][] keys) {
+        BufferedAccount account = this.buffer.get(address);
+        byte[][] missKeys = (null != account)
+                ? Arrays.stream(keys).filter((key) -> !account.data.containsKey(key)).toArray(byte[][]::new)
+                : keys;
+        IAccountStore backingAccount = (missKeys.length > 0)
+                ? openBackingAccount(account, address)
+                : null;
+        if (null != backingAccount) {
+            backingAccount.prefetch(missKeys);
+        }
+    }
+
+    synchronized void setData(byte[] address, byte[] key, byte[] value) {
+        BufferedAccount account = bufferedAccount(address);
+        boolean isRewrite = account.data.containsKey(key);
+        byte[] previous = account.data.put(key, value);
+        // (the key and the overhead are only counted the first time it is written).
+        if (isRewrite) {
+            this.bufferedBytes -= sizeOf(previous);
+            recordWrite(sizeOf(value));
+        } else {
+            recordWrite(key.length + sizeOf(value) + ENTRY_OVERHEAD_BYTES);
+        }
+    }
+
+    synchronized Map<ByteArrayWrapper, byte[]> getStorageEntries(byte[] address) {
+        BufferedAccount account = this.buffer.get(address);
+        IAccountStore backingAccount = openBackingAccount(account, address);
+        Map<ByteArrayWrapper, byte[]> entries = (null != backingAccount)
+                ? new HashMap<>(backingAccount.getStorageEntries())
+                : new HashMap<>();
+        if (null != account) {
+            account.data.forEach((key, value) -> entries.put(new ByteArrayWrapper(key), value));
+        }
+        return entries;
+    }
+
+
+    private boolean accountExists(byte[] address) {
+        BufferedAccount account = this.buffer.get(address);
+        return (null != account)
+                ? (account.created || (!account.deleted && (null != this.backing.openAccount(address))))
+                : (null != this.backing.openAccount(address));
+    }
+
+    /**
+     * @return The account in the backing store, unless it doesn't exist or it was deleted since the last flush (so it must not be read).
+     */
+    private IAccountStore openBackingAccount(BufferedAccount account, byte[] address) {
+        return ((null == account) || !account.deleted)
+                ? this.backing.openAccount(address)
+                : null;
+    }
+
+    private BufferedAccount bufferedAccount(byte[] address) {
+        return this.buffer.computeIfAbsent(address, BufferedAccount::new);
+    }
+
+    // (called after the write is buffered, since it may flush the buffer).
+    private void recordWrite(long addedBytes) {
+        this.requestedWrites += 1;
+        this.bufferedBytes += addedBytes;
+        if (this.bufferedBytes > this.maxBufferedBytes) {
+            flush();
+        }
+    }
+
+    private static int sizeOf(byte[] bytes) {
+        return (null != bytes) ? bytes.length : 0;
+    }
+
+
+    /**
+     * Everything buffered for one account, since the last flush.
+     */
+    private static class BufferedAccount {
+        public final byte[] address;
+        // If the account was deleted, it must be deleted from the backing store before anything else is written.
+        public boolean deleted;
+        // If the account was created, it must be created in the backing store even if nothing else is written.
+        public boolean created;
+        public boolean hasCode;
+        public byte[] code;
+        // (null if it wasn't written).
+        public BigInteger balance;
+        public boolean hasNonce;
+        public long nonce;
+        public final ByteArrayMap<byte[]> data;
+
+        public BufferedAccount(byte[] address) {
+            this.address = address;
+            this.data = new ByteArrayMap<>();
+        }
+
+        /**
+         * Drops everything buffered for the account.
+         *
+         * @return The number of bytes dropped.
+         */
+        public long clear() {
+            long[] dropped = { (this.created ? ENTRY_OVERHEAD_BYTES : 0) + (this.hasCode ? sizeOf(this.code) : 0)
+                    + ((null != this.balance) ? ENTRY_OVERHEAD_BYTES : 0) + (this.hasNonce ? ENTRY_OVERHEAD_BYTES : 0) };
+            this.data.forEach((key, value) -> dropped[0] += key.length + sizeOf(value) + ENTRY_OVERHEAD_BYTES);
+            this.created = false;
+            this.hasCode = false;
+            this.code = null;
+            this.balance = null;
+            this.hasNonce = false;
+            this.data.clear();
+            return dropped[0];
+        }
+
+        /**
+         * Writes everything buffered for the account to the given store, with the data in key order.
+         *
+         * @return The number of writes made.
+         */
+        public int writeTo(IDataStore store) {
+            int writes = 0;
+            if (this.deleted) {
+                store.deleteAccount(this.address);
+                writes += 1;
+            }
+            boolean hasWrites = this.hasCode || (null != this.balance) || this.hasNonce || !this.data.isEmpty();
+            // A write to an account which was deleted (and not re-created) is just dropped, as the account doesn't exist.
+            if (this.created || (hasWrites && !this.deleted)) {
+                IAccountStore account = store.openAccount(this.address);
+                if (null == account) {
+                    account = store.createAccount(this.address);
+                    writes += 1;
+                }
+                if (this.hasCode) {
+                    account.setCode(this.code);
+                    writes += 1;
+                }
+                if (null != this.balance) {
+                    account.setBalance(this.balance);
+                    writes += 1;
+                }
+                if (this.hasNonce) {
+                    account.setNonce(this.nonce);
+                    writes += 1;
+                }
+                List<byte[]> keys = new ArrayList<>(this.data.size());
+                this.data.forEach((key, value) -> keys.add(key));
+                keys.sort(UNSIGNED_ORDER);
+                for (byte[] key : keys) {
+                    account.setData(key, this.data.get(key));
+                    writes += 1;
+                }
+            }
+            return writes;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.aion.kernel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.aion.avm.core.util.ByteArrayMap;
+import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.data.IAccountStore;
+import org.aion.data.IDataStore;
+
+
+/**
+ * A bounded cache, in front of an IDataStore, of the handles of recently used accounts (or the fact that they don't exist) and of their
+ * balance, nonce and code, so that repeated access to the same accounts doesn't go back to the store (which, for the directory store,
+ * means a stat and a file read each time).
+ * Since the cached state is never re-validated, every write to the store must go through this cache.
+ * The cache is split into stripes, by address, each an LRU map under its own lock, so that unrelated accounts don't contend.  Anything
+ * read from or written to the store for an account is done under its stripe's lock, so a reader can never cache a stale value.
+ */
+class AccountCache {
+    private static final int STRIPE_COUNT = 16;
+
+    private final IDataStore dataStore;
+    private final Stripe[] stripes;
+
+    /**
+     * @param dataStore The store to cache.
+     * @param capacity The (approximate) number of accounts to cache.
+     */
+    public AccountCache(IDataStore dataStore, int capacity) {
+        this.dataStore = dataStore;
+        this.stripes = new Stripe[STRIPE_COUNT];
+        // (round up so that every stripe can hold at least 1 account).
+        int stripeCapacity = (capacity + STRIPE_COUNT - 1) / STRIPE_COUNT;
+        for (int i = 0; i < STRIPE_COUNT; ++i) {
+            this.stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * @return The handle of the account, or null if it doesn't exist.
+     */
+    public IAccountStore open(byte[] address) {
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            return cachedAccount(stripe, address).handle;
+        }
+    }
+
+    /**
+     * @return The handle of the account, which is created if it doesn't exist.
+     */
+    public IAccountStore openOrCreate(byte[] address) {
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            return existingAccount(stripe, address).handle;
+        }
+    }
+
+    public void create(byte[] address) {
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            IAccountStore created = this.dataStore.createAccount(address);
+            if (null != created) {
+                stripe.put(new ByteArrayWrapper(address), new CachedAccount(created));
+            }
+        }
+    }
+
+    public void delete(byte[] address) {
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            this.dataStore.deleteAccount(address);
+            // We know it doesn't exist, now, so remember that.
+            stripe.put(new ByteArrayWrapper(address), new CachedAccount(null));
+        }
+    }
+
+    public byte[] getCode(byte[] address) {
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            CachedAccount account = cachedAccount(stripe, address);
+            if ((null != account.handle) && !account.hasCode) {
+                account.code = account.handle.getCode();
+                account.hasCode = true;
+            }
+            return account.code;
+        }
+    }
+
+    public void setCode(byte[] address, byte[] code) {
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            CachedAccount account = existingAccount(stripe, address);
+            account.handle.setCode(code);
+            account.code = code;
+            account.hasCode = true;
+        }
+    }
+
+    public Balance getBalance(byte[] address) {
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            CachedAccount account = cachedAccount(stripe, address);
+            return (null != account.handle)
+                    ? loadedBalance(account)
+                    : Balance.ZERO;
+        }
+    }
+
+    public void adjustBalance(byte[] address, Balance delta) {
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            CachedAccount account = existingAccount(stripe, address);
+            Balance balance = loadedBalance(account).add(delta);
+            account.handle.setBalance(balance.toBigInteger());
+            account.balance = balance;
+        }
+    }
+
+    public long getNonce(byte[] address) {
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            CachedAccount account = cachedAccount(stripe, address);
+            return (null != account.handle)
+                    ? loadedNonce(account)
+                    : 0L;
+        }
+    }
+
+    public void incrementNonce(byte[] address) {
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            CachedAccount account = existingAccount(stripe, address);
+            long nonce = loadedNonce(account) + 1;
+            account.handle.setNonce(nonce);
+            account.nonce = nonce;
+        }
+    }
+
+
+    private Stripe stripeFor(byte[] address) {
+        return this.stripes[ByteArrayMap.hash(address) & (STRIPE_COUNT - 1)];
+    }
+
+    // (these helpers must be called under the stripe's lock).
+    private CachedAccount cachedAccount(Stripe stripe, byte[] address) {
+        ByteArrayWrapper key = new ByteArrayWrapper(address);
+        CachedAccount account = stripe.get(key);
+        if (null == account) {
+            account = new CachedAccount(this.dataStore.openAccount(address));
+            stripe.put(key, account);
+        }
+        return account;
+    }
+
+    private CachedAccount existingAccount(Stripe stripe, byte[] address) {
+        CachedAccount account = cachedAccount(stripe, address);
+        if (null == account.handle) {
+            account = new CachedAccount(this.dataStore.createAccount(address));
+            stripe.put(new ByteArrayWrapper(address), account);
+        }
+        return account;
+    }
+
+    private static Balance loadedBalance(CachedAccount account) {
+        if (null == account.balance) {
+            account.balance = Balance.valueOf(account.handle.getBalance());
+        }
+        return account.balance;
+    }
+
+    private static long loadedNonce(CachedAccount account) {
+        if (!account.hasNonce) {
+            account.nonce = account.handle.getNonce();
+            account.hasNonce = true;
+        }
+        return account.nonce;
+    }
+
+
+    private static class Stripe extends LinkedHashMap<ByteArrayWrapper, CachedAccount> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        public Stripe(int capacity) {
+            // (access order, so that the eldest is the least recently used).
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, CachedAccount> eldest) {
+            return size() > this.capacity;
+        }
+    }
+
+
+    /**
+     * What we know about one account:  its handle (null if it doesn't exist) and whatever of its state has been read or written.
+     */
+    private static class CachedAccount {
+        public final IAccountStore handle;
+        public boolean hasCode;
+        public byte[] code;
+        // (null if not yet loaded).
+        public Balance balance;
+        public boolean hasNonce;
+        public long nonce;
+
+        public CachedAccount(IAccountStore handle) {
+            this.handle = handle;
+        }
+    }
+}
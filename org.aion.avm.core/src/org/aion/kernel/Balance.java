@@ -0,0 +1,157 @@
+package org.aion.kernel;
+
+import java.math.BigInteger;
+
+
+/**
+ * An immutable amount of value (a balance or an adjustment to one) which is held as a 128-bit two's complement integer, in 2 longs,
+ * so the arithmetic the kernels do on every transaction (adding, negating, comparing and the energy cost products) needs no
+ * BigInteger.  Only a value which doesn't fit in 128 bits falls back to a BigInteger (and returns to the fixed-width form as soon as a
+ * result fits, again).
+ */
+public final class Balance implements Comparable<Balance> {
+    public static final Balance ZERO = new Balance(0L, 0L, null);
+
+    // The value, if big is null:  (high << 64) + unsigned(low).
+    private final long high;
+    private final long low;
+    // Non-null only if the value doesn't fit in 128 bits.
+    private final BigInteger big;
+
+    public static Balance valueOf(long value) {
+        return (0L == value)
+                ? ZERO
+                : new Balance(value >> 63, value, null);
+    }
+
+    public static Balance valueOf(BigInteger value) {
+        Balance result;
+        int bitLength = value.bitLength();
+        if (bitLength < Long.SIZE) {
+            result = valueOf(value.longValue());
+        } else if (bitLength < (2 * Long.SIZE)) {
+            result = new Balance(value.shiftRight(Long.SIZE).longValue(), value.longValue(), null);
+        } else {
+            result = new Balance(0L, 0L, value);
+        }
+        return result;
+    }
+
+    /**
+     * @return The exact product of the 2 values (such as an energy amount and its price), which can't overflow 128 bits.
+     */
+    public static Balance product(long one, long two) {
+        return new Balance(Math.multiplyHigh(one, two), one * two, null);
+    }
+
+    private Balance(long high, long low, BigInteger big) {
+        this.high = high;
+        this.low = low;
+        this.big = big;
+    }
+
+    public Balance add(Balance other) {
+        Balance result;
+        if ((null == this.big) && (null == other.big)) {
+            long low = this.low + other.low;
+            long carry = (Long.compareUnsigned(low, this.low) < 0) ? 1L : 0L;
+            long high = this.high + other.high + carry;
+            // (it can only overflow if both have the same sign and the result's is different).
+            if (((this.high ^ high) & (other.high ^ high)) < 0L) {
+                result = valueOf(toBigInteger().add(other.toBigInteger()));
+            } else {
+                result = ((0L == high) && (0L == low)) ? ZERO : new Balance(high, low, null);
+            }
+        } else {
+            result = valueOf(toBigInteger().add(other.toBigInteger()));
+        }
+        return result;
+    }
+
+    public Balance negate() {
+        Balance result;
+        if ((null != this.big) || ((Long.MIN_VALUE == this.high) && (0L == this.low))) {
+            // (the most negative 128-bit value has no positive counterpart).
+            result = valueOf(toBigInteger().negate());
+        } else {
+            result = isZero() ? ZERO : new Balance(~this.high + ((0L == this.low) ? 1L : 0L), -this.low, null);
+        }
+        return result;
+    }
+
+    public Balance subtract(Balance other) {
+        return add(other.negate());
+    }
+
+    public boolean isZero() {
+        return (null == this.big) && (0L == this.high) && (0L == this.low);
+    }
+
+    public int signum() {
+        int signum;
+        if (null != this.big) {
+            signum = this.big.signum();
+        } else if (this.high < 0L) {
+            signum = -1;
+        } else {
+            signum = ((0L == this.high) && (0L == this.low)) ? 0 : 1;
+        }
+        return signum;
+    }
+
+    @Override
+    public int compareTo(Balance other) {
+        int comparison;
+        if ((null == this.big) && (null == other.big)) {
+            comparison = (this.high != other.high)
+                    ? Long.compare(this.high, other.high)
+                    : Long.compareUnsigned(this.low, other.low);
+        } else {
+            comparison = toBigInteger().compareTo(other.toBigInteger());
+        }
+        return comparison;
+    }
+
+    public BigInteger toBigInteger() {
+        BigInteger result;
+        if (null != this.big) {
+            result = this.big;
+        } else if (this.high == (this.low >> 63)) {
+            // It fits in a long.
+            result = BigInteger.valueOf(this.low);
+        } else {
+            byte[] bytes = new byte[2 * Long.BYTES];
+            for (int i = 0; i < Long.BYTES; ++i) {
+                bytes[i] = (byte) (this.high >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+                bytes[Long.BYTES + i] = (byte) (this.low >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+            }
+            result = new BigInteger(bytes);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        // (the representation is canonical so we can compare it directly).
+        boolean isEqual = (this == object);
+        if (!isEqual && (object instanceof Balance)) {
+            Balance other = (Balance) object;
+            isEqual = (null != this.big)
+                    ? this.big.equals(other.big)
+                    : ((null == other.big) && (this.high == other.high) && (this.low == other.low));
+        }
+        return isEqual;
+    }
+
+    @Override
+    public int hashCode() {
+        return (null != this.big)
+                ? this.big.hashCode()
+                : Long.hashCode(this.high) * 31 + Long.hashCode(this.low);
+    }
+
+    @Override
+    public String toString() {
+        return toBigInteger().toString();
+    }
+}
@@ -57,6 +57,33 @@ public interface KernelInterface {
      */
     byte[] getStorage(byte[] address, byte[] key);
 
+    /**
+     * Gets the values mapped to several keys, for the given account, in one request.
+     * Implementations backed by a real store override this to find the account once and read the keys together, rather than
+     * paying the full cost of getStorage() per key.
+     *
+     * @param address the account address
+     * @param keys    the storage keys
+     * @return the values, in the order of the keys (null for any key which isn't mapped)
+     */
+    default byte[][] getStorageMulti(byte[] address, byte[][] keys) {
+        byte[][] values = new byte[keys.length][];
+        for (int i = 0; i < keys.length; ++i) {
+            values[i] = getStorage(address, keys[i]);
+        }
+        return values;
+    }
+
+    /**
+     * A hint that the given keys of the account are about to be read, so an implementation may start loading them in the background.
+     * This has no visible effect:  the later reads return exactly what they would have without it (by default, it does nothing).
+     *
+     * @param address the account address
+     * @param keys    the storage keys which will be read
+     */
+    default void prefetch(byte[] address, byte[][] keys) {
+    }
+
     /**
      * Deletes an account.
      * This is used to implement the self-destruct functionality.
@@ -81,6 +108,17 @@ public interface KernelInterface {
      */
     void adjustBalance(byte[] address, BigInteger delta);
 
+    /**
+     * Adds/removes the balance of an account, with a fixed-width delta.
+     * Implementations which hold balances as Balance instances override this to avoid converting to and from BigInteger.
+     *
+     * @param address the account address
+     * @param delta   the change
+     */
+    default void adjustBalance(byte[] address, Balance delta) {
+        adjustBalance(address, delta.toBigInteger());
+    }
+
     /**
      * Returns the nonce of an account.
      *
@@ -116,6 +154,18 @@ public interface KernelInterface {
      */
     boolean accountBalanceIsAtLeast(byte[] address, BigInteger amount);
 
+    /**
+     * Like accountBalanceIsAtLeast(byte[], BigInteger), with a fixed-width amount.
+     * Implementations which hold balances as Balance instances override this to avoid converting to and from BigInteger.
+     *
+     * @param address The address whose balance is to be compared.
+     * @param amount The amount to compare against the account's balance.
+     * @return True if the balance of the account is {@code >=} amount.
+     */
+    default boolean accountBalanceIsAtLeast(byte[] address, Balance amount) {
+        return accountBalanceIsAtLeast(address, amount.toBigInteger());
+    }
+
     /**
      * Returns {@code true} if, and only if, the specified energy limit is a valid quantity for a
      * contract creation transaction.
@@ -14,21 +14,22 @@ import java.io.File;
  * Mostly just a high-level wrapper around and underlying IDataStore.
  * Note that this implementation implicitly creates accounts in response to mutative operations.  They are not explicitly created.
  * Likewise, reading data from a non-existent account safely returns null or 0L, rather than failing.
+ * The handles and metadata (existence, balance, nonce and code) of recently used accounts are cached (see AccountCache) so this must be
+ * the only writer to its IDataStore.
  */
 public class KernelInterfaceImpl implements KernelInterface {
 
     public static final byte[] PREMINED_ADDRESS = Helpers.hexStringToBytes("a025f4fd54064e869f158c1b4eb0ed34820f67e60ee80a53b469f725efc06378");
     public static final BigInteger PREMINED_AMOUNT = BigInteger.TEN.pow(18);
+    public static final int DEFAULT_ACCOUNT_CACHE_SIZE = 4096;
 
-    private final IDataStore dataStore;
+    private final AccountCache accounts;
 
     /**
      * Creates an instance of the interface which is backed by in-memory structures, only.
      */
     public KernelInterfaceImpl() {
-        this.dataStore = new MemoryBackedDataStore();
-        IAccountStore premined = this.dataStore.createAccount(PREMINED_ADDRESS);
-        premined.setBalance(PREMINED_AMOUNT);
+        this(new MemoryBackedDataStore());
     }
 
     /**
@@ -37,84 +38,113 @@ public class KernelInterfaceImpl implements KernelInterface {
      * @param onDiskRoot The root directory which this implementation will use for persistence.
      */
     public KernelInterfaceImpl(File onDiskRoot) {
-        this.dataStore = new DirectoryBackedDataStore(onDiskRoot);
+        this(new DirectoryBackedDataStore(onDiskRoot));
+    }
+
+    /**
+     * Creates an instance of the interface which is backed by the given store (a LogStructuredDataStore, for example, for a large
+     * persistent state).
+     * 
+     * @param dataStore The store, which may already contain accounts.
+     */
+    public KernelInterfaceImpl(IDataStore dataStore) {
+        this(dataStore, DEFAULT_ACCOUNT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates an instance of the interface which is backed by the given store, caching the given number of accounts.
+     * 
+     * @param dataStore The store, which may already contain accounts.
+     * @param accountCacheSize The (approximate) number of accounts whose handles and metadata are cached.
+     */
+    public KernelInterfaceImpl(IDataStore dataStore, int accountCacheSize) {
         // Try to open the account, creating it if doesn't exist.
-        IAccountStore premined = this.dataStore.openAccount(PREMINED_ADDRESS);
+        IAccountStore premined = dataStore.openAccount(PREMINED_ADDRESS);
         if (null == premined) {
-            premined = this.dataStore.createAccount(PREMINED_ADDRESS);
+            premined = dataStore.createAccount(PREMINED_ADDRESS);
         }
         premined.setBalance(PREMINED_AMOUNT);
+        this.accounts = new AccountCache(dataStore, accountCacheSize);
     }
 
     @Override
     public void createAccount(byte[] address) {
-        this.dataStore.createAccount(address);
+        this.accounts.create(address);
     }
 
     @Override
     public boolean hasAccountState(byte[] address) {
-        return this.dataStore.openAccount(address) != null;
+        return this.accounts.open(address) != null;
     }
 
     @Override
     public void putCode(byte[] address, byte[] code) {
-        lazyCreateAccount(address).setCode(code);
+        this.accounts.setCode(address, code);
     }
 
     @Override
     public byte[] getCode(byte[] address) {
-        IAccountStore account = this.dataStore.openAccount(address);
-        return (null != account)
-                ? account.getCode()
-                : null;
+        return this.accounts.getCode(address);
     }
 
     @Override
     public void putStorage(byte[] address, byte[] key, byte[] value) {
-        lazyCreateAccount(address).setData(key, value);
+        this.accounts.openOrCreate(address).setData(key, value);
     }
 
     @Override
     public byte[] getStorage(byte[] address, byte[] key) {
-        IAccountStore account = this.dataStore.openAccount(address);
+        IAccountStore account = this.accounts.open(address);
         return (null != account)
                 ? account.getData(key)
                 : null;
     }
 
+    @Override
+    public byte[][] getStorageMulti(byte[] address, byte[][] keys) {
+        // (find the account once and let the store read the keys together).
+        IAccountStore account = this.accounts.open(address);
+        return (null != account)
+                ? account.getDataMulti(keys)
+                : new byte[keys.length][];
+    }
+
+    @Override
+    public void prefetch(byte[] address, byte[][] keys) {
+        IAccountStore account = this.accounts.open(address);
+        if (null != account) {
+            account.prefetch(keys);
+        }
+    }
+
     @Override
     public void deleteAccount(byte[] address) {
-        this.dataStore.deleteAccount(address);
+        this.accounts.delete(address);
     }
 
     @Override
     public BigInteger getBalance(byte[] address) {
-        IAccountStore account = this.dataStore.openAccount(address);
-        return (null != account)
-                ? account.getBalance()
-                : BigInteger.ZERO;
+        return this.accounts.getBalance(address).toBigInteger();
     }
 
     @Override
     public void adjustBalance(byte[] address, BigInteger delta) {
-        IAccountStore account = lazyCreateAccount(address);
-        BigInteger start = account.getBalance();
-        account.setBalance(start.add(delta));
+        this.accounts.adjustBalance(address, Balance.valueOf(delta));
+    }
+
+    @Override
+    public void adjustBalance(byte[] address, Balance delta) {
+        this.accounts.adjustBalance(address, delta);
     }
 
     @Override
     public long getNonce(byte[] address) {
-        IAccountStore account = this.dataStore.openAccount(address);
-        return (null != account)
-                ? account.getNonce()
-                : 0L;
+        return this.accounts.getNonce(address);
     }
 
     @Override
     public void incrementNonce(byte[] address) {
-        IAccountStore account = lazyCreateAccount(address);
-        long start = account.getNonce();
-        account.setNonce(start + 1);
+        this.accounts.incrementNonce(address);
     }
 
     @Override
@@ -124,7 +154,12 @@ public class KernelInterfaceImpl implements KernelInterface {
 
     @Override
     public boolean accountBalanceIsAtLeast(byte[] address, BigInteger amount) {
-        return this.getBalance(address).compareTo(amount) >= 0;
+        return this.accounts.getBalance(address).compareTo(Balance.valueOf(amount)) >= 0;
+    }
+
+    @Override
+    public boolean accountBalanceIsAtLeast(byte[] address, Balance amount) {
+        return this.accounts.getBalance(address).compareTo(amount) >= 0;
     }
 
     @Override
@@ -136,12 +171,4 @@ public class KernelInterfaceImpl implements KernelInterface {
     public boolean isValidEnergyLimitForNonCreate(long energyLimit) {
         return energyLimit > 0;
     }
-
-    private IAccountStore lazyCreateAccount(byte[] address) {
-        IAccountStore account = this.dataStore.openAccount(address);
-        if (null == account) {
-            account = this.dataStore.createAccount(address);
-        }
-        return account;
-    }
 }
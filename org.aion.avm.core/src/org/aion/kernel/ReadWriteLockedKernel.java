@@ -0,0 +1,201 @@
+package org.aion.kernel;
+
+import java.math.BigInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * A wrapper which makes a KernelInterface safe to share between executor threads which don't otherwise coordinate their access.
+ * Reads can run concurrently but each write excludes everything else.
+ * Note that this only makes each individual call atomic:  a reader can still observe a commit which is half applied, so callers need
+ * their own way of detecting that (see TransactionalKernel.validateReads()).
+ */
+public class ReadWriteLockedKernel implements KernelInterface {
+    private final KernelInterface delegate;
+    private final ReentrantReadWriteLock lock;
+
+    public ReadWriteLockedKernel(KernelInterface delegate) {
+        this.delegate = delegate;
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    @Override
+    public void createAccount(byte[] address) {
+        this.lock.writeLock().lock();
+        try {
+            this.delegate.createAccount(address);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean hasAccountState(byte[] address) {
+        this.lock.readLock().lock();
+        try {
+            return this.delegate.hasAccountState(address);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void putCode(byte[] address, byte[] code) {
+        this.lock.writeLock().lock();
+        try {
+            this.delegate.putCode(address, code);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] getCode(byte[] address) {
+        this.lock.readLock().lock();
+        try {
+            return this.delegate.getCode(address);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void putStorage(byte[] address, byte[] key, byte[] value) {
+        this.lock.writeLock().lock();
+        try {
+            this.delegate.putStorage(address, key, value);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] getStorage(byte[] address, byte[] key) {
+        this.lock.readLock().lock();
+        try {
+            return this.delegate.getStorage(address, key);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[][] getStorageMulti(byte[] address, byte[][] keys) {
+        this.lock.readLock().lock();
+        try {
+            return this.delegate.getStorageMulti(address, keys);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void prefetch(byte[] address, byte[][] keys) {
+        this.lock.readLock().lock();
+        try {
+            this.delegate.prefetch(address, keys);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteAccount(byte[] address) {
+        this.lock.writeLock().lock();
+        try {
+            this.delegate.deleteAccount(address);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public BigInteger getBalance(byte[] address) {
+        this.lock.readLock().lock();
+        try {
+            return this.delegate.getBalance(address);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void adjustBalance(byte[] address, BigInteger delta) {
+        this.lock.writeLock().lock();
+        try {
+            this.delegate.adjustBalance(address, delta);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void adjustBalance(byte[] address, Balance delta) {
+        this.lock.writeLock().lock();
+        try {
+            this.delegate.adjustBalance(address, delta);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long getNonce(byte[] address) {
+        this.lock.readLock().lock();
+        try {
+            return this.delegate.getNonce(address);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void incrementNonce(byte[] address) {
+        this.lock.writeLock().lock();
+        try {
+            this.delegate.incrementNonce(address);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean accountNonceEquals(byte[] address, long nonce) {
+        this.lock.readLock().lock();
+        try {
+            return this.delegate.accountNonceEquals(address, nonce);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean accountBalanceIsAtLeast(byte[] address, BigInteger amount) {
+        this.lock.readLock().lock();
+        try {
+            return this.delegate.accountBalanceIsAtLeast(address, amount);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean accountBalanceIsAtLeast(byte[] address, Balance amount) {
+        this.lock.readLock().lock();
+        try {
+            return this.delegate.accountBalanceIsAtLeast(address, amount);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isValidEnergyLimitForCreate(long energyLimit) {
+        return this.delegate.isValidEnergyLimitForCreate(energyLimit);
+    }
+
+    @Override
+    public boolean isValidEnergyLimitForNonCreate(long energyLimit) {
+        return this.delegate.isValidEnergyLimitForNonCreate(energyLimit);
+    }
+}
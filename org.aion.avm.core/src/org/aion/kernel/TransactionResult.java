@@ -149,6 +149,21 @@ public class TransactionResult {
      */
     private KernelInterface externalTransactionalKernel;
 
+    /**
+     * The number of times the transaction was aborted and re-run, due to conflicts with concurrently running transactions.
+     */
+    private int abortCount;
+
+    /**
+     * The energy consumed by those aborted runs (not charged to anyone).
+     */
+    private long wastedEnergy;
+
+    /**
+     * The time spent on those aborted runs, in nanoseconds.
+     */
+    private long wastedNanos;
+
     public void merge(TransactionResult other) {
         internalTransactions.addAll(other.getInternalTransactions());
 
@@ -237,6 +252,30 @@ public class TransactionResult {
         return externalTransactionalKernel;
     }
 
+    public int getAbortCount() {
+        return abortCount;
+    }
+
+    public void setAbortCount(int abortCount) {
+        this.abortCount = abortCount;
+    }
+
+    public long getWastedEnergy() {
+        return wastedEnergy;
+    }
+
+    public void setWastedEnergy(long wastedEnergy) {
+        this.wastedEnergy = wastedEnergy;
+    }
+
+    public long getWastedNanos() {
+        return wastedNanos;
+    }
+
+    public void setWastedNanos(long wastedNanos) {
+        this.wastedNanos = wastedNanos;
+    }
+
     @Override
     public String toString() {
         return "TransactionResult{" +
@@ -2,34 +2,90 @@ package org.aion.kernel;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.function.Consumer;
+import java.util.function.Predicate;
 
-import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.avm.core.util.ByteArrayMap;
+import org.aion.avm.internal.RuntimeAssertionError;
 
 
 /**
  * A transactional implementation of the KernelInterface which only writes back to its "parent" on commit.
- * 
- * This uses a relatively extensible pattern for its implementation, building a transaction log rather than its own actual direct implementation.
- * This means that changes to the interface should mostly just translate into a new kind of transaction log entry, in this implementation.
+ *
+ * Writes are coalesced into a typed write-set, keyed by account, rather than logged as a sequence of operations:  for each account,
+ * we keep whether it must first be deleted or created, the last code and storage values put, the sum of its balance adjustments,
+ * and the number of nonce increments.  This means that commit() costs one write per distinct value touched, no matter how many
+ * times it was written.
+ * Since a delete wipes out everything written to the account before it, deleting an account simply discards what was pending.
+ * The same structure also answers our own reads (it holds what a cache with these writes applied would), falling through to the
+ * parent for anything we haven't written.
  * Special attention needs to be paid to read-and-write operations (such as adjustBalance()) and anything involving deletes.
+ *
+ * Nested call frames don't need a kernel of their own:  mark() opens a savepoint which is later either released (keeping its
+ * writes) or rolled back (undoing them).  While a savepoint is open, the first write to each account (and to each storage slot)
+ * records what it replaced in an undo log, so reads stay a single lookup no matter how deep the calls go and rolling back only
+ * costs what the frame actually changed.
+ *
+ * Optionally (see enableReadTracking()), reads which fall through to the parent are also logged, as checks that the parent still
+ * returns what we observed.  This is what allows optimistic execution to validate a transaction against the state it would commit on.
  */
 public class TransactionalKernel implements KernelInterface {
+    // The savepoint "id" used when none is open (real ones are numbered from 1, and never reused).
+    private static final int NO_SAVEPOINT = 0;
+
     private final KernelInterface parent;
-    private final KernelInterfaceImpl writeCache;
-    private final List<Consumer<KernelInterface>> writeLog;
-    private final Set<ByteArrayWrapper> deletedAccountProjection;
-    private final Set<ByteArrayWrapper> cachedAccountBalances;
+    // In the order the accounts were first written (so commits are applied in a deterministic order).
+    private final ByteArrayMap<AccountWrites> writes;
+    // Null unless read tracking is enabled.
+    private List<Predicate<KernelInterface>> readLog;
+    // The parent balances which adjustBalance() cached, recorded in the readLog only once something actually observes them.
+    private ByteArrayMap<BigInteger> unobservedBalanceReads;
+
+    // The open savepoints, innermost last:  their ids and the size of the undo log when each was opened.
+    private int[] savepointIds;
+    private int[] savepointLogSizes;
+    private int savepointDepth;
+    private int nextSavepointId;
+    private final List<Undo> undoLog;
+    // Nonce increments made "beneath" the open savepoints (see incrementNonceOutsideSavepoints()), null if there are none.
+    private ByteArrayMap<Long> outsideNonceIncrements;
 
     public TransactionalKernel(KernelInterface parent) {
         this.parent = parent;
-        this.writeCache = new KernelInterfaceImpl();
-        this.writeLog = new ArrayList<>();
-        this.deletedAccountProjection = new HashSet<>();
-        this.cachedAccountBalances = new HashSet<>();
+        this.writes = new ByteArrayMap<>();
+        this.readLog = null;
+        this.unobservedBalanceReads = null;
+        this.savepointIds = new int[8];
+        this.savepointLogSizes = new int[8];
+        this.savepointDepth = 0;
+        this.nextSavepointId = NO_SAVEPOINT + 1;
+        this.undoLog = new ArrayList<>();
+        this.outsideNonceIncrements = null;
+    }
+
+    /**
+     * Starts logging every value read from the parent so that validateReads() can later check them.
+     * Note that adjustBalance() only adds deltas so it doesn't count as a read unless the resulting balance is observed.
+     */
+    public void enableReadTracking() {
+        this.readLog = new ArrayList<>();
+        this.unobservedBalanceReads = new ByteArrayMap<>();
+    }
+
+    /**
+     * Checks that every value we read from the parent is still what the parent returns.  If so, committing the receiver now has
+     * the same effect as if it had been run against the current state of the parent.
+     * Must only be called when read tracking is enabled.
+     *
+     * @return True if none of our reads have been invalidated.
+     */
+    public boolean validateReads() {
+        boolean isValid = true;
+        for (int i = 0; isValid && (i < this.readLog.size()); ++i) {
+            isValid = this.readLog.get(i).test(this.parent);
+        }
+        return isValid;
     }
 
     /**
@@ -37,9 +93,7 @@ public class TransactionalKernel implements KernelInterface {
      * After this call, uses of the receiver are undefined.
      */
     public void commit() {
-        for (Consumer<KernelInterface> mutation : this.writeLog) {
-            mutation.accept(this.parent);
-        }
+        commitTo(this.parent);
     }
 
     /**
@@ -47,30 +101,100 @@ public class TransactionalKernel implements KernelInterface {
      * This method should only be used by AION kernel for database write back.
      */
     public void commitTo(KernelInterface target) {
-        for (Consumer<KernelInterface> mutation : this.writeLog) {
-            mutation.accept(target);
+        // Everything written inside a savepoint is tentative, so they must all be closed, first.
+        RuntimeAssertionError.assertTrue(0 == this.savepointDepth);
+        this.writes.forEach((address, account) -> account.applyTo(target, address));
+    }
+
+    /**
+     * Opens a savepoint, nested inside any already open.  Everything written from now on can be undone by rollback() or kept by
+     * release(), one of which must be called before any enclosing savepoint is closed.
+     *
+     * @return The savepoint, to pass to release() or rollback().
+     */
+    public int mark() {
+        if (this.savepointDepth == this.savepointIds.length) {
+            this.savepointIds = Arrays.copyOf(this.savepointIds, 2 * this.savepointDepth);
+            this.savepointLogSizes = Arrays.copyOf(this.savepointLogSizes, 2 * this.savepointDepth);
+        }
+        int savepoint = this.nextSavepointId;
+        this.nextSavepointId += 1;
+        this.savepointIds[this.savepointDepth] = savepoint;
+        this.savepointLogSizes[this.savepointDepth] = this.undoLog.size();
+        this.savepointDepth += 1;
+        return savepoint;
+    }
+
+    /**
+     * Closes the innermost savepoint, keeping everything written since it was opened (they become part of the enclosing one, if any).
+     *
+     * @param savepoint The innermost open savepoint, as returned by mark().
+     */
+    public void release(int savepoint) {
+        int outermost = closeSavepoint(savepoint);
+        if (0 == this.savepointDepth) {
+            // Nothing can be undone, any more.
+            this.undoLog.clear();
+            mergeOutsideNonceIncrements(outermost);
+        }
+    }
+
+    /**
+     * Closes the innermost savepoint, undoing everything written since it was opened.
+     *
+     * @param savepoint The innermost open savepoint, as returned by mark().
+     */
+    public void rollback(int savepoint) {
+        int logSize = this.savepointLogSizes[this.savepointDepth - 1];
+        int outermost = closeSavepoint(savepoint);
+        // Undo the most recent first, so each entry restores what was there before the one it undoes.
+        for (int i = this.undoLog.size() - 1; i >= logSize; --i) {
+            this.undoLog.remove(i).undo();
+        }
+        if (0 == this.savepointDepth) {
+            mergeOutsideNonceIncrements(outermost);
+        }
+    }
+
+    /**
+     * Increments the nonce as though this happened beneath all the open savepoints:  rolling them back won't undo it.
+     * This is how a nonce increment which must happen no matter what becomes of the current call (or its callers) is recorded.
+     * As in the case where the savepoints were separate kernels committing on top of this one, a delete of the account within
+     * the savepoints will wipe it out, if it is kept.
+     *
+     * @param address The account whose nonce to increment.
+     */
+    public void incrementNonceOutsideSavepoints(byte[] address) {
+        if (0 == this.savepointDepth) {
+            incrementNonce(address);
+        } else {
+            if (null == this.outsideNonceIncrements) {
+                this.outsideNonceIncrements = new ByteArrayMap<>();
+            }
+            this.outsideNonceIncrements.put(address, outsideNonceIncrements(address) + 1L);
         }
     }
 
     @Override
     public void createAccount(byte[] address) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.createAccount(address);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
-        this.deletedAccountProjection.remove(new ByteArrayWrapper(address));
+        AccountWrites account = beginWrite(address);
+        account.isCreated = true;
+        account.exists = true;
+        account.isDeletedProjection = false;
         // Say that we have this cached so we don't go back to any old version in the parent (even though it is unlikely we will create over delete).
-        this.cachedAccountBalances.add(new ByteArrayWrapper(address));
+        account.isBalanceCached = true;
     }
 
     @Override
     public boolean hasAccountState(byte[] address) {
+        AccountWrites account = this.writes.get(address);
         boolean result = false;
-        if (!this.deletedAccountProjection.contains(new ByteArrayWrapper(address))) {
-            result = this.writeCache.hasAccountState(address);
-            if (!result) {
+        if ((null == account) || !account.isDeletedProjection) {
+            result = ((null != account) && account.exists) || (0L != outsideNonceIncrements(address));
+            if (!result && !wasDeleted(account)) {
                 result = this.parent.hasAccountState(address);
+                boolean observed = result;
+                recordRead((kernel) -> observed == kernel.hasAccountState(address));
             }
         }
         return result;
@@ -78,20 +202,21 @@ public class TransactionalKernel implements KernelInterface {
 
     @Override
     public void putCode(byte[] address, byte[] code) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.putCode(address, code);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        AccountWrites account = beginWrite(address);
+        account.code = code;
+        account.exists = true;
     }
 
     @Override
     public byte[] getCode(byte[] address) {
+        AccountWrites account = this.writes.get(address);
         byte[] result = null;
-        if (!this.deletedAccountProjection.contains(new ByteArrayWrapper(address))) {
-            result = this.writeCache.getCode(address);
-            if (null == result) {
+        if ((null == account) || !account.isDeletedProjection) {
+            result = (null != account) ? account.code : null;
+            if ((null == result) && !wasDeleted(account)) {
                 result = this.parent.getCode(address);
+                byte[] observed = result;
+                recordRead((kernel) -> Arrays.equals(observed, kernel.getCode(address)));
             }
         }
         return result;
@@ -99,42 +224,124 @@ public class TransactionalKernel implements KernelInterface {
 
     @Override
     public void putStorage(byte[] address, byte[] key, byte[] value) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.putStorage(address, key, value);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        AccountWrites account = beginWrite(address);
+        if (null == account.storage) {
+            account.storage = new ByteArrayMap<>();
+        }
+        int savepoint = currentSavepoint();
+        StorageSlot slot = account.storage.get(key);
+        if (null == slot) {
+            slot = new StorageSlot();
+            account.storage.put(key, slot);
+            if (NO_SAVEPOINT != savepoint) {
+                this.undoLog.add(new StorageUndo(account.storage, key, null, null, NO_SAVEPOINT));
+            }
+        } else if ((NO_SAVEPOINT != savepoint) && (savepoint != slot.savepoint)) {
+            // This is the first write to the slot in this savepoint so remember what it replaces.
+            this.undoLog.add(new StorageUndo(account.storage, key, slot, slot.value, slot.savepoint));
+        }
+        slot.value = value;
+        slot.savepoint = savepoint;
+        account.exists = true;
     }
 
     @Override
     public byte[] getStorage(byte[] address, byte[] key) {
         // We issue these requests from the given address, only, so it is safe for us to decide that we permit reads after deletes.
         // The direct reason why this happens is that DApps which are already running are permitted to continue running but may need to lazyLoad.
-        byte[] result = this.writeCache.getStorage(address, key);
+        AccountWrites account = this.writes.get(address);
+        StorageSlot slot = ((null != account) && (null != account.storage))
+                ? account.storage.get(key)
+                : null;
+        byte[] result = (null != slot) ? slot.value : null;
         if (null == result) {
             result = this.parent.getStorage(address, key);
+            byte[] observed = result;
+            recordRead((kernel) -> Arrays.equals(observed, kernel.getStorage(address, key)));
         }
         return result;
     }
 
+    @Override
+    public byte[][] getStorageMulti(byte[] address, byte[][] keys) {
+        // Answer what we can from our own writes (with the same rules as getStorage()) and ask the parent for the rest in 1 request.
+        AccountWrites account = this.writes.get(address);
+        byte[][] results = new byte[keys.length][];
+        int[] missIndices = new int[keys.length];
+        int missCount = 0;
+        for (int i = 0; i < keys.length; ++i) {
+            StorageSlot slot = ((null != account) && (null != account.storage))
+                    ? account.storage.get(keys[i])
+                    : null;
+            results[i] = (null != slot) ? slot.value : null;
+            if (null == results[i]) {
+                missIndices[missCount] = i;
+                missCount += 1;
+            }
+        }
+        if (missCount > 0) {
+            byte[][] missKeys = new byte[missCount][];
+            for (int i = 0; i < missCount; ++i) {
+                missKeys[i] = keys[missIndices[i]];
+            }
+            byte[][] missValues = this.parent.getStorageMulti(address, missKeys);
+            for (int i = 0; i < missCount; ++i) {
+                byte[] key = missKeys[i];
+                byte[] observed = missValues[i];
+                results[missIndices[i]] = observed;
+                recordRead((kernel) -> Arrays.equals(observed, kernel.getStorage(address, key)));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void prefetch(byte[] address, byte[][] keys) {
+        // Only the keys we would actually ask the parent for are worth loading.
+        AccountWrites account = this.writes.get(address);
+        byte[][] parentKeys = keys;
+        if ((null != account) && (null != account.storage)) {
+            parentKeys = Arrays.stream(keys)
+                    .filter((key) -> {
+                        StorageSlot slot = account.storage.get(key);
+                        return (null == slot) || (null == slot.value);
+                    })
+                    .toArray(byte[][]::new);
+        }
+        if (parentKeys.length > 0) {
+            this.parent.prefetch(address, parentKeys);
+        }
+    }
+
     @Override
     public void deleteAccount(byte[] address) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.deleteAccount(address);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
-        this.deletedAccountProjection.add(new ByteArrayWrapper(address));
-        this.cachedAccountBalances.remove(new ByteArrayWrapper(address));
+        AccountWrites account = beginWrite(address);
+        // Everything pending would be wiped out by the delete, anyway.
+        account.clearForDelete();
+        account.deletedInSavepoint = currentSavepoint();
+        account.isDeletedProjection = true;
+        account.isBalanceCached = false;
     }
 
     @Override
     public BigInteger getBalance(byte[] address) {
+        AccountWrites account = this.writes.get(address);
         BigInteger result = BigInteger.ZERO;
-        if (!this.deletedAccountProjection.contains(new ByteArrayWrapper(address))) {
-            result = this.writeCache.getBalance(address);
-            if (result.equals(BigInteger.ZERO)) {
+        if ((null == account) || !account.isDeletedProjection) {
+            // Our cached balance may be derived from a parent balance we haven't yet recorded as observed.
+            if (null != this.unobservedBalanceReads) {
+                BigInteger basis = this.unobservedBalanceReads.remove(address);
+                if (null != basis) {
+                    recordRead((kernel) -> basis.equals(kernel.getBalance(address)));
+                }
+            }
+            Balance cached = (null != account) ? account.cachedBalance : Balance.ZERO;
+            if (!cached.isZero() || wasDeleted(account)) {
+                result = cached.toBigInteger();
+            } else {
                 result = this.parent.getBalance(address);
+                BigInteger observed = result;
+                recordRead((kernel) -> observed.equals(kernel.getBalance(address)));
             }
         }
         return result;
@@ -142,35 +349,45 @@ public class TransactionalKernel implements KernelInterface {
 
     @Override
     public void adjustBalance(byte[] address, BigInteger delta) {
-        // This is a read-then-write operation so we need to make sure that there is an entry in our cache, first, before we can apply the mutation.
-        if (!this.cachedAccountBalances.contains(new ByteArrayWrapper(address))) {
+        adjustBalance(address, Balance.valueOf(delta));
+    }
+
+    @Override
+    public void adjustBalance(byte[] address, Balance delta) {
+        AccountWrites account = beginWrite(address);
+        // This is a read-then-write operation so we need to make sure that we have cached the balance, first, before we can apply the delta.
+        if (!account.isBalanceCached) {
             // We can only re-cache this if we didn't already delete it.
             // If it was deleted, we need to fake the lazy creation and start it at zero.
-            if (!this.deletedAccountProjection.contains(new ByteArrayWrapper(address))) {
+            if (!account.isDeletedProjection) {
                 BigInteger balance = this.parent.getBalance(address);
-                this.writeCache.adjustBalance(address, balance);
-            } else {
-                this.writeCache.adjustBalance(address, BigInteger.ZERO);
+                account.cachedBalance = account.cachedBalance.add(Balance.valueOf(balance));
+                if (null != this.unobservedBalanceReads) {
+                    this.unobservedBalanceReads.put(address, balance);
+                }
             }
-            this.cachedAccountBalances.add(new ByteArrayWrapper(address));
+            account.isBalanceCached = true;
         }
         // If this was previously deleted, fake the lazy re-creation.
-        this.deletedAccountProjection.remove(new ByteArrayWrapper(address));
-        
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.adjustBalance(address, delta);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        account.isDeletedProjection = false;
+
+        account.cachedBalance = account.cachedBalance.add(delta);
+        account.balanceDelta = (null != account.balanceDelta)
+                ? account.balanceDelta.add(delta)
+                : delta;
+        account.exists = true;
     }
 
     @Override
     public long getNonce(byte[] address) {
+        AccountWrites account = this.writes.get(address);
         long result = 0L;
-        if (!this.deletedAccountProjection.contains(new ByteArrayWrapper(address))) {
-            result = this.writeCache.getNonce(address);
-            if (0 == result) {
+        if ((null == account) || !account.isDeletedProjection) {
+            result = ((null != account) ? account.nonceIncrements : 0L) + outsideNonceIncrements(address);
+            if ((0 == result) && !wasDeleted(account)) {
                 result = this.parent.getNonce(address);
+                long observed = result;
+                recordRead((kernel) -> observed == kernel.getNonce(address));
             }
         }
         return result;
@@ -178,11 +395,9 @@ public class TransactionalKernel implements KernelInterface {
 
     @Override
     public void incrementNonce(byte[] address) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.incrementNonce(address);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        AccountWrites account = beginWrite(address);
+        account.nonceIncrements += 1;
+        account.exists = true;
     }
 
     @Override
@@ -195,6 +410,18 @@ public class TransactionalKernel implements KernelInterface {
         return this.getBalance(address).compareTo(amount) >= 0;
     }
 
+    @Override
+    public boolean accountBalanceIsAtLeast(byte[] address, Balance amount) {
+        AccountWrites account = this.writes.get(address);
+        // If we already know the balance, compare it without converting it (this is the common case for an account we are charging).
+        // Anything else (including a zero balance, which getBalance() may still look up in the parent) takes the general path.
+        boolean isKnown = (null != account) && account.isBalanceCached && !account.isDeletedProjection && !account.cachedBalance.isZero()
+                && (null == this.unobservedBalanceReads);
+        return isKnown
+                ? (account.cachedBalance.compareTo(amount) >= 0)
+                : accountBalanceIsAtLeast(address, amount.toBigInteger());
+    }
+
     @Override
     public boolean isValidEnergyLimitForCreate(long energyLimit) {
         return energyLimit > 0;
@@ -205,4 +432,220 @@ public class TransactionalKernel implements KernelInterface {
         return energyLimit > 0;
     }
 
+    private void recordRead(Predicate<KernelInterface> check) {
+        if (null != this.readLog) {
+            this.readLog.add(check);
+        }
+    }
+
+    /**
+     * Finds (or creates) the writes of the given account, about to be modified, first recording their current state in the undo
+     * log if this is the first time they are modified in the current savepoint.
+     */
+    private AccountWrites beginWrite(byte[] address) {
+        AccountWrites account = this.writes.computeIfAbsent(address, (key) -> new AccountWrites());
+        int savepoint = currentSavepoint();
+        if ((NO_SAVEPOINT != savepoint) && (savepoint != account.snapshotSavepoint)) {
+            this.undoLog.add(new AccountUndo(account, account.copy()));
+            account.snapshotSavepoint = savepoint;
+        }
+        return account;
+    }
+
+    private static boolean wasDeleted(AccountWrites account) {
+        // Once we delete an account, whatever the parent has for it is gone, so a zero or missing value is our answer (the frames
+        // which see that delete now share this kernel so they can't rely on a parent kernel answering for it).
+        return (null != account) && account.isDeleted;
+    }
+
+    private int currentSavepoint() {
+        return (0 == this.savepointDepth)
+                ? NO_SAVEPOINT
+                : this.savepointIds[this.savepointDepth - 1];
+    }
+
+    /**
+     * Pops the given savepoint, which must be the innermost one open.
+     *
+     * @return The outermost savepoint which was open.
+     */
+    private int closeSavepoint(int savepoint) {
+        RuntimeAssertionError.assertTrue(this.savepointDepth > 0);
+        RuntimeAssertionError.assertTrue(savepoint == this.savepointIds[this.savepointDepth - 1]);
+        int outermost = this.savepointIds[0];
+        this.savepointDepth -= 1;
+        return outermost;
+    }
+
+    private long outsideNonceIncrements(byte[] address) {
+        Long count = (null != this.outsideNonceIncrements)
+                ? this.outsideNonceIncrements.get(address)
+                : null;
+        return (null != count) ? count : 0L;
+    }
+
+    /**
+     * Once the last savepoint is closed, the nonce increments made outside of them can be applied directly.  They were beneath the
+     * savepoints so, if an account was deleted in one which was kept, its increments are wiped out.
+     */
+    private void mergeOutsideNonceIncrements(int outermostSavepoint) {
+        if (null != this.outsideNonceIncrements) {
+            this.outsideNonceIncrements.forEach((address, increments) -> {
+                AccountWrites account = this.writes.computeIfAbsent(address, (key) -> new AccountWrites());
+                // (savepoint ids only increase so anything deleted since the outermost one was opened has an id at least as high).
+                if (account.deletedInSavepoint < outermostSavepoint) {
+                    account.nonceIncrements += increments;
+                    account.exists = true;
+                }
+            });
+            this.outsideNonceIncrements = null;
+        }
+    }
+
+
+    /**
+     * Everything written to one account.  These fields describe both what must be applied to the parent, on commit, and what a cache
+     * with all our writes applied would return (which is what our reads consult before falling through to the parent).
+     */
+    private static final class AccountWrites {
+        // True if the account must be deleted in the parent before the rest is applied.
+        public boolean isDeleted;
+        // True if createAccount() was called since the last delete.
+        public boolean isCreated;
+        // True if anything since the last delete would have (lazily) created the account in a cache.
+        public boolean exists;
+        // The last code put since the last delete (null if none).
+        public byte[] code;
+        // The last value put for each key, since the last delete (null until something is put).
+        public ByteArrayMap<StorageSlot> storage;
+        // The sum of the adjustments since the last delete (null if there were none).
+        public Balance balanceDelta;
+        // The balance a cache would hold:  the deltas plus the parent balance, once we have cached it.
+        public Balance cachedBalance = Balance.ZERO;
+        public long nonceIncrements;
+        // These 2 are our view of the account, not something we write back (see hasAccountState() and adjustBalance()).
+        public boolean isDeletedProjection;
+        public boolean isBalanceCached;
+        // The savepoint the last delete happened in and the last one whose undo log has a copy of these fields.
+        public int deletedInSavepoint = NO_SAVEPOINT;
+        public int snapshotSavepoint = NO_SAVEPOINT;
+
+        public void clearForDelete() {
+            this.isDeleted = true;
+            this.isCreated = false;
+            this.exists = false;
+            this.code = null;
+            this.storage = null;
+            this.balanceDelta = null;
+            this.cachedBalance = Balance.ZERO;
+            this.nonceIncrements = 0L;
+        }
+
+        public AccountWrites copy() {
+            // Note that the storage map is shared:  its slots have undo entries of their own and a delete replaces the map, rather than clearing it.
+            AccountWrites copy = new AccountWrites();
+            copy.copyFrom(this);
+            return copy;
+        }
+
+        public void copyFrom(AccountWrites other) {
+            this.isDeleted = other.isDeleted;
+            this.isCreated = other.isCreated;
+            this.exists = other.exists;
+            this.code = other.code;
+            this.storage = other.storage;
+            this.balanceDelta = other.balanceDelta;
+            this.cachedBalance = other.cachedBalance;
+            this.nonceIncrements = other.nonceIncrements;
+            this.isDeletedProjection = other.isDeletedProjection;
+            this.isBalanceCached = other.isBalanceCached;
+            this.deletedInSavepoint = other.deletedInSavepoint;
+            this.snapshotSavepoint = other.snapshotSavepoint;
+        }
+
+        public void applyTo(KernelInterface target, byte[] address) {
+            if (this.isDeleted) {
+                target.deleteAccount(address);
+            }
+            if (this.isCreated) {
+                target.createAccount(address);
+            }
+            if (null != this.code) {
+                target.putCode(address, this.code);
+            }
+            if (null != this.storage) {
+                this.storage.forEach((key, slot) -> target.putStorage(address, key, slot.value));
+            }
+            if (null != this.balanceDelta) {
+                target.adjustBalance(address, this.balanceDelta);
+            }
+            for (long i = 0; i < this.nonceIncrements; ++i) {
+                target.incrementNonce(address);
+            }
+        }
+    }
+
+
+    /**
+     * The last value put for a storage key, along with the savepoint it was put in (so we only log the first write in each).
+     */
+    private static final class StorageSlot {
+        public byte[] value;
+        public int savepoint;
+    }
+
+
+    private static abstract class Undo {
+        public abstract void undo();
+    }
+
+
+    /**
+     * Restores all the fields of an account's writes (but not the contents of its storage map).
+     */
+    private static final class AccountUndo extends Undo {
+        private final AccountWrites account;
+        private final AccountWrites previous;
+
+        public AccountUndo(AccountWrites account, AccountWrites previous) {
+            this.account = account;
+            this.previous = previous;
+        }
+
+        @Override
+        public void undo() {
+            this.account.copyFrom(this.previous);
+        }
+    }
+
+
+    /**
+     * Restores one storage slot to its previous value or removes it, if it didn't previously exist.
+     */
+    private static final class StorageUndo extends Undo {
+        private final ByteArrayMap<StorageSlot> storage;
+        private final byte[] key;
+        // Null if the slot didn't exist.
+        private final StorageSlot slot;
+        private final byte[] value;
+        private final int savepoint;
+
+        public StorageUndo(ByteArrayMap<StorageSlot> storage, byte[] key, StorageSlot slot, byte[] value, int savepoint) {
+            this.storage = storage;
+            this.key = key;
+            this.slot = slot;
+            this.value = value;
+            this.savepoint = savepoint;
+        }
+
+        @Override
+        public void undo() {
+            if (null == this.slot) {
+                this.storage.remove(this.key);
+            } else {
+                this.slot.value = this.value;
+                this.slot.savepoint = this.savepoint;
+            }
+        }
+    }
 }
@@ -1,11 +1,15 @@
 package org.aion.parallel;
 
 import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A package private class represent resource from address.
  *
  * Each {@link AddressResource} keeps a {@link PriorityQueue} of tasks waiting to acquire the resource.
+ * Each resource also has its own lock and condition so that threads only contend with (and are only woken by) other threads using
+ * the same address.  All state of the resource must only be accessed while holding its lock.
  */
 
 class AddressResource {
@@ -21,21 +25,36 @@ class AddressResource {
 
     private TransactionTask ownedBy;
 
+    private final ReentrantLock lock;
+
+    // Signalled whenever the owner or the waiting queue changes in a way which could let a waiting task proceed.
+    private final Condition stateChanged;
+
     AddressResource(){
         this.waitingQueue = new PriorityQueue<>();
         this.isOwned = false;
         this.ownedBy = null;
+        this.lock = new ReentrantLock();
+        this.stateChanged = this.lock.newCondition();
     }
 
-    boolean addToWaitingQueue(TransactionTask task){
+    /**
+     * Adds the task to the waiting queue, if it isn't already there.
+     * If this makes the task the next owner while a later task owns the resource, that owner needs to abort.  We only mark it, here,
+     * since waking it requires the lock of whatever it is waiting on (which the caller must do after releasing this lock).
+     *
+     * @return The owner which was put in abort state, or null if there was no need to.
+     */
+    TransactionTask addToWaitingQueue(TransactionTask task){
+        TransactionTask abortedOwner = null;
         if (!waitingQueue.contains(task)) {
             waitingQueue.add(task);
             if (isNextOwner(task) && null != ownedBy && task != ownedBy) {
-                ownedBy.setAbortState();
-                return true;
+                ownedBy.setAbortState(task.getIndex());
+                abortedOwner = ownedBy;
             }
         }
-        return false;
+        return abortedOwner;
     }
 
     void removeFromWaitingQueue(TransactionTask task){
@@ -63,6 +82,28 @@ class AddressResource {
         return this.waitingQueue.peek();
     }
 
+    void lock() {
+        this.lock.lock();
+    }
+
+    void unlock() {
+        this.lock.unlock();
+    }
+
+    /**
+     * Waits for the state of the resource to change.  Must be called while holding the lock.
+     */
+    void awaitStateChange() throws InterruptedException {
+        this.stateChanged.await();
+    }
+
+    /**
+     * Wakes the tasks waiting on this resource.  Must be called while holding the lock.
+     */
+    void signalStateChange() {
+        this.stateChanged.signalAll();
+    }
+
     @Override
     public String toString() {
         String ret = super.toString().split("@")[1];
@@ -72,4 +113,3 @@ class AddressResource {
         return ret;
     }
 }
-
@@ -1,51 +1,122 @@
 package org.aion.parallel;
 
+import org.aion.avm.core.util.ByteArrayMap;
 import org.aion.avm.internal.RuntimeAssertionError;
+import org.aion.kernel.TransactionResult;
 import org.aion.kernel.TransactionalKernel;
 
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Used by executor threads to communicate with each other.
  * Executor threads can only acquire/release {@link AddressResource}, commit result through this monitor.
  * A new monitor will be created for each batch of transactions.
+ *
+ * Commits are decoupled from execution:  an executor hands its finished task to {@link #submitForCommit(TransactionTask)} and
+ * immediately moves on, while a single commit thread takes the tasks back out, in index order, via
+ * {@link #blockingPollForCommit()} and {@link #commitTask(TransactionTask)}.  A submitted task which is put in abort state is
+ * handed to the commit thread straight away, out of order, so that its addresses are released.
+ *
+ * There is no global lock:  each {@link AddressResource} has its own lock and condition, so acquiring unrelated addresses never
+ * contends and releasing an address only wakes the tasks waiting on that address.  The resources are found through a map which is
+ * striped by address hash, with each stripe only locked for the lookup itself.  The pending commits are guarded by a separate
+ * commit lock.  A task which is put in abort state is woken wherever it is waiting (see {@link #wakeAbortedTask(TransactionTask)}).
+ *
+ * Since executors don't wait for their turn to commit, a task which would wait for an address held by a submitted task which isn't
+ * next to commit instead aborts (to be retried once that task completes).  Otherwise, every executor could end up waiting on tasks
+ * which can't commit until a task still in the queue gets to run.
+ *
+ * To avoid lock-ordering problems, a thread never holds more than one of these locks at a time.
+ *
+ * In optimistic mode, acquire() doesn't reserve anything:  tasks run without coordination and, once it is a task's turn to commit,
+ * the reads it made are validated against the committed state.  A task whose reads were invalidated is aborted and re-run (which can
+ * only happen once, since all the tasks before it have committed by then).
  */
 public class AddressResourceMonitor {
     static boolean DEBUG = false;
 
-    // Map for resource retrieval
-    private HashMap<AddressWrapper, AddressResource> resources;
+    // Maps for resource retrieval, by address:  each is guarded by its own monitor.
+    private static final int RESOURCE_STRIPES = 16;
+    private final ByteArrayMap<AddressResource>[] resources;
 
-    // Ownership records for each task. It provide fast resource release.
-    private HashMap<TransactionTask, Set<AddressResource>> ownerships;
+    // Resources each task has requested (whether or not it became the owner). It provide fast resource release.
+    // Note that each set is only accessed by the thread running its task.
+    private final ConcurrentHashMap<TransactionTask, Set<AddressResource>> ownerships;
 
-    // Private monitor for safety
-    private final Object sync;
+    // Submitted to stop the commit thread (its negative index puts it ahead of any real task).
+    private static final TransactionTask COMMIT_SHUTDOWN_SENTINEL = new TransactionTask(-1, null);
 
-    // Commit counter used to serialize transaction commit
-    private int commitCounter;
+    // Lock and condition used to serialize transaction commit
+    private final ReentrantLock commitLock;
+    private final Condition commitTurn;
 
-    public AddressResourceMonitor()
+    // The tasks submitted but not yet taken by the commit thread, lowest index first (only accessed under commitLock)
+    private final PriorityQueue<TransactionTask> pendingCommits;
+
+    // Commit counter used to serialize transaction commit (only written under commitLock)
+    private volatile int commitCounter;
+
+    // Number of acquire requests which couldn't be granted immediately (or failed validations, if optimistic), since the last clear
+    private final AtomicInteger conflictCount;
+
+    private final boolean isOptimistic;
+
+    public AddressResourceMonitor() {
+        this(false);
+    }
+
+    /**
+     * @param isOptimistic True if tasks should run without acquiring addresses, validating their reads when they commit, instead.
+     */
+    public AddressResourceMonitor(boolean isOptimistic)
     {
-        this.resources = new HashMap<>();
-        this.ownerships = new HashMap<>();
-        this.sync = new Object();
+        this.isOptimistic = isOptimistic;
+        this.resources = newResourceStripes();
+        this.ownerships = new ConcurrentHashMap<>();
+        this.commitLock = new ReentrantLock();
+        this.commitTurn = this.commitLock.newCondition();
+        this.pendingCommits = new PriorityQueue<>();
         this.commitCounter = 0;
+        this.conflictCount = new AtomicInteger(0);
     }
 
     /**
      * Reset the state of the address resource monitor.
-     * This method will be called for each batch of transaction request.
+     * This method will be called for each batch of transaction request, only when no tasks are running.
      *
      */
     public void clear(){
-        synchronized (sync) {
-            this.resources.clear();
-            this.ownerships.clear();
+        for (ByteArrayMap<AddressResource> stripe : this.resources) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        this.ownerships.clear();
+        this.commitLock.lock();
+        try {
+            RuntimeAssertionError.assertTrue(this.pendingCommits.isEmpty());
             this.commitCounter = 0;
+        } finally {
+            this.commitLock.unlock();
         }
+        this.conflictCount.set(0);
+    }
+
+    /**
+     * Get the number of address conflicts actually hit at runtime since the last clear.
+     * A conflict is an acquire which had to wait for another task or abort (or, in optimistic mode, a commit whose reads were invalid).
+     *
+     * @return The number of conflicting acquire requests.
+     */
+    public int getConflictCount() {
+        return this.conflictCount.get();
     }
 
     /**
@@ -60,18 +131,32 @@ public class AddressResourceMonitor {
      *      The requester thread need to abort
      *
      * @param address The address requested.
+     * In optimistic mode, this returns immediately.
+     *
      * @param task The requester task.
      */
     public void acquire(byte[] address, TransactionTask task){
-        synchronized (sync) {
-            AddressWrapper addressWrapper = new AddressWrapper(address);
-            AddressResource resource = getResource(addressWrapper);
+        if (this.isOptimistic) {
+            return;
+        }
+        AddressResource resource = getResource(address);
+        recordRequest(resource, task);
 
-            // Add task to the waiting queue.
-            if (resource.addToWaitingQueue(task)) {
-                sync.notifyAll();
-            }
+        // Add task to the waiting queue.
+        TransactionTask abortedOwner = null;
+        resource.lock();
+        try {
+            abortedOwner = resource.addToWaitingQueue(task);
+        } finally {
+            resource.unlock();
+        }
+        // The owner we displaced may be blocked elsewhere so wake it (we can't do this under our resource lock).
+        if (null != abortedOwner) {
+            wakeAbortedTask(abortedOwner);
+        }
 
+        resource.lock();
+        try {
             long startTime = 0;
             long endTime = 0;
 
@@ -85,32 +170,46 @@ public class AddressResourceMonitor {
 
             // Resource res is granted to task iff
             // res is not hold by other task && task is the next owner
-            while ((resource.isOwned() || !resource.isNextOwner(task)) && task != resource.getOwnedBy()
-                    && !task.inAbortState()){
+            if (!canAcquire(resource, task) || task.inAbortState()) {
+                this.conflictCount.incrementAndGet();
+            }
+
+            // Publish what we are waiting on before checking the abort state, so that an abort either sees it or we see the abort.
+            task.setBlockingResource(resource);
+            while (!canAcquire(resource, task) && !task.inAbortState()){
+                // Don't tie up this executor waiting on a submitted task which can't commit yet (see the class comment).
+                TransactionTask owner = resource.getOwnedBy();
+                if ((null != owner) && (owner.getIndex() < task.getIndex()) && owner.isAwaitingCommit() && !owner.inAbortState()
+                        && (owner.getIndex() != this.commitCounter)) {
+                    task.setAbortState(owner.getIndex());
+                    break;
+                }
                 try {
-                    sync.wait();
+                    resource.awaitStateChange();
                 }catch (InterruptedException e){
                     RuntimeAssertionError.unreachable("Waiting executor thread received interruption: ACQUIRE");
                 }
             }
+            task.setBlockingResource(null);
 
             if (!task.inAbortState()) {
                 if (DEBUG) {
                     endTime = System.nanoTime();
                     System.out.println("Acquire " + task.getIndex() + " " + resource.toString()
-                            + " waitingTime " + (endTime - startTime)/1000 + " \u00B5s");
+                            + " waitingTime " + (endTime - startTime)/1000 + " µs");
                 }
                 resource.setOwner(task);
-                recordOwnership(resource, task);
             }else{
                 if (DEBUG) {
                     endTime = System.nanoTime();
                     System.out.println("Abort   " + task.getIndex() + " " + resource.toString()
-                            + " waitingTime " + (endTime - startTime)/1000 + " \u00B5s");
+                            + " waitingTime " + (endTime - startTime)/1000 + " µs");
                 }
             }
 
             if (DEBUG) System.out.flush();
+        } finally {
+            resource.unlock();
         }
     }
 
@@ -118,88 +217,209 @@ public class AddressResourceMonitor {
      * Release all resource holding by given task.
      * Called by executor thread when the task finished/need restart.
      *
-     * This method will not block.
+     * This method will not block, except on the locks of the resources it releases.
+     * Only the tasks waiting on those resources are woken.
      *
      * @param task The requesting task.
      */
     private void releaseResourcesForTask(TransactionTask task){
-        RuntimeAssertionError.assertTrue(Thread.holdsLock(sync));
-
         Set<AddressResource> toRemove = ownerships.remove(task);
         if (null != toRemove) {
             for (AddressResource resource : toRemove) {
-                resource.removeFromWaitingQueue(task);
-                if (task == resource.getOwnedBy()) {
-                    resource.setOwner(null);
+                resource.lock();
+                try {
+                    resource.removeFromWaitingQueue(task);
+                    if (task == resource.getOwnedBy()) {
+                        resource.setOwner(null);
+                    }
+                    if (DEBUG) {
+                        int nextOwner = null != resource.getNextOwner() ? resource.getNextOwner().getIndex() : -1;
+                        System.out.println("Release " + task.getIndex() + " " + resource.toString() + " nextOwner " + nextOwner);
+                    }
+                    resource.signalStateChange();
+                } finally {
+                    resource.unlock();
                 }
-                if (DEBUG) {
-                    int nextOwner = null != resource.getNextOwner() ? resource.getNextOwner().getIndex() : -1;
-                    System.out.println("Release " + task.getIndex() + " " + resource.toString() + " nextOwner " + nextOwner);
+            }
+        }
+    }
+
+    /**
+     * Called by the executor thread once it has finished running an attempt at the given task (see
+     * TransactionTask.setAttemptResult()).  This never blocks on the commit order:  the commit thread will take it from here.
+     *
+     * @param task The finished task.
+     */
+    public void submitForCommit(TransactionTask task) {
+        task.setAwaitingCommit();
+        this.commitLock.lock();
+        try {
+            this.pendingCommits.add(task);
+            this.commitTurn.signalAll();
+        } finally {
+            this.commitLock.unlock();
+        }
+        // Anyone waiting on the addresses this task holds may now need to give up (see acquire()).
+        Set<AddressResource> held = this.ownerships.get(task);
+        if (null != held) {
+            for (AddressResource resource : held) {
+                resource.lock();
+                try {
+                    resource.signalStateChange();
+                } finally {
+                    resource.unlock();
                 }
             }
         }
     }
 
     /**
-     * Try commit the task transactional kernel of the given task.
-     * The commit will be serialized as the index of the task.
-     * All resource hold by task will be released after this method return.
+     * Called by the commit thread to wait for the next task it should pass to commitTask():  either the task whose turn it is to
+     * commit or a submitted task which was put in abort state.
      *
-     * The executor thread of the task will block until
-     *      It is the task's turn to commit result
-     *      OR
-     *      The task need to abort to yield a address resource
+     * @return The next task to commit or abort, or null if the commit thread should shut down.
+     */
+    public TransactionTask blockingPollForCommit() {
+        TransactionTask next = null;
+        this.commitLock.lock();
+        try {
+            while (null == next) {
+                TransactionTask head = this.pendingCommits.peek();
+                if (COMMIT_SHUTDOWN_SENTINEL == head) {
+                    this.pendingCommits.poll();
+                    break;
+                }
+                // Aborted tasks are released out of order, since someone is waiting on them.
+                // (there are usually only a few pending commits so we just scan them).
+                Iterator<TransactionTask> iterator = this.pendingCommits.iterator();
+                while ((null == next) && iterator.hasNext()) {
+                    TransactionTask candidate = iterator.next();
+                    if (candidate.inAbortState()) {
+                        iterator.remove();
+                        next = candidate;
+                    }
+                }
+                if ((null == next) && (null != head) && (this.commitCounter == head.getIndex())) {
+                    next = this.pendingCommits.poll();
+                }
+                if (null == next) {
+                    try {
+                        this.commitTurn.await();
+                    } catch (InterruptedException e) {
+                        RuntimeAssertionError.unreachable("Waiting commit thread received interruption: COMMIT");
+                    }
+                }
+            }
+        } finally {
+            this.commitLock.unlock();
+        }
+        return next;
+    }
+
+    /**
+     * Called by the commit thread to commit the task transactional kernel of the task returned by blockingPollForCommit().
+     * All resource hold by task will be released after this method return.
      *
-     * @param task The requesting task.
-     * @param isRejected True only if the transaction relating to this task was rejected.
+     * The task needs to abort, instead, if it was put in abort state to yield a address resource or, in optimistic mode, if
+     * anything it read was changed by an earlier commit.
      *
-     * @return True if commit is successful. False if task need to abort.
+     * @param task The task to commit.
+     * @return True if commit is successful. False if task need to abort (and be retried).
      */
-    public boolean commitKernelForTask(TransactionTask task, boolean isRejected){
+    public boolean commitTask(TransactionTask task) {
         boolean ret = false;
+        TransactionResult result = task.getAttemptResult();
+        TransactionalKernel taskKernel = (TransactionalKernel) task.getTaskKernel();
 
-        synchronized (sync){
-
-            while (this.commitCounter != task.getIndex() && !task.inAbortState()){
-                try {
-                    sync.wait();
-                }catch (InterruptedException e){
-                    RuntimeAssertionError.unreachable("Waiting executor thread received interruption: COMMIT");
-                }
-            }
-
-            if (!task.inAbortState()){
-                if (!isRejected) {
-                    ((TransactionalKernel) task.getTaskKernel()).commit();
+        // Note that the task can't be aborted once it is its turn, since only earlier tasks can abort it.
+        // (a FAILED_ABORT without the abort state can happen if an abort of this task's previous attempt landed late).
+        boolean isAborted = task.inAbortState() || (TransactionResult.Code.FAILED_ABORT == result.getStatusCode());
+        if (!isAborted) {
+            RuntimeAssertionError.assertTrue(this.commitCounter == task.getIndex());
+            // (note that even a rejection depends on what was read so, if optimistic, we validate those, too).
+            if (this.isOptimistic && !taskKernel.validateReads()) {
+                this.conflictCount.incrementAndGet();
+            } else {
+                if (!result.getStatusCode().isRejected()) {
+                    taskKernel.commit();
                     task.outputFlush();
                 }
-                this.commitCounter++;
                 ret = true;
             }
+        }
 
-            releaseResourcesForTask(task);
+        releaseResourcesForTask(task);
 
-            // Only wake up others when all resources are released
-            sync.notifyAll();
+        if (ret) {
+            this.commitLock.lock();
+            try {
+                this.commitCounter++;
+                // The commit thread is the only one waiting for the counter.
+                this.commitTurn.signalAll();
+            } finally {
+                this.commitLock.unlock();
+            }
         }
-
         return ret;
     }
 
-    private AddressResource getResource(AddressWrapper addr){
-        RuntimeAssertionError.assertTrue(Thread.holdsLock(sync));
+    /**
+     * Makes blockingPollForCommit() return null, so the commit thread shuts down.  Only called once no tasks are running.
+     */
+    public void requestCommitShutdown() {
+        this.commitLock.lock();
+        try {
+            this.pendingCommits.add(COMMIT_SHUTDOWN_SENTINEL);
+            this.commitTurn.signalAll();
+        } finally {
+            this.commitLock.unlock();
+        }
+    }
 
-        AddressResource ret = resources.get(addr);
-        if (null == ret){
-            ret = new AddressResource();
-            resources.put(addr, ret);
+    /**
+     * Wakes a task which was just put in abort state, wherever it is waiting, so that it can notice the abort.
+     * Must not be called while holding any resource lock.
+     */
+    private void wakeAbortedTask(TransactionTask task) {
+        AddressResource blocker = task.getBlockingResource();
+        if (null != blocker) {
+            blocker.lock();
+            try {
+                blocker.signalStateChange();
+            } finally {
+                blocker.unlock();
+            }
+        }
+        // It may also be waiting in the commit stage.
+        this.commitLock.lock();
+        try {
+            this.commitTurn.signalAll();
+        } finally {
+            this.commitLock.unlock();
         }
-        return ret;
     }
 
-    private void recordOwnership(AddressResource res, TransactionTask task){
-        RuntimeAssertionError.assertTrue(Thread.holdsLock(sync));
+    private static boolean canAcquire(AddressResource resource, TransactionTask task) {
+        return ((!resource.isOwned() && resource.isNextOwner(task)) || task == resource.getOwnedBy());
+    }
 
+    private AddressResource getResource(byte[] address){
+        ByteArrayMap<AddressResource> stripe = this.resources[ByteArrayMap.hash(address) & (RESOURCE_STRIPES - 1)];
+        synchronized (stripe) {
+            return stripe.computeIfAbsent(address, (key) -> new AddressResource());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ByteArrayMap<AddressResource>[] newResourceStripes() {
+        ByteArrayMap<AddressResource>[] stripes = new ByteArrayMap[RESOURCE_STRIPES];
+        for (int i = 0; i < RESOURCE_STRIPES; ++i) {
+            stripes[i] = new ByteArrayMap<>();
+        }
+        return stripes;
+    }
+
+    private void recordRequest(AddressResource res, TransactionTask task){
         Set<AddressResource> entry = ownerships.get(task);
         if (null == entry){
             entry = new HashSet<>();
@@ -209,10 +429,6 @@ public class AddressResourceMonitor {
     }
 
     void testReleaseResourcesForTask(TransactionTask task){
-        synchronized (sync) {
-            releaseResourcesForTask(task);
-            sync.notifyAll();
-        }
+        releaseResourcesForTask(task);
     }
 }
-
@@ -0,0 +1,60 @@
+package org.aion.parallel;
+
+/**
+ * The result of {@link ConflictGraphScheduler#schedule(org.aion.kernel.TransactionContext[])} for one batch of transactions.
+ *
+ * Transactions which touch a common address are placed in the same lane and each one depends on the transactions before it, in
+ * that lane, which touched one of its addresses.  A transaction is only handed to an executor once all of its predecessors have
+ * committed, so these predictable conflicts are never discovered at runtime.
+ * All indices are relative to the start of the batch.
+ */
+public class BatchSchedule {
+    private final int[][] dependents;
+    private final int[] predecessorCounts;
+    private final int laneCount;
+    private final int predictedConflictCount;
+
+    BatchSchedule(int[][] dependents, int[] predecessorCounts, int laneCount, int predictedConflictCount) {
+        this.dependents = dependents;
+        this.predecessorCounts = predecessorCounts;
+        this.laneCount = laneCount;
+        this.predictedConflictCount = predictedConflictCount;
+    }
+
+    /**
+     * @return The number of transactions in the batch.
+     */
+    public int size() {
+        return this.predecessorCounts.length;
+    }
+
+    /**
+     * @param index The index of a transaction in the batch.
+     * @return The indices of the later transactions which must wait for this one to commit.
+     */
+    public int[] getDependents(int index) {
+        return this.dependents[index];
+    }
+
+    /**
+     * @param index The index of a transaction in the batch.
+     * @return The number of earlier transactions which must commit before this one can start.
+     */
+    public int getPredecessorCount(int index) {
+        return this.predecessorCounts[index];
+    }
+
+    /**
+     * @return The number of independent groups of transactions (those which share no address with any other group).
+     */
+    public int getLaneCount() {
+        return this.laneCount;
+    }
+
+    /**
+     * @return The number of transactions which were scheduled to wait for an earlier one since they share an address.
+     */
+    public int getPredictedConflictCount() {
+        return this.predictedConflictCount;
+    }
+}
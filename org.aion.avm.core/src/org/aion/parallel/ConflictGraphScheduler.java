@@ -0,0 +1,96 @@
+package org.aion.parallel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.kernel.TransactionContext;
+
+
+/**
+ * Builds the address conflict graph of a batch of transactions before it is dispatched.
+ *
+ * The sender and target of every external transaction are known before it runs so, if two transactions share either, the later one
+ * would just wait in (or be aborted by) the {@link AddressResourceMonitor}.  We instead record the earlier one as a predecessor so
+ * the later one isn't started until it is safe.  Conflicts which only appear at runtime (internal calls, for example) are still
+ * resolved by the AddressResourceMonitor.
+ */
+public class ConflictGraphScheduler {
+    private static final int[] NO_DEPENDENTS = new int[0];
+
+    /**
+     * Computes the schedule for the given batch.
+     *
+     * @param transactions The batch of transactions, in block order.
+     * @return The schedule describing the lanes and dependencies of the batch.
+     */
+    public static BatchSchedule schedule(TransactionContext[] transactions) {
+        int count = transactions.length;
+        int[][] dependents = new int[count][];
+        int[] predecessorCounts = new int[count];
+        // Union-find over transaction indices, used to count the lanes.
+        int[] laneParents = new int[count];
+        int laneCount = count;
+        int predictedConflictCount = 0;
+
+        // The last transaction, so far, to touch each address.
+        Map<ByteArrayWrapper, Integer> lastUsers = new HashMap<>();
+        for (int i = 0; i < count; ++i) {
+            dependents[i] = NO_DEPENDENTS;
+            laneParents[i] = i;
+
+            TransactionContext ctx = transactions[i];
+            int firstPredecessor = linkToLastUser(lastUsers, ctx.getCaller(), i, -1, dependents, predecessorCounts);
+            int secondPredecessor = linkToLastUser(lastUsers, ctx.getAddress(), i, firstPredecessor, dependents, predecessorCounts);
+
+            if ((firstPredecessor >= 0) || (secondPredecessor >= 0)) {
+                predictedConflictCount += 1;
+            }
+            for (int predecessor : new int[] {firstPredecessor, secondPredecessor}) {
+                if ((predecessor >= 0) && union(laneParents, predecessor, i)) {
+                    laneCount -= 1;
+                }
+            }
+        }
+        return new BatchSchedule(dependents, predecessorCounts, laneCount, predictedConflictCount);
+    }
+
+
+    private static int linkToLastUser(Map<ByteArrayWrapper, Integer> lastUsers, byte[] address, int index, int alreadyLinked, int[][] dependents, int[] predecessorCounts) {
+        int predecessor = -1;
+        // (a CREATE always has an address but we still want to be safe against incomplete contexts).
+        if (null != address) {
+            Integer lastUser = lastUsers.put(new ByteArrayWrapper(address), index);
+            // We don't want to depend on the same transaction twice (a self-transfer or a sender and target last used together).
+            if ((null != lastUser) && (lastUser != index) && (lastUser != alreadyLinked)) {
+                predecessor = lastUser;
+                int[] existing = dependents[predecessor];
+                int[] grown = new int[existing.length + 1];
+                System.arraycopy(existing, 0, grown, 0, existing.length);
+                grown[existing.length] = index;
+                dependents[predecessor] = grown;
+                predecessorCounts[index] += 1;
+            }
+        }
+        return predecessor;
+    }
+
+    private static boolean union(int[] parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        boolean didMerge = (rootA != rootB);
+        if (didMerge) {
+            parents[rootB] = rootA;
+        }
+        return didMerge;
+    }
+
+    private static int find(int[] parents, int index) {
+        while (parents[index] != index) {
+            // Path halving.
+            parents[index] = parents[parents[index]];
+            index = parents[index];
+        }
+        return index;
+    }
+}
@@ -0,0 +1,22 @@
+package org.aion.parallel;
+
+import org.aion.avm.core.ReentrantDAppStack;
+import org.aion.avm.internal.IInstrumentation;
+
+
+/**
+ * The per-thread state an executor lends to each task it runs (see {@link TransactionTask#beginAttempt(ExecutorContext)}).
+ * An executor creates exactly one of these, once its IInstrumentation is attached, and reuses it for every task and retry it runs,
+ * so that starting an attempt doesn't need to allocate anything.
+ *
+ * Note that nothing in here can outlive an attempt:  the ReentrantDAppStack is always empty again once the attempt returns.
+ */
+public class ExecutorContext {
+    final IInstrumentation instrumentation;
+    final ReentrantDAppStack reentrantDAppStack;
+
+    public ExecutorContext(IInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+        this.reentrantDAppStack = new ReentrantDAppStack();
+    }
+}
@@ -16,50 +16,92 @@ public class TransactionTask implements Comparable<TransactionTask>{
     private TransactionContext externalTransactionContext;
     private volatile boolean abortState;
     private IInstrumentation threadOwningTask;
+    // Borrowed from the ExecutorContext of the executor running the current attempt.
     private ReentrantDAppStack reentrantDAppStack;
     private int index;
+    // The kernel of the batch this task was sent in:  its task kernel is built on (and committed into) this one.
+    private final KernelInterface parentKernel;
     private KernelInterface taskKernel;
-    private StringBuffer outBuffer;
+    // Only allocated once the task prints something (most never do) and then reused across attempts.
+    // This belongs to the task, not the executor, since it is only flushed once the task commits.
+    private StringBuilder outBuffer;
+    // The resource this task is currently blocked on in AddressResourceMonitor.acquire(), so that an abort can wake it.
+    private volatile AddressResource blockingResource;
+    // The index of the task which most recently forced this one to abort (-1 if there is none, in the current attempt).
+    private volatile int abortCauseIndex;
+    // The most energy an aborted frame of the current attempt had consumed.
+    private long attemptAbortedEnergy;
+    // Statistics accumulated over all the aborted attempts (these survive beginAttempt()).
+    private int abortCount;
+    private long wastedEnergy;
+    private long wastedNanos;
+    // Set once the current attempt has been handed to the commit stage (see AddressResourceMonitor.submitForCommit()).
+    private volatile boolean isAwaitingCommit;
+    // The result of the current attempt and how long it took to run, carried from the executor to the commit stage.
+    private TransactionResult attemptResult;
+    private long attemptNanos;
 
     public TransactionTask(TransactionContext ctx, int index){
+        this(ctx, index, null);
+    }
+
+    public TransactionTask(TransactionContext ctx, int index, KernelInterface parentKernel){
         this.externalTransactionContext = ctx;
         this.index = index;
+        this.parentKernel = parentKernel;
         this.abortState = false;
         this.threadOwningTask = null;
-        this.reentrantDAppStack = new ReentrantDAppStack();
-        this.outBuffer = new StringBuffer();
+        this.reentrantDAppStack = null;
+        this.outBuffer = null;
+        this.abortCauseIndex = -1;
     }
 
     public TransactionTask(int index, Thread t){
         this.abortState = false;
         this.threadOwningTask = null;
         this.index = index;
-    }
-
-    public void resetState(){
-        this.abortState = false;
-        this.threadOwningTask = null;
-        this.reentrantDAppStack = new ReentrantDAppStack();
-        this.outBuffer = new StringBuffer();
+        this.parentKernel = null;
     }
 
     /**
-     * Attach an {@link IInstrumentation} to the current task.
-     * If the task is already in abort state, set the helper abort state as well.
+     * Resets the per-attempt state of the task and attaches the given executor's context (its {@link IInstrumentation} and
+     * ReentrantDAppStack) to it, for the duration of one attempt at running the task.
+     * Nothing is allocated here, so that the steady state of an executor is allocation-free.
+     *
+     * @param context The context of the executor thread about to run the attempt.
      */
-    public void attachInstrumentationForThread() {
+    public void beginAttempt(ExecutorContext context) {
         RuntimeAssertionError.assertTrue(null == this.threadOwningTask);
-        this.threadOwningTask = IInstrumentation.attachedThreadInstrumentation.get();
-        RuntimeAssertionError.assertTrue(null != this.threadOwningTask);
+        RuntimeAssertionError.assertTrue(context.reentrantDAppStack.isEmpty());
+        this.abortState = false;
+        this.abortCauseIndex = -1;
+        this.attemptAbortedEnergy = 0L;
+        this.isAwaitingCommit = false;
+        this.attemptResult = null;
+        this.attemptNanos = 0L;
+        this.reentrantDAppStack = context.reentrantDAppStack;
+        if (null != this.outBuffer) {
+            this.outBuffer.setLength(0);
+        }
+        // An abort aimed at a task this executor already handed off can still land on its instrumentation, after that task was
+        // detached, so start clean.
+        // Note that this is safe to do here since the instrumentation isn't exposed to any other threads.
+        context.instrumentation.clearAbortState();
+        this.threadOwningTask = context.instrumentation;
         //TODO: potential broken state
         if (this.abortState){
-            threadOwningTask.setAbortState();
+            this.threadOwningTask.setAbortState();
         }
     }
 
-    public void detachInstrumentationForThread() {
-        RuntimeAssertionError.assertTrue(IInstrumentation.attachedThreadInstrumentation.get() == this.threadOwningTask);
+    /**
+     * Detaches the executor's context attached by beginAttempt(), once the attempt has finished running.
+     */
+    public void endAttempt() {
+        RuntimeAssertionError.assertTrue(null != this.threadOwningTask);
+        RuntimeAssertionError.assertTrue(this.reentrantDAppStack.isEmpty());
         this.threadOwningTask = null;
+        this.reentrantDAppStack = null;
     }
 
     /**
@@ -74,6 +116,93 @@ public class TransactionTask implements Comparable<TransactionTask>{
         }
     }
 
+    /**
+     * Set the current task state to require abort since the given task needs something it holds.
+     * The cause is recorded so that the retry of this task can be deferred until the cause has completed.
+     *
+     * @param causeIndex The index of the task this one is yielding to.
+     */
+    void setAbortState(int causeIndex) {
+        // (written before the abort state so that anyone who sees the abort also sees its cause).
+        this.abortCauseIndex = causeIndex;
+        setAbortState();
+    }
+
+    /**
+     * @return The index of the task which most recently forced this attempt to abort, or -1 if it wasn't forced by a specific task.
+     */
+    public int getAbortCauseIndex() {
+        return this.abortCauseIndex;
+    }
+
+    /**
+     * Called when a frame of the current attempt is aborted, with the energy it had consumed (which is not charged).
+     */
+    public void recordAbortedEnergy(long energy) {
+        // Outer frames have also consumed what their inner frames did, so we just want the largest.
+        this.attemptAbortedEnergy = Math.max(this.attemptAbortedEnergy, energy);
+    }
+
+    /**
+     * Called by the executor thread once an attempt at running this task has aborted, to account for the work it threw away.
+     *
+     * @param resultEnergy The energy reported by the aborted attempt's result (non-zero if it ran to completion before aborting).
+     * @param nanos The time spent on the aborted attempt.
+     */
+    public void recordAbortedAttempt(long resultEnergy, long nanos) {
+        this.abortCount += 1;
+        this.wastedEnergy += Math.max(resultEnergy, this.attemptAbortedEnergy);
+        this.wastedNanos += nanos;
+    }
+
+    /**
+     * @return The number of times this task has been aborted and retried.
+     */
+    public int getAbortCount() {
+        return this.abortCount;
+    }
+
+    /**
+     * @return The total energy consumed by the aborted attempts at running this task.
+     */
+    public long getWastedEnergy() {
+        return this.wastedEnergy;
+    }
+
+    /**
+     * @return The total time spent on the aborted attempts at running this task, in nanoseconds.
+     */
+    public long getWastedNanos() {
+        return this.wastedNanos;
+    }
+
+    /**
+     * Called by the executor thread once it has finished running the current attempt, before handing it to the commit stage.
+     *
+     * @param result The result of the attempt.
+     * @param nanos The time spent running the attempt.
+     */
+    public void setAttemptResult(TransactionResult result, long nanos) {
+        this.attemptResult = result;
+        this.attemptNanos = nanos;
+    }
+
+    public TransactionResult getAttemptResult() {
+        return this.attemptResult;
+    }
+
+    public long getAttemptNanos() {
+        return this.attemptNanos;
+    }
+
+    void setAwaitingCommit() {
+        this.isAwaitingCommit = true;
+    }
+
+    boolean isAwaitingCommit() {
+        return this.isAwaitingCommit;
+    }
+
     /**
      * Check if the current task requires abort.
      *
@@ -110,6 +239,15 @@ public class TransactionTask implements Comparable<TransactionTask>{
         return externalTransactionContext;
     }
 
+    /**
+     * Get the kernel of the batch the current task was sent in, which its task kernel is built on.
+     *
+     * @return The parent kernel of the task.
+     */
+    public KernelInterface getParentKernel() {
+        return parentKernel;
+    }
+
     /**
      * Set the per task transactional kernel of the current task.
      */
@@ -127,22 +265,37 @@ public class TransactionTask implements Comparable<TransactionTask>{
         return taskKernel;
     }
 
+    void setBlockingResource(AddressResource resource) {
+        this.blockingResource = resource;
+    }
+
+    AddressResource getBlockingResource() {
+        return this.blockingResource;
+    }
+
     public void outputPrint(String toPrint){
-        this.outBuffer.append(toPrint);
+        lazyOutBuffer().append(toPrint);
     }
 
     public void outputPrintln(String toPrint){
-        this.outBuffer.append(toPrint + "\n");
+        lazyOutBuffer().append(toPrint).append('\n');
     }
 
     void outputFlush(){
-        if (this.outBuffer.length() > 0) {
+        if ((null != this.outBuffer) && (this.outBuffer.length() > 0)) {
             System.out.println("Output from transaction " + Helpers.bytesToHexString(externalTransactionContext.getTransactionHash()));
             System.out.println(this.outBuffer);
             System.out.flush();
         }
     }
 
+    private StringBuilder lazyOutBuffer() {
+        if (null == this.outBuffer) {
+            this.outBuffer = new StringBuilder();
+        }
+        return this.outBuffer;
+    }
+
     /**
      * Compare to another task in term of transaction index.
      *
@@ -0,0 +1,98 @@
+package org.aion.avm.core;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.aion.avm.api.Address;
+import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.Balance;
+import org.aion.kernel.Block;
+import org.aion.kernel.KernelInterface;
+import org.aion.kernel.KernelInterfaceImpl;
+import org.aion.kernel.SimpleFuture;
+import org.aion.kernel.Transaction;
+import org.aion.kernel.TransactionContext;
+import org.aion.kernel.TransactionContextImpl;
+import org.aion.kernel.TransactionResult;
+import org.aion.kernel.TransactionalKernel;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Measures blocks made entirely of balance transfers (so, what is left is the energy charge and refund, the value transfer and the
+ * commit of the balances), along with the balance arithmetic on its own, as BigInteger and as Balance.
+ * While it can be run as a standard unit test, the constants are meant to be tuned for more hands-on measurement.
+ */
+public class BalanceTransferPerfTest {
+    private static final int ACCOUNTS = 100;
+    private static final int BLOCKS = 50;
+    private static final int TRANSFERS_PER_BLOCK = 200;
+    private static final int ADJUSTMENTS = 1_000_000;
+
+    @Test
+    public void testTransferBlocks() {
+        KernelInterface kernel = new KernelInterfaceImpl();
+        Avm avm = CommonAvmFactory.buildAvmInstance(kernel);
+        byte[][] accounts = new byte[ACCOUNTS][];
+        long[] nonces = new long[ACCOUNTS];
+        BigInteger funding = BigInteger.TEN.pow(15);
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            accounts[i] = Helpers.randomBytes(Address.LENGTH);
+            kernel.adjustBalance(KernelInterfaceImpl.PREMINED_ADDRESS, funding.negate());
+            kernel.adjustBalance(accounts[i], funding);
+        }
+
+        Random random = new Random(1L);
+        byte[] coinbase = Helpers.randomBytes(Address.LENGTH);
+        long start = System.nanoTime();
+        for (int blockNumber = 1; blockNumber <= BLOCKS; ++blockNumber) {
+            Block block = new Block(new byte[32], blockNumber, coinbase, System.currentTimeMillis(), new byte[0]);
+            TransactionContext[] transactions = new TransactionContext[TRANSFERS_PER_BLOCK];
+            for (int i = 0; i < TRANSFERS_PER_BLOCK; ++i) {
+                int from = random.nextInt(ACCOUNTS);
+                int to = random.nextInt(ACCOUNTS);
+                Transaction transfer = Transaction.balanceTransfer(accounts[from], accounts[to], nonces[from], BigInteger.valueOf(1 + random.nextInt(1000)), 1L);
+                nonces[from] += 1;
+                transactions[i] = new TransactionContextImpl(transfer, block);
+            }
+            SimpleFuture<TransactionResult>[] results = avm.run(transactions);
+            for (SimpleFuture<TransactionResult> result : results) {
+                Assert.assertEquals(TransactionResult.Code.SUCCESS, result.get().getStatusCode());
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        avm.shutdown();
+
+        // The coinbase got all the fees.
+        Assert.assertEquals(BigInteger.valueOf((long) BLOCKS * TRANSFERS_PER_BLOCK * Transaction.BASIC_COST), kernel.getBalance(coinbase));
+        System.out.println("BALANCE TRANSFERS (" + BLOCKS + " blocks of " + TRANSFERS_PER_BLOCK + "): NANOS PER TRANSFER: " + (nanos / ((long) BLOCKS * TRANSFERS_PER_BLOCK)));
+    }
+
+    @Test
+    public void testBalanceArithmetic() {
+        byte[] account = Helpers.randomBytes(Address.LENGTH);
+
+        TransactionalKernel bigKernel = new TransactionalKernel(new KernelInterfaceImpl());
+        long start = System.nanoTime();
+        for (int i = 0; i < ADJUSTMENTS; ++i) {
+            // (this is what the energy charge computed, before).
+            bigKernel.adjustBalance(account, BigInteger.valueOf(i * 3L).negate());
+            bigKernel.accountBalanceIsAtLeast(account, BigInteger.ONE);
+        }
+        long bigNanos = System.nanoTime() - start;
+
+        TransactionalKernel fixedKernel = new TransactionalKernel(new KernelInterfaceImpl());
+        start = System.nanoTime();
+        for (int i = 0; i < ADJUSTMENTS; ++i) {
+            fixedKernel.adjustBalance(account, Balance.product(i, 3L).negate());
+            fixedKernel.accountBalanceIsAtLeast(account, Balance.valueOf(1L));
+        }
+        long fixedNanos = System.nanoTime() - start;
+
+        Assert.assertEquals(bigKernel.getBalance(account), fixedKernel.getBalance(account));
+        System.out.println("BALANCE ADJUSTMENTS: NANOS PER BigInteger ADJUSTMENT: " + ((double) bigNanos / ADJUSTMENTS)
+                + ", NANOS PER Balance ADJUSTMENT: " + ((double) fixedNanos / ADJUSTMENTS));
+    }
+}
@@ -0,0 +1,85 @@
+package org.aion.avm.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class BatchAdmissionGateTest {
+    @Test
+    public void highPriorityGoesFirst() throws Exception {
+        AtomicBoolean isQuiescent = new AtomicBoolean(true);
+        BatchAdmissionGate gate = new BatchAdmissionGate(isQuiescent::get);
+        List<BatchPriority> order = Collections.synchronizedList(new ArrayList<>());
+        Object kernel = new Object();
+
+        // Hold the gate while a LOW and then a HIGH caller queue up behind us.
+        gate.enter(BatchPriority.HIGH, kernel, false);
+        Thread low = startSender(gate, BatchPriority.LOW, kernel, order);
+        Thread high = startSender(gate, BatchPriority.HIGH, kernel, order);
+        gate.exit();
+        low.join();
+        high.join();
+
+        Assert.assertEquals(2, order.size());
+        Assert.assertEquals(BatchPriority.HIGH, order.get(0));
+        Assert.assertEquals(BatchPriority.LOW, order.get(1));
+    }
+
+    @Test
+    public void onlySameKernelShares() throws Exception {
+        AtomicBoolean isQuiescent = new AtomicBoolean(true);
+        BatchAdmissionGate gate = new BatchAdmissionGate(isQuiescent::get);
+        List<BatchPriority> order = Collections.synchronizedList(new ArrayList<>());
+        Object kernel = new Object();
+
+        gate.enter(BatchPriority.HIGH, kernel, true);
+        gate.exit();
+        isQuiescent.set(false);
+
+        // Another batch against the same kernel can pipeline behind the one in flight.
+        gate.enter(BatchPriority.HIGH, kernel, true);
+        gate.exit();
+
+        // A batch against another kernel has to wait for the pool to drain.
+        Thread other = startSender(gate, BatchPriority.HIGH, new Object(), order);
+        Assert.assertTrue(order.isEmpty());
+        Assert.assertTrue(other.isAlive());
+        isQuiescent.set(true);
+        gate.signalStateChange();
+        other.join();
+        Assert.assertEquals(1, order.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failWaitingForOwnResults() {
+        AtomicBoolean isQuiescent = new AtomicBoolean(true);
+        BatchAdmissionGate gate = new BatchAdmissionGate(isQuiescent::get);
+        Object kernel = new Object();
+
+        gate.enter(BatchPriority.HIGH, kernel, false);
+        gate.exit();
+        // Our results are now outstanding so, in lock-step, we would wait for ourselves.
+        isQuiescent.set(false);
+        gate.enter(BatchPriority.HIGH, kernel, false);
+    }
+
+
+    private static Thread startSender(BatchAdmissionGate gate, BatchPriority priority, Object kernel, List<BatchPriority> order) {
+        Thread thread = new Thread(() -> {
+            gate.enter(priority, kernel, true);
+            order.add(priority);
+            gate.exit();
+        });
+        thread.start();
+        // Wait until it is blocked in the gate so that the order it queued in is known.
+        while (Thread.State.WAITING != thread.getState()) {
+            Thread.yield();
+        }
+        return thread;
+    }
+}
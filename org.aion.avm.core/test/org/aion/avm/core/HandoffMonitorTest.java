@@ -49,6 +49,34 @@ public class HandoffMonitorTest {
         Assert.assertTrue(didFail);
     }
 
+    @Test
+    public void pipelinedEnqueueBeforeFutureGet() {
+        // Startup.
+        MonitorThread thread = new MonitorThread();
+        Set<Thread> executorThreads = new HashSet<>();
+        executorThreads.add(thread);
+        HandoffMonitor monitor = new HandoffMonitor(executorThreads, true);
+        thread.startAgainstMonitor(monitor);
+        
+        // Enqueue 2 batches before consuming either - they share one index space, in submission order.
+        SimpleFuture<TransactionResult>[] results1 = monitor.sendTransactionsAsynchronously(new FakeTransaction[] {new FakeTransaction(), new FakeTransaction()});
+        SimpleFuture<TransactionResult>[] results2 = monitor.sendTransactionsAsynchronously(new FakeTransaction[] {new FakeTransaction()});
+        Assert.assertTrue(monitor.hasOutstandingResults());
+        Assert.assertEquals(1, ((FakeResult) results1[1].get()).taskIndex);
+        Assert.assertEquals(2, ((FakeResult) results2[0].get()).taskIndex);
+        Assert.assertEquals(0, ((FakeResult) results1[0].get()).taskIndex);
+        Assert.assertFalse(monitor.hasOutstandingResults());
+        
+        // Once idle, we can restart the numbering.
+        Assert.assertTrue(monitor.isIdle());
+        monitor.restartTaskIndices();
+        results1 = monitor.sendTransactionsAsynchronously(new FakeTransaction[] {new FakeTransaction()});
+        Assert.assertEquals(0, ((FakeResult) results1[0].get()).taskIndex);
+        
+        monitor.stopAndWaitForShutdown();
+        Assert.assertFalse(thread.isAlive());
+    }
+
     @Test
     public void commonCallSequence() {
         // Startup.
@@ -197,7 +225,7 @@ public class HandoffMonitorTest {
             TransactionTask task = this.monitor.blockingPollForTransaction(null, null);
             while (null != task) {
                 // Fake up a result.
-                TransactionResult result = new FakeResult(this);
+                TransactionResult result = new FakeResult(this, task.getIndex());
                 task = this.monitor.blockingPollForTransaction(result, task);
             }
         }
@@ -205,9 +233,11 @@ public class HandoffMonitorTest {
 
     private class FakeResult extends TransactionResult{
         public Thread executor;
+        public int taskIndex;
 
-        public FakeResult(Thread t){
+        public FakeResult(Thread t, int taskIndex){
             this.executor = t;
+            this.taskIndex = taskIndex;
         }
     }
 
@@ -0,0 +1,51 @@
+package org.aion.avm.core;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+
+/**
+ * A rough allocation profile of the PocExchangeTest.testExchange() workload:  runs it repeatedly on one AVM and reports how many bytes
+ * all the threads of the process allocated per run (this includes the contract execution, so it is mostly useful for comparing
+ * changes to the infrastructure around it).
+ * While it can be run as a standard unit test, the constants are meant to be tuned for more hands-on measurement.
+ */
+public class PocExchangeAllocationTest {
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 20;
+
+    @Test
+    public void testExchangeAllocations() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        PocExchangeTest workload = new PocExchangeTest();
+        workload.setup();
+        try {
+            for (int i = 0; i < WARMUP_RUNS; ++i) {
+                workload.testExchange();
+            }
+            // The executor threads are long-lived so they are counted on both sides of the measurement.
+            long[] threadIds = threads.getAllThreadIds();
+            long start = sum(threads.getThreadAllocatedBytes(threadIds));
+            for (int i = 0; i < MEASURED_RUNS; ++i) {
+                workload.testExchange();
+            }
+            long end = sum(threads.getThreadAllocatedBytes(threadIds));
+            System.out.println("EXCHANGE WORKLOAD BYTES ALLOCATED PER RUN: " + ((end - start) / MEASURED_RUNS));
+        } finally {
+            workload.tearDown();
+        }
+    }
+
+
+    private static long sum(long[] allocated) {
+        long total = 0L;
+        for (long bytes : allocated) {
+            // Threads which have since died report -1.
+            if (bytes > 0L) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
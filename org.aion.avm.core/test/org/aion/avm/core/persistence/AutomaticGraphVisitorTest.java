@@ -2,6 +2,7 @@ package org.aion.avm.core.persistence;
 
 import java.lang.reflect.Field;
 
+import org.aion.avm.arraywrapper.IntArray;
 import org.aion.avm.core.SimpleAvm;
 import org.aion.avm.core.classloading.AvmClassLoader;
 import org.aion.avm.internal.IDeserializer;
@@ -69,4 +70,46 @@ public class AutomaticGraphVisitorTest {
         this.secondaryClass.getMethod("avm_setValue", int.class).invoke(secondary, 1);
         Assert.assertEquals(1, this.secondaryClass.getDeclaredField("avm_value").getInt(secondary));
     }
+
+    @Test
+    public void writeBarrierMarksDirty() throws Exception {
+        // Instances created with the special constructor (as stubs are) start clean and only a field write marks them dirty.
+        org.aion.avm.shadow.java.lang.Object secondary = (org.aion.avm.shadow.java.lang.Object) this.secondaryClass.getConstructor(IDeserializer.class, IPersistenceToken.class).newInstance(null, null);
+        Assert.assertFalse(secondary.isDirty());
+        Assert.assertEquals(0, this.secondaryClass.getDeclaredField("avm_value").getInt(secondary));
+        Assert.assertFalse(secondary.isDirty());
+        this.secondaryClass.getMethod("avm_setValue", int.class).invoke(secondary, 1);
+        Assert.assertTrue(secondary.isDirty());
+        
+        // Writes to "this" in a constructor don't go through the barrier since such an instance is always new.
+        org.aion.avm.shadow.java.lang.Object direct = (org.aion.avm.shadow.java.lang.Object) this.secondaryClass.getConstructor(int.class).newInstance(5);
+        Assert.assertFalse(direct.isDirty());
+        
+        // Changing an instance from another class must also go through the barrier.
+        this.primaryClass.getMethod("avm_changeAgain", this.secondaryClass, int.class).invoke(null, direct, 7);
+        Assert.assertTrue(direct.isDirty());
+    }
+
+    @Test
+    public void generateFieldCodecsForDappClasses() throws Exception {
+        // The DApp classes are in the AvmClassLoader, with "private" removed from their fields, so their codecs are generated in that loader.
+        ReflectedFieldCache cache = new ReflectedFieldCache(true);
+        FieldCodecGenerator.IFieldCodec primaryCodec = cache.getCodecForClass(this.primaryClass, false);
+        FieldCodecGenerator.IFieldCodec secondaryCodec = cache.getCodecForClass(this.secondaryClass, false);
+        Assert.assertNotNull(primaryCodec);
+        Assert.assertNotNull(secondaryCodec);
+        Assert.assertNotNull(cache.getCodecForClass(this.primaryClass, true));
+        Assert.assertTrue(this.primaryClass.getClassLoader() == primaryCodec.getClass().getClassLoader());
+        Assert.assertTrue(this.secondaryClass.getClassLoader() == secondaryCodec.getClass().getClassLoader());
+    }
+
+    @Test
+    public void writeTrackedClasses() throws Exception {
+        ReflectedFieldCache cache = new ReflectedFieldCache();
+        Assert.assertTrue(cache.areWritesTracked(this.primaryClass));
+        Assert.assertTrue(cache.areWritesTracked(this.secondaryClass));
+        Assert.assertTrue(cache.areWritesTracked(IntArray.class));
+        // Shadow JCL classes can be modified by code without a barrier so they can't be trusted to be clean.
+        Assert.assertFalse(cache.areWritesTracked(org.aion.avm.shadow.java.lang.StringBuilder.class));
+    }
 }
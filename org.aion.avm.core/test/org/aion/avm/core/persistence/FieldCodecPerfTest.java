@@ -0,0 +1,117 @@
+package org.aion.avm.core.persistence;
+
+import java.util.function.Consumer;
+
+import org.aion.avm.core.NodeEnvironment;
+import org.aion.avm.core.persistence.keyvalue.KeyValueObjectGraph;
+import org.aion.avm.core.util.NullFeeProcessor;
+import org.aion.avm.internal.CommonInstrumentation;
+import org.aion.avm.internal.Helper;
+import org.aion.avm.internal.IInstrumentation;
+import org.aion.avm.internal.IRuntimeSetup;
+import org.aion.avm.internal.InstrumentationHelpers;
+import org.aion.kernel.KernelInterfaceImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Compares the generated field codecs against the reflective path of the ReflectionStructureCodec by serializing, and then deserializing,
+ * every object in a graph about the size of the one BasicPerfContract builds (a few thousand small objects, each with a handful of primitive
+ * fields and a reference to another).
+ * While it can be run as a standard unit test, the constants are meant to be tuned for more hands-on measurement.
+ */
+public class FieldCodecPerfTest {
+    private static final int GRAPH_SIZE = 4_096;
+    private static final int WARMUP_PASSES = 20;
+    private static final int MEASURED_PASSES = 50;
+    private static final Consumer<org.aion.avm.shadow.java.lang.Object> NULL_CONSUMER = (instance) -> {};
+
+    private IInstrumentation instrumentation;
+    private IRuntimeSetup runtimeSetup;
+
+    @Before
+    public void setup() {
+        // Force the initialization of the NodeEnvironment singleton.
+        Assert.assertNotNull(NodeEnvironment.singleton);
+
+        this.instrumentation = new CommonInstrumentation();
+        InstrumentationHelpers.attachThread(this.instrumentation);
+        this.runtimeSetup = new Helper();
+        InstrumentationHelpers.pushNewStackFrame(this.runtimeSetup, ReflectionStructureCodecTarget.class.getClassLoader(), 1_000_000L, 1);
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationHelpers.popExistingStackFrame(this.runtimeSetup);
+        InstrumentationHelpers.detachThread(this.instrumentation);
+    }
+
+    @Test
+    public void testReflection() {
+        measure(false);
+    }
+
+    @Test
+    public void testGenerated() {
+        measure(true);
+    }
+
+
+    private static void measure(boolean shouldGenerateCodecs) {
+        ReflectionStructureCodecTarget[] graph = new ReflectionStructureCodecTarget[GRAPH_SIZE];
+        for (int i = 0; i < GRAPH_SIZE; ++i) {
+            graph[i] = new ReflectionStructureCodecTarget();
+            graph[i].i_five = i;
+            graph[i].i_seven = i * 1000L;
+            graph[i].i_eight = i / 2.0d;
+        }
+        for (int i = 0; i < GRAPH_SIZE; ++i) {
+            graph[i].i_nine = graph[(i * 31 + 7) % GRAPH_SIZE];
+        }
+
+        KeyValueObjectGraph objectGraph = new KeyValueObjectGraph(new KernelInterfaceImpl(), new byte[] {1,2,3});
+        ReflectedFieldCache fieldCache = new ReflectedFieldCache(shouldGenerateCodecs);
+        // Make sure that we are measuring the path we think we are (a class we can't generate for would silently use reflection).
+        Assert.assertEquals(shouldGenerateCodecs, null != fieldCache.getCodecForClass(ReflectionStructureCodecTarget.class, false));
+        ReflectionStructureCodec codec = new ReflectionStructureCodec(fieldCache, new StandardFieldPopulator(), new NullFeeProcessor(), objectGraph);
+        objectGraph.setLateComponents(ReflectionStructureCodecTarget.class.getClassLoader(), codec.getInitialLoadDeserializer(), (n) -> new NodePersistenceToken(n, false));
+        SerializedRepresentation[] extents = new SerializedRepresentation[GRAPH_SIZE];
+        ReflectionStructureCodecTarget[] copies = new ReflectionStructureCodecTarget[GRAPH_SIZE];
+        for (int i = 0; i < GRAPH_SIZE; ++i) {
+            copies[i] = new ReflectionStructureCodecTarget();
+        }
+
+        for (int i = 0; i < WARMUP_PASSES; ++i) {
+            runPass(codec, graph, extents, copies);
+        }
+        long serializeNanos = 0L;
+        long deserializeNanos = 0L;
+        for (int i = 0; i < MEASURED_PASSES; ++i) {
+            long[] nanos = runPass(codec, graph, extents, copies);
+            serializeNanos += nanos[0];
+            deserializeNanos += nanos[1];
+        }
+        for (int i = 0; i < GRAPH_SIZE; ++i) {
+            Assert.assertEquals(graph[i].i_seven, copies[i].i_seven);
+        }
+        long objects = (long) MEASURED_PASSES * GRAPH_SIZE;
+        System.out.println((shouldGenerateCodecs ? "GENERATED" : "REFLECTION") + " CODEC (" + GRAPH_SIZE + " objects) NANOS PER OBJECT:  SERIALIZE " + (serializeNanos / objects)
+                + ", DESERIALIZE " + (deserializeNanos / objects));
+    }
+
+    private static long[] runPass(ReflectionStructureCodec codec, ReflectionStructureCodecTarget[] graph, SerializedRepresentation[] extents, ReflectionStructureCodecTarget[] copies) {
+        long start = System.nanoTime();
+        for (int i = 0; i < graph.length; ++i) {
+            extents[i] = codec.internalSerializeInstance(graph[i], NULL_CONSUMER);
+        }
+        long middle = System.nanoTime();
+        for (int i = 0; i < graph.length; ++i) {
+            codec.deserializeInstance(copies[i], extents[i]);
+        }
+        long end = System.nanoTime();
+        return new long[] { middle - start, end - middle };
+    }
+}
@@ -0,0 +1,168 @@
+package org.aion.avm.core.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.aion.avm.api.ABIEncoder;
+import org.aion.avm.api.Address;
+import org.aion.avm.core.Avm;
+import org.aion.avm.core.CommonAvmFactory;
+import org.aion.avm.core.dappreading.JarBuilder;
+import org.aion.avm.core.persistence.keyvalue.KeyValueObjectGraph;
+import org.aion.avm.core.persistence.keyvalue.StorageKeys;
+import org.aion.avm.core.util.CodeAndArguments;
+import org.aion.avm.core.util.Helpers;
+import org.aion.avm.core.util.StorageWalker;
+import org.aion.avm.core.util.TestingHelper;
+import org.aion.kernel.Block;
+import org.aion.kernel.KernelInterfaceImpl;
+import org.aion.kernel.Transaction;
+import org.aion.kernel.TransactionContext;
+import org.aion.kernel.TransactionContextImpl;
+import org.aion.kernel.TransactionResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests that a DApp whose storage still uses the legacy instance keys can be read without writing anything and is migrated by the
+ * invocations which do write (and, completely, by the GC).
+ */
+public class LegacyInstanceKeysIntegrationTest {
+    private static final long ENERGY_LIMIT = 1_000_000L;
+    private static final long ENERGY_PRICE = 1L;
+
+    private final byte[] deployer = KernelInterfaceImpl.PREMINED_ADDRESS;
+    private final Block block = new Block(new byte[32], 1, Helpers.randomBytes(Address.LENGTH), System.currentTimeMillis(), new byte[0]);
+    // The kernel where we deploy the DApp, before copying it into one with the legacy keys.
+    private KernelInterfaceImpl sourceKernel;
+
+    @Test
+    public void testReadOnlyGraphsDoNotWrite() throws Exception {
+        byte[] contractAddr = deployAndSetup();
+        WriteCountingKernel legacyKernel = copyWithLegacyKeys(contractAddr);
+        byte[] legacyInternalData = legacyKernel.getStorage(contractAddr, StorageKeys.INTERNAL_DATA);
+
+        // Just reading the code (as the AVM does before it decides to run anything) must not write.
+        KeyValueObjectGraph graph = new KeyValueObjectGraph(legacyKernel, contractAddr);
+        Assert.assertNotNull(graph.getCode());
+        Assert.assertEquals(0, legacyKernel.writeCount);
+
+        // Walking the entire storage reads every instance through its legacy key, also without writing.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StorageWalker.walkAllStaticsForDapp(new PrintStream(bytes), legacyKernel, contractAddr);
+        Assert.assertTrue(new String(bytes.toByteArray()).contains("value: int(4)"));
+        Assert.assertEquals(0, legacyKernel.writeCount);
+        Assert.assertTrue(Arrays.equals(legacyInternalData, legacyKernel.getStorage(contractAddr, StorageKeys.INTERNAL_DATA)));
+    }
+
+    @Test
+    public void testWritesAndGcMigrate() throws Exception {
+        byte[] contractAddr = deployAndSetup();
+        WriteCountingKernel legacyKernel = copyWithLegacyKeys(contractAddr);
+        Avm legacyAvm = CommonAvmFactory.buildAvmInstance(legacyKernel);
+        try {
+            // Reading and modifying the graph work on the legacy keys.
+            callStatic(legacyAvm, legacyKernel, contractAddr, "check249", 4);
+            callStatic(legacyAvm, legacyKernel, contractAddr, "modify249");
+            callStatic(legacyAvm, legacyKernel, contractAddr, "check249", 5);
+            // Until the GC runs, we are still recorded as being on the legacy keys.
+            Assert.assertEquals(StorageKeys.INSTANCE_KEY_VERSION_LEGACY, getInstanceKeyVersion(legacyKernel, contractAddr));
+
+            // The GC moves everything to the binary keys and records that.
+            Transaction gc = Transaction.garbageCollect(contractAddr, legacyKernel.getNonce(contractAddr), ENERGY_LIMIT, ENERGY_PRICE);
+            TransactionResult gcResult = legacyAvm.run(new TransactionContext[] {new TransactionContextImpl(gc, this.block)})[0].get();
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, gcResult.getStatusCode());
+            Assert.assertEquals(StorageKeys.INSTANCE_KEY_VERSION_BINARY, getInstanceKeyVersion(legacyKernel, contractAddr));
+            for (long i = 1L; i < legacyKernel.legacyInstanceIdLimit; ++i) {
+                byte[] legacyData = legacyKernel.getStorage(contractAddr, StorageKeys.forLegacyInstance(i + legacyKernel.legacyInstanceIdBias));
+                Assert.assertEquals(0, legacyData.length);
+            }
+            callStatic(legacyAvm, legacyKernel, contractAddr, "check249", 5);
+        } finally {
+            legacyAvm.shutdown();
+        }
+    }
+
+
+    private byte[] deployAndSetup() {
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        Avm avm = CommonAvmFactory.buildAvmInstance(kernel);
+        try {
+            byte[] jar = JarBuilder.buildJarForMainAndClasses(GraphReachabilityIntegrationTestTarget.class);
+            byte[] txData = new CodeAndArguments(jar, new byte[0]).encodeToBytes();
+            Transaction create = Transaction.create(this.deployer, kernel.getNonce(this.deployer), BigInteger.ZERO, txData, ENERGY_LIMIT, ENERGY_PRICE);
+            TransactionResult createResult = avm.run(new TransactionContext[] {new TransactionContextImpl(create, this.block)})[0].get();
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, createResult.getStatusCode());
+            byte[] contractAddr = TestingHelper.buildAddress(createResult.getReturnData()).unwrap();
+            callStatic(avm, kernel, contractAddr, "setup249");
+            this.sourceKernel = kernel;
+            return contractAddr;
+        } finally {
+            avm.shutdown();
+        }
+    }
+
+    /**
+     * Copies the DApp into a new kernel, rewriting its storage the way it was written with the legacy instance keys.
+     */
+    private WriteCountingKernel copyWithLegacyKeys(byte[] contractAddr) {
+        WriteCountingKernel legacyKernel = new WriteCountingKernel();
+        legacyKernel.createAccount(contractAddr);
+        legacyKernel.putCode(contractAddr, this.sourceKernel.getCode(contractAddr));
+        for (byte[] key : new byte[][] { StorageKeys.CONTRACT_ENVIRONMENT, StorageKeys.CLASS_STATICS, StorageKeys.TYPE_NAMES }) {
+            byte[] value = this.sourceKernel.getStorage(contractAddr, key);
+            if (null != value) {
+                legacyKernel.putStorage(contractAddr, key, value);
+            }
+        }
+
+        // The legacy INTERNAL_DATA is the same, just without the trailing instance key version.
+        byte[] internalData = this.sourceKernel.getStorage(contractAddr, StorageKeys.INTERNAL_DATA);
+        Assert.assertEquals(StorageKeys.INSTANCE_KEY_VERSION_BINARY, internalData[internalData.length - 1]);
+        legacyKernel.putStorage(contractAddr, StorageKeys.INTERNAL_DATA, Arrays.copyOf(internalData, internalData.length - 1));
+        StreamingPrimitiveCodec.Decoder decoder = new StreamingPrimitiveCodec.Decoder(internalData);
+        long nextInstanceId = decoder.decodeLong();
+        long instanceIdBias = decoder.decodeLong();
+        for (long i = 1L; i < nextInstanceId; ++i) {
+            byte[] value = this.sourceKernel.getStorage(contractAddr, StorageKeys.forInstance(i + instanceIdBias));
+            if ((null != value) && (value.length > 0)) {
+                legacyKernel.putStorage(contractAddr, StorageKeys.forLegacyInstance(i + instanceIdBias), value);
+            }
+        }
+        legacyKernel.legacyInstanceIdLimit = nextInstanceId;
+        legacyKernel.legacyInstanceIdBias = instanceIdBias;
+        legacyKernel.writeCount = 0;
+        return legacyKernel;
+    }
+
+    private void callStatic(Avm avm, KernelInterfaceImpl kernel, byte[] contractAddr, String methodName, Object... args) {
+        byte[] argData = ABIEncoder.encodeMethodArguments(methodName, args);
+        Transaction call = Transaction.call(this.deployer, contractAddr, kernel.getNonce(this.deployer), BigInteger.ZERO, argData, ENERGY_LIMIT, ENERGY_PRICE);
+        TransactionResult result = avm.run(new TransactionContext[] {new TransactionContextImpl(call, this.block)})[0].get();
+        Assert.assertEquals(TransactionResult.Code.SUCCESS, result.getStatusCode());
+    }
+
+    private static byte getInstanceKeyVersion(KernelInterfaceImpl kernel, byte[] contractAddr) {
+        byte[] internalData = kernel.getStorage(contractAddr, StorageKeys.INTERNAL_DATA);
+        // (the legacy data has no version byte:  it is just the 2 longs and the delta hash).
+        return (internalData.length > (2 * Long.BYTES + Integer.BYTES))
+                ? internalData[internalData.length - 1]
+                : StorageKeys.INSTANCE_KEY_VERSION_LEGACY;
+    }
+
+
+    private static class WriteCountingKernel extends KernelInterfaceImpl {
+        public int writeCount;
+        public long legacyInstanceIdLimit;
+        public long legacyInstanceIdBias;
+
+        @Override
+        public void putStorage(byte[] address, byte[] key, byte[] value) {
+            this.writeCount += 1;
+            super.putStorage(address, key, value);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.aion.avm.core.persistence;
 
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
@@ -84,13 +83,14 @@ public class LoadedDAppTest {
         byte[] result = kernel.getStorage(address, StorageKeys.CLASS_STATICS);
         // These are encoded in-order.  Some are obvious but we will explicitly decode the stub structure since it is harder to verify.
         byte[] expected = {
+                (byte)0x81, // format version
                 // refs:
-                0x0, 0x0, 0x0, 0x2, // reference list size
-                0x0, 0x0, 0x0, 0x0, //ReflectionStructureCodecTarget.s_nine (null)
-                0x0, 0x0, 0x0, 0x0, //LoadedDAppTarget.s_nine (null)
+                0x2, // reference list size
+                0x0, //ReflectionStructureCodecTarget.s_nine (null)
+                0x0, //LoadedDAppTarget.s_nine (null)
                 
                 // primitives:
-                0x0, 0x0, 0x0, 0x3c, // primitive size
+                0x3c, // primitive size
                 // ReflectionStructureCodecTarget
                 0x1, //s_one
                 0x5, //s_two
@@ -119,6 +119,7 @@ public class LoadedDAppTest {
     @Test
     public void deserializeClasses() {
         // These are encoded in-order.  Some are obvious but we will explicitly decode the stub structure since it is harder to verify.
+        // This is the legacy encoding (type names inline, fixed-width counts), which is still read so that existing DApps continue to load.
         // Note that the references for both objects are stored first since these objects are encoded, together.
         byte[] expected = {
                 // refs:
@@ -199,15 +200,15 @@ public class LoadedDAppTest {
         byte[] result = kernel.getStorage(address, StorageKeys.CLASS_STATICS);
         // These are encoded in-order.  Some are obvious but we will explicitly decode the stub structure since it is harder to verify.
         byte[] expected = {
+                (byte)0x81, // format version
                 // ReflectionStructureCodecTarget
-                0x0, 0x0, 0x0, 0x1, // reference list size
+                0x1, // reference list size
                 //s_nine:
-                0x0, 0x0, 0x0, 0x3c, //s_nine (class name length)
-                0x6f, 0x72, 0x67, 0x2e, 0x61, 0x69, 0x6f, 0x6e, 0x2e, 0x61, 0x76, 0x6d, 0x2e, 0x63, 0x6f, 0x72, 0x65, 0x2e, 0x70, 0x65, 0x72, 0x73, 0x69, 0x73, 0x74, 0x65, 0x6e, 0x63, 0x65, 0x2e, 0x52, 0x65, 0x66, 0x6c, 0x65, 0x63, 0x74, 0x69, 0x6f, 0x6e, 0x53, 0x74, 0x72, 0x75, 0x63, 0x74, 0x75, 0x72, 0x65, 0x43, 0x6f, 0x64, 0x65, 0x63, 0x54, 0x61, 0x72, 0x67, 0x65, 0x74, //s_nine (class name UTF8)
-                0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x1, //s_nine (instanceId)
+                0x3, //s_nine (type name index 0, in the type name table)
+                0x1, //s_nine (instanceId)
                 0x0, 0x0, 0x0, 0x1, //s_nine (identity hash)
                 
-                0x0, 0x0, 0x0, 0x1e, // primitive size
+                0x1e, // primitive size
                 0x1, //s_one
                 0x5, //s_two
                 0x0, 0x5, //s_three
@@ -276,11 +277,14 @@ public class LoadedDAppTest {
         byte[] result = kernel.getStorage(address, StorageKeys.CLASS_STATICS);
         // Target size:  1 ref + primitives.
         int primitiveSize = 1 + Byte.BYTES + Short.BYTES + Character.BYTES + Integer.BYTES + Float.BYTES + Long.BYTES + Double.BYTES;
-        // Ref encoding:  type name length, type name bytes, instance ID, identity hash.
-        int targetRefSize = 4 + ReflectionStructureCodecTarget.class.getName().getBytes(StandardCharsets.UTF_8).length + 8 + 4;
-        int targetSubRefSize = 4 + ReflectionStructureCodecTargetSub.class.getName().getBytes(StandardCharsets.UTF_8).length + 8 + 4;
-        // We also add 2*4 since there are two (size) fields (number of refers, number of primitive bytes)
-        Assert.assertEquals((2 * primitiveSize) + targetRefSize + targetSubRefSize + (2 * 4), result.length);
+        // Ref encoding:  type name index descriptor, instance ID (both single-byte varints, here), identity hash.
+        int targetRefSize = 1 + 1 + 4;
+        int targetSubRefSize = 1 + 1 + 4;
+        // We also add 1 for the format version and 2 since there are two single-byte (size) fields (number of refers, number of primitive bytes).
+        Assert.assertEquals((2 * primitiveSize) + targetRefSize + targetSubRefSize + 1 + 2, result.length);
+        // The type names are stored once, in the type name table.
+        Assert.assertEquals(ReflectionStructureCodecTarget.class.getName(), objectGraph.getTypeNameTable().nameForIndex(0));
+        Assert.assertEquals(ReflectionStructureCodecTargetSub.class.getName(), objectGraph.getTypeNameTable().nameForIndex(1));
         
         // Now, clear the class states and reload this.
         clearStaticState();
@@ -347,12 +351,13 @@ public class LoadedDAppTest {
         byte[] result = kernel.getStorage(address, StorageKeys.CLASS_STATICS);
         // These are encoded in-order.  Some are obvious but we will explicitly decode the stub structure since it is harder to verify.
         byte[] expected = {
+                (byte)0x81, // format version
                 // LoadedDAppTarget
-                0x0, 0x0, 0x0, 0x1, // reference list size
-                (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, //s_nine (-1 since this is a constant)
-                (byte)0x0, (byte)0x0, (byte)0x0, (byte)0x10, //s_nine (constant hash code)
+                0x1, // reference list size
+                0x1, //s_nine (1 since this is a constant)
+                0x10, //s_nine (constant hash code)
                 
-                0x0, 0x0, 0x0, 0x1e, // primitive size
+                0x1e, // primitive size
                 0x0, //s_one
                 0x0, //s_two
                 0x0, 0x0, //s_three
@@ -387,13 +392,13 @@ public class LoadedDAppTest {
         byte[] result = kernel.getStorage(address, StorageKeys.CLASS_STATICS);
         // These are encoded in-order.  Some are obvious but we will explicitly decode the stub structure since it is harder to verify.
         byte[] expected = {
+                (byte)0x81, // format version
                 // LoadedDAppTarget
-                0x0, 0x0, 0x0, 0x1, // reference list size
-                (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xfe, //s_nine (-2 since this is a class)
-                0x0, 0x0, 0x0, 0x10, //s_nine (length)
-                0x6a, 0x61, 0x76, 0x61, 0x2e, 0x6c, 0x61, 0x6e, 0x67, 0x2e, 0x53, 0x74, 0x72, 0x69, 0x6e, 0x67,  //s_nine (name of "java.lang.String")
+                0x1, // reference list size
+                0x2, //s_nine (2 since this is a class)
+                0x0, //s_nine (index of "java.lang.String" in the type name table)
                 
-                0x0, 0x0, 0x0, 0x1e, // primitive size
+                0x1e, // primitive size
                 0x0, //s_one
                 0x0, //s_two
                 0x0, 0x0, //s_three
@@ -404,6 +409,7 @@ public class LoadedDAppTest {
                 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, //s_eight
         };
         Assert.assertTrue(Arrays.equals(expected, result));
+        Assert.assertEquals("java.lang.String", objectGraph.getTypeNameTable().nameForIndex(0));
         
         // Now, clear the statics, deserialize this, and ensure that we are still pointing at the same constant.
         clearStaticState();
@@ -427,12 +433,13 @@ public class LoadedDAppTest {
         byte[] result = kernel.getStorage(address, StorageKeys.CLASS_STATICS);
         // These are encoded in-order.  Some are obvious but we will explicitly decode the stub structure since it is harder to verify.
         byte[] expected = {
+                (byte)0x81, // format version
                 // LoadedDAppTarget
-                0x0, 0x0, 0x0, 0x1, // reference list size
-                (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, //s_nine (-1 since this is a constant)
-                (byte)0x0, (byte)0x0, (byte)0x0, (byte)0x13, //s_nine (constant hash code)
+                0x1, // reference list size
+                0x1, //s_nine (1 since this is a constant)
+                0x13, //s_nine (constant hash code)
                 
-                0x0, 0x0, 0x0, 0x1e, // primitive size
+                0x1e, // primitive size
                 0x0, //s_one
                 0x0, //s_two
                 0x0, 0x0, //s_three
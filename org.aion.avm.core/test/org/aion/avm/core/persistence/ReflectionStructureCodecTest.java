@@ -1,12 +1,12 @@
 package org.aion.avm.core.persistence;
 
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.function.Consumer;
 
 import org.aion.avm.core.NodeEnvironment;
 import org.aion.avm.core.persistence.keyvalue.KeyValueCodec;
 import org.aion.avm.core.persistence.keyvalue.KeyValueObjectGraph;
+import org.aion.avm.core.persistence.keyvalue.TypeNameTable;
 import org.aion.avm.core.util.NullFeeProcessor;
 import org.aion.avm.internal.CommonInstrumentation;
 import org.aion.avm.internal.Helper;
@@ -70,13 +70,14 @@ public class ReflectionStructureCodecTest {
         ReflectionStructureCodec codec = new ReflectionStructureCodec(new ReflectedFieldCache(), null, FEE_PROCESSOR, graph);
         SerializedRepresentationCodec.Encoder encoder = new SerializedRepresentationCodec.Encoder();
         codec.serializeClass(encoder, ReflectionStructureCodecTarget.class, NULL_CONSUMER);
-        byte[] result = KeyValueCodec.encode(encoder.toSerializedRepresentation());
+        byte[] result = KeyValueCodec.encode(graph.getTypeNameTable(), encoder.toSerializedRepresentation());
         // These are encoded in-order.  Some are obvious but we will explicitly decode the stub structure since it is harder to verify.
         byte[] expected = {
-                0x0, 0x0, 0x0, 0x1, // reference list size
-                0x0, 0x0, 0x0, 0x3c, 0x6f, 0x72, 0x67, 0x2e, 0x61, 0x69, 0x6f, 0x6e, 0x2e, 0x61, 0x76, 0x6d, 0x2e, 0x63, 0x6f, 0x72, 0x65, 0x2e, 0x70, 0x65, 0x72, 0x73, 0x69, 0x73, 0x74, 0x65, 0x6e, 0x63, 0x65, 0x2e, 0x52, 0x65, 0x66, 0x6c, 0x65, 0x63, 0x74, 0x69, 0x6f, 0x6e, 0x53, 0x74, 0x72, 0x75, 0x63, 0x74, 0x75, 0x72, 0x65, 0x43, 0x6f, 0x64, 0x65, 0x63, 0x54, 0x61, 0x72, 0x67, 0x65, 0x74, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x1, 0x0, 0x0, 0x0, 0x1, //s_nine
+                (byte)0x81, // format version
+                0x1, // reference list size
+                0x3, 0x1, 0x0, 0x0, 0x0, 0x1, //s_nine (type name index 0, instanceId, identity hash)
                 
-                0x0, 0x0, 0x0, 0x1e, // primitive size
+                0x1e, // primitive size
                 0x1, //s_one
                 0x5, //s_two
                 0x0, 0x5, //s_three
@@ -87,10 +88,8 @@ public class ReflectionStructureCodecTest {
                 0x40, 0x14, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, //s_eight
         };
         Assert.assertTrue(Arrays.equals(expected, result));
-        // We know the stub structure starts with a class name length at offset 4 (4 bytes, big-endian).
-        int length = readIntAtOffset(result, 4);
-        String className = new String(result, 8, length, StandardCharsets.UTF_8);
-        Assert.assertEquals(ReflectionStructureCodecTarget.s_nine.getClass().getName(), className);
+        // The type name is only stored in the type name table.
+        Assert.assertEquals(ReflectionStructureCodecTarget.s_nine.getClass().getName(), graph.getTypeNameTable().nameForIndex(0));
     }
 
     /**
@@ -113,14 +112,15 @@ public class ReflectionStructureCodecTest {
         byte[] address = {1,2,3};
         KeyValueObjectGraph graph = new KeyValueObjectGraph(kernel, address);
         ReflectionStructureCodec codec = new ReflectionStructureCodec(new ReflectedFieldCache(), null, FEE_PROCESSOR, graph);
-        byte[] result = serializeSinceInstanceHelper(codec, target);
+        byte[] result = serializeSinceInstanceHelper(graph, codec, target);
         // These are encoded in-order.  Some are obvious but we will explicitly decode the stub structure since it is harder to verify.
         // This is the same as what we got for the class except that this also has a hashcode.
         byte[] expected = {
-                0x0, 0x0, 0x0, 0x1, // reference list size
-                0x0, 0x0, 0x0, 0x3c, 0x6f, 0x72, 0x67, 0x2e, 0x61, 0x69, 0x6f, 0x6e, 0x2e, 0x61, 0x76, 0x6d, 0x2e, 0x63, 0x6f, 0x72, 0x65, 0x2e, 0x70, 0x65, 0x72, 0x73, 0x69, 0x73, 0x74, 0x65, 0x6e, 0x63, 0x65, 0x2e, 0x52, 0x65, 0x66, 0x6c, 0x65, 0x63, 0x74, 0x69, 0x6f, 0x6e, 0x53, 0x74, 0x72, 0x75, 0x63, 0x74, 0x75, 0x72, 0x65, 0x43, 0x6f, 0x64, 0x65, 0x63, 0x54, 0x61, 0x72, 0x67, 0x65, 0x74, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x1, 0x0, 0x0, 0x0, 0x2, //i_nine
+                (byte)0x81, // format version
+                0x1, // reference list size
+                0x3, 0x1, 0x0, 0x0, 0x0, 0x2, //i_nine (type name index 0, instanceId, identity hash)
                 
-                0x0, 0x0, 0x0, 0x22, // primitive size
+                0x22, // primitive size
                 0x0, 0x0, 0x0, 0x1, //hashcode
                 0x1, //i_one
                 0x5, //i_two
@@ -132,10 +132,8 @@ public class ReflectionStructureCodecTest {
                 0x40, 0x14, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, //i_eight
         };
         Assert.assertTrue(Arrays.equals(expected, result));
-        // We know the stub structure starts with a class name length at offset 4 (4 bytes, big-endian).
-        int length = readIntAtOffset(result, 4);
-        String className = new String(result, 8, length, StandardCharsets.UTF_8);
-        Assert.assertEquals(target.i_nine.getClass().getName(), className);
+        // The type name is only stored in the type name table.
+        Assert.assertEquals(target.i_nine.getClass().getName(), graph.getTypeNameTable().nameForIndex(0));
     }
 
     /**
@@ -143,6 +141,7 @@ public class ReflectionStructureCodecTest {
      */
     @Test
     public void deserializeInstance() {
+        // Note that this is the legacy encoding (with the type name inline), which we must still be able to read.
         byte[] expected = {
                 0x0, 0x0, 0x0, 0x1, // reference list size
                 0x0, 0x0, 0x0, 0x3c, 0x6f, 0x72, 0x67, 0x2e, 0x61, 0x69, 0x6f, 0x6e, 0x2e, 0x61, 0x76, 0x6d, 0x2e, 0x63, 0x6f, 0x72, 0x65, 0x2e, 0x70, 0x65, 0x72, 0x73, 0x69, 0x73, 0x74, 0x65, 0x6e, 0x63, 0x65, 0x2e, 0x52, 0x65, 0x66, 0x6c, 0x65, 0x63, 0x74, 0x69, 0x6f, 0x6e, 0x53, 0x74, 0x72, 0x75, 0x63, 0x74, 0x75, 0x72, 0x65, 0x43, 0x6f, 0x64, 0x65, 0x63, 0x54, 0x61, 0x72, 0x67, 0x65, 0x74, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x1, 0x0, 0x0, 0x0, 0x1, //i_nine
@@ -211,21 +210,22 @@ public class ReflectionStructureCodecTest {
         Assert.assertEquals(1, readIntAtOffset(rootRepresentation.data, 0));
         Assert.assertEquals(2, readIntAtOffset(oneRepresentation.data, 0));
         Assert.assertEquals(3, readIntAtOffset(twoRepresentation.data, 0));
-        // Check the instance stubs:  root and one should have 2 and 3, as instanceIds, respectively, since they point to one and two
-        // (instances 2 and 3) but two should have a shorter array with zero for the "null" (zero-length type name and no instanceId).
-        byte[] rootBytes = KeyValueCodec.encode(rootRepresentation);
-        byte[] oneBytes = KeyValueCodec.encode(oneRepresentation);
-        byte[] twoBytes = KeyValueCodec.encode(twoRepresentation);
-        Assert.assertEquals(118, rootBytes.length);
-        Assert.assertEquals(118, oneBytes.length);
-        Assert.assertEquals(46, twoBytes.length);
-        // Walk backward from the end: over the primitives and the primitive size, checking both the target identity hash and instance ID.
-        Assert.assertEquals(2, rootBytes[rootBytes.length - rootRepresentation.data.length - 4 - 1]);
-        Assert.assertEquals(1, rootBytes[rootBytes.length - rootRepresentation.data.length - 4 - 4 - 1]);
-        Assert.assertEquals(3, oneBytes[oneBytes.length - oneRepresentation.data.length - 4 - 1]);
-        Assert.assertEquals(2, oneBytes[oneBytes.length - oneRepresentation.data.length - 4 - 4 - 1]);
-        // Note that this one just has a null, which is only a 4-byte 0 (null reference).
-        Assert.assertEquals(0, twoBytes[twoBytes.length - twoRepresentation.data.length - 4 - 1]);
+        // Check the instance stubs:  root and one should have 1 and 2, as instanceIds, respectively, since they point to one and two
+        // but two should have a shorter array with zero for the "null" (just the descriptor, with no type or instanceId).
+        TypeNameTable typeNames = graph.getTypeNameTable();
+        byte[] rootBytes = KeyValueCodec.encode(typeNames, rootRepresentation);
+        byte[] oneBytes = KeyValueCodec.encode(typeNames, oneRepresentation);
+        byte[] twoBytes = KeyValueCodec.encode(typeNames, twoRepresentation);
+        Assert.assertEquals(43, rootBytes.length);
+        Assert.assertEquals(43, oneBytes.length);
+        Assert.assertEquals(38, twoBytes.length);
+        // Walk backward from the end: over the primitives and the 1-byte primitive size, checking both the target identity hash and instance ID.
+        Assert.assertEquals(2, rootBytes[rootBytes.length - rootRepresentation.data.length - 1 - 1]);
+        Assert.assertEquals(1, rootBytes[rootBytes.length - rootRepresentation.data.length - 1 - 4 - 1]);
+        Assert.assertEquals(3, oneBytes[oneBytes.length - oneRepresentation.data.length - 1 - 1]);
+        Assert.assertEquals(2, oneBytes[oneBytes.length - oneRepresentation.data.length - 1 - 4 - 1]);
+        // Note that this one just has a null, which is only a 0 descriptor (null reference).
+        Assert.assertEquals(0, twoBytes[twoBytes.length - twoRepresentation.data.length - 1 - 1]);
     }
 
     /**
@@ -250,10 +250,10 @@ public class ReflectionStructureCodecTest {
         // These are empty and point to the same instance so they should be identical, after the hashcode.
         Assert.assertTrue(Arrays.equals(root1Representation.data, 4, root1Representation.data.length -4 - 1, root2Representation.data, 4, root2Representation.data.length -4 - 1));
         // Verify that we are pointing at hash 3 and instance ID 1 (since this wasn't serialized before being changed).
-        byte[] root1Bytes = KeyValueCodec.encode(root1Representation);
-        // Walk backward from the end: over the primitives and the primitive size, checking both the target identity hash and instance ID.
-        Assert.assertEquals(3, root1Bytes[root1Bytes.length - root1Representation.data.length - 4 - 1]);
-        Assert.assertEquals(1, root1Bytes[root1Bytes.length - root1Representation.data.length - 4 - 4 - 1]);
+        byte[] root1Bytes = KeyValueCodec.encode(graph.getTypeNameTable(), root1Representation);
+        // Walk backward from the end: over the primitives and the 1-byte primitive size, checking both the target identity hash and instance ID.
+        Assert.assertEquals(3, root1Bytes[root1Bytes.length - root1Representation.data.length - 1 - 1]);
+        Assert.assertEquals(1, root1Bytes[root1Bytes.length - root1Representation.data.length - 1 - 4 - 1]);
     }
 
     /**
@@ -261,6 +261,7 @@ public class ReflectionStructureCodecTest {
      */
     @Test
     public void deserializeInstanceOverlap() {
+        // Note that this is the legacy encoding (with the type name inline), which we must still be able to read.
         byte[] expected1 = {
                 0x0, 0x0, 0x0, 0x1, // reference list size
                 0x0, 0x0, 0x0, 0x3c, 0x6f, 0x72, 0x67, 0x2e, 0x61, 0x69, 0x6f, 0x6e, 0x2e, 0x61, 0x76, 0x6d, 0x2e, 0x63, 0x6f, 0x72, 0x65, 0x2e, 0x70, 0x65, 0x72, 0x73, 0x69, 0x73, 0x74, 0x65, 0x6e, 0x63, 0x65, 0x2e, 0x52, 0x65, 0x66, 0x6c, 0x65, 0x63, 0x74, 0x69, 0x6f, 0x6e, 0x53, 0x74, 0x72, 0x75, 0x63, 0x74, 0x75, 0x72, 0x65, 0x43, 0x6f, 0x64, 0x65, 0x63, 0x54, 0x61, 0x72, 0x67, 0x65, 0x74, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x1, 0x0, 0x0, 0x0, 0x1, //i_nine
@@ -306,13 +307,73 @@ public class ReflectionStructureCodecTest {
         Assert.assertTrue(target1.i_nine == target2.i_nine);
     }
 
+    /**
+     * Verify that the generated field codecs produce, and consume, exactly what the reflective path does.
+     */
+    @Test
+    public void generatedCodecMatchesReflection() {
+        ReflectedFieldCache generatedCache = new ReflectedFieldCache();
+        Assert.assertNotNull(generatedCache.getCodecForClass(ReflectionStructureCodecTarget.class, false));
+        Assert.assertNotNull(generatedCache.getCodecForClass(ReflectionStructureCodecTarget.class, true));
+        // Private fields can't be reached by generated code so that class falls back to reflection.
+        Assert.assertNull(generatedCache.getCodecForClass(PrivateFieldTarget.class, false));
+        Assert.assertNull(new ReflectedFieldCache(false).getCodecForClass(ReflectionStructureCodecTarget.class, false));
+        
+        ReflectionStructureCodecTarget target = new ReflectionStructureCodecTarget();
+        target.i_one = true;
+        target.i_two = -5;
+        target.i_three = Short.MIN_VALUE;
+        target.i_four = Character.MAX_VALUE;
+        target.i_five = -123456789;
+        target.i_six = Float.NaN;
+        target.i_seven = Long.MIN_VALUE;
+        target.i_eight = -0.0d;
+        target.i_nine = new ReflectionStructureCodecTarget();
+        
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        byte[] address = {1,2,3};
+        KeyValueObjectGraph graph = new KeyValueObjectGraph(kernel, address);
+        StandardFieldPopulator populator = new StandardFieldPopulator();
+        ReflectionStructureCodec generatedCodec = new ReflectionStructureCodec(generatedCache, populator, FEE_PROCESSOR, graph);
+        ReflectionStructureCodec reflectionCodec = new ReflectionStructureCodec(new ReflectedFieldCache(false), populator, FEE_PROCESSOR, graph);
+        byte[] generatedBytes = serializeSinceInstanceHelper(graph, generatedCodec, target);
+        byte[] reflectionBytes = serializeSinceInstanceHelper(graph, reflectionCodec, target);
+        Assert.assertArrayEquals(reflectionBytes, generatedBytes);
+        
+        // Read it back with the generated codec.
+        graph.setLateComponents(ReflectionStructureCodecTarget.class.getClassLoader(), generatedCodec.getInitialLoadDeserializer(), (n) -> new NodePersistenceToken(n, false));
+        ReflectionStructureCodecTarget copy = new ReflectionStructureCodecTarget();
+        generatedCodec.deserializeInstance(copy, KeyValueCodec.decode(graph, generatedBytes));
+        Assert.assertEquals(target.avm_hashCode(), copy.avm_hashCode());
+        Assert.assertEquals(true, copy.i_one);
+        Assert.assertEquals(-5, copy.i_two);
+        Assert.assertEquals(Short.MIN_VALUE, copy.i_three);
+        Assert.assertEquals(Character.MAX_VALUE, copy.i_four);
+        Assert.assertEquals(-123456789, copy.i_five);
+        Assert.assertTrue(Float.isNaN(copy.i_six));
+        Assert.assertEquals(Long.MIN_VALUE, copy.i_seven);
+        Assert.assertEquals(Double.doubleToLongBits(-0.0d), Double.doubleToLongBits(copy.i_eight));
+        Assert.assertNotNull(copy.i_nine);
+        
+        // Only 0x1 is decoded as true.
+        target.i_one = false;
+        byte[] falseBytes = serializeSinceInstanceHelper(graph, generatedCodec, target);
+        generatedCodec.deserializeInstance(copy, KeyValueCodec.decode(graph, falseBytes));
+        Assert.assertEquals(false, copy.i_one);
+    }
+
 
-    private static byte[] serializeSinceInstanceHelper(ReflectionStructureCodec codec, ReflectionStructureCodecTarget instance) {
+    private static byte[] serializeSinceInstanceHelper(KeyValueObjectGraph graph, ReflectionStructureCodec codec, ReflectionStructureCodecTarget instance) {
         SerializedRepresentation extent = codec.internalSerializeInstance(instance, NULL_CONSUMER);
-        return KeyValueCodec.encode(extent);
+        return KeyValueCodec.encode(graph.getTypeNameTable(), extent);
     }
 
     private static int readIntAtOffset(byte[] bytes, int offset) {
         return (bytes[offset + 0] << 24) | (bytes[offset + 1] << 16) | (bytes[offset + 2] << 8) | bytes[offset + 3];
     }
+
+
+    public static class PrivateFieldTarget extends org.aion.avm.shadow.java.lang.Object {
+        private int value;
+    }
 }
@@ -0,0 +1,91 @@
+package org.aion.avm.core.persistence;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Measures the StreamingPrimitiveCodec on the extents of a large object graph:  each object has a handful of primitive fields and a few
+ * instanceIds (which are small, so we also compare the fixed-width and var encodings of those).
+ * The encoder is either created for each object or reset and reused for all of them (as ReflectionStructureCodec does).
+ * While it can be run as a standard unit test, the constants are meant to be tuned for more hands-on measurement.
+ */
+public class StreamingPrimitiveCodecPerfTest {
+    private static final int GRAPH_SIZE = 16_384;
+    private static final int IDS_PER_OBJECT = 4;
+    private static final int WARMUP_PASSES = 20;
+    private static final int MEASURED_PASSES = 50;
+
+    @Test
+    public void testFreshFixedWidth() {
+        measure(false, false);
+    }
+
+    @Test
+    public void testReusedFixedWidth() {
+        measure(true, false);
+    }
+
+    @Test
+    public void testReusedVar() {
+        measure(true, true);
+    }
+
+
+    private static void measure(boolean reuseEncoder, boolean useVarEncoding) {
+        byte[][] extents = new byte[GRAPH_SIZE][];
+        for (int i = 0; i < WARMUP_PASSES; ++i) {
+            runPass(reuseEncoder, useVarEncoding, extents);
+        }
+        long encodeNanos = 0L;
+        long decodeNanos = 0L;
+        for (int i = 0; i < MEASURED_PASSES; ++i) {
+            long[] nanos = runPass(reuseEncoder, useVarEncoding, extents);
+            encodeNanos += nanos[0];
+            decodeNanos += nanos[1];
+        }
+        long totalBytes = 0L;
+        for (byte[] extent : extents) {
+            totalBytes += extent.length;
+        }
+        long objects = (long) MEASURED_PASSES * GRAPH_SIZE;
+        System.out.println((reuseEncoder ? "REUSED" : "FRESH") + " ENCODER, " + (useVarEncoding ? "VAR" : "FIXED-WIDTH") + " IDS (" + GRAPH_SIZE + " objects, " + totalBytes
+                + " bytes) NANOS PER OBJECT:  ENCODE " + (encodeNanos / objects) + ", DECODE " + (decodeNanos / objects));
+    }
+
+    private static long[] runPass(boolean reuseEncoder, boolean useVarEncoding, byte[][] extents) {
+        StreamingPrimitiveCodec.Encoder reused = new StreamingPrimitiveCodec.Encoder();
+        long start = System.nanoTime();
+        for (int i = 0; i < GRAPH_SIZE; ++i) {
+            StreamingPrimitiveCodec.Encoder encoder = reuseEncoder
+                    ? reused
+                    : new StreamingPrimitiveCodec.Encoder();
+            encoder.encodeByte((byte)i).encodeShort((short)i).encodeChar((char)i).encodeInt(i).encodeLong(i * 1000L);
+            for (int j = 0; j < IDS_PER_OBJECT; ++j) {
+                long instanceId = 1L + ((i * 31L + j * 7L) % GRAPH_SIZE);
+                if (useVarEncoding) {
+                    encoder.encodeVarLong(instanceId);
+                } else {
+                    encoder.encodeLong(instanceId);
+                }
+            }
+            extents[i] = encoder.toBytes();
+            encoder.reset();
+        }
+        long middle = System.nanoTime();
+        long checksum = 0L;
+        for (int i = 0; i < GRAPH_SIZE; ++i) {
+            StreamingPrimitiveCodec.Decoder decoder = new StreamingPrimitiveCodec.Decoder(extents[i]);
+            checksum += decoder.decodeByte() + decoder.decodeShort() + decoder.decodeChar() + decoder.decodeInt() + decoder.decodeLong();
+            for (int j = 0; j < IDS_PER_OBJECT; ++j) {
+                checksum += useVarEncoding
+                        ? decoder.decodeVarLong()
+                        : decoder.decodeLong();
+            }
+        }
+        long end = System.nanoTime();
+        // (this also stops the decoding from being optimized away).
+        Assert.assertTrue(0L != checksum);
+        return new long[] { middle - start, end - middle };
+    }
+}
@@ -65,4 +65,84 @@ public class StreamingPrimitiveCodecTest {
         Assert.assertEquals(Long.MAX_VALUE, decoder.decodeLong());
         Assert.assertEquals(Long.MIN_VALUE, decoder.decodeLong());
     }
+
+    @Test
+    public void serializeVarInts() {
+        byte[] result = new StreamingPrimitiveCodec.Encoder()
+            .encodeVarInt(0)
+            .encodeVarInt(0x7f)
+            .encodeVarInt(0x80)
+            .encodeVarInt(Integer.MAX_VALUE)
+            .encodeVarInt(-1)
+            .encodeVarLong(Long.MAX_VALUE)
+            .encodeVarLong(-1L)
+            .toBytes();
+        // Each 7 bits of value (after leading zeros are dropped) costs a byte and negative values are treated as unsigned.
+        Assert.assertEquals(1 + 1 + 2 + 5 + 5 + 9 + 10, result.length);
+        
+        StreamingPrimitiveCodec.Decoder decoder = new StreamingPrimitiveCodec.Decoder(result);
+        Assert.assertEquals(0, decoder.decodeVarInt());
+        Assert.assertEquals(0x7f, decoder.decodeVarInt());
+        Assert.assertEquals(0x80, decoder.decodeVarInt());
+        Assert.assertEquals(Integer.MAX_VALUE, decoder.decodeVarInt());
+        Assert.assertEquals(-1, decoder.decodeVarInt());
+        Assert.assertEquals(Long.MAX_VALUE, decoder.decodeVarLong());
+        Assert.assertEquals(-1L, decoder.decodeVarLong());
+    }
+
+    @Test
+    public void serializeZigZags() {
+        byte[] result = new StreamingPrimitiveCodec.Encoder()
+            .encodeZigZagInt(0)
+            .encodeZigZagInt(-1)
+            .encodeZigZagInt(63)
+            .encodeZigZagInt(-64)
+            .encodeZigZagInt(Integer.MIN_VALUE)
+            .encodeZigZagLong(-65L)
+            .encodeZigZagLong(Long.MAX_VALUE)
+            .encodeZigZagLong(Long.MIN_VALUE)
+            .toBytes();
+        // Small magnitudes are small, whatever their sign.
+        Assert.assertEquals(1 + 1 + 1 + 1 + 5 + 2 + 10 + 10, result.length);
+        
+        StreamingPrimitiveCodec.Decoder decoder = new StreamingPrimitiveCodec.Decoder(result);
+        Assert.assertEquals(0, decoder.decodeZigZagInt());
+        Assert.assertEquals(-1, decoder.decodeZigZagInt());
+        Assert.assertEquals(63, decoder.decodeZigZagInt());
+        Assert.assertEquals(-64, decoder.decodeZigZagInt());
+        Assert.assertEquals(Integer.MIN_VALUE, decoder.decodeZigZagInt());
+        Assert.assertEquals(-65L, decoder.decodeZigZagLong());
+        Assert.assertEquals(Long.MAX_VALUE, decoder.decodeZigZagLong());
+        Assert.assertEquals(Long.MIN_VALUE, decoder.decodeZigZagLong());
+    }
+
+    @Test
+    public void growAndReset() {
+        // Start with a tiny buffer so that every kind of write needs to grow it.
+        StreamingPrimitiveCodec.Encoder encoder = new StreamingPrimitiveCodec.Encoder(1);
+        byte[] bytes = new byte[100];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte)i;
+        }
+        for (int i = 0; i < 100; ++i) {
+            encoder.encodeByte((byte)i).encodeLong(i).encodeVarLong(-1L).encodeBytes(bytes);
+        }
+        Assert.assertEquals(100 * (Byte.BYTES + Long.BYTES + 10 + bytes.length), encoder.size());
+        
+        StreamingPrimitiveCodec.Decoder decoder = new StreamingPrimitiveCodec.Decoder(encoder.toBytes());
+        byte[] found = new byte[bytes.length];
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertEquals((byte)i, decoder.decodeByte());
+            Assert.assertEquals(i, decoder.decodeLong());
+            Assert.assertEquals(-1L, decoder.decodeVarLong());
+            decoder.decodeBytesInto(found);
+            Assert.assertTrue(Arrays.equals(bytes, found));
+        }
+        
+        // Once reset, the encoder only produces what was written after that.
+        encoder.reset();
+        Assert.assertEquals(0, encoder.size());
+        byte[] result = encoder.encodeInt(5).toBytes();
+        Assert.assertTrue(Arrays.equals(new byte[] {0,0,0,5}, result));
+    }
 }
@@ -0,0 +1,122 @@
+package org.aion.avm.core.persistence;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.aion.avm.api.ABIEncoder;
+import org.aion.avm.api.Address;
+import org.aion.avm.core.Avm;
+import org.aion.avm.core.CommonAvmFactory;
+import org.aion.avm.core.InstrumentationBasedStorageFees;
+import org.aion.avm.core.dappreading.JarBuilder;
+import org.aion.avm.core.persistence.keyvalue.StorageKeys;
+import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.avm.core.util.CodeAndArguments;
+import org.aion.avm.core.util.Helpers;
+import org.aion.avm.core.util.TestingHelper;
+import org.aion.kernel.Block;
+import org.aion.kernel.KernelInterfaceImpl;
+import org.aion.kernel.Transaction;
+import org.aion.kernel.TransactionContext;
+import org.aion.kernel.TransactionContextImpl;
+import org.aion.kernel.TransactionResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests that loaded instances which were never written (so the write barrier left them clean) aren't re-serialized, while anything
+ * written through them still is.
+ * This relies on ReflectionStructureCodec.reserializeAdditionalRoots() enqueueing every loaded instance, since the skipped instance is the
+ * only path to the changed one.
+ * NOTE:  Like GraphReachabilityIntegrationTest, this precisely measures the billing costs so changes to the fee schedule are likely to
+ * require updating these.
+ */
+public class WriteBarrierIntegrationTest {
+    private byte[] deployer = KernelInterfaceImpl.PREMINED_ADDRESS;
+
+    private WriteRecordingKernel kernel;
+    private Avm avm;
+
+    @Before
+    public void setup() {
+        this.kernel = new WriteRecordingKernel();
+        this.avm = CommonAvmFactory.buildAvmInstance(this.kernel);
+    }
+
+    @After
+    public void tearDown() {
+        this.avm.shutdown();
+    }
+
+    @Test
+    public void testWriteThroughCleanParent() throws Exception {
+        Block block = new Block(new byte[32], 1, Helpers.randomBytes(Address.LENGTH), System.currentTimeMillis(), new byte[0]);
+        byte[] contractAddr = deploy(block);
+        callStatic(block, contractAddr, "setup");
+        // The parent is created first, so the graph is:  statics -> instance 1 (parent) -> instance 2 (child).
+        byte[] parentKey = StorageKeys.forInstance(1L);
+        byte[] childKey = StorageKeys.forInstance(2L);
+        byte[] originalParent = this.kernel.getStorage(contractAddr, parentKey);
+        Assert.assertNotNull(originalParent);
+        Assert.assertNotNull(this.kernel.getStorage(contractAddr, childKey));
+        
+        // Run test.
+        this.kernel.writtenKeys.clear();
+        long miscCharges = 22015L + 236L + 300L + 100L + 600L + 37234L + 75L + 55L + 98L;
+        long storageCharges = 0L
+                // read static
+                    + (InstrumentationBasedStorageFees.FIXED_READ_COST + 32L)
+                // read instances (2)
+                    + (2 * (InstrumentationBasedStorageFees.FIXED_READ_COST + 40L))
+                // write instance (only the child - the parent was only read)
+                    + (InstrumentationBasedStorageFees.PER_OBJECT_WRITE_UPDATE + 40L)
+                ;
+        TransactionResult result = callStatic(block, contractAddr, "modifyChild", 3);
+        Assert.assertEquals(miscCharges + storageCharges, result.getEnergyUsed());
+        
+        // The child was written but neither the parent nor the statics were touched.
+        Assert.assertTrue(this.kernel.writtenKeys.contains(new ByteArrayWrapper(childKey)));
+        Assert.assertFalse(this.kernel.writtenKeys.contains(new ByteArrayWrapper(parentKey)));
+        Assert.assertFalse(this.kernel.writtenKeys.contains(new ByteArrayWrapper(StorageKeys.CLASS_STATICS)));
+        Assert.assertArrayEquals(originalParent, this.kernel.getStorage(contractAddr, parentKey));
+        
+        // Verify after.
+        Assert.assertEquals(3, TestingHelper.decodeResult(callStatic(block, contractAddr, "getChild")));
+    }
+
+
+    private byte[] deploy(Block block) {
+        byte[] jar = JarBuilder.buildJarForMainAndClasses(WriteBarrierIntegrationTestTarget.class);
+        byte[] txData = new CodeAndArguments(jar, new byte[0]).encodeToBytes();
+        long energyLimit = 1_000_000l;
+        long energyPrice = 1l;
+        Transaction create = Transaction.create(this.deployer, this.kernel.getNonce(this.deployer), BigInteger.ZERO, txData, energyLimit, energyPrice);
+        TransactionResult createResult = this.avm.run(new TransactionContext[] {new TransactionContextImpl(create, block)})[0].get();
+        Assert.assertEquals(TransactionResult.Code.SUCCESS, createResult.getStatusCode());
+        return TestingHelper.buildAddress(createResult.getReturnData()).unwrap();
+    }
+
+    private TransactionResult callStatic(Block block, byte[] contractAddr, String methodName, Object... args) {
+        long energyLimit = 1_000_000l;
+        byte[] argData = ABIEncoder.encodeMethodArguments(methodName, args);
+        Transaction call = Transaction.call(this.deployer, contractAddr, this.kernel.getNonce(this.deployer), BigInteger.ZERO, argData, energyLimit, 1l);
+        TransactionResult result = this.avm.run(new TransactionContext[] {new TransactionContextImpl(call, block)})[0].get();
+        Assert.assertEquals(TransactionResult.Code.SUCCESS, result.getStatusCode());
+        return result;
+    }
+
+
+    private static class WriteRecordingKernel extends KernelInterfaceImpl {
+        public final Set<ByteArrayWrapper> writtenKeys = new HashSet<>();
+
+        @Override
+        public void putStorage(byte[] address, byte[] key, byte[] value) {
+            this.writtenKeys.add(new ByteArrayWrapper(key));
+            super.putStorage(address, key, value);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.aion.avm.core.persistence;
+
+import org.aion.avm.api.ABIDecoder;
+import org.aion.avm.api.BlockchainRuntime;
+
+
+/**
+ * The test class loaded by WriteBarrierIntegrationTest.
+ */
+public class WriteBarrierIntegrationTestTarget {
+    private static WriteBarrierIntegrationTestTarget parent;
+    
+    private int value;
+    private WriteBarrierIntegrationTestTarget next;
+    
+    public WriteBarrierIntegrationTestTarget(int value) {
+        this.value = value;
+    }
+    
+    public static byte[] main() {
+        return ABIDecoder.decodeAndRunWithClass(WriteBarrierIntegrationTestTarget.class, BlockchainRuntime.getData());
+    }
+    
+    /**
+     * Create the graph:  parent -> (child, 1), child -> (null, 2).
+     */
+    public static void setup() {
+        parent = new WriteBarrierIntegrationTestTarget(1);
+        parent.next = new WriteBarrierIntegrationTestTarget(2);
+    }
+    
+    /**
+     * Changes the child, only reading the parent to reach it (so the parent stays clean).
+     */
+    public static void modifyChild(int value) {
+        parent.next.value = value;
+    }
+    
+    /**
+     * @return The value of the child.
+     */
+    public static int getChild() {
+        return parent.next.value;
+    }
+}
@@ -0,0 +1,75 @@
+package org.aion.avm.core.persistence.keyvalue;
+
+import org.aion.avm.core.persistence.INode;
+import org.aion.avm.core.persistence.SerializedRepresentation;
+import org.aion.kernel.KernelInterfaceImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Compares the storage size and decode time of the legacy KeyValueCodec encoding (type names inline) against the current one (type names
+ * stored once, in the TypeNameTable), for a graph of small objects which all refer to other objects of the same (long) user type.
+ * While it can be run as a standard unit test, the constants are meant to be tuned for more hands-on measurement.
+ */
+public class KeyValueCodecPerfTest {
+    private static final int GRAPH_SIZE = 1_000;
+    private static final int REFERENCES_PER_OBJECT = 4;
+    private static final int PRIMITIVE_BYTES_PER_OBJECT = 24;
+    private static final int WARMUP_PASSES = 20;
+    private static final int MEASURED_PASSES = 50;
+    private static final byte[] ADDRESS = new byte[] {1,2,3};
+    private static final String TYPE_NAME = "org.aion.avm.user.com.example.dapp.storage.LinkedRecordEntry";
+
+    @Test
+    public void testStorageSizeAndDecode() {
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        KeyValueObjectGraph writer = new KeyValueObjectGraph(kernel, ADDRESS);
+        byte[][] legacy = new byte[GRAPH_SIZE][];
+        byte[][] current = new byte[GRAPH_SIZE][];
+        long legacyBytes = 0L;
+        long currentBytes = 0L;
+        for (int i = 0; i < GRAPH_SIZE; ++i) {
+            INode[] references = new INode[REFERENCES_PER_OBJECT];
+            for (int j = 0; j < REFERENCES_PER_OBJECT; ++j) {
+                long instanceId = 1L + ((i * 31L + j * 7L) % GRAPH_SIZE);
+                references[j] = writer.buildExistingRegularNode((int)instanceId, TYPE_NAME, instanceId);
+            }
+            SerializedRepresentation extent = new SerializedRepresentation(new byte[PRIMITIVE_BYTES_PER_OBJECT], references);
+            legacy[i] = KeyValueCodecTest.encodeLegacy(extent);
+            current[i] = KeyValueCodec.encode(writer.getTypeNameTable(), extent);
+            legacyBytes += legacy[i].length;
+            currentBytes += current[i].length;
+        }
+        writer.flushWrites();
+        // The table is stored once, for the whole DApp.
+        currentBytes += kernel.getStorage(ADDRESS, StorageKeys.TYPE_NAMES).length;
+        Assert.assertTrue(currentBytes < legacyBytes);
+
+        for (int i = 0; i < WARMUP_PASSES; ++i) {
+            decodeAll(kernel, legacy);
+            decodeAll(kernel, current);
+        }
+        long legacyNanos = 0L;
+        long currentNanos = 0L;
+        for (int i = 0; i < MEASURED_PASSES; ++i) {
+            legacyNanos += decodeAll(kernel, legacy);
+            currentNanos += decodeAll(kernel, current);
+        }
+        long objects = (long) MEASURED_PASSES * GRAPH_SIZE;
+        System.out.println("KEY-VALUE CODEC (" + GRAPH_SIZE + " objects, " + REFERENCES_PER_OBJECT + " references each) STORAGE BYTES:  LEGACY " + legacyBytes
+                + ", TYPE TABLE " + currentBytes);
+        System.out.println("KEY-VALUE CODEC NANOS PER OBJECT DECODE:  LEGACY " + (legacyNanos / objects) + ", TYPE TABLE " + (currentNanos / objects));
+    }
+
+
+    private static long decodeAll(KernelInterfaceImpl kernel, byte[][] encoded) {
+        // Use a new graph for each pass so that we measure reading the type table and building the nodes, as a fresh load would.
+        KeyValueObjectGraph reader = new KeyValueObjectGraph(kernel, ADDRESS);
+        long start = System.nanoTime();
+        for (byte[] data : encoded) {
+            KeyValueCodec.decode(reader, data);
+        }
+        return System.nanoTime() - start;
+    }
+}
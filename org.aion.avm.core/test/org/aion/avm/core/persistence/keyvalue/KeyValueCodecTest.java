@@ -0,0 +1,162 @@
+package org.aion.avm.core.persistence.keyvalue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.aion.avm.core.persistence.ClassNode;
+import org.aion.avm.core.persistence.ConstantNode;
+import org.aion.avm.core.persistence.INode;
+import org.aion.avm.core.persistence.SerializedRepresentation;
+import org.aion.avm.core.persistence.StreamingPrimitiveCodec;
+import org.aion.kernel.KernelInterfaceImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class KeyValueCodecTest {
+    private static final byte[] ADDRESS = new byte[] {1,2,3};
+    private static final String TYPE_NAME = "org.aion.avm.user.SomeType";
+    private static final String OTHER_TYPE_NAME = "org.aion.avm.user.SomeOtherType";
+
+    @Test
+    public void roundTripEachReferenceKind() {
+        KeyValueObjectGraph graph = new KeyValueObjectGraph(new KernelInterfaceImpl(), ADDRESS);
+        SerializedRepresentation extent = new SerializedRepresentation(new byte[] {1,2,3,4}, new INode[] {
+                null,
+                graph.buildConstantNode(16),
+                graph.buildClassNode("java.lang.String"),
+                graph.buildExistingRegularNode(5, TYPE_NAME, 1L),
+                graph.buildExistingRegularNode(6, OTHER_TYPE_NAME, 300L),
+        });
+        byte[] encoded = KeyValueCodec.encode(graph.getTypeNameTable(), extent);
+        Assert.assertFalse(KeyValueCodec.isLegacyEncoding(encoded));
+
+        SerializedRepresentation decoded = KeyValueCodec.decode(graph, encoded);
+        Assert.assertTrue(Arrays.equals(extent.data, decoded.data));
+        Assert.assertEquals(extent.references.length, decoded.references.length);
+        Assert.assertNull(decoded.references[0]);
+        Assert.assertEquals(16, ((ConstantNode)decoded.references[1]).constantHashCode);
+        Assert.assertEquals("java.lang.String", ((ClassNode)decoded.references[2]).className);
+        // Regular nodes are interned by the graph.
+        Assert.assertTrue(extent.references[3] == decoded.references[3]);
+        Assert.assertTrue(extent.references[4] == decoded.references[4]);
+    }
+
+    @Test
+    public void typeNamesStoredOnce() {
+        KeyValueObjectGraph graph = new KeyValueObjectGraph(new KernelInterfaceImpl(), ADDRESS);
+        INode[] references = new INode[10];
+        for (int i = 0; i < references.length; ++i) {
+            references[i] = graph.buildExistingRegularNode(i, TYPE_NAME, i);
+        }
+        byte[] encoded = KeyValueCodec.encode(graph.getTypeNameTable(), new SerializedRepresentation(new byte[0], references));
+
+        // Version, reference count, 10 * (descriptor, instanceId, identity hash), primitive size.
+        Assert.assertEquals(1 + 1 + (10 * (1 + 1 + 4)) + 1, encoded.length);
+        Assert.assertEquals(TYPE_NAME, graph.getTypeNameTable().nameForIndex(0));
+        Assert.assertTrue(graph.getTypeNameTable().isDirty());
+    }
+
+    @Test
+    public void typeNamesPersistedOnFlush() {
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        KeyValueObjectGraph writer = new KeyValueObjectGraph(kernel, ADDRESS);
+        SerializedRepresentation extent = new SerializedRepresentation(new byte[0], new INode[] {
+                writer.buildClassNode(OTHER_TYPE_NAME),
+                writer.buildExistingRegularNode(7, TYPE_NAME, 1L),
+        });
+        byte[] encoded = KeyValueCodec.encode(writer.getTypeNameTable(), extent);
+        Assert.assertNull(kernel.getStorage(ADDRESS, StorageKeys.TYPE_NAMES));
+        writer.flushWrites();
+        Assert.assertNotNull(kernel.getStorage(ADDRESS, StorageKeys.TYPE_NAMES));
+        Assert.assertFalse(writer.getTypeNameTable().isDirty());
+
+        // A new graph over the same storage can interpret the indices.
+        KeyValueObjectGraph reader = new KeyValueObjectGraph(kernel, ADDRESS);
+        SerializedRepresentation decoded = KeyValueCodec.decode(reader, encoded);
+        Assert.assertEquals(OTHER_TYPE_NAME, ((ClassNode)decoded.references[0]).className);
+        KeyValueNode node = (KeyValueNode)decoded.references[1];
+        Assert.assertEquals(TYPE_NAME, node.getInstanceClassName());
+        Assert.assertEquals(1L, node.getInstanceId());
+        Assert.assertEquals(7, node.getIdentityHashCode());
+        Assert.assertFalse(reader.getTypeNameTable().isDirty());
+    }
+
+    @Test
+    public void decodeLegacyEncoding() {
+        KeyValueObjectGraph graph = new KeyValueObjectGraph(new KernelInterfaceImpl(), ADDRESS);
+        SerializedRepresentation extent = new SerializedRepresentation(new byte[] {5,6}, new INode[] {
+                null,
+                graph.buildConstantNode(19),
+                graph.buildClassNode("java.lang.String"),
+                graph.buildExistingRegularNode(5, TYPE_NAME, 2L),
+        });
+        byte[] legacy = encodeLegacy(extent);
+        Assert.assertTrue(KeyValueCodec.isLegacyEncoding(legacy));
+
+        SerializedRepresentation decoded = KeyValueCodec.decode(graph, legacy);
+        Assert.assertTrue(Arrays.equals(extent.data, decoded.data));
+        Assert.assertNull(decoded.references[0]);
+        Assert.assertEquals(19, ((ConstantNode)decoded.references[1]).constantHashCode);
+        Assert.assertEquals("java.lang.String", ((ClassNode)decoded.references[2]).className);
+        Assert.assertTrue(extent.references[3] == decoded.references[3]);
+        // Reading the legacy encoding doesn't add anything to the table.
+        Assert.assertFalse(graph.getTypeNameTable().isDirty());
+
+        // Re-encoding it (as a write or the GC would) produces the new encoding, which is smaller.
+        byte[] migrated = KeyValueCodec.encode(graph.getTypeNameTable(), decoded);
+        Assert.assertFalse(KeyValueCodec.isLegacyEncoding(migrated));
+        Assert.assertTrue(migrated.length < legacy.length);
+    }
+
+    @Test
+    public void typeNameTableRoundTrip() {
+        Assert.assertFalse(TypeNameTable.fromBytes(null).isDirty());
+
+        TypeNameTable table = new TypeNameTable();
+        Assert.assertEquals(0, table.indexForName(TYPE_NAME));
+        Assert.assertEquals(1, table.indexForName(OTHER_TYPE_NAME));
+        Assert.assertEquals(0, table.indexForName(TYPE_NAME));
+        Assert.assertTrue(table.isDirty());
+
+        TypeNameTable copy = TypeNameTable.fromBytes(table.toBytes());
+        Assert.assertFalse(table.isDirty());
+        Assert.assertEquals(TYPE_NAME, copy.nameForIndex(0));
+        Assert.assertEquals(OTHER_TYPE_NAME, copy.nameForIndex(1));
+        Assert.assertEquals(1, copy.indexForName(OTHER_TYPE_NAME));
+        Assert.assertFalse(copy.isDirty());
+    }
+
+
+    /**
+     * Produces the legacy encoding (type names inline, fixed-width counts), which we no longer write but must still read.
+     * (package-private so that KeyValueCodecPerfTest can compare against it).
+     */
+    static byte[] encodeLegacy(SerializedRepresentation extent) {
+        StreamingPrimitiveCodec.Encoder encoder = new StreamingPrimitiveCodec.Encoder();
+        encoder.encodeInt(extent.references.length);
+        for (INode node : extent.references) {
+            if (null == node) {
+                encoder.encodeInt(0);
+            } else if (node instanceof ConstantNode) {
+                encoder.encodeInt(-1);
+                encoder.encodeInt(((ConstantNode)node).constantHashCode);
+            } else if (node instanceof ClassNode) {
+                byte[] utf8Name = ((ClassNode)node).className.getBytes(StandardCharsets.UTF_8);
+                encoder.encodeInt(-2);
+                encoder.encodeInt(utf8Name.length);
+                encoder.encodeBytes(utf8Name);
+            } else {
+                KeyValueNode regularNode = (KeyValueNode)node;
+                byte[] utf8Name = regularNode.getInstanceClassName().getBytes(StandardCharsets.UTF_8);
+                encoder.encodeInt(utf8Name.length);
+                encoder.encodeBytes(utf8Name);
+                encoder.encodeLong(regularNode.getInstanceId());
+                encoder.encodeInt(regularNode.getIdentityHashCode());
+            }
+        }
+        encoder.encodeInt(extent.data.length);
+        encoder.encodeBytes(extent.data);
+        return encoder.toBytes();
+    }
+}
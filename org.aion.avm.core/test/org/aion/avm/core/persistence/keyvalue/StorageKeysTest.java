@@ -0,0 +1,103 @@
+package org.aion.avm.core.persistence.keyvalue;
+
+import java.util.Arrays;
+
+import org.aion.avm.core.persistence.INode;
+import org.aion.avm.core.persistence.SerializedRepresentation;
+import org.aion.avm.core.persistence.StreamingPrimitiveCodec;
+import org.aion.kernel.KernelInterfaceImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class StorageKeysTest {
+    private static final byte[] ADDRESS = new byte[] {1,2,3};
+    private static final String TYPE_NAME = "org.aion.avm.user.SomeType";
+
+    @Test
+    public void instanceKeysAreFixedLength() {
+        Assert.assertTrue(Arrays.equals(new byte[] {0x49, 0,0,0,0,0,0,0,1}, StorageKeys.forInstance(1L)));
+        Assert.assertTrue(Arrays.equals(new byte[] {0x49, 0,0,0,0,0x3b,(byte)0x9a,(byte)0xca,0x1}, StorageKeys.forInstance(1_000_000_001L)));
+        Assert.assertEquals(9, StorageKeys.forInstance(Long.MAX_VALUE).length);
+        // They can't collide with any special-case key.
+        Assert.assertNotEquals(StorageKeys.CLASS_STATICS.length, StorageKeys.forInstance(1L).length);
+    }
+
+    @Test
+    public void instanceKeysSortByInstanceId() {
+        long[] instanceIds = new long[] {0L, 1L, 127L, 128L, 255L, 256L, 65_536L, 1_000_000_000L, Long.MAX_VALUE};
+        for (int i = 1; i < instanceIds.length; ++i) {
+            Assert.assertTrue(Arrays.compareUnsigned(StorageKeys.forInstance(instanceIds[i - 1]), StorageKeys.forInstance(instanceIds[i])) < 0);
+        }
+    }
+
+    @Test
+    public void migrateLegacyInstanceKeysLazily() {
+        // Build storage the way it was written with the legacy keys:  2 instances and INTERNAL_DATA without the key version.
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        byte[] one = new byte[] {1};
+        byte[] two = new byte[] {2, 2};
+        kernel.putStorage(ADDRESS, StorageKeys.forLegacyInstance(1L), one);
+        kernel.putStorage(ADDRESS, StorageKeys.forLegacyInstance(2L), two);
+        byte[] legacyInternalData = new StreamingPrimitiveCodec.Encoder().encodeLong(3L).encodeLong(0L).encodeInt(5).toBytes();
+        kernel.putStorage(ADDRESS, StorageKeys.INTERNAL_DATA, legacyInternalData);
+
+        // Opening the graph and reading the instances doesn't write anything.
+        KeyValueObjectGraph graph = new KeyValueObjectGraph(kernel, ADDRESS);
+        Assert.assertTrue(Arrays.equals(one, graph.loadStorageForInstance(1L)));
+        Assert.assertTrue(Arrays.equals(two, graph.loadStorageForInstance(2L)));
+        Assert.assertNull(kernel.getStorage(ADDRESS, StorageKeys.forInstance(1L)));
+        Assert.assertTrue(Arrays.equals(legacyInternalData, kernel.getStorage(ADDRESS, StorageKeys.INTERNAL_DATA)));
+        Assert.assertEquals(5, graph.simpleHashCode());
+
+        // Storing an instance moves it to the binary key, leaving the other one where it was.
+        SerializedRepresentation updated = new SerializedRepresentation(new byte[] {3}, new INode[0]);
+        graph.storeDataForInstance(1L, null, updated);
+        graph.flushWrites();
+        Assert.assertEquals(0, kernel.getStorage(ADDRESS, StorageKeys.forLegacyInstance(1L)).length);
+        Assert.assertTrue(Arrays.equals(two, kernel.getStorage(ADDRESS, StorageKeys.forLegacyInstance(2L))));
+        // (we are still on the legacy keys until everything has moved).
+        byte[] internalData = kernel.getStorage(ADDRESS, StorageKeys.INTERNAL_DATA);
+        Assert.assertEquals(StorageKeys.INSTANCE_KEY_VERSION_LEGACY, internalData[internalData.length - 1]);
+
+        // A new graph finds each instance under whichever key it is now.
+        KeyValueObjectGraph reopened = new KeyValueObjectGraph(kernel, ADDRESS);
+        Assert.assertTrue(Arrays.equals(KeyValueCodec.encode(reopened.getTypeNameTable(), updated), reopened.loadStorageForInstance(1L)));
+        Assert.assertTrue(Arrays.equals(two, reopened.loadStorageForInstance(2L)));
+    }
+
+    @Test
+    public void gcMigratesLegacyInstanceKeys() {
+        // Build legacy storage with statics referring to instance 2, which refers to instance 1 (and nothing refers to instance 3).
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        KeyValueObjectGraph builder = new KeyValueObjectGraph(new KernelInterfaceImpl(), ADDRESS);
+        INode first = builder.buildExistingRegularNode(11, TYPE_NAME, 1L);
+        INode second = builder.buildExistingRegularNode(12, TYPE_NAME, 2L);
+        kernel.putStorage(ADDRESS, StorageKeys.CLASS_STATICS, KeyValueCodecTest.encodeLegacy(new SerializedRepresentation(new byte[0], new INode[] {second})));
+        kernel.putStorage(ADDRESS, StorageKeys.forLegacyInstance(1L), KeyValueCodecTest.encodeLegacy(new SerializedRepresentation(new byte[] {1}, new INode[0])));
+        kernel.putStorage(ADDRESS, StorageKeys.forLegacyInstance(2L), KeyValueCodecTest.encodeLegacy(new SerializedRepresentation(new byte[] {2}, new INode[] {first})));
+        kernel.putStorage(ADDRESS, StorageKeys.forLegacyInstance(3L), KeyValueCodecTest.encodeLegacy(new SerializedRepresentation(new byte[] {3}, new INode[0])));
+        kernel.putStorage(ADDRESS, StorageKeys.INTERNAL_DATA, new StreamingPrimitiveCodec.Encoder().encodeLong(4L).encodeLong(0L).encodeInt(0).toBytes());
+
+        KeyValueObjectGraph graph = new KeyValueObjectGraph(kernel, ADDRESS);
+        Assert.assertEquals(1L, graph.gc());
+
+        // Everything reachable is now on the binary keys (in the other half of the semi-space) and the legacy keys are all cleared.
+        for (long i = 1L; i <= 3L; ++i) {
+            Assert.assertEquals(0, kernel.getStorage(ADDRESS, StorageKeys.forLegacyInstance(i)).length);
+        }
+        Assert.assertNotNull(kernel.getStorage(ADDRESS, StorageKeys.forInstance(1_000_000_001L)));
+        Assert.assertNotNull(kernel.getStorage(ADDRESS, StorageKeys.forInstance(1_000_000_002L)));
+        byte[] internalData = kernel.getStorage(ADDRESS, StorageKeys.INTERNAL_DATA);
+        Assert.assertEquals(StorageKeys.INSTANCE_KEY_VERSION_BINARY, internalData[internalData.length - 1]);
+
+        // The instances are read from their new keys.
+        KeyValueObjectGraph reopened = new KeyValueObjectGraph(kernel, ADDRESS);
+        SerializedRepresentation statics = KeyValueCodec.decode(reopened, kernel.getStorage(ADDRESS, StorageKeys.CLASS_STATICS));
+        long secondId = ((KeyValueNode)statics.references[0]).getInstanceId();
+        SerializedRepresentation secondData = KeyValueCodec.decode(reopened, reopened.loadStorageForInstance(secondId));
+        Assert.assertTrue(Arrays.equals(new byte[] {2}, secondData.data));
+        long firstId = ((KeyValueNode)secondData.references[0]).getInstanceId();
+        Assert.assertTrue(Arrays.equals(new byte[] {1}, KeyValueCodec.decode(reopened, reopened.loadStorageForInstance(firstId)).data));
+    }
+}
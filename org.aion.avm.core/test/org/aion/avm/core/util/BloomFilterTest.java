@@ -0,0 +1,61 @@
+package org.aion.avm.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class BloomFilterTest {
+    @Test
+    public void testNoFalseNegatives() {
+        BloomFilter filter = BloomFilter.forFalsePositiveRate(10_000, 0.01);
+        List<byte[]> added = new ArrayList<>();
+        for (int i = 0; i < 10_000; ++i) {
+            byte[] element = Helpers.randomBytes(1 + (i % 32));
+            filter.add(element);
+            added.add(element);
+        }
+        for (byte[] element : added) {
+            Assert.assertTrue(filter.mightContain(element));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        BloomFilter filter = BloomFilter.forFalsePositiveRate(10_000, 0.01);
+        // About 9.6 bits and 7 hashes per element.
+        Assert.assertEquals(7, filter.getHashCount());
+        Assert.assertTrue((filter.getMemoryBytes() > 11_000) && (filter.getMemoryBytes() < 13_000));
+        for (int i = 0; i < 10_000; ++i) {
+            filter.add(Helpers.randomBytes(32));
+        }
+        // (the few which were false positives when added aren't counted).
+        long added = filter.getAddedCount();
+        Assert.assertTrue(added > 9_900);
+        // Re-adding doesn't count.
+        byte[] element = Helpers.randomBytes(32);
+        filter.add(element);
+        filter.add(element);
+        Assert.assertTrue(filter.getAddedCount() <= (added + 1));
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; ++i) {
+            if (filter.mightContain(Helpers.randomBytes(32))) {
+                falsePositives += 1;
+            }
+        }
+        // We expect about 1000 (the tolerance is loose since this is random).
+        Assert.assertTrue(falsePositives < 1_500);
+        Assert.assertEquals(0.01, filter.getExpectedFalsePositiveRate(), 0.002);
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        BloomFilter filter = BloomFilter.forMemoryBudget(1_000, 1024);
+        Assert.assertEquals(1024, filter.getMemoryBytes());
+        // 8192 bits for 1000 elements is best with 6 hashes.
+        Assert.assertEquals(6, filter.getHashCount());
+    }
+}
@@ -0,0 +1,69 @@
+package org.aion.avm.core.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ByteArrayMapTest {
+    @Test
+    public void testBasicOperations() {
+        ByteArrayMap<String> map = new ByteArrayMap<>();
+        byte[] key = new byte[] { 1, 2, 3 };
+        Assert.assertNull(map.get(key));
+        Assert.assertNull(map.put(key, "one"));
+        // Lookups are by content, not identity.
+        Assert.assertEquals("one", map.get(new byte[] { 1, 2, 3 }));
+        Assert.assertTrue(map.containsKey(new byte[] { 1, 2, 3 }));
+        Assert.assertFalse(map.containsKey(new byte[] { 1, 2 }));
+        Assert.assertEquals("one", map.put(new byte[] { 1, 2, 3 }, "two"));
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals("two", map.computeIfAbsent(key, (k) -> "three"));
+        Assert.assertEquals("four", map.computeIfAbsent(new byte[0], (k) -> "four"));
+        Assert.assertEquals(2, map.size());
+
+        Assert.assertEquals("two", map.remove(key));
+        Assert.assertNull(map.remove(key));
+        Assert.assertNull(map.get(key));
+        Assert.assertEquals(1, map.size());
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.get(new byte[0]));
+    }
+
+    /**
+     * Runs a random mix of puts and removes (over a small key space, so there are plenty of hits and holes to compact) against a
+     * LinkedHashMap, checking that they agree on contents and iteration order.
+     */
+    @Test
+    public void testAgainstLinkedHashMap() {
+        Random random = new Random(42);
+        ByteArrayMap<Integer> map = new ByteArrayMap<>();
+        Map<ByteArrayWrapper, Integer> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 100_000; ++i) {
+            byte[] key = new byte[32];
+            key[random.nextInt(32)] = (byte) random.nextInt(64);
+            if (random.nextInt(3) > 0) {
+                Integer previous = expected.get(new ByteArrayWrapper(key));
+                // LinkedHashMap keeps the original position of a replaced key, as we do.
+                expected.put(new ByteArrayWrapper(key), i);
+                Assert.assertEquals(previous, map.put(key, i));
+            } else {
+                Assert.assertEquals(expected.remove(new ByteArrayWrapper(key)), map.remove(key));
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+
+        List<ByteArrayWrapper> order = new ArrayList<>();
+        map.forEach((key, value) -> {
+            order.add(new ByteArrayWrapper(key));
+            Assert.assertEquals(expected.get(new ByteArrayWrapper(key)), value);
+        });
+        Assert.assertEquals(new ArrayList<>(expected.keySet()), order);
+    }
+}
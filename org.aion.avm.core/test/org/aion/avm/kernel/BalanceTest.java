@@ -0,0 +1,68 @@
+package org.aion.avm.kernel;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.aion.kernel.Balance;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class BalanceTest {
+    private static final BigInteger MAX_128 = BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE);
+    private static final BigInteger MIN_128 = BigInteger.ONE.shiftLeft(127).negate();
+
+    @Test
+    public void testArithmeticMatchesBigInteger() {
+        Random random = new Random(42L);
+        BigInteger[] interesting = {
+                BigInteger.ZERO, BigInteger.ONE, BigInteger.ONE.negate(),
+                BigInteger.valueOf(Long.MAX_VALUE), BigInteger.valueOf(Long.MIN_VALUE),
+                BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE), BigInteger.ONE.shiftLeft(64), BigInteger.ONE.shiftLeft(64).negate(),
+                MAX_128, MIN_128, MAX_128.add(BigInteger.ONE), MIN_128.subtract(BigInteger.ONE), BigInteger.TEN.pow(50),
+        };
+        BigInteger[] values = new BigInteger[interesting.length + 200];
+        System.arraycopy(interesting, 0, values, 0, interesting.length);
+        for (int i = interesting.length; i < values.length; ++i) {
+            BigInteger value = new BigInteger(1 + random.nextInt(140), random);
+            values[i] = random.nextBoolean() ? value : value.negate();
+        }
+        for (BigInteger one : values) {
+            Balance balanceOne = Balance.valueOf(one);
+            Assert.assertEquals(one, balanceOne.toBigInteger());
+            Assert.assertEquals(one.negate(), balanceOne.negate().toBigInteger());
+            Assert.assertEquals(one.signum(), balanceOne.signum());
+            for (BigInteger two : values) {
+                Balance balanceTwo = Balance.valueOf(two);
+                Assert.assertEquals(one.add(two), balanceOne.add(balanceTwo).toBigInteger());
+                Assert.assertEquals(one.subtract(two), balanceOne.subtract(balanceTwo).toBigInteger());
+                Assert.assertEquals(Integer.signum(one.compareTo(two)), Integer.signum(balanceOne.compareTo(balanceTwo)));
+                // The representation is canonical, so equal values are equal, however they were computed.
+                Assert.assertEquals(Balance.valueOf(one.add(two)), balanceOne.add(balanceTwo));
+            }
+        }
+    }
+
+    @Test
+    public void testProduct() {
+        long[] factors = { 0L, 1L, -1L, 21_000L, Long.MAX_VALUE, Long.MIN_VALUE, 1_000_000_000L };
+        for (long one : factors) {
+            for (long two : factors) {
+                Assert.assertEquals(BigInteger.valueOf(one).multiply(BigInteger.valueOf(two)), Balance.product(one, two).toBigInteger());
+            }
+        }
+    }
+
+    @Test
+    public void testOverflowFallsBackAndReturns() {
+        Balance max = Balance.valueOf(MAX_128);
+        Balance over = max.add(Balance.valueOf(1L));
+        Assert.assertEquals(MAX_128.add(BigInteger.ONE), over.toBigInteger());
+        Assert.assertTrue(over.compareTo(max) > 0);
+        // Coming back into range goes back to the fixed-width form.
+        Balance back = over.subtract(Balance.valueOf(1L));
+        Assert.assertEquals(max, back);
+        Assert.assertEquals(max.hashCode(), back.hashCode());
+        Assert.assertEquals(MIN_128.negate(), Balance.valueOf(MIN_128).negate().toBigInteger());
+    }
+}
@@ -2,11 +2,18 @@ package org.aion.avm.kernel;
 
 import java.math.BigInteger;
 import org.aion.avm.core.util.Helpers;
+import org.aion.data.IAccountStore;
+import org.aion.data.IDataStore;
+import org.aion.data.MemoryBackedDataStore;
 import org.aion.kernel.KernelInterface;
 import org.aion.kernel.KernelInterfaceImpl;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class KernelInterfaceImplTest {
 
@@ -21,4 +28,89 @@ public class KernelInterfaceImplTest {
         assertEquals(KernelInterfaceImpl.PREMINED_AMOUNT.subtract(delta), kernel.getBalance(KernelInterfaceImpl.PREMINED_ADDRESS));
         assertEquals(delta, kernel.getBalance(address));
     }
+
+    @Test
+    public void testCachedReadsDontOpenAccounts() {
+        CountingDataStore store = new CountingDataStore();
+        KernelInterface kernel = new KernelInterfaceImpl(store);
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+        byte[] missing = Helpers.randomBytes(32);
+        kernel.putCode(address, new byte[] { 1 });
+        kernel.adjustBalance(address, BigInteger.TEN);
+        kernel.incrementNonce(address);
+        kernel.putStorage(address, key, new byte[] { 2 });
+
+        int opens = store.opens;
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(kernel.hasAccountState(address));
+            assertArrayEquals(new byte[] { 1 }, kernel.getCode(address));
+            assertEquals(BigInteger.TEN, kernel.getBalance(address));
+            assertEquals(1L, kernel.getNonce(address));
+            assertArrayEquals(new byte[] { 2 }, kernel.getStorage(address, key));
+            // Accounts which don't exist are cached, too.
+            assertFalse(kernel.hasAccountState(missing));
+            assertEquals(BigInteger.ZERO, kernel.getBalance(missing));
+        }
+        // Only the first look at the missing account went to the store.
+        assertEquals(opens + 1, store.opens);
+    }
+
+    @Test
+    public void testDeleteInvalidatesCache() {
+        KernelInterface kernel = new KernelInterfaceImpl(new MemoryBackedDataStore());
+        byte[] address = Helpers.randomBytes(32);
+        kernel.adjustBalance(address, BigInteger.TEN);
+        kernel.incrementNonce(address);
+        kernel.putCode(address, new byte[] { 1 });
+        kernel.deleteAccount(address);
+
+        assertFalse(kernel.hasAccountState(address));
+        assertEquals(BigInteger.ZERO, kernel.getBalance(address));
+        assertEquals(0L, kernel.getNonce(address));
+        assertNull(kernel.getCode(address));
+
+        // Writing re-creates it, empty.
+        kernel.adjustBalance(address, BigInteger.ONE);
+        assertTrue(kernel.hasAccountState(address));
+        assertEquals(BigInteger.ONE, kernel.getBalance(address));
+        assertEquals(0L, kernel.getNonce(address));
+    }
+
+    @Test
+    public void testEviction() {
+        KernelInterface kernel = new KernelInterfaceImpl(new MemoryBackedDataStore(), 16);
+        byte[][] addresses = new byte[100][];
+        for (int i = 0; i < addresses.length; ++i) {
+            addresses[i] = Helpers.randomBytes(32);
+            kernel.adjustBalance(addresses[i], BigInteger.valueOf(i));
+        }
+        // Most of these were evicted so they are read back from the store.
+        for (int i = 0; i < addresses.length; ++i) {
+            kernel.adjustBalance(addresses[i], BigInteger.ONE);
+            assertEquals(BigInteger.valueOf(i + 1), kernel.getBalance(addresses[i]));
+        }
+    }
+
+
+    private static class CountingDataStore implements IDataStore {
+        private final MemoryBackedDataStore store = new MemoryBackedDataStore();
+        public int opens;
+
+        @Override
+        public IAccountStore openAccount(byte[] address) {
+            this.opens += 1;
+            return this.store.openAccount(address);
+        }
+
+        @Override
+        public IAccountStore createAccount(byte[] address) {
+            return this.store.createAccount(address);
+        }
+
+        @Override
+        public void deleteAccount(byte[] address) {
+            this.store.deleteAccount(address);
+        }
+    }
 }
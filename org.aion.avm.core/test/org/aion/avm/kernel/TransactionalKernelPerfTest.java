@@ -0,0 +1,98 @@
+package org.aion.avm.kernel;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+
+import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.KernelInterface;
+import org.aion.kernel.KernelInterfaceImpl;
+import org.aion.kernel.TransactionalKernel;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Measures the cost of a deep chain of internal calls, at the kernel level:  each call frame rewrites the same few storage keys and
+ * balances many times and reads a key only its outermost caller wrote.  The frames are either each a TransactionalKernel on top of
+ * its caller's, which they commit into as they return, or savepoints within a single one (which is how the AVM runs them).
+ * While it can be run as a standard unit test, the constants are meant to be tuned for more hands-on measurement.
+ */
+public class TransactionalKernelPerfTest {
+    private static final int CALL_DEPTH = 64;
+    private static final int WRITES_PER_FRAME = 1_000;
+    private static final int KEYS = 4;
+    private static final int WARMUP_CHAINS = 5;
+    private static final int MEASURED_CHAINS = 20;
+
+    @Test
+    public void testDeepCallChain() {
+        measure(false);
+    }
+
+    @Test
+    public void testDeepCallChainWithSavepoints() {
+        measure(true);
+    }
+
+
+    private static void measure(boolean useSavepoints) {
+        byte[] contract = Helpers.randomBytes(32);
+        byte[] caller = Helpers.randomBytes(32);
+        byte[][] keys = new byte[KEYS][];
+        for (int i = 0; i < KEYS; ++i) {
+            keys[i] = Helpers.randomBytes(32);
+        }
+
+        for (int i = 0; i < WARMUP_CHAINS; ++i) {
+            runChain(new KernelInterfaceImpl(), contract, caller, keys, useSavepoints);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long startBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CHAINS; ++i) {
+            KernelInterface base = new KernelInterfaceImpl();
+            runChain(base, contract, caller, keys, useSavepoints);
+            Assert.assertEquals(BigInteger.valueOf((long)CALL_DEPTH * WRITES_PER_FRAME), base.getBalance(contract));
+        }
+        long end = System.nanoTime();
+        long endBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        System.out.println((useSavepoints ? "SAVEPOINT" : "NESTED KERNEL") + " CALL CHAIN (depth " + CALL_DEPTH + ", " + WRITES_PER_FRAME + " writes per frame) MILLIS PER CHAIN: " + ((end - start) / MEASURED_CHAINS / 1_000_000.0)
+                + ", BYTES ALLOCATED PER CHAIN: " + ((endBytes - startBytes) / MEASURED_CHAINS));
+    }
+
+
+    private static void runChain(KernelInterface base, byte[] contract, byte[] caller, byte[][] keys, boolean useSavepoints) {
+        TransactionalKernel task = new TransactionalKernel(base);
+        byte[] outerKey = Helpers.randomBytes(32);
+        task.putStorage(contract, outerKey, new byte[] { 1 });
+        TransactionalKernel[] frames = new TransactionalKernel[CALL_DEPTH];
+        int[] savepoints = new int[CALL_DEPTH];
+        KernelInterface parent = task;
+        for (int depth = 0; depth < CALL_DEPTH; ++depth) {
+            TransactionalKernel frame;
+            if (useSavepoints) {
+                frame = task;
+                savepoints[depth] = task.mark();
+            } else {
+                frame = new TransactionalKernel(parent);
+                frames[depth] = frame;
+                parent = frame;
+            }
+            for (int i = 0; i < WRITES_PER_FRAME; ++i) {
+                frame.putStorage(contract, keys[i % KEYS], new byte[] { (byte)depth, (byte)i });
+                frame.adjustBalance(contract, BigInteger.ONE);
+                frame.adjustBalance(caller, BigInteger.ONE.negate());
+                Assert.assertNotNull(frame.getStorage(contract, outerKey));
+            }
+        }
+        // Unwind the chain, each frame returning successfully to its caller.
+        for (int depth = CALL_DEPTH - 1; depth >= 0; --depth) {
+            if (useSavepoints) {
+                task.release(savepoints[depth]);
+            } else {
+                frames[depth].commit();
+            }
+        }
+        task.commit();
+    }
+}
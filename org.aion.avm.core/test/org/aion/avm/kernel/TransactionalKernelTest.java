@@ -4,6 +4,7 @@ import java.math.BigInteger;
 import java.util.Arrays;
 
 import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.Balance;
 import org.aion.kernel.KernelInterface;
 import org.aion.kernel.KernelInterfaceImpl;
 import org.aion.kernel.TransactionalKernel;
@@ -128,4 +129,231 @@ public class TransactionalKernelTest {
         transaction.commit();
         Assert.assertEquals(BigInteger.TWO, base.getBalance(address));
     }
+
+    @Test
+    public void testCommitCoalescesWrites() {
+        CountingKernel base = new CountingKernel();
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+        TransactionalKernel transaction = new TransactionalKernel(base);
+        for (int i = 0; i < 1000; ++i) {
+            transaction.putStorage(address, key, new byte[] { (byte)i });
+            transaction.adjustBalance(address, BigInteger.TWO);
+        }
+        transaction.adjustBalance(address, BigInteger.ONE.negate());
+        transaction.incrementNonce(address);
+        transaction.incrementNonce(address);
+        Assert.assertArrayEquals(new byte[] { (byte)999 }, transaction.getStorage(address, key));
+        Assert.assertEquals(BigInteger.valueOf(1999L), transaction.getBalance(address));
+
+        // Only the last value and the summed delta are written back.
+        transaction.commit();
+        Assert.assertEquals(1, base.putStorageCount);
+        Assert.assertEquals(1, base.adjustBalanceCount);
+        Assert.assertEquals(2, base.incrementNonceCount);
+        Assert.assertArrayEquals(new byte[] { (byte)999 }, base.getStorage(address, key));
+        Assert.assertEquals(BigInteger.valueOf(1999L), base.getBalance(address));
+        Assert.assertEquals(2L, base.getNonce(address));
+    }
+
+    @Test
+    public void testCommitDeleteDiscardsPending() {
+        CountingKernel base = new CountingKernel();
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+        base.putStorage(address, key, new byte[] { 1 });
+        base.putStorageCount = 0;
+
+        TransactionalKernel transaction = new TransactionalKernel(base);
+        transaction.putStorage(address, key, new byte[] { 2 });
+        transaction.adjustBalance(address, BigInteger.TEN);
+        transaction.deleteAccount(address);
+        byte[] key2 = Helpers.randomBytes(32);
+        transaction.putStorage(address, key2, new byte[] { 3 });
+
+        // The writes before the delete never reach the parent but the ones after it do.
+        transaction.commit();
+        Assert.assertEquals(1, base.putStorageCount);
+        Assert.assertEquals(0, base.adjustBalanceCount);
+        Assert.assertNull(base.getStorage(address, key));
+        Assert.assertArrayEquals(new byte[] { 3 }, base.getStorage(address, key2));
+        Assert.assertEquals(BigInteger.ZERO, base.getBalance(address));
+    }
+
+    @Test
+    public void testSavepointRollback() {
+        KernelInterface base = new KernelInterfaceImpl();
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+        base.putStorage(address, key, new byte[] { 1 });
+        base.adjustBalance(address, BigInteger.TEN);
+
+        TransactionalKernel transaction = new TransactionalKernel(base);
+        transaction.putStorage(address, key, new byte[] { 2 });
+        int outer = transaction.mark();
+        transaction.putStorage(address, key, new byte[] { 3 });
+        transaction.adjustBalance(address, BigInteger.ONE);
+        int inner = transaction.mark();
+        transaction.deleteAccount(address);
+        Assert.assertEquals(BigInteger.ZERO, transaction.getBalance(address));
+        transaction.rollback(inner);
+
+        // The inner delete is gone but the outer writes are still there.
+        Assert.assertArrayEquals(new byte[] { 3 }, transaction.getStorage(address, key));
+        Assert.assertEquals(BigInteger.valueOf(11L), transaction.getBalance(address));
+        transaction.rollback(outer);
+        Assert.assertArrayEquals(new byte[] { 2 }, transaction.getStorage(address, key));
+        Assert.assertEquals(BigInteger.TEN, transaction.getBalance(address));
+
+        transaction.commit();
+        Assert.assertArrayEquals(new byte[] { 2 }, base.getStorage(address, key));
+        Assert.assertEquals(BigInteger.TEN, base.getBalance(address));
+    }
+
+    @Test
+    public void testSavepointRelease() {
+        KernelInterface base = new KernelInterfaceImpl();
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+
+        TransactionalKernel transaction = new TransactionalKernel(base);
+        int outer = transaction.mark();
+        transaction.putStorage(address, key, new byte[] { 1 });
+        int inner = transaction.mark();
+        transaction.putStorage(address, key, new byte[] { 2 });
+        transaction.adjustBalance(address, BigInteger.TWO);
+        // Releasing the inner savepoint makes its writes part of the outer one, so they still roll back with it.
+        transaction.release(inner);
+        Assert.assertArrayEquals(new byte[] { 2 }, transaction.getStorage(address, key));
+        transaction.rollback(outer);
+        Assert.assertNull(transaction.getStorage(address, key));
+        Assert.assertEquals(BigInteger.ZERO, transaction.getBalance(address));
+
+        outer = transaction.mark();
+        transaction.putStorage(address, key, new byte[] { 3 });
+        transaction.release(outer);
+        transaction.commit();
+        Assert.assertArrayEquals(new byte[] { 3 }, base.getStorage(address, key));
+        Assert.assertFalse(base.hasAccountState(Helpers.randomBytes(32)));
+    }
+
+    @Test
+    public void testReadsAfterDeleteInSavepoint() {
+        KernelInterface base = new KernelInterfaceImpl();
+        byte[] address = Helpers.randomBytes(32);
+        base.adjustBalance(address, BigInteger.TEN);
+        base.incrementNonce(address);
+
+        TransactionalKernel transaction = new TransactionalKernel(base);
+        transaction.deleteAccount(address);
+        int savepoint = transaction.mark();
+        // A zero transfer lazily re-creates the account but the deleted balance and nonce must stay gone.
+        transaction.adjustBalance(address, BigInteger.ZERO);
+        Assert.assertEquals(BigInteger.ZERO, transaction.getBalance(address));
+        Assert.assertEquals(0L, transaction.getNonce(address));
+        transaction.release(savepoint);
+        transaction.commit();
+        Assert.assertEquals(BigInteger.ZERO, base.getBalance(address));
+    }
+
+    @Test
+    public void testNonceOutsideSavepoints() {
+        KernelInterface base = new KernelInterfaceImpl();
+        byte[] caller = Helpers.randomBytes(32);
+        byte[] deleted = Helpers.randomBytes(32);
+
+        TransactionalKernel transaction = new TransactionalKernel(base);
+        int outer = transaction.mark();
+        transaction.incrementNonceOutsideSavepoints(caller);
+        Assert.assertEquals(1L, transaction.getNonce(caller));
+        transaction.rollback(outer);
+        // Rolling back doesn't undo the increment.
+        Assert.assertEquals(1L, transaction.getNonce(caller));
+
+        // But a delete kept within the savepoints wipes it out, as it is applied on top.
+        outer = transaction.mark();
+        transaction.incrementNonceOutsideSavepoints(deleted);
+        transaction.deleteAccount(deleted);
+        transaction.release(outer);
+        Assert.assertEquals(0L, transaction.getNonce(deleted));
+
+        transaction.commit();
+        Assert.assertEquals(1L, base.getNonce(caller));
+        Assert.assertFalse(base.hasAccountState(deleted));
+    }
+
+    @Test
+    public void testGetStorageMulti() {
+        CountingKernel base = new CountingKernel();
+        byte[] address = Helpers.randomBytes(32);
+        byte[] parentKey = Helpers.randomBytes(32);
+        byte[] localKey = Helpers.randomBytes(32);
+        byte[] missingKey = Helpers.randomBytes(32);
+        base.putStorage(address, parentKey, new byte[] { 1 });
+
+        TransactionalKernel transaction = new TransactionalKernel(base);
+        transaction.enableReadTracking();
+        transaction.putStorage(address, localKey, new byte[] { 2 });
+        byte[][] values = transaction.getStorageMulti(address, new byte[][] { parentKey, localKey, missingKey });
+        Assert.assertArrayEquals(new byte[] { 1 }, values[0]);
+        Assert.assertArrayEquals(new byte[] { 2 }, values[1]);
+        Assert.assertNull(values[2]);
+        // Only the keys we didn't have were asked of the parent, in 1 request.
+        Assert.assertEquals(1, base.getStorageMultiCount);
+        Assert.assertEquals(2, base.lastMultiKeyCount);
+
+        // The batched reads are tracked like any other.
+        Assert.assertTrue(transaction.validateReads());
+        base.putStorage(address, missingKey, new byte[] { 3 });
+        Assert.assertFalse(transaction.validateReads());
+
+        // An account which doesn't exist just has no values.
+        byte[][] none = new KernelInterfaceImpl().getStorageMulti(Helpers.randomBytes(32), new byte[][] { parentKey, localKey });
+        Assert.assertEquals(2, none.length);
+        Assert.assertNull(none[0]);
+        Assert.assertNull(none[1]);
+    }
+
+
+    /**
+     * Counts the writes (and batched reads) it receives, so we can see what a commit actually wrote.
+     */
+    private static class CountingKernel extends KernelInterfaceImpl {
+        public int putStorageCount;
+        public int adjustBalanceCount;
+        public int incrementNonceCount;
+        public int getStorageMultiCount;
+        public int lastMultiKeyCount;
+
+        @Override
+        public void putStorage(byte[] address, byte[] key, byte[] value) {
+            this.putStorageCount += 1;
+            super.putStorage(address, key, value);
+        }
+
+        @Override
+        public void adjustBalance(byte[] address, BigInteger delta) {
+            this.adjustBalanceCount += 1;
+            super.adjustBalance(address, delta);
+        }
+
+        @Override
+        public void adjustBalance(byte[] address, Balance delta) {
+            this.adjustBalanceCount += 1;
+            super.adjustBalance(address, delta);
+        }
+
+        @Override
+        public byte[][] getStorageMulti(byte[] address, byte[][] keys) {
+            this.getStorageMultiCount += 1;
+            this.lastMultiKeyCount = keys.length;
+            return super.getStorageMulti(address, keys);
+        }
+
+        @Override
+        public void incrementNonce(byte[] address) {
+            this.incrementNonceCount += 1;
+            super.incrementNonce(address);
+        }
+    }
 }
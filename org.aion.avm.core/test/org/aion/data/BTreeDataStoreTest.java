@@ -0,0 +1,143 @@
+package org.aion.data;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.avm.core.util.Helpers;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class BTreeDataStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSmallAccount() throws Exception {
+        File file = new File(folder.newFolder(), "tree");
+        BTreeDataStore store = new BTreeDataStore(file);
+
+        byte[] address1 = Helpers.randomBytes(32);
+        byte[] code1 = Helpers.randomBytes(10_000);
+        byte[] key1 = Helpers.randomBytes(32);
+        byte[] value1 = Helpers.randomBytes(100);
+        IAccountStore account1 = store.createAccount(address1);
+        Assert.assertNull(store.createAccount(address1));
+        account1.setCode(code1);
+        account1.setBalance(BigInteger.ONE);
+        account1.setNonce(2L);
+        account1.setData(key1, value1);
+
+        account1 = store.openAccount(address1);
+        Assert.assertArrayEquals(code1, account1.getCode());
+        Assert.assertEquals(BigInteger.ONE, account1.getBalance());
+        Assert.assertEquals(2L, account1.getNonce());
+        Assert.assertArrayEquals(value1, account1.getData(key1));
+
+        byte[] key2 = Helpers.randomBytes(32);
+        byte[] value2 = Helpers.randomBytes(50);
+        account1.setData(key2, value2);
+        Map<ByteArrayWrapper, byte[]> testing = account1.getStorageEntries();
+        Assert.assertEquals(2, testing.size());
+        Assert.assertArrayEquals(value1, testing.get(new ByteArrayWrapper(key1)));
+        Assert.assertArrayEquals(value2, testing.get(new ByteArrayWrapper(key2)));
+
+        // Replacing the code puts its old overflow pages on the free list, to be reused for the new code.
+        int pages = store.getPageCount();
+        account1.setCode(Helpers.randomBytes(10_000));
+        Assert.assertEquals(pages, store.getPageCount());
+
+        store.deleteAccount(address1);
+        Assert.assertNull(store.openAccount(address1));
+        store.close();
+
+        // Page size must match the file.
+        try {
+            new BTreeDataStore(file, 2 * BTreeDataStore.DEFAULT_PAGE_SIZE);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Writes enough keys to several accounts that the tree is a few levels deep, checking against a TreeMap, both before and after
+     * re-opening the file.
+     */
+    @Test
+    public void testManyKeysAgainstTreeMap() throws Exception {
+        File file = new File(folder.newFolder(), "tree");
+        BTreeDataStore store = new BTreeDataStore(file, BTreeDataStore.MIN_PAGE_SIZE);
+        Random random = new Random(7L);
+        byte[][] addresses = new byte[4][];
+        List<TreeMap<byte[], byte[]>> expected = new ArrayList<>();
+        for (int i = 0; i < addresses.length; ++i) {
+            addresses[i] = Helpers.randomBytes(32);
+            store.createAccount(addresses[i]);
+            expected.add(new TreeMap<>(Arrays::compareUnsigned));
+        }
+        for (int i = 0; i < 20_000; ++i) {
+            int account = random.nextInt(addresses.length);
+            byte[] key = new byte[1 + random.nextInt(32)];
+            random.nextBytes(key);
+            // Mostly small values, with the occasional one large enough to overflow.
+            byte[] value = new byte[(0 == random.nextInt(100)) ? 3_000 : random.nextInt(64)];
+            random.nextBytes(value);
+            store.openAccount(addresses[account]).setData(key, value);
+            expected.get(account).put(key, value);
+        }
+        // Delete one account and make sure the others aren't disturbed.
+        store.deleteAccount(addresses[0]);
+        expected.get(0).clear();
+        verify(store, addresses, expected);
+        store.close();
+
+        store = new BTreeDataStore(file, BTreeDataStore.MIN_PAGE_SIZE);
+        Assert.assertNull(store.openAccount(addresses[0]));
+        verify(store, addresses, expected);
+
+        // Scan a prefix.
+        BTreeAccountStore account = (BTreeAccountStore) store.openAccount(addresses[1]);
+        byte[] prefix = new byte[] { (byte) 0xf0 };
+        List<byte[]> scanned = new ArrayList<>();
+        account.forEachData(prefix, (key, value) -> {
+            Assert.assertEquals((byte) 0xf0, key[0]);
+            scanned.add(key);
+        });
+        List<byte[]> expectedScan = new ArrayList<>(expected.get(1).subMap(prefix, new byte[] { (byte) 0xf1 }).keySet());
+        Assert.assertEquals(expectedScan.size(), scanned.size());
+        for (int i = 0; i < scanned.size(); ++i) {
+            Assert.assertArrayEquals(expectedScan.get(i), scanned.get(i));
+        }
+        store.close();
+    }
+
+
+    private static void verify(BTreeDataStore store, byte[][] addresses, List<TreeMap<byte[], byte[]>> expected) {
+        for (int i = 1; i < addresses.length; ++i) {
+            BTreeAccountStore account = (BTreeAccountStore) store.openAccount(addresses[i]);
+            for (Map.Entry<byte[], byte[]> entry : expected.get(i).entrySet()) {
+                Assert.assertArrayEquals(entry.getValue(), account.getData(entry.getKey()));
+            }
+            // Iteration is in key order.
+            List<byte[]> keys = new ArrayList<>();
+            account.forEachData(new byte[0], (key, value) -> keys.add(key));
+            Assert.assertEquals(expected.get(i).size(), keys.size());
+            int index = 0;
+            for (byte[] key : expected.get(i).keySet()) {
+                Assert.assertArrayEquals(key, keys.get(index));
+                index += 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.aion.data;
+
+import java.io.File;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.KernelInterface;
+import org.aion.kernel.KernelInterfaceImpl;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Compares the IDataStore implementations on a large state, through KernelInterfaceImpl:  a few DApps, each with many
+ * storage keys (as they would have with many persisted object instances), which are written, rewritten, lazily read back in a random
+ * order and finally re-opened (if they are persistent).
+ * While it can be run as a standard unit test, the constants are meant to be tuned for more hands-on measurement.
+ */
+public class DataStorePerfTest {
+    private static final int DAPPS = 4;
+    private static final int KEYS_PER_DAPP = 2_500;
+    private static final int VALUE_SIZE = 64;
+    private static final int READS = 20_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDirectoryBackedDataStore() throws Exception {
+        measure("DIRECTORY", DirectoryBackedDataStore::new);
+    }
+
+    @Test
+    public void testLogStructuredDataStore() throws Exception {
+        measure("LOG-STRUCTURED", LogStructuredDataStore::new);
+    }
+
+    @Test
+    public void testBTreeDataStore() throws Exception {
+        measure("B+TREE", (directory) -> new BTreeDataStore(new File(directory, "tree")));
+    }
+
+    @Test
+    public void testWriteBackDirectoryDataStore() throws Exception {
+        // Large enough to hold a whole pass, so each is written back in one batch.
+        measure("WRITE-BACK DIRECTORY", (directory) -> new WriteBackDataStore(new DirectoryBackedDataStore(directory), 64L * 1024 * 1024, null));
+    }
+
+    @Test
+    public void testMemoryBackedDataStore() throws Exception {
+        // Nothing to re-open, so this is just the baseline for the in-memory costs.
+        measure("MEMORY", null);
+    }
+
+
+    // (a null factory means the MemoryBackedDataStore, which ignores the directory and can't be re-opened).
+    private void measure(String name, Function<File, IDataStore> factory) throws Exception {
+        File directory = folder.newFolder();
+        byte[][] dapps = new byte[DAPPS][];
+        byte[][] keys = new byte[KEYS_PER_DAPP][];
+        for (int i = 0; i < DAPPS; ++i) {
+            dapps[i] = Helpers.randomBytes(32);
+        }
+        for (int i = 0; i < KEYS_PER_DAPP; ++i) {
+            keys[i] = Helpers.randomBytes(32);
+        }
+        byte[] value = Helpers.randomBytes(VALUE_SIZE);
+
+        IDataStore store = (null != factory) ? factory.apply(directory) : new MemoryBackedDataStore();
+        KernelInterface kernel = new KernelInterfaceImpl(store);
+        long start = System.nanoTime();
+        // Write everything twice, since DApps mostly update their existing instances.
+        for (int pass = 0; pass < 2; ++pass) {
+            for (byte[] dapp : dapps) {
+                for (byte[] key : keys) {
+                    kernel.putStorage(dapp, key, value);
+                }
+            }
+        }
+        // Both passes are one block, so the write-back store only writes the second.
+        if (store instanceof WriteBackDataStore) {
+            ((WriteBackDataStore) store).flush();
+        }
+        long writeNanos = System.nanoTime() - start;
+
+        Random random = new Random(1L);
+        start = System.nanoTime();
+        for (int i = 0; i < READS; ++i) {
+            byte[] read = kernel.getStorage(dapps[random.nextInt(DAPPS)], keys[random.nextInt(KEYS_PER_DAPP)]);
+            Assert.assertEquals(VALUE_SIZE, read.length);
+        }
+        long readNanos = System.nanoTime() - start;
+        close(store);
+
+        long openNanos = 0L;
+        if (null != factory) {
+            start = System.nanoTime();
+            store = factory.apply(directory);
+            kernel = new KernelInterfaceImpl(store);
+            Assert.assertEquals(VALUE_SIZE, kernel.getStorage(dapps[0], keys[0]).length);
+            openNanos = System.nanoTime() - start;
+            close(store);
+        }
+
+        long writes = 2L * DAPPS * KEYS_PER_DAPP;
+        System.out.println(name + " STORE (" + DAPPS + " DApps with " + KEYS_PER_DAPP + " keys): NANOS PER WRITE: " + (writeNanos / writes)
+                + ", NANOS PER READ: " + (readNanos / READS) + ", MILLIS TO REOPEN: " + (openNanos / 1_000_000L)
+                + ", FILES: " + countFiles(directory));
+    }
+
+    private static void close(IDataStore store) {
+        if (store instanceof WriteBackDataStore) {
+            WriteBackDataStore writeBack = (WriteBackDataStore) store;
+            writeBack.flush();
+            System.out.println("WRITE-BACK: " + writeBack.getRequestedWriteCount() + " WRITES REQUESTED, " + writeBack.getFlushedWriteCount() + " WRITTEN BACK");
+        } else if (store instanceof LogStructuredDataStore) {
+            ((LogStructuredDataStore) store).close();
+        } else if (store instanceof BTreeDataStore) {
+            ((BTreeDataStore) store).close();
+        }
+    }
+
+    private static int countFiles(File directory) {
+        int count = 0;
+        for (File file : directory.listFiles()) {
+            count += file.isDirectory() ? countFiles(file) : 1;
+        }
+        return count;
+    }
+}
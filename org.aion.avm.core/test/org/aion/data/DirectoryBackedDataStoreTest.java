@@ -68,4 +68,91 @@ public class DirectoryBackedDataStoreTest {
         store.deleteAccount(address1);
         Assert.assertEquals(0, storage.listFiles().length);
     }
+
+    @Test
+    public void testFiltersAnswerMisses() throws Exception {
+        File storage = folder.newFolder();
+        DirectoryBackedDataStore store = new DirectoryBackedDataStore(storage);
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+        store.createAccount(address).setData(key, new byte[] { 1 });
+
+        // None of these exist so (with a 1% false positive rate) nearly all are answered without the filesystem.
+        for (int i = 0; i < 1000; ++i) {
+            Assert.assertNull(store.openAccount(Helpers.randomBytes(32)));
+            Assert.assertNull(store.openAccount(address).getData(Helpers.randomBytes(32)));
+        }
+        Assert.assertTrue(store.getAvoidedLookupCount() > 1900);
+        Assert.assertTrue(store.getKeyFilter().getExpectedFalsePositiveRate() < DirectoryBackedDataStore.DEFAULT_FALSE_POSITIVE_RATE);
+
+        // The filters are rebuilt from the directory when it is re-opened.
+        store = new DirectoryBackedDataStore(storage);
+        Assert.assertEquals(1L, store.getAccountFilter().getAddedCount());
+        Assert.assertEquals(1L, store.getKeyFilter().getAddedCount());
+        Assert.assertArrayEquals(new byte[] { 1 }, store.openAccount(address).getData(key));
+        Assert.assertEquals(0L, store.getAvoidedLookupCount());
+    }
+
+    @Test
+    public void testPrefetchAndMultiRead() throws Exception {
+        File storage = folder.newFolder();
+        DirectoryBackedDataStore store = new DirectoryBackedDataStore(storage);
+        byte[] address = Helpers.randomBytes(32);
+        IAccountStore account = store.createAccount(address);
+        byte[][] keys = new byte[10][];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = Helpers.randomBytes(32);
+            account.setData(keys[i], new byte[] { (byte) i });
+        }
+
+        // The prefetched values are what a plain read would have returned.
+        account.prefetch(keys);
+        for (int i = 0; i < keys.length; ++i) {
+            Assert.assertArrayEquals(new byte[] { (byte) i }, account.getData(keys[i]));
+        }
+        Assert.assertEquals(10L, store.getPrefetchHitCount());
+
+        // A write after the prefetch must be seen instead of the prefetched value.
+        account.prefetch(new byte[][] { keys[0] });
+        account.setData(keys[0], new byte[] { 42 });
+        Assert.assertArrayEquals(new byte[] { 42 }, account.getData(keys[0]));
+
+        // Batched reads keep the order of the keys, including the missing ones.
+        byte[] missing = Helpers.randomBytes(32);
+        byte[][] values = store.openAccount(address).getDataMulti(new byte[][] { keys[3], missing, keys[0] });
+        Assert.assertArrayEquals(new byte[] { 3 }, values[0]);
+        Assert.assertNull(values[1]);
+        Assert.assertArrayEquals(new byte[] { 42 }, values[2]);
+
+        // Deleting the account drops anything still prefetched.
+        account.prefetch(keys);
+        store.deleteAccount(address);
+        Assert.assertNull(store.openAccount(address));
+        Assert.assertNull(store.createAccount(address).getData(keys[5]));
+    }
+
+    @Test
+    public void testUnreadPrefetchesAgeOut() throws Exception {
+        // (unfiltered, so that the missing keys are also prefetched).
+        DirectoryBackedDataStore store = new DirectoryBackedDataStore(folder.newFolder(), null, null);
+        byte[] address = Helpers.randomBytes(32);
+        IAccountStore account = store.createAccount(address);
+        byte[] key = Helpers.randomBytes(32);
+        account.setData(key, new byte[] { 1 });
+
+        // Prefetch the key but then prefetch enough other keys, which are never read, that it is dropped.
+        account.prefetch(new byte[][] { key });
+        byte[][] unread = new byte[4096][];
+        for (int i = 0; i < unread.length; ++i) {
+            unread[i] = Helpers.randomBytes(32);
+        }
+        account.prefetch(unread);
+        Assert.assertArrayEquals(new byte[] { 1 }, account.getData(key));
+        Assert.assertEquals(0L, store.getPrefetchHitCount());
+
+        // The unread prefetches didn't stop prefetching.
+        account.prefetch(new byte[][] { key });
+        Assert.assertArrayEquals(new byte[] { 1 }, account.getData(key));
+        Assert.assertEquals(1L, store.getPrefetchHitCount());
+    }
 }
@@ -0,0 +1,177 @@
+package org.aion.data;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.avm.core.util.Helpers;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class LogStructuredDataStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSmallAccount() throws Exception {
+        File storage = folder.newFolder();
+        LogStructuredDataStore store = new LogStructuredDataStore(storage);
+
+        byte[] address1 = Helpers.randomBytes(32);
+        byte[] code1 = Helpers.randomBytes(100);
+        byte[] key1 = Helpers.randomBytes(32);
+        byte[] value1 = Helpers.randomBytes(100);
+        IAccountStore account1 = store.createAccount(address1);
+        Assert.assertNull(store.createAccount(address1));
+        account1.setCode(code1);
+        account1.setBalance(BigInteger.ONE);
+        account1.setNonce(2L);
+        account1.setData(key1, value1);
+
+        account1 = store.openAccount(address1);
+        Assert.assertArrayEquals(code1, account1.getCode());
+        Assert.assertEquals(BigInteger.ONE, account1.getBalance());
+        Assert.assertEquals(2L, account1.getNonce());
+        Assert.assertArrayEquals(value1, account1.getData(key1));
+
+        // Overwrite a key to see that we can observe the update.
+        byte[] value1_2 = Helpers.randomBytes(100);
+        account1.setData(key1, value1_2);
+        Assert.assertArrayEquals(value1_2, account1.getData(key1));
+
+        byte[] key2 = Helpers.randomBytes(32);
+        byte[] value2 = Helpers.randomBytes(50);
+        account1.setData(key2, value2);
+        Map<ByteArrayWrapper, byte[]> testing = account1.getStorageEntries();
+        Assert.assertEquals(2, testing.size());
+        Assert.assertArrayEquals(value1_2, testing.get(new ByteArrayWrapper(key1)));
+        Assert.assertArrayEquals(value2, testing.get(new ByteArrayWrapper(key2)));
+
+        // Everything is in the one segment.
+        Assert.assertEquals(1, storage.listFiles().length);
+
+        store.deleteAccount(address1);
+        Assert.assertNull(store.openAccount(address1));
+        Assert.assertEquals(0L, store.getLiveBytes());
+        store.close();
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        File storage = folder.newFolder();
+        byte[] address1 = Helpers.randomBytes(32);
+        byte[] address2 = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+        LogStructuredDataStore store = new LogStructuredDataStore(storage);
+        IAccountStore account1 = store.createAccount(address1);
+        account1.setBalance(BigInteger.TEN);
+        account1.setNonce(5L);
+        account1.setData(key, new byte[] { 1 });
+        account1.setData(key, new byte[] { 2 });
+        store.createAccount(address2).setData(key, new byte[] { 3 });
+        store.deleteAccount(address2);
+        store.sync();
+        long liveBytes = store.getLiveBytes();
+        store.close();
+
+        store = new LogStructuredDataStore(storage);
+        account1 = store.openAccount(address1);
+        Assert.assertEquals(BigInteger.TEN, account1.getBalance());
+        Assert.assertEquals(5L, account1.getNonce());
+        Assert.assertArrayEquals(new byte[] { 2 }, account1.getData(key));
+        Assert.assertNull(account1.getCode());
+        Assert.assertNull(store.openAccount(address2));
+        Assert.assertEquals(liveBytes, store.getLiveBytes());
+        store.close();
+    }
+
+    @Test
+    public void testTornWriteIsTruncated() throws Exception {
+        File storage = folder.newFolder();
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+        LogStructuredDataStore store = new LogStructuredDataStore(storage);
+        store.createAccount(address).setData(key, new byte[] { 1 });
+        store.openAccount(address).setData(key, new byte[] { 2 });
+        store.close();
+
+        // Chop the last byte off, as though we crashed in the middle of the last write.
+        File segment = storage.listFiles()[0];
+        long length = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(length - 1);
+        }
+
+        store = new LogStructuredDataStore(storage);
+        Assert.assertArrayEquals(new byte[] { 1 }, store.openAccount(address).getData(key));
+        // We can keep writing after the truncated record.
+        store.openAccount(address).setData(key, new byte[] { 3 });
+        store.close();
+        store = new LogStructuredDataStore(storage);
+        Assert.assertArrayEquals(new byte[] { 3 }, store.openAccount(address).getData(key));
+        store.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        File storage = folder.newFolder();
+        // Small segments so that we roll over many of them.
+        LogStructuredDataStore store = new LogStructuredDataStore(storage, 4 * 1024);
+        byte[] kept = Helpers.randomBytes(32);
+        byte[] deleted = Helpers.randomBytes(32);
+        store.createAccount(kept);
+        store.createAccount(deleted).setData(new byte[] { 1 }, Helpers.randomBytes(100));
+        byte[][] keys = new byte[10][];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = Helpers.randomBytes(32);
+        }
+        for (int round = 0; round < 100; ++round) {
+            for (int i = 0; i < keys.length; ++i) {
+                store.openAccount(kept).setData(keys[i], new byte[] { (byte) round, (byte) i });
+            }
+        }
+        store.openAccount(kept).setBalance(BigInteger.TWO);
+        store.deleteAccount(deleted);
+        store.compact();
+        Assert.assertTrue(store.getSegmentCount() <= 2);
+        Assert.assertEquals(store.getSegmentCount(), storage.listFiles().length);
+        Assert.assertTrue(store.getTotalBytes() < (2 * 4 * 1024));
+        store.close();
+
+        // The delete was compacted away along with what it deleted, so the account mustn't come back.
+        store = new LogStructuredDataStore(storage, 4 * 1024);
+        Assert.assertNull(store.openAccount(deleted));
+        IAccountStore account = store.openAccount(kept);
+        Assert.assertEquals(BigInteger.TWO, account.getBalance());
+        for (int i = 0; i < keys.length; ++i) {
+            Assert.assertTrue(Arrays.equals(new byte[] { 99, (byte) i }, account.getData(keys[i])));
+        }
+        store.close();
+    }
+
+    @Test
+    public void testBackgroundCompaction() throws Exception {
+        File storage = folder.newFolder();
+        LogStructuredDataStore store = new LogStructuredDataStore(storage, 4 * 1024);
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+        store.createAccount(address);
+        for (int i = 0; i < 10_000; ++i) {
+            store.openAccount(address).setData(key, Helpers.randomBytes(32));
+        }
+        // Without compaction, this would be hundreds of segments.
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while ((store.getSegmentCount() > 3) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10L);
+        }
+        Assert.assertTrue(store.getSegmentCount() <= 3);
+        store.close();
+    }
+}
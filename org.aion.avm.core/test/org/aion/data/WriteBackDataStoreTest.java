@@ -0,0 +1,104 @@
+package org.aion.data;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.KernelInterface;
+import org.aion.kernel.KernelInterfaceImpl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class WriteBackDataStoreTest {
+    @Test
+    public void testWritesAreBufferedUntilFlush() {
+        MemoryBackedDataStore backing = new MemoryBackedDataStore();
+        int[] syncs = new int[1];
+        WriteBackDataStore store = new WriteBackDataStore(backing, 1024 * 1024, () -> syncs[0] += 1);
+
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+        IAccountStore account = store.createAccount(address);
+        Assert.assertNull(store.createAccount(address));
+        account.setCode(new byte[] { 1, 2, 3 });
+        account.setBalance(BigInteger.TEN);
+        account.setNonce(1L);
+        for (int i = 0; i < 100; ++i) {
+            account.setData(key, new byte[] { (byte) i });
+        }
+
+        // Reads see the buffer but the backing store hasn't seen anything.
+        Assert.assertNull(backing.openAccount(address));
+        Assert.assertArrayEquals(new byte[] { 99 }, store.openAccount(address).getData(key));
+        Assert.assertEquals(BigInteger.TEN, store.openAccount(address).getBalance());
+        Assert.assertEquals(1L, store.openAccount(address).getNonce());
+
+        store.flush();
+        Assert.assertEquals(1, syncs[0]);
+        Assert.assertEquals(0L, store.getBufferedBytes());
+        IAccountStore written = backing.openAccount(address);
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, written.getCode());
+        Assert.assertEquals(BigInteger.TEN, written.getBalance());
+        Assert.assertEquals(1L, written.getNonce());
+        Assert.assertArrayEquals(new byte[] { 99 }, written.getData(key));
+
+        // The 100 writes to the one key became 1:  create, code, balance, nonce and the data.
+        Assert.assertEquals(104L, store.getRequestedWriteCount());
+        Assert.assertEquals(5L, store.getFlushedWriteCount());
+
+        // Once flushed, reads fall through to the backing store (and the old view still works).
+        Assert.assertArrayEquals(new byte[] { 99 }, account.getData(key));
+    }
+
+    @Test
+    public void testDeleteAndRecreate() {
+        MemoryBackedDataStore backing = new MemoryBackedDataStore();
+        WriteBackDataStore store = new WriteBackDataStore(backing, 1024 * 1024, null);
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key1 = Helpers.randomBytes(32);
+        byte[] key2 = Helpers.randomBytes(32);
+        store.createAccount(address).setData(key1, new byte[] { 1 });
+        store.flush();
+
+        store.deleteAccount(address);
+        Assert.assertNull(store.openAccount(address));
+        IAccountStore account = store.createAccount(address);
+        // The old data must not show through the deletion.
+        Assert.assertNull(account.getData(key1));
+        account.setData(key2, new byte[] { 2 });
+        Map<ByteArrayWrapper, byte[]> entries = account.getStorageEntries();
+        Assert.assertEquals(1, entries.size());
+        Assert.assertArrayEquals(new byte[] { 2 }, entries.get(new ByteArrayWrapper(key2)));
+        Assert.assertNotNull(backing.openAccount(address).getData(key1));
+
+        store.flush();
+        Assert.assertNull(backing.openAccount(address).getData(key1));
+        Assert.assertArrayEquals(new byte[] { 2 }, backing.openAccount(address).getData(key2));
+
+        // Deleting an account which only exists in the buffer leaves nothing behind.
+        byte[] other = Helpers.randomBytes(32);
+        store.createAccount(other).setNonce(5L);
+        store.deleteAccount(other);
+        store.flush();
+        Assert.assertNull(backing.openAccount(other));
+    }
+
+    @Test
+    public void testFlushWhenBufferIsFull() {
+        MemoryBackedDataStore backing = new MemoryBackedDataStore();
+        WriteBackDataStore store = new WriteBackDataStore(backing, 16 * 1024, null);
+        KernelInterface kernel = new KernelInterfaceImpl(store);
+        byte[] address = Helpers.randomBytes(32);
+        for (int i = 0; i < 1_000; ++i) {
+            kernel.putStorage(address, Helpers.randomBytes(32), Helpers.randomBytes(32));
+            Assert.assertTrue(store.getBufferedBytes() <= 16 * 1024);
+        }
+        Assert.assertTrue(store.getFlushCount() > 0L);
+        // Nothing was lost in the flushes.
+        store.flush();
+        Assert.assertEquals(1_000, backing.openAccount(address).getStorageEntries().size());
+    }
+}
@@ -1,6 +1,10 @@
 package org.aion.parallel;
 
 import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.KernelInterfaceImpl;
+import org.aion.kernel.TransactionResult;
+import org.aion.kernel.TransactionalKernel;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class AddressResourceMonitorTest {
@@ -208,4 +212,41 @@ public class AddressResourceMonitorTest {
         t2.join();
     }
 
+    @Test
+    public void testCommitOrder() throws InterruptedException {
+        AddressResourceMonitor monitor = new AddressResourceMonitor();
+        TransactionTask task0 = submittableTask(0);
+        TransactionTask task1 = submittableTask(1);
+        TransactionTask task2 = submittableTask(2);
+
+        // Submitted out of order, these can only come back in index order.
+        monitor.acquire(addr1, task2);
+        monitor.submitForCommit(task2);
+        monitor.submitForCommit(task1);
+
+        // Once task0 requests the address still held by the pending task2, task2 is aborted so it comes back out first (releasing it).
+        Thread requester = new Thread(() -> monitor.acquire(addr1, task0));
+        requester.start();
+        Assert.assertSame(task2, monitor.blockingPollForCommit());
+        Assert.assertTrue(task2.inAbortState());
+        Assert.assertFalse(monitor.commitTask(task2));
+        requester.join();
+        Assert.assertFalse(task0.inAbortState());
+
+        monitor.submitForCommit(task0);
+        Assert.assertSame(task0, monitor.blockingPollForCommit());
+        Assert.assertTrue(monitor.commitTask(task0));
+        Assert.assertSame(task1, monitor.blockingPollForCommit());
+        Assert.assertTrue(monitor.commitTask(task1));
+
+        monitor.requestCommitShutdown();
+        Assert.assertNull(monitor.blockingPollForCommit());
+    }
+
+    private static TransactionTask submittableTask(int index) {
+        TransactionTask task = new TransactionTask(index, null);
+        task.setTaskKernel(new TransactionalKernel(new KernelInterfaceImpl()));
+        task.setAttemptResult(new TransactionResult(), 0L);
+        return task;
+    }
 }
@@ -0,0 +1,94 @@
+package org.aion.parallel;
+
+import java.math.BigInteger;
+import org.aion.avm.api.Address;
+import org.aion.avm.core.AvmConfiguration;
+import org.aion.avm.core.AvmImpl;
+import org.aion.avm.core.CommonAvmFactory;
+import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * A basic benchmark comparing optimistic execution against the default address locking (with conflict scheduling), under low
+ * contention (every sender talks to its own receiver) and high contention (a few senders each send a run of transactions).
+ * While it can be run as a standard unit test, the constants are meant to be tuned for more hands-on measurement.
+ */
+public class AvmOptimisticComparisonTest {
+    private static final int TRANSACTIONS_PER_BLOCK = 64;
+    private static final int HIGH_CONTENTION_SENDERS = 4;
+    private static final int BLOCKS_PER_RUN = 20;
+    private static final int THREAD_COUNT = 4;
+
+    private final byte[] preminedAddress = KernelInterfaceImpl.PREMINED_ADDRESS;
+
+    @Test
+    public void testLowContention() {
+        runComparison("LOW CONTENTION", TRANSACTIONS_PER_BLOCK);
+    }
+
+    @Test
+    public void testHighContention() {
+        runComparison("HIGH CONTENTION", HIGH_CONTENTION_SENDERS);
+    }
+
+
+    private void runComparison(String name, int senderCount) {
+        for (boolean isOptimistic : new boolean[] {false, true}) {
+            KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+            AvmConfiguration config = new AvmConfiguration();
+            config.threadCount = THREAD_COUNT;
+            config.enableOptimisticExecution = isOptimistic;
+            AvmImpl avm = (AvmImpl) CommonAvmFactory.buildAvmInstance(kernel, config);
+
+            byte[][] senders = new byte[senderCount][];
+            Transaction[] funding = new Transaction[senderCount];
+            for (int i = 0; i < senderCount; ++i) {
+                senders[i] = Helpers.randomBytes(Address.LENGTH);
+                funding[i] = Transaction.call(preminedAddress, senders[i], i, BigInteger.valueOf(1_000_000_000L), new byte[0], 100_000L, 1L);
+            }
+            runBlock(avm, funding, 1);
+
+            byte[][] receivers = new byte[TRANSACTIONS_PER_BLOCK][];
+            for (int i = 0; i < TRANSACTIONS_PER_BLOCK; ++i) {
+                receivers[i] = Helpers.randomBytes(Address.LENGTH);
+            }
+            long[] nonces = new long[senderCount];
+            int conflicts = 0;
+            long start = System.nanoTime();
+            for (int b = 0; b < BLOCKS_PER_RUN; ++b) {
+                Transaction[] block = new Transaction[TRANSACTIONS_PER_BLOCK];
+                for (int i = 0; i < TRANSACTIONS_PER_BLOCK; ++i) {
+                    // Consecutive transactions share a sender so, under high contention, concurrently running ones usually conflict.
+                    int sender = i * senderCount / TRANSACTIONS_PER_BLOCK;
+                    block[i] = Transaction.call(senders[sender], receivers[i], nonces[sender], BigInteger.ONE, new byte[0], 100_000L, 1L);
+                    nonces[sender] += 1;
+                }
+                runBlock(avm, block, b + 2);
+                conflicts += avm.getResourceMonitor().getConflictCount();
+            }
+            long end = System.nanoTime();
+            long transactions = (long)TRANSACTIONS_PER_BLOCK * BLOCKS_PER_RUN;
+            System.out.println(name + (isOptimistic ? " OPTIMISTIC" : " LOCKING") + " NANOS PER TRANSACTION: " + ((end - start) / transactions) + " RUNTIME CONFLICTS: " + conflicts);
+
+            for (int i = 0; i < TRANSACTIONS_PER_BLOCK; ++i) {
+                Assert.assertEquals(BLOCKS_PER_RUN, kernel.getBalance(receivers[i]).longValue());
+            }
+            avm.shutdown();
+        }
+    }
+
+    private static void runBlock(AvmImpl avm, Transaction[] transactions, long blockNumber) {
+        Block block = new Block(new byte[32], blockNumber, Helpers.randomBytes(Address.LENGTH), System.currentTimeMillis(), new byte[0]);
+        TransactionContext[] contexts = new TransactionContext[transactions.length];
+        for (int i = 0; i < transactions.length; ++i) {
+            contexts[i] = new TransactionContextImpl(transactions[i], block);
+        }
+        SimpleFuture<TransactionResult>[] results = avm.run(contexts);
+        for (SimpleFuture<TransactionResult> result : results) {
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, result.get().getStatusCode());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.aion.parallel;
+
+import java.math.BigInteger;
+import org.aion.avm.api.Address;
+import org.aion.avm.core.Avm;
+import org.aion.avm.core.AvmConfiguration;
+import org.aion.avm.core.CommonAvmFactory;
+import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * A basic throughput benchmark of the executor pool:  runs the same AvmParallelTest-style workload of independent balance transfers
+ * with 1 to N executor threads (N being the larger of 4 and the number of available processors), resizing the pool between blocks.
+ * While it can be run as a standard unit test, the constants are meant to be tuned for more hands-on measurement.
+ */
+public class AvmParallelScalingTest {
+    private static final int SENDER_COUNT = 64;
+    private static final int BLOCKS_PER_RUN = 20;
+
+    private final byte[] preminedAddress = KernelInterfaceImpl.PREMINED_ADDRESS;
+
+    @Test
+    public void testThroughputByThreadCount() {
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        AvmConfiguration config = new AvmConfiguration();
+        config.threadCount = 1;
+        Avm avm = CommonAvmFactory.buildAvmInstance(kernel, config);
+
+        // Fund all the senders (these all conflict on the premined account so they don't say anything about scaling).
+        byte[][] senders = new byte[SENDER_COUNT][];
+        byte[][] receivers = new byte[SENDER_COUNT][];
+        Transaction[] funding = new Transaction[SENDER_COUNT];
+        for (int i = 0; i < SENDER_COUNT; ++i) {
+            senders[i] = Helpers.randomBytes(Address.LENGTH);
+            receivers[i] = Helpers.randomBytes(Address.LENGTH);
+            funding[i] = Transaction.call(preminedAddress, senders[i], i, BigInteger.valueOf(1_000_000_000L), new byte[0], 100_000L, 1L);
+        }
+        runBlock(avm, funding, 1);
+
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        long blockNumber = 2;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            avm.resizeExecutorPool(threads);
+            long start = System.nanoTime();
+            for (int b = 0; b < BLOCKS_PER_RUN; ++b) {
+                // Each sender only talks to its own receiver so there are no address conflicts within the block.
+                Transaction[] block = new Transaction[SENDER_COUNT];
+                for (int i = 0; i < SENDER_COUNT; ++i) {
+                    block[i] = Transaction.call(senders[i], receivers[i], kernel.getNonce(senders[i]), BigInteger.ONE, new byte[0], 100_000L, 1L);
+                }
+                runBlock(avm, block, blockNumber);
+                blockNumber += 1;
+            }
+            long end = System.nanoTime();
+            long transactions = (long)SENDER_COUNT * BLOCKS_PER_RUN;
+            System.out.println("THREADS: " + threads + " NANOS PER TRANSACTION: " + ((end - start) / transactions));
+        }
+        for (int i = 0; i < SENDER_COUNT; ++i) {
+            Assert.assertEquals(blockNumber - 2, kernel.getBalance(receivers[i]).longValue());
+        }
+        avm.shutdown();
+    }
+
+
+    private static void runBlock(Avm avm, Transaction[] transactions, long blockNumber) {
+        Block block = new Block(new byte[32], blockNumber, Helpers.randomBytes(Address.LENGTH), System.currentTimeMillis(), new byte[0]);
+        TransactionContext[] contexts = new TransactionContext[transactions.length];
+        for (int i = 0; i < transactions.length; ++i) {
+            contexts[i] = new TransactionContextImpl(transactions[i], block);
+        }
+        SimpleFuture<TransactionResult>[] results = avm.run(contexts);
+        for (SimpleFuture<TransactionResult> result : results) {
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, result.get().getStatusCode());
+        }
+    }
+}
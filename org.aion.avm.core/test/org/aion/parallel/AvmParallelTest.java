@@ -4,6 +4,9 @@ import java.math.BigInteger;
 import org.aion.avm.api.ABIEncoder;
 import org.aion.avm.api.Address;
 import org.aion.avm.core.Avm;
+import org.aion.avm.core.AvmConfiguration;
+import org.aion.avm.core.AvmImpl;
+import org.aion.avm.core.BatchPriority;
 import org.aion.avm.core.CommonAvmFactory;
 import org.aion.avm.core.dappreading.JarBuilder;
 import org.aion.avm.core.util.CodeAndArguments;
@@ -170,4 +173,278 @@ public class AvmParallelTest {
         avm.shutdown();
     }
 
+    @Test
+    public void resizeBetweenBlocksTest(){
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        AvmConfiguration config = new AvmConfiguration();
+        config.threadCount = 1;
+        Avm avm = CommonAvmFactory.buildAvmInstance(kernel, config);
+
+        byte[] usr1 = Helpers.hexStringToBytes("1111111111111111111111111111111111111111111111111111111111111111");
+        byte[] usr2 = Helpers.hexStringToBytes("2222222222222222222222222222222222222222222222222222222222222222");
+
+        Transaction t0 = Transaction.call(preminedAddress, usr1, 0, BigInteger.valueOf(500_000), new byte[0], 100000L, 1);
+        Transaction t1 = Transaction.call(preminedAddress, usr2, 1, BigInteger.valueOf(500_000), new byte[0], 100000L, 1);
+        SimpleFuture<TransactionResult>[] results = avm.run(generateCTXBatch(new Transaction[]{t0, t1}));
+
+        // We can't resize while the block still has unconsumed results.
+        boolean didFail = false;
+        try {
+            avm.resizeExecutorPool(4);
+        } catch (IllegalStateException e) {
+            didFail = true;
+        }
+        Assert.assertTrue(didFail);
+        for (SimpleFuture<TransactionResult> f : results){
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, f.get().getStatusCode());
+        }
+
+        // Grow and then shrink the pool, running a block after each change.
+        avm.resizeExecutorPool(4);
+        t0 = Transaction.call(usr1, usr2, 0, BigInteger.valueOf(100_000), new byte[0], 100000L, 1);
+        t1 = Transaction.call(usr2, usr1, 0, BigInteger.valueOf(100_000), new byte[0], 100000L, 1);
+        results = avm.run(generateCTXBatch(new Transaction[]{t0, t1}));
+        for (SimpleFuture<TransactionResult> f : results){
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, f.get().getStatusCode());
+        }
+
+        avm.resizeExecutorPool(2);
+        t0 = Transaction.call(usr1, usr2, 1, BigInteger.valueOf(100_000), new byte[0], 100000L, 1);
+        results = avm.run(generateCTXBatch(new Transaction[]{t0}));
+        Assert.assertEquals(TransactionResult.Code.SUCCESS, results[0].get().getStatusCode());
+
+        Assert.assertEquals(2, kernel.getNonce(usr1));
+        Assert.assertEquals(1, kernel.getNonce(usr2));
+
+        avm.shutdown();
+    }
+
+    @Test
+    public void pipelinedBlocksTest(){
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        AvmConfiguration config = new AvmConfiguration();
+        config.threadCount = 4;
+        config.enablePipelinedBlocks = true;
+        Avm avm = CommonAvmFactory.buildAvmInstance(kernel, config);
+
+        byte[] usr1 = Helpers.hexStringToBytes("1111111111111111111111111111111111111111111111111111111111111111");
+        byte[] usr2 = Helpers.hexStringToBytes("2222222222222222222222222222222222222222222222222222222222222222");
+
+        // The second block depends on the first (usr1 needs its funding) so this only works if the blocks commit in order.
+        Transaction[] block1 = new Transaction[]{
+                Transaction.call(preminedAddress, usr1, 0, BigInteger.valueOf(1_000_000), new byte[0], 100000L, 1),
+                Transaction.call(preminedAddress, usr2, 1, BigInteger.valueOf(1_000_000), new byte[0], 100000L, 1),
+        };
+        Transaction[] block2 = new Transaction[]{
+                Transaction.call(usr1, usr2, 0, BigInteger.valueOf(100_000), new byte[0], 100000L, 1),
+                Transaction.call(usr2, usr1, 0, BigInteger.valueOf(200_000), new byte[0], 100000L, 1),
+        };
+        SimpleFuture<TransactionResult>[] results1 = avm.run(generateCTXBatch(block1));
+        SimpleFuture<TransactionResult>[] results2 = avm.run(generateCTXBatch(block2));
+        for (SimpleFuture<TransactionResult> f : results2){
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, f.get().getStatusCode());
+        }
+        for (SimpleFuture<TransactionResult> f : results1){
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, f.get().getStatusCode());
+        }
+
+        long basicCost = block2[0].getBasicCost();
+        Assert.assertEquals(BigInteger.valueOf(1_000_000 - 100_000 + 200_000 - basicCost), kernel.getBalance(usr1));
+        Assert.assertEquals(BigInteger.valueOf(1_000_000 + 100_000 - 200_000 - basicCost), kernel.getBalance(usr2));
+
+        avm.shutdown();
+    }
+
+    @Test
+    public void conflictSchedulingMetricsTest(){
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        AvmConfiguration config = new AvmConfiguration();
+        config.threadCount = 4;
+        AvmImpl avm = (AvmImpl) CommonAvmFactory.buildAvmInstance(kernel, config);
+
+        byte[] usr1 = Helpers.hexStringToBytes("1111111111111111111111111111111111111111111111111111111111111111");
+        byte[] usr2 = Helpers.hexStringToBytes("2222222222222222222222222222222222222222222222222222222222222222");
+
+        // All of these share the premined sender so they form a single lane where every transaction after the first is predicted to
+        // conflict.  Since they are scheduled accordingly, none of those conflicts should be hit at runtime.
+        Transaction[] batch = new Transaction[6];
+        for (int i = 0; i < batch.length; i++){
+            byte[] target = (0 == (i % 2)) ? usr1 : usr2;
+            batch[i] = Transaction.call(preminedAddress, target, i, BigInteger.valueOf(100_000), new byte[0], 100000L, 1);
+        }
+        SimpleFuture<TransactionResult>[] results = avm.run(generateCTXBatch(batch));
+        for (SimpleFuture<TransactionResult> f : results){
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, f.get().getStatusCode());
+        }
+
+        Assert.assertEquals(1, avm.getLastBatchSchedule().getLaneCount());
+        Assert.assertEquals(5, avm.getLastBatchSchedule().getPredictedConflictCount());
+        Assert.assertEquals(0, avm.getResourceMonitor().getConflictCount());
+        Assert.assertEquals(BigInteger.valueOf(300_000), kernel.getBalance(usr1));
+        Assert.assertEquals(BigInteger.valueOf(300_000), kernel.getBalance(usr2));
+
+        avm.shutdown();
+    }
+
+    @Test
+    public void unscheduledContentionTest(){
+        // Without conflict scheduling, all of these conflicts have to be resolved at runtime by the AddressResourceMonitor.
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        AvmConfiguration config = new AvmConfiguration();
+        config.threadCount = 4;
+        config.enableConflictScheduling = false;
+        AvmImpl avm = (AvmImpl) CommonAvmFactory.buildAvmInstance(kernel, config);
+
+        byte[] usr1 = Helpers.hexStringToBytes("1111111111111111111111111111111111111111111111111111111111111111");
+        byte[] usr2 = Helpers.hexStringToBytes("2222222222222222222222222222222222222222222222222222222222222222");
+
+        int iteration = 10;
+        Transaction[] batch = new Transaction[iteration * 2];
+        for (int i = 0; i < iteration; i++){
+            batch[i * 2]     = Transaction.call(preminedAddress, usr1, i * 2, BigInteger.valueOf(100_000), new byte[0], 100000L, 1);
+            batch[i * 2 + 1] = Transaction.call(preminedAddress, usr2, i * 2 + 1, BigInteger.valueOf(100_000), new byte[0], 100000L, 1);
+        }
+        SimpleFuture<TransactionResult>[] results = avm.run(generateCTXBatch(batch));
+        for (SimpleFuture<TransactionResult> f : results){
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, f.get().getStatusCode());
+        }
+
+        Assert.assertNull(avm.getLastBatchSchedule());
+        Assert.assertEquals(BigInteger.valueOf(100_000 * iteration), kernel.getBalance(usr1));
+        Assert.assertEquals(BigInteger.valueOf(100_000 * iteration), kernel.getBalance(usr2));
+        Assert.assertEquals(iteration * 2, kernel.getNonce(preminedAddress));
+
+        avm.shutdown();
+    }
+
+    @Test
+    public void optimisticExecutionTest(){
+        // Every transaction here shares the premined sender so, run optimistically, most of them will read a stale nonce or balance
+        // and need to be re-run at commit time.  The final state must still be the same as a serial run.
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        AvmConfiguration config = new AvmConfiguration();
+        config.threadCount = 4;
+        config.enableOptimisticExecution = true;
+        AvmImpl avm = (AvmImpl) CommonAvmFactory.buildAvmInstance(kernel, config);
+
+        byte[] usr1 = Helpers.hexStringToBytes("1111111111111111111111111111111111111111111111111111111111111111");
+        byte[] usr2 = Helpers.hexStringToBytes("2222222222222222222222222222222222222222222222222222222222222222");
+
+        int iteration = 10;
+        Transaction[] batch = new Transaction[iteration * 2];
+        for (int i = 0; i < iteration; i++){
+            batch[i * 2]     = Transaction.call(preminedAddress, usr1, i * 2, BigInteger.valueOf(100_000), new byte[0], 100000L, 1);
+            batch[i * 2 + 1] = Transaction.call(preminedAddress, usr2, i * 2 + 1, BigInteger.valueOf(100_000), new byte[0], 100000L, 1);
+        }
+        SimpleFuture<TransactionResult>[] results = avm.run(generateCTXBatch(batch));
+        for (SimpleFuture<TransactionResult> f : results){
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, f.get().getStatusCode());
+        }
+
+        // Optimistic mode doesn't use the conflict scheduler.
+        Assert.assertNull(avm.getLastBatchSchedule());
+        Assert.assertEquals(BigInteger.valueOf(100_000 * iteration), kernel.getBalance(usr1));
+        Assert.assertEquals(BigInteger.valueOf(100_000 * iteration), kernel.getBalance(usr2));
+        Assert.assertEquals(iteration * 2, kernel.getNonce(preminedAddress));
+
+        // Now, the two users send to each other, which only conflicts on the receiving side.
+        Transaction t0 = Transaction.call(usr1, usr2, 0, BigInteger.valueOf(50_000), new byte[0], 100000L, 1);
+        Transaction t1 = Transaction.call(usr2, usr1, 0, BigInteger.valueOf(20_000), new byte[0], 100000L, 1);
+        results = avm.run(generateCTXBatch(new Transaction[]{t0, t1}));
+        for (SimpleFuture<TransactionResult> f : results){
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, f.get().getStatusCode());
+        }
+        long basicCost = t0.getBasicCost();
+        Assert.assertEquals(BigInteger.valueOf(100_000 * iteration - 50_000 + 20_000 - basicCost), kernel.getBalance(usr1));
+        Assert.assertEquals(BigInteger.valueOf(100_000 * iteration + 50_000 - 20_000 - basicCost), kernel.getBalance(usr2));
+
+        avm.shutdown();
+    }
+
+    @Test
+    public void abortStatisticsTest(){
+        // Without conflict scheduling, these all contend for the premined sender so some are usually aborted and retried.  Whether
+        // or not that happens, the statistics reported must be consistent and the final state must not change.
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        AvmConfiguration config = new AvmConfiguration();
+        config.threadCount = 4;
+        config.enableConflictScheduling = false;
+        Avm avm = CommonAvmFactory.buildAvmInstance(kernel, config);
+
+        int count = 32;
+        byte[][] targets = new byte[count][];
+        Transaction[] batch = new Transaction[count];
+        for (int i = 0; i < count; i++){
+            targets[i] = Helpers.randomBytes(Address.LENGTH);
+            batch[i] = Transaction.call(preminedAddress, targets[i], i, BigInteger.valueOf(100_000), new byte[0], 100000L, 1);
+        }
+        SimpleFuture<TransactionResult>[] results = avm.run(generateCTXBatch(batch));
+        for (SimpleFuture<TransactionResult> f : results){
+            TransactionResult result = f.get();
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, result.getStatusCode());
+            Assert.assertTrue(result.getAbortCount() >= 0);
+            Assert.assertTrue(result.getWastedEnergy() >= 0L);
+            Assert.assertEquals(0 == result.getAbortCount(), 0L == result.getWastedNanos());
+        }
+
+        for (int i = 0; i < count; i++){
+            Assert.assertEquals(BigInteger.valueOf(100_000), kernel.getBalance(targets[i]));
+        }
+        Assert.assertEquals(count, kernel.getNonce(preminedAddress));
+
+        avm.shutdown();
+    }
+
+    @Test
+    public void concurrentCallersTest() throws Exception {
+        // One thread imports blocks into the AVM's own kernel while another runs RPC batches against a separate one:  each kernel
+        // must only see its own transactions.
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        KernelInterfaceImpl rpcKernel = new KernelInterfaceImpl();
+        AvmConfiguration config = new AvmConfiguration();
+        config.threadCount = 4;
+        Avm avm = CommonAvmFactory.buildAvmInstance(kernel, config);
+
+        byte[] usr1 = Helpers.randomBytes(Address.LENGTH);
+        byte[] usr2 = Helpers.randomBytes(Address.LENGTH);
+        int rounds = 20;
+        int batchSize = 4;
+        Thread importer = new Thread(() -> {
+            for (int i = 0; i < rounds; ++i) {
+                sendTransfers(avm, kernel, null, usr1, batchSize);
+            }
+        });
+        Thread rpc = new Thread(() -> {
+            for (int i = 0; i < rounds; ++i) {
+                sendTransfers(avm, rpcKernel, BatchPriority.LOW, usr2, batchSize);
+            }
+        });
+        importer.start();
+        rpc.start();
+        importer.join();
+        rpc.join();
+
+        BigInteger expected = BigInteger.valueOf(rounds * batchSize * 1_000L);
+        Assert.assertEquals(expected, kernel.getBalance(usr1));
+        Assert.assertEquals(BigInteger.ZERO, kernel.getBalance(usr2));
+        Assert.assertEquals(expected, rpcKernel.getBalance(usr2));
+        Assert.assertEquals(BigInteger.ZERO, rpcKernel.getBalance(usr1));
+
+        avm.shutdown();
+    }
+
+    private void sendTransfers(Avm avm, KernelInterface kernel, BatchPriority priority, byte[] target, int count) {
+        long nonce = kernel.getNonce(preminedAddress);
+        Transaction[] batch = new Transaction[count];
+        for (int i = 0; i < count; i++){
+            batch[i] = Transaction.call(preminedAddress, target, nonce + i, BigInteger.valueOf(1_000), new byte[0], 100000L, 1);
+        }
+        // (a null priority means the plain run(), against the AVM's own kernel).
+        SimpleFuture<TransactionResult>[] results = (null == priority)
+                ? avm.run(generateCTXBatch(batch))
+                : avm.run(generateCTXBatch(batch), kernel, priority);
+        for (SimpleFuture<TransactionResult> f : results){
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, f.get().getStatusCode());
+        }
+    }
 }
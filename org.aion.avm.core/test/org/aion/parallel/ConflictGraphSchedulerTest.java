@@ -0,0 +1,64 @@
+package org.aion.parallel;
+
+import java.math.BigInteger;
+import org.aion.avm.api.Address;
+import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.Block;
+import org.aion.kernel.Transaction;
+import org.aion.kernel.TransactionContext;
+import org.aion.kernel.TransactionContextImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ConflictGraphSchedulerTest {
+    private final Block block = new Block(new byte[32], 1, Helpers.randomBytes(Address.LENGTH), System.currentTimeMillis(), new byte[0]);
+
+    private final byte[] usr1 = Helpers.hexStringToBytes("1111111111111111111111111111111111111111111111111111111111111111");
+    private final byte[] usr2 = Helpers.hexStringToBytes("2222222222222222222222222222222222222222222222222222222222222222");
+    private final byte[] usr3 = Helpers.hexStringToBytes("3333333333333333333333333333333333333333333333333333333333333333");
+    private final byte[] usr4 = Helpers.hexStringToBytes("4444444444444444444444444444444444444444444444444444444444444444");
+    private final byte[] usr5 = Helpers.hexStringToBytes("5555555555555555555555555555555555555555555555555555555555555555");
+
+    @Test
+    public void testIndependentTransactions() {
+        BatchSchedule schedule = ConflictGraphScheduler.schedule(new TransactionContext[] {
+                transfer(usr1, usr2),
+                transfer(usr3, usr4),
+        });
+        Assert.assertEquals(2, schedule.getLaneCount());
+        Assert.assertEquals(0, schedule.getPredictedConflictCount());
+        Assert.assertEquals(0, schedule.getPredecessorCount(0));
+        Assert.assertEquals(0, schedule.getPredecessorCount(1));
+        Assert.assertEquals(0, schedule.getDependents(0).length);
+    }
+
+    @Test
+    public void testChainedTransactions() {
+        BatchSchedule schedule = ConflictGraphScheduler.schedule(new TransactionContext[] {
+                transfer(usr1, usr2),
+                transfer(usr3, usr4),
+                // Depends on both earlier transactions.
+                transfer(usr2, usr3),
+                // Only depends on the last user of each address.
+                transfer(usr3, usr2),
+                transfer(usr5, usr5),
+        });
+        Assert.assertEquals(2, schedule.getLaneCount());
+        Assert.assertEquals(2, schedule.getPredictedConflictCount());
+
+        Assert.assertEquals(2, schedule.getPredecessorCount(2));
+        Assert.assertArrayEquals(new int[] {2}, schedule.getDependents(0));
+        Assert.assertArrayEquals(new int[] {2}, schedule.getDependents(1));
+
+        // The self-transfer and the repeated pair only depend on one transaction each.
+        Assert.assertEquals(1, schedule.getPredecessorCount(3));
+        Assert.assertArrayEquals(new int[] {3}, schedule.getDependents(2));
+        Assert.assertEquals(0, schedule.getPredecessorCount(4));
+    }
+
+
+    private TransactionContext transfer(byte[] from, byte[] to) {
+        return new TransactionContextImpl(Transaction.call(from, to, 0, BigInteger.ONE, new byte[0], 100_000L, 1L), this.block);
+    }
+}
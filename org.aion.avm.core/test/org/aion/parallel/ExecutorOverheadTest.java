@@ -0,0 +1,67 @@
+package org.aion.parallel;
+
+import java.math.BigInteger;
+import org.aion.avm.api.Address;
+import org.aion.avm.core.Avm;
+import org.aion.avm.core.AvmConfiguration;
+import org.aion.avm.core.CommonAvmFactory;
+import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * A basic microbenchmark of the fixed cost of the executor path:  runs blocks of trivial balance transfers on a single executor,
+ * so the time per transaction is mostly the handoff, task setup, and commit rather than any actual execution.
+ * While it can be run as a standard unit test, the constants are meant to be tuned for more hands-on measurement.
+ */
+public class ExecutorOverheadTest {
+    private static final int TRANSACTIONS_PER_BLOCK = 100;
+    private static final int WARMUP_BLOCKS = 20;
+    private static final int MEASURED_BLOCKS = 50;
+
+    private final byte[] preminedAddress = KernelInterfaceImpl.PREMINED_ADDRESS;
+
+    @Test
+    public void testTrivialTransferOverhead() {
+        KernelInterfaceImpl kernel = new KernelInterfaceImpl();
+        AvmConfiguration config = new AvmConfiguration();
+        config.threadCount = 1;
+        Avm avm = CommonAvmFactory.buildAvmInstance(kernel, config);
+
+        byte[] receiver = Helpers.randomBytes(Address.LENGTH);
+        long blockNumber = 1;
+        for (int b = 0; b < WARMUP_BLOCKS; ++b) {
+            runBlock(avm, kernel, receiver, blockNumber);
+            blockNumber += 1;
+        }
+
+        long start = System.nanoTime();
+        for (int b = 0; b < MEASURED_BLOCKS; ++b) {
+            runBlock(avm, kernel, receiver, blockNumber);
+            blockNumber += 1;
+        }
+        long end = System.nanoTime();
+        long transactions = (long)TRANSACTIONS_PER_BLOCK * MEASURED_BLOCKS;
+        System.out.println("TRIVIAL TRANSFER NANOS PER TRANSACTION: " + ((end - start) / transactions));
+
+        Assert.assertEquals((WARMUP_BLOCKS + MEASURED_BLOCKS) * TRANSACTIONS_PER_BLOCK, kernel.getBalance(receiver).longValue());
+        avm.shutdown();
+    }
+
+
+    private void runBlock(Avm avm, KernelInterface kernel, byte[] receiver, long blockNumber) {
+        Block block = new Block(new byte[32], blockNumber, Helpers.randomBytes(Address.LENGTH), System.currentTimeMillis(), new byte[0]);
+        long nonce = kernel.getNonce(this.preminedAddress);
+        TransactionContext[] contexts = new TransactionContext[TRANSACTIONS_PER_BLOCK];
+        for (int i = 0; i < TRANSACTIONS_PER_BLOCK; ++i) {
+            Transaction transaction = Transaction.call(this.preminedAddress, receiver, nonce + i, BigInteger.ONE, new byte[0], 100_000L, 1L);
+            contexts[i] = new TransactionContextImpl(transaction, block);
+        }
+        SimpleFuture<TransactionResult>[] results = avm.run(contexts);
+        for (SimpleFuture<TransactionResult> result : results) {
+            Assert.assertEquals(TransactionResult.Code.SUCCESS, result.get().getStatusCode());
+        }
+    }
+}
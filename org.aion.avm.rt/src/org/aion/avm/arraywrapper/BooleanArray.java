@@ -36,7 +36,7 @@ public class BooleanArray extends Array {
     }
 
     public void set(int idx, boolean val) {
-        lazyLoad();
+        lazyLoadForWrite();
         this.underlying[idx] = val;
     }
 
@@ -81,20 +81,20 @@ public class BooleanArray extends Array {
     }
 
     public boolean[] getUnderlying() {
-        lazyLoad();
+        lazyLoadForWrite();
         return underlying;
     }
 
     @Override
     public void setUnderlyingAsObject(java.lang.Object u){
         RuntimeAssertionError.assertTrue(null != u);
-        lazyLoad();
+        lazyLoadForWrite();
         this.underlying = (boolean[]) u;
     }
 
     @Override
     public java.lang.Object getUnderlyingAsObject(){
-        lazyLoad();
+        lazyLoadForWrite();
         return underlying;
     }
 
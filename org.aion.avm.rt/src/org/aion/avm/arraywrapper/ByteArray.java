@@ -36,7 +36,7 @@ public class ByteArray extends Array {
     }
 
     public void set(int idx, byte val) {
-        lazyLoad();
+        lazyLoadForWrite();
         this.underlying[idx] = val;
     }
 
@@ -81,20 +81,20 @@ public class ByteArray extends Array {
     }
 
     public byte[] getUnderlying() {
-        lazyLoad();
+        lazyLoadForWrite();
         return underlying;
     }
 
     @Override
     public void setUnderlyingAsObject(java.lang.Object u){
         RuntimeAssertionError.assertTrue(null != u);
-        lazyLoad();
+        lazyLoadForWrite();
         this.underlying = (byte[]) u;
     }
 
     @Override
     public java.lang.Object getUnderlyingAsObject(){
-        lazyLoad();
+        lazyLoadForWrite();
         return underlying;
     }
 
@@ -36,7 +36,7 @@ public class DoubleArray extends Array {
     }
 
     public void set(int idx, double val) {
-        lazyLoad();
+        lazyLoadForWrite();
         this.underlying[idx] = val;
     }
 
@@ -69,20 +69,20 @@ public class DoubleArray extends Array {
     }
 
     public double[] getUnderlying() {
-        lazyLoad();
+        lazyLoadForWrite();
         return underlying;
     }
 
     @Override
     public void setUnderlyingAsObject(java.lang.Object u){
         RuntimeAssertionError.assertTrue(null != u);
-        lazyLoad();
+        lazyLoadForWrite();
         this.underlying = (double[]) u;
     }
 
     @Override
     public java.lang.Object getUnderlyingAsObject(){
-        lazyLoad();
+        lazyLoadForWrite();
         return underlying;
     }
 
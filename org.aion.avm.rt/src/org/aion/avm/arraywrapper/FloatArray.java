@@ -36,7 +36,7 @@ public class FloatArray extends Array {
     }
 
     public void set(int idx, float val) {
-        lazyLoad();
+        lazyLoadForWrite();
         this.underlying[idx] = val;
     }
 
@@ -69,20 +69,20 @@ public class FloatArray extends Array {
     }
 
     public float[] getUnderlying() {
-        lazyLoad();
+        lazyLoadForWrite();
         return underlying;
     }
 
     @Override
     public void setUnderlyingAsObject(java.lang.Object u){
         RuntimeAssertionError.assertTrue(null != u);
-        lazyLoad();
+        lazyLoadForWrite();
         this.underlying = (float[]) u;
     }
 
     @Override
     public java.lang.Object getUnderlyingAsObject(){
-        lazyLoad();
+        lazyLoadForWrite();
         return underlying;
     }
 
@@ -25,6 +25,10 @@ public class Object extends java.lang.Object implements IObject {
     // We hold on to this deserializer until we need to load the instance (this is cleared after lazyLoad() completes).
     private IDeserializer deserializer;
 
+    // Set by the write barrier (see lazyLoadForWrite()) so that saving the graph can skip instances which weren't written since they were loaded.
+    // Note that this is never persisted and it is only meaningful for instances which were loaded, not newly created.
+    private boolean isDirty;
+
     public Object() {
         this.hashCode = IInstrumentation.attachedThreadInstrumentation.get().getNextHashCodeAndIncrement();
         this.persistenceToken = null;
@@ -135,6 +139,30 @@ public class Object extends java.lang.Object implements IObject {
         }
     }
 
+    /**
+     * The write barrier:  the same as lazyLoad() but also marks the instance as dirty.
+     * This is injected before any PUTFIELD on an instance which might be a stub.  The array wrappers call it before any store and whenever they
+     * expose their underlying array (since it could then be modified anywhere).
+     */
+    public final void lazyLoadForWrite() {
+        lazyLoad();
+        this.isDirty = true;
+    }
+
+    /**
+     * Marks the instance as dirty without loading it, for the cases where the persistence layer writes into an instance on the DApp's behalf.
+     */
+    public final void markDirty() {
+        this.isDirty = true;
+    }
+
+    /**
+     * @return True if the instance was written through the write barrier (or explicitly marked dirty).
+     */
+    public final boolean isDirty() {
+        return this.isDirty;
+    }
+
     public void deserializeSelf(java.lang.Class<?> firstRealImplementation, IObjectDeserializer deserializer) {
         // We only operate on our hashCode.
         this.hashCode = deserializer.readInt();